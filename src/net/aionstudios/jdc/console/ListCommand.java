@@ -22,7 +22,7 @@ public class ListCommand extends Command {
 			System.out.println(getHelp());
 		} else if(args.length>=1&&args[0].equals("sites")) {
 			String s = "Sites:";
-			for(Entry<String, Website> w : WebsiteManager.websites.entrySet()) {
+			for(Entry<String, Website> w : WebsiteManager.getWebsites().entrySet()) {
 				s = s.concat("\r\n    "+w.getValue().getName());
 			}
 			System.out.println(s);
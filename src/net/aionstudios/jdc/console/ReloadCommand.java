@@ -61,7 +61,7 @@ public class ReloadCommand extends Command {
 				System.err.println("Couldn't locate website '"+args[1]+"'!");
 			}
 		} else if(args.length>0&&args[0].equals("all")) {
-			for(Entry<String, Website> w : WebsiteManager.websites.entrySet()) {
+			for(Entry<String, Website> w : WebsiteManager.getWebsites().entrySet()) {
 				for(Entry<String, ContentProcessor> cp : w.getValue().getProcessors().entrySet()) {
 					JDC j = JDCLoader.getSingleJDC(cp.getValue().getArchive(), cp.getValue().getMainClass());
 					if(j!=null) {
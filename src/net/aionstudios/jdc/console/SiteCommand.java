@@ -10,6 +10,7 @@ import org.json.JSONObject;
 
 import net.aionstudios.jdc.content.ResponseCode;
 import net.aionstudios.jdc.server.JDCServerInfo;
+import net.aionstudios.jdc.server.compression.CompressionPool;
 import net.aionstudios.jdc.server.content.ContentProcessor;
 import net.aionstudios.jdc.server.content.Website;
 import net.aionstudios.jdc.server.content.WebsiteManager;
@@ -106,7 +107,7 @@ public class SiteCommand extends Command {
 								break;
 							}
 						}
-						WebsiteManager.websites.remove(website.getName());
+						WebsiteManager.removeWebsite(website);
 						JDCServerInfo.writeConfig(sitesJson, sitesJsonFile);
 					} catch (JSONException e) {
 						System.err.println("An unhandled exception caused the operation to fail.");
@@ -129,11 +130,21 @@ public class SiteCommand extends Command {
 							}
 							JSONObject proxyNew = new LinkedJSONObject();
 							proxyNew.put("context", argBase);
-							proxyNew.put("proxy_url", argRedirect);
+							if (args.length>5) {
+								JSONArray upstreams = new JSONArray();
+								for (int i = 4; i < args.length; i++) {
+									upstreams.put(args[i]);
+								}
+								proxyNew.put("upstreams", upstreams);
+							} else {
+								proxyNew.put("proxy_url", argRedirect);
+							}
 							proxies.put(proxyNew);
 							JDCServerInfo.writeConfig(proxiesJson, proxiesJsonFile);
 							System.out.println("Proxy set successfully, reloading proxy config for site '"+args[0]+"'.");
 							website.readProxiesConfig();
+						} else if (args.length>=3&&args[2].equals("stats")) {
+							website.getProxyManager().printStats();
 						} else if (args.length>=4&&args[2].equals("unset")) {
 							String argBase = args[3];
 							JSONArray proxies = proxiesJson.getJSONArray("proxies");
@@ -257,6 +268,16 @@ public class SiteCommand extends Command {
 						System.err.println("An unhandled exception caused the operation to fail.");
 						e.printStackTrace();
 					}
+				} else if (args[1].equals("purge")) {
+					if (args.length>=3&&args[2].equals("output")) {
+						int n = website.getPageCache().purge(args.length>3 ? args[3] : null);
+						System.out.println("Purged "+n+" cached page output"+(n==1?"":"s")+" for site '"+args[0]+"'.");
+					} else if (args.length>=3&&args[2].equals("fragments")) {
+						website.getFragmentCache().clear();
+						System.out.println("Purged cached fragments for site '"+args[0]+"'.");
+					} else {
+						printHelpMessage("Missing arguments for 'purge'!");
+					}
 				} else if (args[1].equals("ssl")) {
 					JSONObject jo = new LinkedJSONObject();
 				} else if (args[1].equals("view")) {
@@ -270,6 +291,20 @@ public class SiteCommand extends Command {
 						website.printProcessors();
 					} else if (args[2].equals("errorpages")) {
 						website.printErrorMapping();
+					} else if (args[2].equals("limiter")) {
+						website.getConcurrencyLimiter().printLimiter();
+					} else if (args[2].equals("cache")) {
+						website.getFileCache().printCache();
+					} else if (args[2].equals("pages")) {
+						website.getRenderPlanCache().printCache();
+					} else if (args[2].equals("fragments")) {
+						website.getFragmentCache().printCache();
+					} else if (args[2].equals("output")) {
+						website.getPageCache().printCache();
+					} else if (args[2].equals("coalescing")) {
+						website.getRequestCoalescer().printStats();
+					} else if (args[2].equals("compression")) {
+						CompressionPool.printPool();
 					} else if (args[2].equals("security")) {
 						System.out.println("SSL ENABLED: "+(website.isSslOn()?"TRUE":"FALSE"));
 					} else {
@@ -300,11 +335,12 @@ public class SiteCommand extends Command {
 				+ "      site <website> create [enable_ssl]\r\n"
 				+ "      site <website> address {add | remove} <address> ...\r\n"
 				+ "      site <website> delete\r\n"
-				+ "      site <website> proxy {set <base> <redirect> | unset <base>}\r\n"
+				+ "      site <website> proxy {set <base> <redirect> [<redirect> ...] | unset <base> | stats}\r\n"
 				+ "      site <website> processor {add <name> <jarpath> <jdc_entrypoint> | remove <name>}\r\n"
 				+ "      site <website> errorpage {set <code> <path> | unset <code>}\r\n"
+				+ "      site <website> purge {output [<path>] | fragments}\r\n"
 				+ "      site <website> ssl {enable | disable}\r\n"
-				+ "      site <website> view {addresses | proxies | processors | errorpages | security}";
+				+ "      site <website> view {addresses | proxies | processors | errorpages | limiter | cache | pages | fragments | output | coalescing | compression | security}";
 	}
 	
 	public void printIncorrect() {
@@ -22,7 +22,7 @@ public class StopCommand extends Command {
 			System.out.println(getHelp());
 		} else if(args.length==0) {
 			System.out.println("Shutting down server...");
-			for(Entry<String, Website> w : WebsiteManager.websites.entrySet()) {
+			for(Entry<String, Website> w : WebsiteManager.getWebsites().entrySet()) {
 				for(Entry<String, ContentProcessor> cp : w.getValue().getProcessors().entrySet()) {
 					cp.getValue().getJDC().onShutdown();
 				}
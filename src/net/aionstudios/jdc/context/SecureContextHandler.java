@@ -6,6 +6,9 @@ import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.BiConsumer;
 
 import org.apache.commons.fileupload.FileItem;
 import org.apache.commons.fileupload.RequestContext;
@@ -16,18 +19,18 @@ import com.sun.net.httpserver.HttpExchange;
 import com.sun.net.httpserver.HttpHandler;
 
 import net.aionstudios.jdc.content.MultipartFile;
-import net.aionstudios.jdc.content.OutgoingRequest;
 import net.aionstudios.jdc.content.RequestVariables;
 import net.aionstudios.jdc.content.ResponseCode;
 import net.aionstudios.jdc.server.JDCServerInfo;
 import net.aionstudios.jdc.server.compression.CompressionEncoding;
-import net.aionstudios.jdc.server.content.GeneratorResponse;
-import net.aionstudios.jdc.server.content.PageParser;
 import net.aionstudios.jdc.server.content.Website;
 import net.aionstudios.jdc.server.content.WebsiteManager;
+import net.aionstudios.jdc.server.executor.RequestExecutors;
+import net.aionstudios.jdc.server.limit.ConcurrencyLimiter;
+import net.aionstudios.jdc.server.proxy.ProxyHandler;
+import net.aionstudios.jdc.server.proxy.ProxyRoute;
 import net.aionstudios.jdc.server.util.RequestUtils;
 import net.aionstudios.jdc.server.util.ResponseUtils;
-import net.aionstudios.jdc.service.OutgoingRequestService;
 
 /**
  * Handles secure HTTP contexts.
@@ -78,77 +81,113 @@ public class SecureContextHandler implements HttpHandler {
 			return;
 		}
 		
-		List<MultipartFile> mfs = new ArrayList<MultipartFile>();
-		List<FileItem> deleteLater = new ArrayList<>();
-		final String cT = he.getRequestHeaders().containsKey("Content-Type") ? he.getRequestHeaders().getFirst("Content-Type") : "text/html";
-		if(cT.contains("multipart/form-data")||cT.contains("multipart/stream")) {
-			DiskFileItemFactory d = new DiskFileItemFactory();
-			try {
-				ServletFileUpload up = new ServletFileUpload(d);
-				List<FileItem> result = up.parseRequest(new RequestContext() {
+		ConcurrencyLimiter limiter = wb.getConcurrencyLimiter();
+		if(!limiter.acquire()) {
+			ResponseUtils.overloadHTTPResponse(he, wb, ce);
+			return;
+		}
+		final long admitted = System.nanoTime();
+		boolean deferred = false;
+		try {
+			final ProxyRoute route = wb.getProxyManager().getRoute(he.getRequestURI().getRawPath());
+			if(route!=null) {
+				final Website pw = wb;
+				final CompressionEncoding pce = ce;
+				try {
+					RequestExecutors.runBlocking(new Callable<Boolean>() {
 
-					@Override
-					public String getCharacterEncoding() {
-						return "UTF-8";
-					}
+						@Override
+						public Boolean call() {
+							return ProxyHandler.forward(he, pw, route, pce);
+						}
 
-					@Override
-					public int getContentLength() {
-						return 0; //tested to work with 0 as return
-					}
+					});
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+				return;
+			}
+			List<MultipartFile> mfs = new ArrayList<MultipartFile>();
+			List<FileItem> deleteLater = new ArrayList<>();
+			final String cT = he.getRequestHeaders().containsKey("Content-Type") ? he.getRequestHeaders().getFirst("Content-Type") : "text/html";
+			if(cT.contains("multipart/form-data")||cT.contains("multipart/stream")) {
+				DiskFileItemFactory d = new DiskFileItemFactory();
+				try {
+					ServletFileUpload up = new ServletFileUpload(d);
+					List<FileItem> result = up.parseRequest(new RequestContext() {
 
-					@Override
-					public String getContentType() {
-						return cT;
+						@Override
+						public String getCharacterEncoding() {
+							return "UTF-8";
+						}
+
+						@Override
+						public int getContentLength() {
+							return 0; //tested to work with 0 as return
+						}
+
+						@Override
+						public String getContentType() {
+							return cT;
+						}
+
+						@Override
+						public InputStream getInputStream() throws IOException {
+							return he.getRequestBody();
+						}
+
+					});
+					for(FileItem fi : result) {
+						if(!fi.isFormField()) {
+				        	mfs.add(new MultipartFile(fi.getFieldName(), fi.getName(), fi.getContentType(), fi.getInputStream(), fi.getSize()));
+				        	deleteLater.add(fi);
+				        } else {
+				        	postQuery.put(fi.getFieldName(), fi.getString());
+				        }
 					}
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+			} else {
+				if(he.getRequestMethod().equalsIgnoreCase("POST")) {
+					postQuery = RequestUtils.resolvePostQuery(he);
+				}
+			}
+			RequestVariables vars = new RequestVariables(postQuery, getQuery, cookies, requestSplit[0], mfs);
+			if(requestSplit[0].endsWith(".jdc")) {
+				final List<FileItem> uploads = deleteLater;
+				final ConcurrencyLimiter pl = limiter;
+				//a page waiting on async processors is sent once they complete, this thread being free meanwhile
+				CompletableFuture<Boolean> sent = ResponseUtils.pageHTTPResponse(he, vars, requestSplit[0], wb.getContentFile(requestSplit[0]), wb, ce);
+				deferred = true;
+				sent.whenComplete(new BiConsumer<Boolean, Throwable>() {
 
 					@Override
-					public InputStream getInputStream() throws IOException {
-						return he.getRequestBody();
+					public void accept(Boolean ok, Throwable t) {
+						if(t!=null) {
+							t.printStackTrace();
+							he.close();
+						}
+						for(FileItem fi : uploads) {
+							fi.delete();
+						}
+						pl.release(System.nanoTime()-admitted);
 					}
 
 				});
-				for(FileItem fi : result) {
-					if(!fi.isFormField()) {
-			        	mfs.add(new MultipartFile(fi.getFieldName(), fi.getName(), fi.getContentType(), fi.getInputStream(), fi.getSize()));
-			        	deleteLater.add(fi);
-			        } else {
-			        	postQuery.put(fi.getFieldName(), fi.getString());
-			        }
-				}
-			} catch (Exception e) {
-				e.printStackTrace();
+				return;
+			} else {
+				ResponseUtils.fileHTTPResponse(he, vars, wb.getContentFile(requestSplit[0]), wb, ce);
+				for(FileItem fi : deleteLater) {
+	            	fi.delete();
+	            }
+				return;
 			}
-		} else {
-			if(he.getRequestMethod().equalsIgnoreCase("POST")) {
-				postQuery = RequestUtils.resolvePostQuery(he);
+		} finally {
+			if(!deferred) {
+				limiter.release(System.nanoTime()-admitted);
 			}
 		}
-		String proxyUrl = wb.getProxyManager().getProxyUrl(requestSplit[0]);
-		if(proxyUrl!=null) {
-			OutgoingRequest or = new OutgoingRequest("", null);
-			String rp = OutgoingRequestService.executePost(proxyUrl+ (requestSplit[1].length()>0 ? "?" : "") + requestSplit[1], OutgoingRequestService.postMapToString(postQuery), or);
-			RequestVariables v = new RequestVariables(null, null, null, null, null);
-			or.getLastHeader("Content-Type");
-			v.setContentType(or.getLastHeader("Content-Type"));
-			v.setRedirect(or.getLastHeader("Location"));
-			ResponseUtils.generateHTTPResponse(new GeneratorResponse(or.getContent(), v.getResponseCode()), he, v, null, wb, ce);
-			return;
-		}
-		RequestVariables vars = new RequestVariables(postQuery, getQuery, cookies, requestSplit[0], mfs);
-		if(requestSplit[0].endsWith(".jdc")) {
-			ResponseUtils.generateHTTPResponse(PageParser.parseGeneratePage(wb, he, vars, wb.getContentFile(requestSplit[0])), he, vars, wb.getContentFile(requestSplit[0]), wb, ce);
-			for(FileItem fi : deleteLater) {
-            	fi.delete();
-            }
-			return;
-		} else {
-			ResponseUtils.fileHTTPResponse(he, vars, wb.getContentFile(requestSplit[0]), wb, ce);
-			for(FileItem fi : deleteLater) {
-            	fi.delete();
-            }
-			return;
-		}
 	}
 
 }
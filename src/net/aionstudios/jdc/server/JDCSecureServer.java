@@ -10,20 +10,19 @@ import java.security.NoSuchAlgorithmException;
 import java.security.UnrecoverableKeyException;
 import java.security.cert.Certificate;
 import java.security.cert.CertificateException;
-import java.util.concurrent.Executors;
 
 import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.SSLContext;
-import javax.net.ssl.SSLEngine;
-import javax.net.ssl.SSLParameters;
 import javax.net.ssl.TrustManagerFactory;
 
-import com.sun.net.httpserver.HttpServer;
-import com.sun.net.httpserver.HttpsConfigurator;
 import com.sun.net.httpserver.HttpsServer;
-import com.sun.net.httpserver.HttpsParameters;
 
 import net.aionstudios.jdc.context.SecureContextHandler;
+import net.aionstudios.jdc.server.engine.EngineFactory;
+import net.aionstudios.jdc.server.engine.ServerEngine;
+import net.aionstudios.jdc.server.executor.RequestExecutors;
+import net.aionstudios.jdc.server.tls.TLSConfigurator;
+import net.aionstudios.jdc.server.tls.TLSSettings;
 
 /**
  * An HTTPS enabled instance of the {@link JDCServer}, to handle secured requests.
@@ -32,7 +31,7 @@ import net.aionstudios.jdc.context.SecureContextHandler;
 public class JDCSecureServer {
 	
 	private static boolean started = false;
-	private static HttpsServer server;
+	private static ServerEngine server;
 	
 	/*
 	 * To generate a compatible JKS certificate it is recommended to get the default cert/key files from a certificate authority
@@ -51,11 +50,14 @@ public class JDCSecureServer {
 	 * @param storePassword		The JKS {@link KeyStore}'s password.
 	 * @param keyPassword		The password for a single {@link Certificate} in the JKS {@link KeyStore}.
 	 * @param certificateAlias	The JKS {@link KeyStore}'s named certificate.
+	 * @param tls				The {@link TLSSettings} for protocols and session resumption.
 	 */
-	public static void startServer(String certificate, String storePassword, String keyPassword, String certificateAlias) {
+	public static void startServer(String certificate, String storePassword, String keyPassword, String certificateAlias, TLSSettings tls) {
 		if(!started) {
 			boolean noError = false;
+			TLSConfigurator configurator = null;
 			try {
+				TLSConfigurator.applyTicketPolicy(tls);
 				// load certificate
 				String keystoreFilename = "./certs/" + certificate;
 				char[] storepass = storePassword.toCharArray();
@@ -72,30 +74,13 @@ public class JDCSecureServer {
 				// setup the trust manager factory
 				TrustManagerFactory tmf = TrustManagerFactory.getInstance("SunX509");
 				tmf.init(keystore);
-				//initialize server
-				server = HttpsServer.create(new InetSocketAddress(JDCServerInfo.getHttpsPort()), 0);
 				// create ssl context
-				SSLContext sslContext = SSLContext.getInstance("TLSv1.2");
-				// setup the HTTPS context and parameters
+				SSLContext sslContext = SSLContext.getInstance("TLS");
+				// setup the HTTPS context and parameters, computed once for all connections
 				sslContext.init(kmf.getKeyManagers(), tmf.getTrustManagers(), null);
-				server.setHttpsConfigurator(new HttpsConfigurator(sslContext) {
-				         public void configure(HttpsParameters params) {
-				                 try {
-				                          // initialise the SSL context
-				                          SSLContext c = SSLContext.getDefault();
-				                          SSLEngine engine = c.createSSLEngine();
-				                          params.setNeedClientAuth(false);
-				                          params.setCipherSuites(engine.getEnabledCipherSuites());
-				                          params.setProtocols(engine.getEnabledProtocols());
-				                          // get the default parameters
-				                          SSLParameters defaultSSLParameters = c.getDefaultSSLParameters();
-				                          params.setSSLParameters(defaultSSLParameters);
-				                 } catch (Exception ex) {
-				                          ex.printStackTrace();
-				                          System.out.println("Failed to create HTTPS server");
-				                 }
-				         }
-				});
+				configurator = new TLSConfigurator(sslContext, tls);
+				//initialize server
+				server = EngineFactory.createSecureEngine(new InetSocketAddress(JDCServerInfo.getHttpsPort()), JDCServerInfo.getEngineSettings(), configurator);
 				noError = true;
 			} catch (IOException e) {
 				System.err.println("Failed to start HTTPS Server!");
@@ -118,9 +103,9 @@ public class JDCSecureServer {
 			}
 			if(noError) {
 				server.createContext("/", new SecureContextHandler());
-				server.setExecutor(Executors.newCachedThreadPool());
+				server.setExecutor(RequestExecutors.getRequestExecutor());
 				server.start();
-				System.out.println("Secure server started on port " + JDCServerInfo.getHttpsPort());
+				System.out.println("Secure server started on port " + JDCServerInfo.getHttpsPort() + " with " + String.join(", ", configurator.getProtocols()));
 			}
 		}
 	}
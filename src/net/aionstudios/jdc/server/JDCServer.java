@@ -3,13 +3,11 @@ package net.aionstudios.jdc.server;
 import java.io.File;
 import java.io.IOException;
 import java.net.InetSocketAddress;
-import java.util.concurrent.Executors;
 
 import org.json.JSONException;
 import org.json.JSONObject;
 
 import com.nixxcode.jvmbrotli.common.BrotliLoader;
-import com.sun.net.httpserver.HttpServer;
 
 import net.aionstudios.jdc.console.JDCConsole;
 import net.aionstudios.jdc.console.ListCommand;
@@ -20,6 +18,10 @@ import net.aionstudios.jdc.context.ContextHandler;
 import net.aionstudios.jdc.logging.LogOut;
 import net.aionstudios.jdc.logging.Logger;
 import net.aionstudios.jdc.logging.StandardOverride;
+import net.aionstudios.jdc.server.engine.EngineFactory;
+import net.aionstudios.jdc.server.engine.ServerEngine;
+import net.aionstudios.jdc.server.executor.RequestExecutors;
+import net.aionstudios.jdc.server.tls.TLSSettings;
 import net.aionstudios.jdc.server.util.FormatUtils;
 
 /**
@@ -28,7 +30,7 @@ import net.aionstudios.jdc.server.util.FormatUtils;
  */
 public class JDCServer {
 	
-	private static HttpServer server;
+	private static ServerEngine server;
 	
 	/*
 	 * Accesses a series of folders placed next to the server jar file.
@@ -47,7 +49,7 @@ public class JDCServer {
 	 * as well as offering settings.
 	 */
 	/**
-	 * Starts a new {@link HttpServer} as well as the server's {@link Logger} and loads config files.
+	 * Starts a new {@link ServerEngine} as well as the server's {@link Logger} and loads config files.
 	 * @param args		Arguments passed by the command line.
 	 */
 	public static void main(String[] args) {
@@ -56,16 +58,16 @@ public class JDCServer {
 		StandardOverride.enableOverride();
 		JDCServerInfo.readConfigsAtStart();
 		try {
-			server = HttpServer.create(new InetSocketAddress(JDCServerInfo.getHttpPort()), 0);
+			server = EngineFactory.createEngine(new InetSocketAddress(JDCServerInfo.getHttpPort()), JDCServerInfo.getEngineSettings());
 		} catch (IOException e) {
 			System.err.println("Failed to start HTTP Server!");
 			e.printStackTrace();
 			System.exit(0);
 		}
 		server.createContext("/", new ContextHandler());
-		server.setExecutor(Executors.newCachedThreadPool());
+		server.setExecutor(RequestExecutors.getRequestExecutor());
 		server.start();
-		System.out.println("Server started on port " + JDCServerInfo.getHttpPort());
+		System.out.println("Server started on port " + JDCServerInfo.getHttpPort() + " using engine '" + server.getType().getConfigName() + "'");
 		new ReloadCommand();
 		new ListCommand();
 		new StopCommand();
@@ -91,6 +93,7 @@ public class JDCServer {
 				certsJson.put("store_password", "changeit");
 				certsJson.put("key_password", "changeit");
 				certsJson.put("cert_alias", "certificate");
+				certsJson.put("tls", TLSSettings.getDefaultConfig());
 				JDCServerInfo.writeConfig(certsJson, certsConfig);
 			} catch (IOException e) {
 				System.err.println("Encountered an IOException during config file operations!");
@@ -107,7 +110,8 @@ public class JDCServer {
 				String storePassword = certsJson.getString("store_password");
 				String keyPassword = certsJson.getString("key_password");
 				String certAlias = certsJson.getString("cert_alias");
-				JDCSecureServer.startServer(jksCertificate, storePassword, keyPassword, certAlias);
+				TLSSettings tls = certsJson.has("tls") ? new TLSSettings(certsJson.getJSONObject("tls")) : new TLSSettings();
+				JDCSecureServer.startServer(jksCertificate, storePassword, keyPassword, certAlias, tls);
 			}
 		} catch (JSONException e1) {
 			System.err.println("Failed to interpret processor config!");
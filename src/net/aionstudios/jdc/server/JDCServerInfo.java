@@ -5,6 +5,7 @@ import java.io.File;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.util.Arrays;
 import java.util.TimeZone;
@@ -20,6 +21,9 @@ import net.aionstudios.jdc.server.content.DependencyLoader;
 import net.aionstudios.jdc.server.content.JDCLoader;
 import net.aionstudios.jdc.server.content.Website;
 import net.aionstudios.jdc.server.content.WebsiteManager;
+import net.aionstudios.jdc.server.compression.CompressionPoolSettings;
+import net.aionstudios.jdc.server.engine.EngineSettings;
+import net.aionstudios.jdc.server.executor.ExecutorSettings;
 import net.aionstudios.jdc.server.util.FormatUtils;
 import net.aionstudios.jdc.server.util.LinkedJSONObject;
 
@@ -41,6 +45,9 @@ public class JDCServerInfo {
 	private static int httpPort = 80;
 	private static int httpsPort = 443;
 	private static boolean enableBrotli = false;
+	private static EngineSettings engineSettings = new EngineSettings();
+	private static ExecutorSettings executorSettings = new ExecutorSettings();
+	private static CompressionPoolSettings compressionPoolSettings = new CompressionPoolSettings();
 	
 	/**
 	 * Reads configurable information when the server starts and handles setup if necessary.
@@ -87,6 +94,9 @@ public class JDCServerInfo {
 				serverConfig.put("enable_features", fo);
 				serverConfig.put("http_port", 80);
 				serverConfig.put("https_port", 443);
+				serverConfig.put("engine", EngineSettings.getDefaultConfig());
+				serverConfig.put("executor", ExecutorSettings.getDefaultConfig());
+				serverConfig.put("compression_pool", CompressionPoolSettings.getDefaultConfig());
 				writeConfig(serverConfig, scf);
 			} else {
 				serverConfig = readConfig(scf);
@@ -125,9 +135,19 @@ public class JDCServerInfo {
 			httpsPort = serverConfig.getInt("https_port");
 			JSONObject fo = serverConfig.getJSONObject("enable_features");
 			enableBrotli = fo.getBoolean("brotli");
+			if(serverConfig.has("engine")) {
+				engineSettings = new EngineSettings(serverConfig.getJSONObject("engine"));
+			}
+			if(serverConfig.has("executor")) {
+				executorSettings = new ExecutorSettings(serverConfig.getJSONObject("executor"));
+			}
+			if(serverConfig.has("compression_pool")) {
+				compressionPoolSettings = new CompressionPoolSettings(serverConfig.getJSONObject("compression_pool"));
+			}
 			DependencyLoader.loadDependencies();
 			JDCLoader.initializeClassLoader();
 			WebsiteManager.connectContentProcessors();
+			WebsiteManager.precompressContent();
 			return true;
 		} catch (IOException e) {
 			System.err.println("Encountered an IOException during config file operations!");
@@ -205,7 +225,7 @@ public class JDCServerInfo {
 	}
 	
 	/**
-	 * Returns the content of the named {@link File} in the file system.
+	 * Returns the content of the named {@link File} in the file system, read as UTF-8 with its line breaks kept.
 	 * @param f The {@link File} to be read from.
 	 * @return The contents, a String, of the named {@link File}
 	 */
@@ -214,13 +234,8 @@ public class JDCServerInfo {
 			System.err.println("Failed reading file: '"+f.toString()+"'. No such file!");
 			return null;
 		}
-		String jsonString = "";
-		try (BufferedReader br = new BufferedReader(new FileReader(f.toString()))) {
-		    for (String line; (line = br.readLine()) != null;) {
-		    	jsonString += line;
-		    }
-		    br.close();
-		    return jsonString;
+		try {
+			return new String(Files.readAllBytes(f.toPath()), StandardCharsets.UTF_8);
 		} catch (IOException e) {
 			System.err.println("Encountered an IOException while reading file: '"+f.toString()+"'!");
 			e.printStackTrace();
@@ -260,4 +275,25 @@ public class JDCServerInfo {
 		return httpsPort;
 	}
 	
+	/**
+	 * @return The {@link EngineSettings} used to create the server's listeners.
+	 */
+	public static EngineSettings getEngineSettings() {
+		return engineSettings;
+	}
+	
+	/**
+	 * @return The {@link ExecutorSettings} used to create the request executor.
+	 */
+	public static ExecutorSettings getExecutorSettings() {
+		return executorSettings;
+	}
+	
+	/**
+	 * @return The {@link CompressionPoolSettings} capping the encoders and buffers used to compress responses.
+	 */
+	public static CompressionPoolSettings getCompressionPoolSettings() {
+		return compressionPoolSettings;
+	}
+	
 }
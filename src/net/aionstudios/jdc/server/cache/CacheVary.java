@@ -0,0 +1,110 @@
+package net.aionstudios.jdc.server.cache;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import net.aionstudios.jdc.server.util.RequestUtils;
+
+/**
+ * The request details a cached response or fragment varies by, read from a list separated by spaces or commas:
+ * {@code query} for the whole query string, {@code query:name} for a query parameter, {@code cookie:name} for a
+ * cookie and {@code header:name} for a request header.
+ * @author Winter Roberts
+ */
+public class CacheVary {
+
+	private final String[] types;
+	private final String[] names;
+
+	/**
+	 * Reads the request details to vary by, ignoring any which aren't understood.
+	 * @param vary	The request details as written in the config or page.
+	 */
+	public CacheVary(String vary) {
+		List<String> ts = new ArrayList<String>();
+		List<String> ns = new ArrayList<String>();
+		for(String v : (vary!=null ? vary : "").trim().split("[\\s,]+")) {
+			if(v.isEmpty()) {
+				continue;
+			}
+			String[] tn = v.split(":", 2);
+			String type = tn[0].toLowerCase();
+			if(type.equals("query")||((type.equals("cookie")||type.equals("header"))&&tn.length==2)) {
+				ts.add(type);
+				ns.add(tn.length==2 ? tn[1] : null);
+			} else {
+				System.err.println("Invalid cache vary '"+v+"', ignoring it!");
+			}
+		}
+		this.types = ts.toArray(new String[ts.size()]);
+		this.names = ns.toArray(new String[ns.size()]);
+	}
+
+	/**
+	 * Appends the value of each request detail to a cache key, keeping a missing value apart from an empty one.
+	 * @param sb	The key being built.
+	 * @param he	The {@link HttpExchange} of the request, or null if there is none.
+	 * @return The key being built.
+	 */
+	public StringBuilder appendKey(StringBuilder sb, HttpExchange he) {
+		Map<String, String> query = null;
+		for(int i = 0; i < types.length; i++) {
+			String value = null;
+			if(he!=null) {
+				if(types[i].equals("query")) {
+					String raw = he.getRequestURI().getRawQuery();
+					if(names[i]==null) {
+						value = raw;
+					} else {
+						if(query==null) {
+							query = RequestUtils.resolveGetQuery(raw);
+						}
+						value = query.get(names[i]);
+					}
+				} else if(types[i].equals("cookie")) {
+					value = getCookie(he.getRequestHeaders().getFirst("Cookie"), names[i]);
+				} else {
+					value = he.getRequestHeaders().getFirst(names[i]);
+				}
+			}
+			sb.append('\0').append(value!=null ? "="+value : "");
+		}
+		return sb;
+	}
+
+	/**
+	 * @return The request headers a response varies by, for its Vary header, or an empty string if there are none.
+	 */
+	public String getVaryHeaders() {
+		StringBuilder sb = new StringBuilder();
+		for(int i = 0; i < types.length; i++) {
+			String h = types[i].equals("cookie") ? "Cookie" : types[i].equals("header") ? names[i] : null;
+			if(h!=null&&sb.indexOf(h)<0) {
+				sb.append(sb.length()>0 ? ", " : "").append(h);
+			}
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * @param header	The Cookie header of a request, or null if it has none.
+	 * @param name		The name of a cookie.
+	 * @return The value of the cookie, or null if the request doesn't have it.
+	 */
+	private static String getCookie(String header, String name) {
+		if(header==null) {
+			return null;
+		}
+		for(String c : header.split(";")) {
+			int eq = c.indexOf('=');
+			if(eq>=0&&c.substring(0, eq).trim().equals(name)) {
+				return c.substring(eq+1).trim();
+			}
+		}
+		return null;
+	}
+
+}
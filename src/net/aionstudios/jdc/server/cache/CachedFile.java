@@ -0,0 +1,164 @@
+package net.aionstudios.jdc.server.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+import java.util.Base64;
+
+import net.aionstudios.jdc.server.util.FormatUtils;
+import net.aionstudios.jdc.server.util.MimeUtils;
+
+/**
+ * A static file held by a {@link StaticFileCache}, its details and, for small enough files, its content.
+ * @author Winter Roberts
+ */
+public class CachedFile {
+
+	private static final int ENTRY_OVERHEAD = 128;
+
+	private byte[] bytes;
+	private String mime;
+	private long length;
+	private long lastModified;
+	private String lastModifiedString;
+	private String eTag;
+
+	/**
+	 * Creates a cached file.
+	 * @param bytes			The content of the file, or null if it wasn't read.
+	 * @param mime			The mime type of the file.
+	 * @param length		The length of the file in bytes.
+	 * @param lastModified	The time the file was last modified in milliseconds since the epoch.
+	 * @param eTag			The strong entity tag of the file, including its quotes.
+	 */
+	private CachedFile(byte[] bytes, String mime, long length, long lastModified, String eTag) {
+		this.bytes = bytes;
+		this.mime = mime;
+		this.length = length;
+		this.lastModified = lastModified;
+		this.lastModifiedString = FormatUtils.getLastModifiedAsHTTPString(lastModified);
+		this.eTag = eTag;
+	}
+
+	/**
+	 * Reads a file's details, and its content if it is no larger than the given size.
+	 * @param path			The {@link Path} of the file.
+	 * @param maxFileSize	The size of the largest file whose content should be read.
+	 * @param hashETag		True if the entity tag of a file whose content is read should be a hash of the content.
+	 * @return A new {@link CachedFile}, or null if the path isn't a regular file.
+	 * @throws IOException If the file could not be read.
+	 */
+	static CachedFile read(Path path, long maxFileSize, boolean hashETag) throws IOException {
+		BasicFileAttributes a;
+		try {
+			a = Files.readAttributes(path, BasicFileAttributes.class);
+		} catch (NoSuchFileException e) {
+			return null;
+		}
+		if(!a.isRegularFile()) {
+			return null;
+		}
+		String[] nameParts = path.getFileName().toString().split("\\.");
+		String mime = MimeUtils.getInstance().getMimeString(nameParts[nameParts.length-1]);
+		long modified = a.lastModifiedTime().toMillis();
+		if(a.size()>maxFileSize) {
+			return new CachedFile(null, mime, a.size(), modified, createETag(a.fileKey(), modified, a.size()));
+		}
+		byte[] b = Files.readAllBytes(path);
+		return new CachedFile(b, mime, b.length, modified, hashETag ? hashETag(b) : createETag(a.fileKey(), modified, b.length));
+	}
+
+	/**
+	 * Makes an entity tag from a file's identity on disk, which changes whenever the file is replaced or modified.
+	 * @param fileKey	The file key from the file's attributes, like its device and inode, or null if there is none.
+	 * @param modified	The modification time of the file.
+	 * @param length	The length of the file.
+	 * @return The quoted entity tag.
+	 */
+	private static String createETag(Object fileKey, long modified, long length) {
+		StringBuilder sb = new StringBuilder(48).append('"');
+		if(fileKey!=null) {
+			sb.append(Integer.toHexString(fileKey.hashCode())).append('-');
+		}
+		return sb.append(Long.toHexString(modified)).append('-').append(Long.toHexString(length)).append('"').toString();
+	}
+
+	/**
+	 * Makes an entity tag from a hash of a file's content.
+	 * @param content	The content of the file.
+	 * @return The quoted entity tag.
+	 */
+	private static String hashETag(byte[] content) {
+		try {
+			byte[] digest = MessageDigest.getInstance("SHA-256").digest(content);
+			return '"'+Base64.getUrlEncoder().withoutPadding().encodeToString(Arrays.copyOf(digest, 18))+'"';
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+
+	/**
+	 * Checks the file on disk still matches this entry, used when the content folder isn't watched.
+	 * @param file	The file this entry was read from.
+	 * @return True if the file's length and modification time are unchanged.
+	 */
+	boolean isCurrent(File file) {
+		return file.lastModified()==lastModified&&file.length()==length;
+	}
+
+	/**
+	 * @return The number of bytes this entry counts against the cache's size limit.
+	 */
+	long getWeight() {
+		return ENTRY_OVERHEAD+(bytes!=null?bytes.length:0);
+	}
+
+	/**
+	 * @return The content of the file, or null if it was too large to be held in memory.
+	 */
+	public byte[] getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * @return The mime type of the file.
+	 */
+	public String getMime() {
+		return mime;
+	}
+
+	/**
+	 * @return The length of the file in bytes.
+	 */
+	public long getLength() {
+		return length;
+	}
+
+	/**
+	 * @return The time the file was last modified in milliseconds since the epoch.
+	 */
+	public long getLastModified() {
+		return lastModified;
+	}
+
+	/**
+	 * @return The time the file was last modified, formatted for the Last-Modified header.
+	 */
+	public String getLastModifiedString() {
+		return lastModifiedString;
+	}
+
+	/**
+	 * @return The strong entity tag of the file, including its quotes.
+	 */
+	public String getETag() {
+		return eTag;
+	}
+
+}
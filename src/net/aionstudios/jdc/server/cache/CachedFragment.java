@@ -0,0 +1,83 @@
+package net.aionstudios.jdc.server.cache;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * The output of an element processor held by a {@link FragmentCache}, with the attributes it set on its element.
+ * @author Winter Roberts
+ */
+public class CachedFragment {
+
+	private static final int ENTRY_OVERHEAD = 160;
+
+	private String content;
+	private Map<String, String> attributes;
+	private long expires;
+	private long staleUntil;
+
+	/**
+	 * Creates a cached fragment.
+	 * @param content		The output of the processor.
+	 * @param attributes	The attributes the processor set on its element, copied.
+	 */
+	public CachedFragment(String content, Map<String, String> attributes) {
+		this.content = content;
+		this.attributes = attributes==null||attributes.isEmpty() ? Collections.<String, String>emptyMap()
+				: Collections.unmodifiableMap(new LinkedHashMap<String, String>(attributes));
+	}
+
+	/**
+	 * Sets when this fragment goes stale and when it may no longer be served at all, as it is stored.
+	 * @param expires		The {@link System#nanoTime()} after which the fragment is stale.
+	 * @param staleUntil	The {@link System#nanoTime()} after which the fragment isn't served.
+	 */
+	void setLifetime(long expires, long staleUntil) {
+		this.expires = expires;
+		this.staleUntil = staleUntil;
+	}
+
+	/**
+	 * @param now	The current {@link System#nanoTime()}.
+	 * @return True if the fragment hasn't expired.
+	 */
+	boolean isFresh(long now) {
+		return now-expires<0;
+	}
+
+	/**
+	 * @param now	The current {@link System#nanoTime()}.
+	 * @return True if the fragment may still be served while it is refreshed.
+	 */
+	boolean isServable(long now) {
+		return now-staleUntil<0;
+	}
+
+	/**
+	 * @param keyLength	The length of the key the fragment is stored under.
+	 * @return The number of bytes this entry counts against the cache's size limit.
+	 */
+	long getWeight(int keyLength) {
+		long w = ENTRY_OVERHEAD+2L*keyLength+(content!=null ? 2L*content.length() : 0);
+		for(Map.Entry<String, String> e : attributes.entrySet()) {
+			w += 2L*(e.getKey().length()+(e.getValue()!=null ? e.getValue().length() : 0));
+		}
+		return w;
+	}
+
+	/**
+	 * @return The output of the processor.
+	 */
+	public String getContent() {
+		return content;
+	}
+
+	/**
+	 * @return The attributes the processor set on its element.
+	 */
+	public Map<String, String> getAttributes() {
+		return attributes;
+	}
+
+}
@@ -0,0 +1,102 @@
+package net.aionstudios.jdc.server.cache;
+
+import net.aionstudios.jdc.server.compression.CompressionEncoding;
+
+/**
+ * The encoded output of a page held by a {@link PageCache}, with a variant for each {@link CompressionEncoding} it
+ * has been sent with.
+ * @author Winter Roberts
+ */
+public class CachedPage {
+
+	private static final int ENTRY_OVERHEAD = 200;
+
+	private final String contentType;
+	private final String varyHeaders;
+	private final long pageModified;
+	private final long created;
+	private final long expires;
+	private final byte[][] variants = new byte[CompressionEncoding.values().length][];
+
+	/**
+	 * Creates a cached page.
+	 * @param body			The output of the page encoded to UTF-8, its {@link CompressionEncoding#NONE} variant.
+	 * @param contentType	The Content-Type of the page.
+	 * @param varyHeaders	The request headers the page varies by besides Accept-Encoding, or an empty string.
+	 * @param pageModified	The modification time of the page's file when it was rendered.
+	 * @param ttl			The milliseconds the output is kept for.
+	 */
+	CachedPage(byte[] body, String contentType, String varyHeaders, long pageModified, long ttl) {
+		this.contentType = contentType;
+		this.varyHeaders = varyHeaders;
+		this.pageModified = pageModified;
+		this.created = System.currentTimeMillis();
+		this.expires = System.nanoTime()+ttl*1000000L;
+		variants[CompressionEncoding.NONE.ordinal()] = body;
+	}
+
+	/**
+	 * @param now			The current {@link System#nanoTime()}.
+	 * @param pageModified	The current modification time of the page's file.
+	 * @return True if the output hasn't expired and the page hasn't changed since it was rendered.
+	 */
+	boolean isFresh(long now, long pageModified) {
+		return now-expires<0&&pageModified==this.pageModified;
+	}
+
+	/**
+	 * @param ce	A {@link CompressionEncoding}.
+	 * @return The output compressed with the encoding, or null if the page hasn't been compressed with it yet.
+	 */
+	public synchronized byte[] getVariant(CompressionEncoding ce) {
+		return variants[ce.ordinal()];
+	}
+
+	/**
+	 * Adds a compressed variant of the output.
+	 * @param ce		The {@link CompressionEncoding} of the variant.
+	 * @param variant	The compressed output.
+	 * @return The bytes the variant added, 0 if another request added one first.
+	 */
+	synchronized long setVariant(CompressionEncoding ce, byte[] variant) {
+		if(variants[ce.ordinal()]!=null) {
+			return 0;
+		}
+		variants[ce.ordinal()] = variant;
+		return variant.length;
+	}
+
+	/**
+	 * @param keyLength	The length of the key the page is stored under.
+	 * @return The number of bytes this entry counts against the cache's size limit.
+	 */
+	synchronized long getWeight(int keyLength) {
+		long w = ENTRY_OVERHEAD+2L*keyLength;
+		for(byte[] v : variants) {
+			w += v!=null ? v.length : 0;
+		}
+		return w;
+	}
+
+	/**
+	 * @return The Content-Type of the page.
+	 */
+	public String getContentType() {
+		return contentType;
+	}
+
+	/**
+	 * @return The request headers the page varies by besides Accept-Encoding, or an empty string if there are none.
+	 */
+	public String getVaryHeaders() {
+		return varyHeaders;
+	}
+
+	/**
+	 * @return The time the page was rendered, in milliseconds since the epoch.
+	 */
+	public long getCreated() {
+		return created;
+	}
+
+}
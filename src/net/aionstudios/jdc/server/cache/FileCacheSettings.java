@@ -0,0 +1,91 @@
+package net.aionstudios.jdc.server.cache;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import net.aionstudios.jdc.server.util.FormatUtils;
+
+/**
+ * Static file cache settings read from the "file_cache" section of a {@link Website}'s settings.json.
+ * @author Winter Roberts
+ */
+public class FileCacheSettings {
+
+	private boolean enabled = true;
+	private long maxBytes = 64L*1024*1024;
+	private long maxFileSize = 1024*1024;
+	private boolean watch = true;
+	private boolean hashETags = false;
+
+	/**
+	 * Creates static file cache settings with default values.
+	 */
+	public FileCacheSettings() {
+
+	}
+
+	/**
+	 * Reads static file cache settings, keeping defaults for any setting that isn't present.
+	 * @param j	The "file_cache" {@link JSONObject} from settings.json.
+	 * @throws JSONException If a setting is present but of the wrong type.
+	 */
+	public FileCacheSettings(JSONObject j) throws JSONException {
+		enabled = j.has("enabled") ? j.getBoolean("enabled") : enabled;
+		maxBytes = j.has("max_bytes") ? j.getLong("max_bytes") : maxBytes;
+		maxFileSize = j.has("max_file_size") ? j.getLong("max_file_size") : maxFileSize;
+		watch = j.has("watch") ? j.getBoolean("watch") : watch;
+		hashETags = j.has("hash_etags") ? j.getBoolean("hash_etags") : hashETags;
+	}
+
+	/**
+	 * @return A {@link JSONObject} of the default static file cache settings, as written to new config files.
+	 * @throws JSONException If the object could not be built.
+	 */
+	public static JSONObject getDefaultConfig() throws JSONException {
+		FileCacheSettings d = new FileCacheSettings();
+		JSONObject fo = FormatUtils.getLinkedJsonObject();
+		fo.put("enabled", d.enabled);
+		fo.put("max_bytes", d.maxBytes);
+		fo.put("max_file_size", d.maxFileSize);
+		fo.put("watch", d.watch);
+		fo.put("hash_etags", d.hashETags);
+		return fo;
+	}
+
+	/**
+	 * @return True if static files should be cached in memory.
+	 */
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * @return The most bytes the cache may hold before evicting the least recently used files.
+	 */
+	public long getMaxBytes() {
+		return Math.max(0, maxBytes);
+	}
+
+	/**
+	 * @return The size of the largest file whose content is kept in memory, larger files only have their details cached.
+	 */
+	public long getMaxFileSize() {
+		return Math.max(0, Math.min(Integer.MAX_VALUE-8, maxFileSize));
+	}
+
+	/**
+	 * @return True if the content folder should be watched for changes, otherwise each hit checks the file's modification time.
+	 */
+	public boolean isWatch() {
+		return watch;
+	}
+
+	/**
+	 * @return True if the ETags of files held in memory should be a hash of their content, which stays the same
+	 * across servers and copies of the file, rather than being made from the file's inode, modification time and size.
+	 */
+	public boolean isHashETags() {
+		return hashETags;
+	}
+
+}
@@ -0,0 +1,189 @@
+package net.aionstudios.jdc.server.cache;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A size bounded, least recently used cache of the output of a website's element processors.
+ * <p>
+ * A fragment is fresh for its time to live, after which it may still be served stale for a while. The first request to
+ * find a fragment stale or missing generates it again, while other requests for the same fragment are served the stale
+ * one or, if there is none, wait for that one generation instead of running the processor themselves. A stale
+ * fragment whose processor fails keeps being served until it may no longer be.
+ * @author Winter Roberts
+ */
+public class FragmentCache {
+
+	private FragmentCacheSettings settings;
+	private LinkedHashMap<String, CachedFragment> entries = new LinkedHashMap<String, CachedFragment>(64, 0.75f, true);
+	private long bytes = 0;
+	private Map<String, FutureTask<CachedFragment>> generating = new ConcurrentHashMap<String, FutureTask<CachedFragment>>();
+	private AtomicLong hits = new AtomicLong(0);
+	private AtomicLong staleHits = new AtomicLong(0);
+	private AtomicLong misses = new AtomicLong(0);
+	private AtomicLong coalesced = new AtomicLong(0);
+	private AtomicLong evictions = new AtomicLong(0);
+	private AtomicLong errors = new AtomicLong(0);
+
+	/**
+	 * Creates a fragment cache.
+	 * @param settings	The {@link FragmentCacheSettings} to cache with.
+	 */
+	public FragmentCache(FragmentCacheSettings settings) {
+		this.settings = settings;
+	}
+
+	/**
+	 * Finds a fragment, generating it if it is missing or stale.
+	 * @param key		The key of the fragment, naming its processor and everything its output varies by.
+	 * @param ttl		The milliseconds a fragment is fresh for.
+	 * @param stale		The milliseconds a fragment may be served stale for once it has expired.
+	 * @param generator	Runs the processor, unless another request is already running it for the same key.
+	 * @return The {@link CachedFragment}.
+	 * @throws Exception If the processor failed and there was no stale fragment to serve.
+	 */
+	public CachedFragment get(String key, long ttl, long stale, Callable<CachedFragment> generator) throws Exception {
+		if(!settings.isEnabled()) {
+			return generator.call();
+		}
+		CachedFragment f;
+		synchronized(this) {
+			f = entries.get(key);
+		}
+		long now = System.nanoTime();
+		if(f!=null&&f.isFresh(now)) {
+			hits.incrementAndGet();
+			return f;
+		}
+		boolean servable = f!=null&&f.isServable(now);
+		FutureTask<CachedFragment> task = new FutureTask<CachedFragment>(generator);
+		FutureTask<CachedFragment> running = generating.putIfAbsent(key, task);
+		if(running!=null) {
+			if(servable) {
+				staleHits.incrementAndGet();
+				return f;
+			}
+			coalesced.incrementAndGet();
+			return await(running);
+		}
+		try {
+			misses.incrementAndGet();
+			task.run();
+			CachedFragment result;
+			try {
+				result = await(task);
+			} catch (Exception e) {
+				errors.incrementAndGet();
+				if(servable) {
+					System.err.println("Failed to refresh cached fragment, serving it stale!");
+					e.printStackTrace();
+					return f;
+				}
+				throw e;
+			}
+			store(key, result, ttl, stale);
+			return result;
+		} finally {
+			generating.remove(key, task);
+		}
+	}
+
+	/**
+	 * Waits for a fragment being generated.
+	 * @param task	The generation.
+	 * @return The {@link CachedFragment}.
+	 * @throws Exception If the processor failed.
+	 */
+	private static CachedFragment await(FutureTask<CachedFragment> task) throws Exception {
+		try {
+			return task.get();
+		} catch (ExecutionException e) {
+			if(e.getCause() instanceof Exception) {
+				throw (Exception) e.getCause();
+			}
+			throw e;
+		}
+	}
+
+	/**
+	 * Stores a fragment, evicting the least recently used ones while the cache holds too many bytes.
+	 * @param key		The key of the fragment.
+	 * @param f			The fragment.
+	 * @param ttl		The milliseconds the fragment is fresh for.
+	 * @param stale		The milliseconds the fragment may be served stale for once it has expired.
+	 */
+	private void store(String key, CachedFragment f, long ttl, long stale) {
+		long now = System.nanoTime();
+		f.setLifetime(now+TimeUnit.MILLISECONDS.toNanos(ttl), now+TimeUnit.MILLISECONDS.toNanos(ttl+Math.max(0, stale)));
+		long weight = f.getWeight(key.length());
+		synchronized(this) {
+			if(weight>settings.getMaxBytes()) {
+				return;
+			}
+			CachedFragment old = entries.put(key, f);
+			if(old!=null) {
+				bytes -= old.getWeight(key.length());
+			}
+			bytes += weight;
+			Iterator<Map.Entry<String, CachedFragment>> i = entries.entrySet().iterator();
+			while(bytes>settings.getMaxBytes()&&i.hasNext()) {
+				Map.Entry<String, CachedFragment> e = i.next();
+				bytes -= e.getValue().getWeight(e.getKey().length());
+				i.remove();
+				evictions.incrementAndGet();
+			}
+		}
+	}
+
+	/**
+	 * Drops every fragment from the cache.
+	 */
+	public synchronized void clear() {
+		entries.clear();
+		bytes = 0;
+	}
+
+	/**
+	 * @return The number of bytes the cache currently holds, including per entry overhead.
+	 */
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * @return The number of fragments the cache currently holds.
+	 */
+	public synchronized int getSize() {
+		return entries.size();
+	}
+
+	/**
+	 * @return The {@link FragmentCacheSettings} of this cache.
+	 */
+	public FragmentCacheSettings getSettings() {
+		return settings;
+	}
+
+	/**
+	 * Prints the state of this cache to the console.
+	 */
+	public void printCache() {
+		System.out.println("ENABLED:       "+(settings.isEnabled()?"TRUE":"FALSE"));
+		System.out.println("FRAGMENTS:     "+getSize());
+		System.out.println("BYTES:         "+getBytes()+" / "+settings.getMaxBytes());
+		System.out.println("HITS:          "+hits.get());
+		System.out.println("STALE HITS:    "+staleHits.get());
+		System.out.println("MISSES:        "+misses.get());
+		System.out.println("COALESCED:     "+coalesced.get());
+		System.out.println("EVICTIONS:     "+evictions.get());
+		System.out.println("ERRORS:        "+errors.get());
+	}
+
+}
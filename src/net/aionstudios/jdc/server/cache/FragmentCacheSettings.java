@@ -0,0 +1,60 @@
+package net.aionstudios.jdc.server.cache;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import net.aionstudios.jdc.server.util.FormatUtils;
+
+/**
+ * Fragment cache settings read from the "fragment_cache" section of a {@link Website}'s settings.json.
+ * @author Winter Roberts
+ */
+public class FragmentCacheSettings {
+
+	private boolean enabled = true;
+	private long maxBytes = 16L*1024*1024;
+
+	/**
+	 * Creates fragment cache settings with default values.
+	 */
+	public FragmentCacheSettings() {
+
+	}
+
+	/**
+	 * Reads fragment cache settings, keeping defaults for any setting that isn't present.
+	 * @param j	The "fragment_cache" {@link JSONObject} from settings.json.
+	 * @throws JSONException If a setting is present but of the wrong type.
+	 */
+	public FragmentCacheSettings(JSONObject j) throws JSONException {
+		enabled = j.has("enabled") ? j.getBoolean("enabled") : enabled;
+		maxBytes = j.has("max_bytes") ? j.getLong("max_bytes") : maxBytes;
+	}
+
+	/**
+	 * @return A {@link JSONObject} of the default fragment cache settings, as written to new config files.
+	 * @throws JSONException If the object could not be built.
+	 */
+	public static JSONObject getDefaultConfig() throws JSONException {
+		FragmentCacheSettings d = new FragmentCacheSettings();
+		JSONObject fo = FormatUtils.getLinkedJsonObject();
+		fo.put("enabled", d.enabled);
+		fo.put("max_bytes", d.maxBytes);
+		return fo;
+	}
+
+	/**
+	 * @return True if the output of element processors marked with a cache attribute should be cached.
+	 */
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * @return The most bytes the cache may hold before evicting the least recently used fragments.
+	 */
+	public long getMaxBytes() {
+		return Math.max(0, maxBytes);
+	}
+
+}
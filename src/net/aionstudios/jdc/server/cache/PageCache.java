@@ -0,0 +1,203 @@
+package net.aionstudios.jdc.server.cache;
+
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.aionstudios.jdc.content.RequestVariables;
+import net.aionstudios.jdc.server.compression.CompressionEncoding;
+import net.aionstudios.jdc.server.content.GeneratorResponse;
+import net.aionstudios.jdc.server.proxy.PrefixTrie;
+
+/**
+ * A size bounded, least recently used cache of the encoded output of a website's .jdc pages, for the pages under the
+ * paths listed in its {@link PageCacheSettings}.
+ * <p>
+ * A page is rendered on its first request for each key and its output kept until its time to live passes or its file
+ * changes. A compressed variant is added for each {@link CompressionEncoding} the page is requested with. Output which
+ * sets cookies, redirects, streams a file or isn't a 200 response is never cached, and neither is output rendered for a
+ * request with an Authorization header. A page personalised by a cookie must vary by it, or by the Cookie header,
+ * otherwise the output rendered for one visitor is served to every other.
+ * @author Winter Roberts
+ */
+public class PageCache {
+
+	private PageCacheSettings settings;
+	private PrefixTrie<PageCacheRule> rules;
+	private LinkedHashMap<String, CachedPage> entries = new LinkedHashMap<String, CachedPage>(64, 0.75f, true);
+	private long bytes = 0;
+	private AtomicLong hits = new AtomicLong(0);
+	private AtomicLong misses = new AtomicLong(0);
+	private AtomicLong skipped = new AtomicLong(0);
+	private AtomicLong evictions = new AtomicLong(0);
+	private AtomicLong purged = new AtomicLong(0);
+
+	/**
+	 * Creates a page cache.
+	 * @param settings	The {@link PageCacheSettings} to cache with.
+	 */
+	public PageCache(PageCacheSettings settings) {
+		this.settings = settings;
+		Map<String, PageCacheRule> m = new HashMap<String, PageCacheRule>();
+		for(PageCacheRule r : settings.getRules()) {
+			m.put(r.getPath(), r);
+		}
+		rules = new PrefixTrie<PageCacheRule>(m);
+	}
+
+	/**
+	 * @param page		The path of the requested page.
+	 * @param method	The method of the request.
+	 * @return The {@link PageCacheRule} of the longest listed path the page is under, or null if the page isn't cached.
+	 */
+	public PageCacheRule getRule(String page, String method) {
+		if(!settings.isEnabled()||!(method.equalsIgnoreCase("GET")||method.equalsIgnoreCase("HEAD"))) {
+			return null;
+		}
+		return rules.longestPrefix(page);
+	}
+
+	/**
+	 * Finds a page's output.
+	 * @param key			The key of the output, from {@link PageCacheRule#getKey}.
+	 * @param pageModified	The current modification time of the page's file.
+	 * @return The {@link CachedPage}, or null if it must be rendered.
+	 */
+	public CachedPage get(String key, long pageModified) {
+		CachedPage p;
+		synchronized(this) {
+			p = entries.get(key);
+		}
+		if(p!=null&&p.isFresh(System.nanoTime(), pageModified)) {
+			hits.incrementAndGet();
+			return p;
+		}
+		misses.incrementAndGet();
+		return null;
+	}
+
+	/**
+	 * Stores a page's output if it may be cached.
+	 * @param key			The key of the output.
+	 * @param rule			The {@link PageCacheRule} of the page.
+	 * @param gResponse		The {@link GeneratorResponse} of the page.
+	 * @param vars			The {@link RequestVariables} of the request, checked for cookies, redirects and streamed files.
+	 * @param pageModified	The modification time of the page's file before it was rendered.
+	 * @return The {@link CachedPage}, or null if the output may not be cached.
+	 */
+	public CachedPage store(String key, PageCacheRule rule, GeneratorResponse gResponse, RequestVariables vars, long pageModified) {
+		int code = gResponse.getResponseCode().getCode();
+		String body = gResponse.getResponse();
+		if(vars.getStreamFile()!=null||vars.getRedirect()!=null||!vars.getCookieManager().getNewCookies().isEmpty()
+				||(code>=100&&code!=200)||body==null||body.isEmpty()) {
+			skipped.incrementAndGet();
+			return null;
+		}
+		CachedPage p = new CachedPage(body.getBytes(StandardCharsets.UTF_8), vars.getContentType(), rule.getVaryHeaders(), pageModified, rule.getTtl());
+		long weight = p.getWeight(key.length());
+		synchronized(this) {
+			if(weight>settings.getMaxBytes()) {
+				return p;
+			}
+			CachedPage old = entries.put(key, p);
+			if(old!=null) {
+				bytes -= old.getWeight(key.length());
+			}
+			bytes += weight;
+			evict();
+		}
+		return p;
+	}
+
+	/**
+	 * Adds a compressed variant to a page's output.
+	 * @param key		The key of the output.
+	 * @param p			The {@link CachedPage}.
+	 * @param ce		The {@link CompressionEncoding} of the variant.
+	 * @param variant	The compressed output.
+	 */
+	public void addVariant(String key, CachedPage p, CompressionEncoding ce, byte[] variant) {
+		synchronized(this) {
+			long added = p.setVariant(ce, variant);
+			if(entries.get(key)==p) {
+				bytes += added;
+				evict();
+			}
+		}
+	}
+
+	/**
+	 * Drops the least recently used pages while the cache holds too many bytes.
+	 */
+	private void evict() {
+		Iterator<Map.Entry<String, CachedPage>> i = entries.entrySet().iterator();
+		while(bytes>settings.getMaxBytes()&&i.hasNext()) {
+			Map.Entry<String, CachedPage> e = i.next();
+			bytes -= e.getValue().getWeight(e.getKey().length());
+			i.remove();
+			evictions.incrementAndGet();
+		}
+	}
+
+	/**
+	 * Drops the output of every page whose path starts with a prefix.
+	 * @param prefix	The start of the paths of the pages to drop, or null to drop every page.
+	 * @return The number of outputs dropped.
+	 */
+	public synchronized int purge(String prefix) {
+		int n = 0;
+		Iterator<Map.Entry<String, CachedPage>> i = entries.entrySet().iterator();
+		while(i.hasNext()) {
+			Map.Entry<String, CachedPage> e = i.next();
+			if(prefix==null||e.getKey().startsWith(prefix)) {
+				bytes -= e.getValue().getWeight(e.getKey().length());
+				i.remove();
+				n++;
+			}
+		}
+		purged.addAndGet(n);
+		return n;
+	}
+
+	/**
+	 * @return The number of bytes the cache currently holds, including per entry overhead.
+	 */
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * @return The number of page outputs the cache currently holds.
+	 */
+	public synchronized int getSize() {
+		return entries.size();
+	}
+
+	/**
+	 * @return The {@link PageCacheSettings} of this cache.
+	 */
+	public PageCacheSettings getSettings() {
+		return settings;
+	}
+
+	/**
+	 * Prints the state of this cache to the console.
+	 */
+	public void printCache() {
+		System.out.println("ENABLED:       "+(settings.isEnabled()?"TRUE":"FALSE"));
+		System.out.println("OUTPUTS:       "+getSize());
+		System.out.println("BYTES:         "+getBytes()+" / "+settings.getMaxBytes());
+		System.out.println("HITS:          "+hits.get());
+		System.out.println("MISSES:        "+misses.get());
+		System.out.println("SKIPPED:       "+skipped.get());
+		System.out.println("EVICTIONS:     "+evictions.get());
+		System.out.println("PURGED:        "+purged.get());
+		for(PageCacheRule r : settings.getRules()) {
+			System.out.println(r.getPath()+" ("+r.getTtl()/1000.0+"s"+(r.getVaryHeaders().isEmpty() ? "" : ", vary "+r.getVaryHeaders())+")");
+		}
+	}
+
+}
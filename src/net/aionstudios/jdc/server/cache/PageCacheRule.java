@@ -0,0 +1,59 @@
+package net.aionstudios.jdc.server.cache;
+
+import com.sun.net.httpserver.HttpExchange;
+
+/**
+ * How the output of the pages under a path is kept in the {@link PageCache}, as listed in the "page_cache" settings.
+ * @author Winter Roberts
+ */
+public class PageCacheRule {
+
+	private final String path;
+	private final long ttl;
+	private final CacheVary vary;
+	private final String varyHeaders;
+
+	/**
+	 * Creates a page cache rule.
+	 * @param path	The path of a page, or the start of the paths of the pages, the rule applies to.
+	 * @param ttl	The milliseconds a page's output is kept for.
+	 * @param vary	The request details the output varies by, as read by {@link CacheVary}.
+	 */
+	public PageCacheRule(String path, long ttl, String vary) {
+		this.path = path;
+		this.ttl = ttl;
+		this.vary = new CacheVary(vary);
+		this.varyHeaders = this.vary.getVaryHeaders();
+	}
+
+	/**
+	 * @param page	The path of the requested page.
+	 * @param he	The {@link HttpExchange} of the request.
+	 * @return The key of the page's output for this request.
+	 */
+	public String getKey(String page, HttpExchange he) {
+		return vary.appendKey(new StringBuilder(page.length()+32).append(page), he).toString();
+	}
+
+	/**
+	 * @return The path the rule applies to.
+	 */
+	public String getPath() {
+		return path;
+	}
+
+	/**
+	 * @return The milliseconds a page's output is kept for.
+	 */
+	public long getTtl() {
+		return ttl;
+	}
+
+	/**
+	 * @return The request headers the output varies by, for its Vary header, or an empty string if there are none.
+	 */
+	public String getVaryHeaders() {
+		return varyHeaders;
+	}
+
+}
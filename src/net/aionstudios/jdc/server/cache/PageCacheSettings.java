@@ -0,0 +1,85 @@
+package net.aionstudios.jdc.server.cache;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import net.aionstudios.jdc.server.util.FormatUtils;
+
+/**
+ * Page output cache settings read from the "page_cache" section of a {@link Website}'s settings.json.
+ * <p>
+ * Only pages under one of the paths listed in "pages" are cached, each entry naming the "path", the "ttl" in seconds
+ * and the request details the page's output "vary" by, as read by {@link CacheVary}.
+ * @author Winter Roberts
+ */
+public class PageCacheSettings {
+
+	private boolean enabled = true;
+	private long maxBytes = 32L*1024*1024;
+	private List<PageCacheRule> rules = new ArrayList<PageCacheRule>();
+
+	/**
+	 * Creates page cache settings with default values.
+	 */
+	public PageCacheSettings() {
+
+	}
+
+	/**
+	 * Reads page cache settings, keeping defaults for any setting that isn't present.
+	 * @param j	The "page_cache" {@link JSONObject} from settings.json.
+	 * @throws JSONException If a setting is present but of the wrong type.
+	 */
+	public PageCacheSettings(JSONObject j) throws JSONException {
+		enabled = j.has("enabled") ? j.getBoolean("enabled") : enabled;
+		maxBytes = j.has("max_bytes") ? j.getLong("max_bytes") : maxBytes;
+		if(j.has("pages")) {
+			JSONArray pages = j.getJSONArray("pages");
+			for(int i = 0; i < pages.length(); i++) {
+				JSONObject p = pages.getJSONObject(i);
+				long ttl = (long) ((p.has("ttl") ? p.getDouble("ttl") : 60)*1000);
+				rules.add(new PageCacheRule(p.getString("path"), ttl, p.has("vary") ? p.getString("vary") : ""));
+			}
+		}
+	}
+
+	/**
+	 * @return A {@link JSONObject} of the default page cache settings, as written to new config files.
+	 * @throws JSONException If the object could not be built.
+	 */
+	public static JSONObject getDefaultConfig() throws JSONException {
+		PageCacheSettings d = new PageCacheSettings();
+		JSONObject po = FormatUtils.getLinkedJsonObject();
+		po.put("enabled", d.enabled);
+		po.put("max_bytes", d.maxBytes);
+		po.put("pages", new JSONArray());
+		return po;
+	}
+
+	/**
+	 * @return True if the output of pages under a listed path should be cached.
+	 */
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * @return The most bytes the cache may hold before evicting the least recently used pages.
+	 */
+	public long getMaxBytes() {
+		return Math.max(0, maxBytes);
+	}
+
+	/**
+	 * @return The {@link PageCacheRule} of each listed path.
+	 */
+	public List<PageCacheRule> getRules() {
+		return Collections.unmodifiableList(rules);
+	}
+
+}
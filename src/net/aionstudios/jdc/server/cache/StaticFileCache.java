@@ -0,0 +1,297 @@
+package net.aionstudios.jdc.server.cache;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A size bounded, least recently used cache of the static files in a {@link Website}'s content folder.
+ * <p>
+ * Every regular file looked up has its mime type, length and modification time cached, and files no larger than
+ * the configured maximum file size have their content cached too. Entries are dropped when a {@link WatchService}
+ * on the content folder reports a change to them, or when the folder isn't watched, when a hit finds the file's
+ * length or modification time changed.
+ * @author Winter Roberts
+ */
+public class StaticFileCache {
+
+	private FileCacheSettings settings;
+	private Path root;
+	private LinkedHashMap<Path, CachedFile> entries = new LinkedHashMap<Path, CachedFile>(64, 0.75f, true);
+	private long bytes = 0;
+	private long generation = 0;
+	private AtomicLong hits = new AtomicLong(0);
+	private AtomicLong misses = new AtomicLong(0);
+	private AtomicLong evictions = new AtomicLong(0);
+	private AtomicLong invalidations = new AtomicLong(0);
+	private WatchService watcher;
+	private Map<WatchKey, Path> watchKeys = new ConcurrentHashMap<WatchKey, Path>();
+	private volatile boolean watching = false;
+
+	/**
+	 * Creates a static file cache, watching the content folder for changes if the settings enable it.
+	 * @param name			The name of the {@link Website} this cache serves, used to name the watching thread.
+	 * @param contentFolder	The content folder of the website.
+	 * @param settings		The {@link FileCacheSettings} to cache with.
+	 */
+	public StaticFileCache(String name, File contentFolder, FileCacheSettings settings) {
+		this.settings = settings;
+		this.root = contentFolder.toPath().toAbsolutePath().normalize();
+		if(settings.isEnabled()&&settings.isWatch()) {
+			try {
+				watcher = FileSystems.getDefault().newWatchService();
+				register(root);
+				watching = true;
+				Thread t = new Thread(new Runnable() {
+
+					@Override
+					public void run() {
+						watch();
+					}
+
+				}, "JDC-FileWatch-"+name);
+				t.setDaemon(true);
+				t.start();
+			} catch (IOException e) {
+				System.err.println("Failed to watch content folder '"+root+"', cached files will be checked on each request!");
+				e.printStackTrace();
+				close();
+			}
+		}
+	}
+
+	/**
+	 * Finds a static file, reading it into the cache if it isn't there yet.
+	 * <p>
+	 * Files outside the content folder, or any file while caching is disabled, have their details read for each call
+	 * and aren't kept.
+	 * @param file	The file requested.
+	 * @return The {@link CachedFile}, or null if the file isn't a regular file.
+	 */
+	public CachedFile get(File file) {
+		Path p = file.toPath().toAbsolutePath().normalize();
+		if(!settings.isEnabled()||!p.startsWith(root)) {
+			try {
+				return CachedFile.read(p, 0, false);
+			} catch (IOException e) {
+				return null;
+			}
+		}
+		long readGeneration;
+		synchronized(this) {
+			CachedFile cf = entries.get(p);
+			if(cf!=null) {
+				if(watching||cf.isCurrent(file)) {
+					hits.incrementAndGet();
+					return cf;
+				}
+				remove(p);
+				invalidations.incrementAndGet();
+			}
+			readGeneration = generation;
+		}
+		misses.incrementAndGet();
+		CachedFile cf;
+		try {
+			cf = CachedFile.read(p, settings.getMaxFileSize(), settings.isHashETags());
+		} catch (IOException e) {
+			return null;
+		}
+		if(cf==null) {
+			return null;
+		}
+		synchronized(this) {
+			//a change seen while the file was read may have made it stale, serve it this once but don't keep it
+			if(readGeneration==generation&&cf.getWeight()<=settings.getMaxBytes()) {
+				CachedFile old = entries.put(p, cf);
+				if(old!=null) {
+					bytes -= old.getWeight();
+				}
+				bytes += cf.getWeight();
+				Iterator<CachedFile> i = entries.values().iterator();
+				while(bytes>settings.getMaxBytes()&&i.hasNext()) {
+					bytes -= i.next().getWeight();
+					i.remove();
+					evictions.incrementAndGet();
+				}
+			}
+		}
+		return cf;
+	}
+
+	/**
+	 * Drops a file, or every file under a directory, from the cache.
+	 * @param p		The absolute, normalized path which changed.
+	 * @param tree	True if the path may be a directory whose files should be dropped as well.
+	 */
+	public synchronized void invalidate(Path p, boolean tree) {
+		generation++;
+		if(remove(p)) {
+			invalidations.incrementAndGet();
+			return;
+		}
+		if(tree) {
+			for(Iterator<Map.Entry<Path, CachedFile>> i = entries.entrySet().iterator(); i.hasNext(); ) {
+				Map.Entry<Path, CachedFile> e = i.next();
+				if(e.getKey().startsWith(p)) {
+					bytes -= e.getValue().getWeight();
+					i.remove();
+					invalidations.incrementAndGet();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Drops every file from the cache.
+	 */
+	public synchronized void clear() {
+		generation++;
+		invalidations.addAndGet(entries.size());
+		entries.clear();
+		bytes = 0;
+	}
+
+	/**
+	 * Removes an entry, must hold the lock.
+	 * @param p		The path of the entry.
+	 * @return True if there was an entry to remove.
+	 */
+	private boolean remove(Path p) {
+		CachedFile old = entries.remove(p);
+		if(old!=null) {
+			bytes -= old.getWeight();
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Registers a directory and all directories beneath it with the {@link WatchService}.
+	 * @param dir	The directory to watch.
+	 * @throws IOException If a directory could not be registered.
+	 */
+	private void register(Path dir) throws IOException {
+		Files.walkFileTree(dir, new SimpleFileVisitor<Path>() {
+
+			@Override
+			public FileVisitResult preVisitDirectory(Path d, BasicFileAttributes attrs) throws IOException {
+				WatchKey k = d.register(watcher, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_DELETE, StandardWatchEventKinds.ENTRY_MODIFY);
+				watchKeys.put(k, d);
+				return FileVisitResult.CONTINUE;
+			}
+
+		});
+	}
+
+	/**
+	 * Invalidates cached files as changes to the content folder are reported, until the cache is closed.
+	 */
+	private void watch() {
+		while(watching) {
+			WatchKey k;
+			try {
+				k = watcher.take();
+			} catch (InterruptedException e) {
+				break;
+			} catch (ClosedWatchServiceException e) {
+				break;
+			}
+			Path dir = watchKeys.get(k);
+			for(WatchEvent<?> e : k.pollEvents()) {
+				if(e.kind()==StandardWatchEventKinds.OVERFLOW||dir==null) {
+					clear();
+					continue;
+				}
+				Path changed = dir.resolve((Path) e.context());
+				invalidate(changed, e.kind()!=StandardWatchEventKinds.ENTRY_MODIFY);
+				if(e.kind()==StandardWatchEventKinds.ENTRY_CREATE&&Files.isDirectory(changed)) {
+					try {
+						register(changed);
+					} catch (IOException ex) {
+						System.err.println("Failed to watch new folder '"+changed+"'!");
+						ex.printStackTrace();
+					}
+				}
+			}
+			if(!k.reset()) {
+				watchKeys.remove(k);
+			}
+		}
+	}
+
+	/**
+	 * Stops watching the content folder, after which each hit checks the file's modification time.
+	 */
+	public void close() {
+		watching = false;
+		if(watcher!=null) {
+			try {
+				watcher.close();
+			} catch (IOException e) {
+				//ignore
+			}
+		}
+	}
+
+	/**
+	 * @return The share of lookups answered from the cache, between 0 and 1.
+	 */
+	public double getHitRatio() {
+		long h = hits.get();
+		long total = h+misses.get();
+		return total>0 ? (double) h/total : 0;
+	}
+
+	/**
+	 * @return The number of bytes the cache currently holds, including per entry overhead.
+	 */
+	public synchronized long getBytes() {
+		return bytes;
+	}
+
+	/**
+	 * @return The number of files the cache currently holds.
+	 */
+	public synchronized int getSize() {
+		return entries.size();
+	}
+
+	/**
+	 * @return The {@link FileCacheSettings} of this cache.
+	 */
+	public FileCacheSettings getSettings() {
+		return settings;
+	}
+
+	/**
+	 * Prints the state of this cache to the console.
+	 */
+	public void printCache() {
+		System.out.println("ENABLED:       "+(settings.isEnabled()?"TRUE":"FALSE"));
+		System.out.println("WATCHING:      "+(watching?"TRUE":"FALSE"));
+		System.out.println("FILES:         "+getSize());
+		System.out.println("BYTES:         "+getBytes()+" / "+settings.getMaxBytes());
+		System.out.println("HITS:          "+hits.get());
+		System.out.println("MISSES:        "+misses.get());
+		System.out.println(String.format("HIT RATIO:     %.2f%%", getHitRatio()*100));
+		System.out.println("EVICTIONS:     "+evictions.get());
+		System.out.println("INVALIDATIONS: "+invalidations.get());
+	}
+
+}
@@ -0,0 +1,92 @@
+package net.aionstudios.jdc.server.coalesce;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import net.aionstudios.jdc.server.util.FormatUtils;
+
+/**
+ * Request coalescing settings read from the "coalesce" section of a {@link Website}'s settings.json.
+ * <p>
+ * Only requests under one of the paths listed in "paths" are coalesced, for pages and proxied requests alike.
+ * @author Winter Roberts
+ */
+public class CoalesceSettings {
+
+	private boolean enabled = true;
+	private long timeout = 10000;
+	private int maxBody = 1024*1024;
+	private List<String> paths = new ArrayList<String>();
+
+	/**
+	 * Creates request coalescing settings with default values.
+	 */
+	public CoalesceSettings() {
+
+	}
+
+	/**
+	 * Reads request coalescing settings, keeping defaults for any setting that isn't present.
+	 * @param j	The "coalesce" {@link JSONObject} from settings.json.
+	 * @throws JSONException If a setting is present but of the wrong type.
+	 */
+	public CoalesceSettings(JSONObject j) throws JSONException {
+		enabled = j.has("enabled") ? j.getBoolean("enabled") : enabled;
+		timeout = j.has("timeout") ? j.getLong("timeout") : timeout;
+		maxBody = j.has("max_body") ? j.getInt("max_body") : maxBody;
+		if(j.has("paths")) {
+			JSONArray ps = j.getJSONArray("paths");
+			for(int i = 0; i < ps.length(); i++) {
+				paths.add(ps.getString(i));
+			}
+		}
+	}
+
+	/**
+	 * @return A {@link JSONObject} of the default request coalescing settings, as written to new config files.
+	 * @throws JSONException If the object could not be built.
+	 */
+	public static JSONObject getDefaultConfig() throws JSONException {
+		CoalesceSettings d = new CoalesceSettings();
+		JSONObject co = FormatUtils.getLinkedJsonObject();
+		co.put("enabled", d.enabled);
+		co.put("timeout", d.timeout);
+		co.put("max_body", d.maxBody);
+		co.put("paths", new JSONArray());
+		return co;
+	}
+
+	/**
+	 * @return True if identical concurrent requests under a listed path should be coalesced.
+	 */
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * @return The most milliseconds a request waits for the request it was coalesced with before doing the work itself.
+	 */
+	public long getTimeout() {
+		return Math.max(0, timeout);
+	}
+
+	/**
+	 * @return The largest proxied response body in bytes which is held to be shared with coalesced requests.
+	 */
+	public int getMaxBody() {
+		return Math.max(0, maxBody);
+	}
+
+	/**
+	 * @return The paths, or starts of paths, under which requests are coalesced.
+	 */
+	public List<String> getPaths() {
+		return Collections.unmodifiableList(paths);
+	}
+
+}
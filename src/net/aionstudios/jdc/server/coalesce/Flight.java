@@ -0,0 +1,81 @@
+package net.aionstudios.jdc.server.coalesce;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import net.aionstudios.jdc.server.executor.RequestExecutors;
+
+/**
+ * The work of one request which identical concurrent requests wait for instead of repeating it, from
+ * {@link RequestCoalescer#join(String)}.
+ * <p>
+ * The request which started the flight leads it, does the work and completes the flight with a result the others may
+ * be answered with. The others await that result.
+ * @author Winter Roberts
+ * @param <T>	The type of result shared by the flight.
+ */
+public class Flight<T> {
+
+	private final RequestCoalescer coalescer;
+	private final String key;
+	private final Thread leader;
+	private final CountDownLatch done = new CountDownLatch(1);
+	private volatile T result;
+
+	/**
+	 * Starts a flight led by the calling thread.
+	 * @param coalescer	The {@link RequestCoalescer} the flight is registered with.
+	 * @param key		The key of the flight.
+	 */
+	Flight(RequestCoalescer coalescer, String key) {
+		this.coalescer = coalescer;
+		this.key = key;
+		this.leader = Thread.currentThread();
+	}
+
+	/**
+	 * @return True if the calling thread leads this flight and must do its work.
+	 */
+	public boolean isLeader() {
+		return leader==Thread.currentThread();
+	}
+
+	/**
+	 * Ends this flight, releasing the requests waiting for it. Only the first completion counts.
+	 * @param result	The result the waiting requests are answered with, or null if they must do the work themselves.
+	 */
+	public void complete(T result) {
+		if(done.getCount()==0) {
+			return;
+		}
+		this.result = result;
+		coalescer.end(key, this);
+		done.countDown();
+	}
+
+	/**
+	 * Waits for the leader of this flight, up to the timeout of the {@link CoalesceSettings}.
+	 * @return The result of the flight, or null if the calling request must do the work itself because the leader took
+	 * too long, failed or had a result which can't be shared.
+	 */
+	public T await() {
+		boolean completed;
+		try {
+			completed = RequestExecutors.runBlocking(new Callable<Boolean>() {
+
+				@Override
+				public Boolean call() throws InterruptedException {
+					return done.await(coalescer.getSettings().getTimeout(), TimeUnit.MILLISECONDS);
+				}
+
+			});
+		} catch (Exception e) {
+			completed = false;
+		}
+		T r = completed ? result : null;
+		coalescer.count(completed, r!=null);
+		return r;
+	}
+
+}
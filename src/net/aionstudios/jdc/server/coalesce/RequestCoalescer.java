@@ -0,0 +1,148 @@
+package net.aionstudios.jdc.server.coalesce;
+
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import net.aionstudios.jdc.server.proxy.PrefixTrie;
+import net.aionstudios.jdc.server.util.RequestUtils;
+
+/**
+ * Lets identical concurrent requests of a {@link Website} wait for one of them to render a page or fetch a proxied
+ * response instead of each doing the same work, for the paths listed in its {@link CoalesceSettings}.
+ * <p>
+ * Requests are identical if they have the same key, from {@link #getKey(String, String, HttpExchange, String...)}.
+ * Only GET and HEAD requests are coalesced.
+ * @author Winter Roberts
+ */
+public class RequestCoalescer {
+
+	private CoalesceSettings settings;
+	private PrefixTrie<String> paths;
+	private Map<String, Flight<?>> flights = new ConcurrentHashMap<String, Flight<?>>();
+	private AtomicLong leaders = new AtomicLong(0);
+	private AtomicLong coalesced = new AtomicLong(0);
+	private AtomicLong timeouts = new AtomicLong(0);
+	private AtomicLong unshared = new AtomicLong(0);
+
+	/**
+	 * Creates a request coalescer.
+	 * @param settings	The {@link CoalesceSettings} to coalesce with.
+	 */
+	public RequestCoalescer(CoalesceSettings settings) {
+		this.settings = settings;
+		Map<String, String> m = new HashMap<String, String>();
+		for(String p : settings.getPaths()) {
+			m.put(p, p);
+		}
+		paths = new PrefixTrie<String>(m);
+	}
+
+	/**
+	 * @param path		The path of the request.
+	 * @param method	The method of the request.
+	 * @return True if the request is coalesced with identical concurrent requests.
+	 */
+	public boolean isCoalesced(String path, String method) {
+		return settings.isEnabled()&&(method.equalsIgnoreCase("GET")||method.equalsIgnoreCase("HEAD"))&&paths.longestPrefix(path)!=null;
+	}
+
+	/**
+	 * Builds the key identifying a request, from its method, path and query parameters in name order, so requests
+	 * differing only in the order of their parameters are identical.
+	 * @param kind		What the request is coalesced for, keeping keys of different work apart.
+	 * @param path		The path of the request.
+	 * @param he		The {@link HttpExchange} of the request.
+	 * @param headers	The names of request headers the work also depends on.
+	 * @return The key of the request.
+	 */
+	public static String getKey(String kind, String path, HttpExchange he, String... headers) {
+		StringBuilder sb = new StringBuilder(kind).append('\0').append(he.getRequestMethod().toUpperCase(Locale.ROOT)).append('\0').append(path);
+		String query = he.getRequestURI().getRawQuery();
+		if(query!=null&&!query.isEmpty()) {
+			for(Map.Entry<String, String> q : new TreeMap<String, String>(RequestUtils.resolveGetQuery(query)).entrySet()) {
+				sb.append('\0').append(q.getKey()).append('=').append(q.getValue());
+			}
+		}
+		for(String h : headers) {
+			String v = he.getRequestHeaders().getFirst(h);
+			sb.append('\0').append(h).append(v!=null ? "="+v : "");
+		}
+		return sb.toString();
+	}
+
+	/**
+	 * Joins the flight of identical concurrent requests, starting it if there is none.
+	 * @param key	The key of the request.
+	 * @return The {@link Flight}, led by the calling thread if it started the flight.
+	 */
+	@SuppressWarnings("unchecked")
+	public <T> Flight<T> join(String key) {
+		Flight<T> f = new Flight<T>(this, key);
+		Flight<?> running = flights.putIfAbsent(key, f);
+		if(running!=null) {
+			return (Flight<T>) running;
+		}
+		leaders.incrementAndGet();
+		return f;
+	}
+
+	/**
+	 * Removes a completed flight, so the next request with its key starts a new one.
+	 * @param key	The key of the flight.
+	 * @param f		The flight.
+	 */
+	void end(String key, Flight<?> f) {
+		flights.remove(key, f);
+	}
+
+	/**
+	 * Counts a request which waited for a flight.
+	 * @param completed	True if the flight completed before the request stopped waiting.
+	 * @param shared	True if the request was answered with the flight's result.
+	 */
+	void count(boolean completed, boolean shared) {
+		if(shared) {
+			coalesced.incrementAndGet();
+		} else if(!completed) {
+			timeouts.incrementAndGet();
+		} else {
+			unshared.incrementAndGet();
+		}
+	}
+
+	/**
+	 * @return The {@link CoalesceSettings} of this coalescer.
+	 */
+	public CoalesceSettings getSettings() {
+		return settings;
+	}
+
+	/**
+	 * @return The number of requests answered with the result of an identical request.
+	 */
+	public long getCoalesced() {
+		return coalesced.get();
+	}
+
+	/**
+	 * Prints the state of this coalescer to the console.
+	 */
+	public void printStats() {
+		System.out.println("ENABLED:       "+(settings.isEnabled()?"TRUE":"FALSE"));
+		System.out.println("IN FLIGHT:     "+flights.size());
+		System.out.println("LEADERS:       "+leaders.get());
+		System.out.println("COALESCED:     "+coalesced.get());
+		System.out.println("TIMEOUTS:      "+timeouts.get());
+		System.out.println("UNSHARED:      "+unshared.get());
+		for(String p : settings.getPaths()) {
+			System.out.println(p);
+		}
+	}
+
+}
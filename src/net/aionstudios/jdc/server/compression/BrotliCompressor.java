@@ -2,9 +2,11 @@ package net.aionstudios.jdc.server.compression;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
 
 import com.nixxcode.jvmbrotli.enc.BrotliOutputStream;
+import com.nixxcode.jvmbrotli.enc.Encoder;
 
 /**
  * A {@link CompressionEncoding} that compresses using Google's Brotli.
@@ -18,19 +20,86 @@ public class BrotliCompressor {
 	/**
 	 * Compresses a String using Brotli.
 	 * @param str The String to be compressed.
-	 * @return A byte array, the compressed String.
+	 * @return A byte array, the compressed String, or null if it is empty or no encoder is available.
 	 * @throws IOException If the {@link BrotliOutputStream} fails an IO operation.
 	 */
 	public static byte[] compress(String str) throws IOException {
 	    if ((str == null) || (str.length() == 0)) {
 	      return null;
 	    }
-	    ByteArrayOutputStream obj = new ByteArrayOutputStream();
-	    BrotliOutputStream br = new BrotliOutputStream(obj);
-	    br.write(str.getBytes(StandardCharsets.UTF_8));
-	    br.flush();
-	    br.close();
-	    return obj.toByteArray();
+	    return compress(str.getBytes(StandardCharsets.UTF_8), 11);
+	}
+	
+	/**
+	 * Compresses bytes using Brotli, with a pooled output buffer.
+	 * @param b			The bytes to be compressed.
+	 * @param quality	The compression quality, from 0 to 11.
+	 * @return A byte array, the compressed bytes, or null if no encoder is available.
+	 * @throws IOException If the {@link BrotliOutputStream} fails an IO operation.
+	 */
+	public static byte[] compress(byte[] b, int quality) throws IOException {
+		ByteArrayOutputStream obj = CompressionPool.acquireBuffer();
+		try {
+			BrotliOutputStream br = open(obj, quality);
+			if(br==null) {
+				return null;
+			}
+			try {
+				br.write(b);
+			} finally {
+				br.close();
+			}
+			return obj.toByteArray();
+		} finally {
+			CompressionPool.releaseBuffer(obj);
+		}
+	}
+	
+	/**
+	 * Opens a Brotli stream at a compression quality, counted against the {@link CompressionPool}'s cap.
+	 * <p>
+	 * Brotli encoders can't be reset for reuse, so the stream must be closed to free its encoder.
+	 * @param out		The stream to write compressed bytes to.
+	 * @param quality	The compression quality, from 0 to 11.
+	 * @return A stream compressing to the given stream, or null if the cap on encoders is reached.
+	 * @throws IOException If the encoder could not be created.
+	 */
+	public static BrotliOutputStream open(OutputStream out, int quality) throws IOException {
+		if(!CompressionPool.acquireBrotli()) {
+			return null;
+		}
+		try {
+			return new CountedBrotliOutputStream(out, quality);
+		} catch (IOException | RuntimeException | UnsatisfiedLinkError e) {
+			CompressionPool.releaseBrotli();
+			throw e;
+		}
+	}
+	
+	/**
+	 * A {@link BrotliOutputStream} which releases its place in the {@link CompressionPool} when it is closed.
+	 */
+	private static class CountedBrotliOutputStream extends BrotliOutputStream {
+		
+		private boolean released = false;
+		
+		CountedBrotliOutputStream(OutputStream out, int quality) throws IOException {
+			super(out, new Encoder.Parameters().setQuality(quality), 8192);
+		}
+		
+		@Override
+		public void close() throws IOException {
+			if(released) {
+				return;
+			}
+			try {
+				super.close();
+			} finally {
+				released = true;
+				CompressionPool.releaseBrotli();
+			}
+		}
+		
 	}
 
 }
@@ -0,0 +1,195 @@
+package net.aionstudios.jdc.server.compression;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+
+import net.aionstudios.jdc.server.JDCServerInfo;
+
+/**
+ * Pools the native encoders and the output buffers used to compress responses.
+ * <p>
+ * GZIP and Deflate encoders are {@link Deflater}s, which are reset and reused between responses. At most
+ * max_deflaters exist at once and up to max_idle_deflaters of them are kept while unused, the rest are ended so their
+ * native memory is freed right away rather than by the garbage collector. Brotli encoders can't be reset, so they are
+ * only counted against max_brotli_encoders and freed as each response is closed. A response which finds no encoder
+ * available is sent uncompressed.
+ * <p>
+ * Responses are compressed as they are written, so output buffers are only taken for bodies which are held compressed,
+ * like the variants of cached pages, by the compress methods of each encoding.
+ * @author Winter Roberts
+ */
+public class CompressionPool {
+
+	//zlib's documented deflate state at the default window and memory level, plus its fixed overhead
+	private static final long DEFLATER_NATIVE_BYTES = (1<<17)+(1<<17)+6*1024;
+	//a Brotli ring buffer at the default window, plus its hash tables at the qualities used for responses
+	private static final long BROTLI_NATIVE_BYTES = (1<<22)+(1<<20);
+
+	private static CompressionPoolSettings settings;
+	private static ArrayDeque<Deflater> idleGZIP = new ArrayDeque<Deflater>();
+	private static ArrayDeque<Deflater> idleDeflate = new ArrayDeque<Deflater>();
+	private static ArrayDeque<PooledBuffer> idleBuffers = new ArrayDeque<PooledBuffer>();
+	private static int deflaters = 0;
+	private static int brotliEncoders = 0;
+	private static AtomicLong checkouts = new AtomicLong(0);
+	private static AtomicLong misses = new AtomicLong(0);
+	private static AtomicLong rejections = new AtomicLong(0);
+	private static AtomicLong bufferCheckouts = new AtomicLong(0);
+	private static AtomicLong bufferMisses = new AtomicLong(0);
+
+	/**
+	 * Takes an idle {@link Deflater} from the pool, or creates one if there is none and the cap allows.
+	 * @param level		The compression level, from 1 to 9.
+	 * @param nowrap	True for raw deflate data as GZIP wraps, false for the zlib format of Deflate.
+	 * @return A reset deflater at the level, or null if max_deflaters are already in use.
+	 */
+	static Deflater acquireDeflater(int level, boolean nowrap) {
+		Deflater d;
+		checkouts.incrementAndGet();
+		synchronized(CompressionPool.class) {
+			d = (nowrap ? idleGZIP : idleDeflate).pollFirst();
+			if(d==null) {
+				if(deflaters>=getSettings().getMaxDeflaters()) {
+					rejections.incrementAndGet();
+					return null;
+				}
+				deflaters++;
+			}
+		}
+		if(d==null) {
+			misses.incrementAndGet();
+			return new Deflater(level, nowrap);
+		}
+		d.setLevel(level);
+		return d;
+	}
+
+	/**
+	 * Returns a {@link Deflater} to the pool, ending it if the pool already holds enough idle ones.
+	 * @param d			A deflater from {@link #acquireDeflater(int, boolean)}.
+	 * @param nowrap	The format the deflater was created for.
+	 */
+	static void releaseDeflater(Deflater d, boolean nowrap) {
+		d.reset();
+		synchronized(CompressionPool.class) {
+			if(idleGZIP.size()+idleDeflate.size()<getSettings().getMaxIdleDeflaters()) {
+				(nowrap ? idleGZIP : idleDeflate).addFirst(d);
+				return;
+			}
+			deflaters--;
+		}
+		d.end();
+	}
+
+	/**
+	 * Reserves one of the max_brotli_encoders Brotli encoders.
+	 * @return True if an encoder may be created, false if the cap is reached.
+	 */
+	static boolean acquireBrotli() {
+		checkouts.incrementAndGet();
+		synchronized(CompressionPool.class) {
+			if(brotliEncoders>=getSettings().getMaxBrotliEncoders()) {
+				rejections.incrementAndGet();
+				return false;
+			}
+			brotliEncoders++;
+		}
+		misses.incrementAndGet();
+		return true;
+	}
+
+	/**
+	 * Releases a reservation from {@link #acquireBrotli()} once its encoder is closed.
+	 */
+	static synchronized void releaseBrotli() {
+		brotliEncoders--;
+	}
+
+	/**
+	 * @return An empty output buffer from the pool, or a new one if there is none.
+	 */
+	static ByteArrayOutputStream acquireBuffer() {
+		PooledBuffer b;
+		bufferCheckouts.incrementAndGet();
+		synchronized(CompressionPool.class) {
+			b = idleBuffers.pollFirst();
+		}
+		if(b==null) {
+			bufferMisses.incrementAndGet();
+			return new PooledBuffer();
+		}
+		return b;
+	}
+
+	/**
+	 * Returns an output buffer to the pool, unless it grew past max_buffer_size or the pool is full.
+	 * @param buffer	A buffer from {@link #acquireBuffer()}.
+	 */
+	static void releaseBuffer(ByteArrayOutputStream buffer) {
+		if(!(buffer instanceof PooledBuffer)||((PooledBuffer) buffer).capacity()>getSettings().getMaxBufferSize()) {
+			return;
+		}
+		buffer.reset();
+		synchronized(CompressionPool.class) {
+			if(idleBuffers.size()<getSettings().getMaxIdleBuffers()) {
+				idleBuffers.addFirst((PooledBuffer) buffer);
+			}
+		}
+	}
+
+	/**
+	 * @return The settings of the pool, read from {@link JDCServerInfo#getCompressionPoolSettings()} on first use.
+	 */
+	private static synchronized CompressionPoolSettings getSettings() {
+		if(settings==null) {
+			settings = JDCServerInfo.getCompressionPoolSettings();
+		}
+		return settings;
+	}
+
+	/**
+	 * @return An estimate of the native memory held by the encoders which exist, in use or idle, in bytes.
+	 */
+	public static synchronized long getNativeBytes() {
+		return deflaters*DEFLATER_NATIVE_BYTES+brotliEncoders*BROTLI_NATIVE_BYTES;
+	}
+
+	/**
+	 * Prints the state of the pool to the console.
+	 */
+	public static void printPool() {
+		CompressionPoolSettings s = getSettings();
+		int d, idleD, br, idleB;
+		synchronized(CompressionPool.class) {
+			d = deflaters;
+			idleD = idleGZIP.size()+idleDeflate.size();
+			br = brotliEncoders;
+			idleB = idleBuffers.size();
+		}
+		System.out.println("DEFLATERS:     "+d+" / "+s.getMaxDeflaters()+" ("+idleD+" idle)");
+		System.out.println("BROTLI:        "+br+" / "+s.getMaxBrotliEncoders());
+		System.out.println("NATIVE BYTES:  "+getNativeBytes());
+		System.out.println("CHECKOUTS:     "+checkouts.get());
+		System.out.println("MISSES:        "+misses.get());
+		System.out.println("REJECTIONS:    "+rejections.get());
+		System.out.println("BUFFERS:       "+idleB+" idle, "+bufferCheckouts.get()+" checkouts, "+bufferMisses.get()+" misses");
+	}
+
+	/**
+	 * A growable output buffer which can report its capacity.
+	 */
+	private static class PooledBuffer extends ByteArrayOutputStream {
+
+		PooledBuffer() {
+			super(8192);
+		}
+
+		int capacity() {
+			return buf.length;
+		}
+
+	}
+
+}
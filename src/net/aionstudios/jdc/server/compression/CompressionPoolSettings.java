@@ -0,0 +1,90 @@
+package net.aionstudios.jdc.server.compression;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import net.aionstudios.jdc.server.util.FormatUtils;
+
+/**
+ * Compression pool settings read from the "compression_pool" section of config.json.
+ * @author Winter Roberts
+ */
+public class CompressionPoolSettings {
+
+	private int maxDeflaters = 256;
+	private int maxIdleDeflaters = 32;
+	private int maxBrotliEncoders = 64;
+	private int maxIdleBuffers = 64;
+	private int maxBufferSize = 256*1024;
+
+	/**
+	 * Creates compression pool settings with default values.
+	 */
+	public CompressionPoolSettings() {
+
+	}
+
+	/**
+	 * Reads compression pool settings, keeping defaults for any setting that isn't present.
+	 * @param j	The "compression_pool" {@link JSONObject} from config.json.
+	 * @throws JSONException If a setting is present but of the wrong type.
+	 */
+	public CompressionPoolSettings(JSONObject j) throws JSONException {
+		maxDeflaters = j.has("max_deflaters") ? j.getInt("max_deflaters") : maxDeflaters;
+		maxIdleDeflaters = j.has("max_idle_deflaters") ? j.getInt("max_idle_deflaters") : maxIdleDeflaters;
+		maxBrotliEncoders = j.has("max_brotli_encoders") ? j.getInt("max_brotli_encoders") : maxBrotliEncoders;
+		maxIdleBuffers = j.has("max_idle_buffers") ? j.getInt("max_idle_buffers") : maxIdleBuffers;
+		maxBufferSize = j.has("max_buffer_size") ? j.getInt("max_buffer_size") : maxBufferSize;
+	}
+
+	/**
+	 * @return A {@link JSONObject} of the default compression pool settings, as written to new config files.
+	 * @throws JSONException If the object could not be built.
+	 */
+	public static JSONObject getDefaultConfig() throws JSONException {
+		CompressionPoolSettings d = new CompressionPoolSettings();
+		JSONObject po = FormatUtils.getLinkedJsonObject();
+		po.put("max_deflaters", d.maxDeflaters);
+		po.put("max_idle_deflaters", d.maxIdleDeflaters);
+		po.put("max_brotli_encoders", d.maxBrotliEncoders);
+		po.put("max_idle_buffers", d.maxIdleBuffers);
+		po.put("max_buffer_size", d.maxBufferSize);
+		return po;
+	}
+
+	/**
+	 * @return The most GZIP and Deflate encoders which may exist at once, in use or idle.
+	 */
+	public int getMaxDeflaters() {
+		return Math.max(1, maxDeflaters);
+	}
+
+	/**
+	 * @return The most GZIP and Deflate encoders kept for reuse between responses.
+	 */
+	public int getMaxIdleDeflaters() {
+		return Math.max(0, Math.min(getMaxDeflaters(), maxIdleDeflaters));
+	}
+
+	/**
+	 * @return The most Brotli encoders which may be in use at once.
+	 */
+	public int getMaxBrotliEncoders() {
+		return Math.max(1, maxBrotliEncoders);
+	}
+
+	/**
+	 * @return The most output buffers kept for reuse between responses.
+	 */
+	public int getMaxIdleBuffers() {
+		return Math.max(0, maxIdleBuffers);
+	}
+
+	/**
+	 * @return The size of the largest output buffer kept for reuse, larger buffers are dropped once they're used.
+	 */
+	public int getMaxBufferSize() {
+		return Math.max(0, maxBufferSize);
+	}
+
+}
@@ -0,0 +1,150 @@
+package net.aionstudios.jdc.server.compression;
+
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import net.aionstudios.jdc.server.util.FormatUtils;
+import net.aionstudios.jdc.server.util.MimeUtils;
+
+/**
+ * Compression settings read from the "compression" section of a {@link Website}'s settings.json.
+ * <p>
+ * These decide which responses are compressed at all: only bodies of a compressible mime type, either one known to
+ * {@link MimeUtils} or one listed in "mime_types", of at least the minimum size, and never partial content.
+ * @author Winter Roberts
+ */
+public class CompressionSettings {
+
+	private boolean precompress = true;
+	private boolean precompressAtStart = false;
+	private long minSize = 256;
+	private boolean enabled = true;
+	private Set<String> mimeTypes = new HashSet<String>();
+	private int gzipLevel = 6;
+	private int deflateLevel = 6;
+	private int brotliQuality = 5;
+
+	/**
+	 * Creates compression settings with default values.
+	 */
+	public CompressionSettings() {
+
+	}
+
+	/**
+	 * Reads compression settings, keeping defaults for any setting that isn't present.
+	 * @param j	The "compression" {@link JSONObject} from settings.json.
+	 * @throws JSONException If a setting is present but of the wrong type.
+	 */
+	public CompressionSettings(JSONObject j) throws JSONException {
+		precompress = j.has("precompress") ? j.getBoolean("precompress") : precompress;
+		precompressAtStart = j.has("precompress_at_start") ? j.getBoolean("precompress_at_start") : precompressAtStart;
+		minSize = j.has("min_size") ? j.getLong("min_size") : minSize;
+		enabled = j.has("enabled") ? j.getBoolean("enabled") : enabled;
+		if(j.has("mime_types")) {
+			JSONArray types = j.getJSONArray("mime_types");
+			for(int i = 0; i < types.length(); i++) {
+				mimeTypes.add(types.getString(i).trim().toLowerCase(Locale.ROOT));
+			}
+		}
+		gzipLevel = j.has("gzip_level") ? j.getInt("gzip_level") : gzipLevel;
+		deflateLevel = j.has("deflate_level") ? j.getInt("deflate_level") : deflateLevel;
+		brotliQuality = j.has("brotli_quality") ? j.getInt("brotli_quality") : brotliQuality;
+	}
+
+	/**
+	 * @return A {@link JSONObject} of the default compression settings, as written to new config files.
+	 * @throws JSONException If the object could not be built.
+	 */
+	public static JSONObject getDefaultConfig() throws JSONException {
+		CompressionSettings d = new CompressionSettings();
+		JSONObject co = FormatUtils.getLinkedJsonObject();
+		co.put("precompress", d.precompress);
+		co.put("precompress_at_start", d.precompressAtStart);
+		co.put("min_size", d.minSize);
+		co.put("enabled", d.enabled);
+		co.put("mime_types", new JSONArray());
+		co.put("gzip_level", d.gzipLevel);
+		co.put("deflate_level", d.deflateLevel);
+		co.put("brotli_quality", d.brotliQuality);
+		return co;
+	}
+
+	/**
+	 * @return True if compressible static files should be served from .br and .gz files built beside them.
+	 */
+	public boolean isPrecompress() {
+		return precompress;
+	}
+
+	/**
+	 * @return True if the .br and .gz files of the whole content folder should be built when the server starts,
+	 * rather than when each file is first requested.
+	 */
+	public boolean isPrecompressAtStart() {
+		return precompress&&precompressAtStart;
+	}
+
+	/**
+	 * @return The size of the smallest file worth compressing, in bytes.
+	 */
+	public long getMinSize() {
+		return Math.max(0, minSize);
+	}
+
+	/**
+	 * @return True if responses may be compressed at all.
+	 */
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * @param mime		The mime type of a response, which may carry parameters like a charset.
+	 * @param length	The length of the response body in bytes.
+	 * @return True if a response of this type and length should be compressed for clients that accept it.
+	 */
+	public boolean isCompressible(String mime, long length) {
+		if(!enabled||mime==null||length<getMinSize()) {
+			return false;
+		}
+		int p = mime.indexOf(';');
+		String type = (p>=0 ? mime.substring(0, p) : mime).trim().toLowerCase(Locale.ROOT);
+		return MimeUtils.getInstance().isCompressible(type)||mimeTypes.contains(type);
+	}
+
+	/**
+	 * Chooses how to encode a response.
+	 * @param accepted	The {@link CompressionEncoding} accepted by the client.
+	 * @param mime		The mime type of the response.
+	 * @param length	The length of the response body in bytes.
+	 * @param partial	True if the response sends part of its content, which is never compressed so byte ranges stay meaningful.
+	 * @return The accepted encoding if the response should be compressed, otherwise {@link CompressionEncoding#NONE}.
+	 */
+	public CompressionEncoding getEncoding(CompressionEncoding accepted, String mime, long length, boolean partial) {
+		if(partial||!isCompressible(mime, length)) {
+			return CompressionEncoding.NONE;
+		}
+		return accepted;
+	}
+
+	/**
+	 * @param ce	A {@link CompressionEncoding}.
+	 * @return The level responses are compressed at as they are sent with the encoding, from 1 to 9 for GZIP and DEFLATE
+	 * or a quality from 0 to 11 for BR.
+	 */
+	public int getLevel(CompressionEncoding ce) {
+		if(ce==CompressionEncoding.BR) {
+			return Math.max(0, Math.min(11, brotliQuality));
+		} else if(ce==CompressionEncoding.GZIP) {
+			return Math.max(1, Math.min(9, gzipLevel));
+		}
+		return Math.max(1, Math.min(9, deflateLevel));
+	}
+
+}
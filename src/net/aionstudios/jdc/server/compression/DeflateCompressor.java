@@ -2,11 +2,11 @@ package net.aionstudios.jdc.server.compression;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.zip.Deflater;
 import java.util.zip.DeflaterOutputStream;
 
-import com.nixxcode.jvmbrotli.enc.BrotliOutputStream;
-
 /**
  * A {@link CompressionEncoding} that compresses using Deflate.
  * @author Winter Roberts
@@ -16,19 +16,63 @@ public class DeflateCompressor {
 	/**
 	 * Compresses a String using Deflate.
 	 * @param str The String to be compressed.
-	 * @return A byte array, the compressed String.
+	 * @return A byte array, the compressed String, or null if it is empty or no encoder is available.
 	 * @throws IOException If the {@link DeflaterOutputStream} fails an IO operation.
 	 */
 	public static byte[] compress(String str) throws IOException {
 	    if ((str == null) || (str.length() == 0)) {
 	      return null;
 	    }
-	    ByteArrayOutputStream obj = new ByteArrayOutputStream();
-	    DeflaterOutputStream deflate = new DeflaterOutputStream(obj);
-	    deflate.write(str.getBytes(StandardCharsets.UTF_8));
-	    deflate.flush();
-	    deflate.close();
-	    return obj.toByteArray();
+	    return compress(str.getBytes(StandardCharsets.UTF_8), Deflater.DEFAULT_COMPRESSION);
+	}
+	
+	/**
+	 * Compresses bytes using Deflate, with a pooled encoder and output buffer.
+	 * @param b		The bytes to be compressed.
+	 * @param level	The compression level, from 1 to 9.
+	 * @return A byte array, the compressed bytes, or null if no encoder is available.
+	 * @throws IOException If the {@link DeflaterOutputStream} fails an IO operation.
+	 */
+	public static byte[] compress(byte[] b, int level) throws IOException {
+		ByteArrayOutputStream obj = CompressionPool.acquireBuffer();
+		try {
+			DeflaterOutputStream deflate = open(obj, level);
+			if(deflate==null) {
+				return null;
+			}
+			try {
+				deflate.write(b);
+			} finally {
+				deflate.close();
+			}
+			return obj.toByteArray();
+		} finally {
+			CompressionPool.releaseBuffer(obj);
+		}
+	}
+	
+	/**
+	 * Opens a Deflate stream at a compression level, with an encoder from the {@link CompressionPool}.
+	 * <p>
+	 * The stream must be closed to return its encoder.
+	 * @param out	The stream to write compressed bytes to.
+	 * @param level	The compression level, from 1 to 9.
+	 * @return A stream compressing to the given stream, or null if no encoder is available.
+	 */
+	public static DeflaterOutputStream open(OutputStream out, int level) {
+		return open(out, level, false);
+	}
+	
+	/**
+	 * Opens a Deflate stream at a compression level, with an encoder from the {@link CompressionPool}.
+	 * @param out		The stream to write compressed bytes to.
+	 * @param level		The compression level, from 1 to 9.
+	 * @param syncFlush	True if flushing the stream sends everything written so far, for a response sent in parts.
+	 * @return A stream compressing to the given stream, or null if no encoder is available.
+	 */
+	public static DeflaterOutputStream open(OutputStream out, int level, boolean syncFlush) {
+		Deflater d = CompressionPool.acquireDeflater(level, false);
+		return d!=null ? new PooledDeflaterOutputStream(out, d, false, syncFlush) : null;
 	}
 	
 }
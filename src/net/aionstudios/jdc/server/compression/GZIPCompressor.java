@@ -2,7 +2,10 @@ package net.aionstudios.jdc.server.compression;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
 import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
 import java.util.zip.DeflaterOutputStream;
 import java.util.zip.GZIPOutputStream;
 
@@ -12,22 +15,124 @@ import java.util.zip.GZIPOutputStream;
  */
 public class GZIPCompressor {
 	
+	private static final byte[] HEADER = {0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+	
 	/**
 	 * Compresses a String using GZIP.
 	 * @param str The String to be compressed.
-	 * @return A byte array, the compressed String.
+	 * @return A byte array, the compressed String, or null if it is empty or no encoder is available.
 	 * @throws IOException If the {@link GZIPOutputStream} fails an IO operation.
 	 */
 	public static byte[] compress(String str) throws IOException {
 	    if ((str == null) || (str.length() == 0)) {
 	      return null;
 	    }
-	    ByteArrayOutputStream obj = new ByteArrayOutputStream();
-	    GZIPOutputStream gzip = new GZIPOutputStream(obj);
-	    gzip.write(str.getBytes(StandardCharsets.UTF_8));
-	    gzip.flush();
-	    gzip.close();
-	    return obj.toByteArray();
+	    return compress(str.getBytes(StandardCharsets.UTF_8), Deflater.DEFAULT_COMPRESSION);
+	}
+
+	/**
+	 * Compresses bytes using GZIP, with a pooled encoder and output buffer.
+	 * @param b		The bytes to be compressed.
+	 * @param level	The compression level, from 1 to 9.
+	 * @return A byte array, the compressed bytes, or null if no encoder is available.
+	 * @throws IOException If the {@link GZIPOutputStream} fails an IO operation.
+	 */
+	public static byte[] compress(byte[] b, int level) throws IOException {
+		ByteArrayOutputStream obj = CompressionPool.acquireBuffer();
+		try {
+			DeflaterOutputStream gzip = open(obj, level);
+			if(gzip==null) {
+				return null;
+			}
+			try {
+				gzip.write(b);
+			} finally {
+				gzip.close();
+			}
+			return obj.toByteArray();
+		} finally {
+			CompressionPool.releaseBuffer(obj);
+		}
+	}
+	
+	/**
+	 * Opens a GZIP stream at a compression level, with an encoder from the {@link CompressionPool}.
+	 * <p>
+	 * Nothing is written until the first bytes are, so the stream may be opened before the response headers are sent.
+	 * The stream must be closed to return its encoder.
+	 * @param out	The stream to write compressed bytes to.
+	 * @param level	The compression level, from 1 to 9.
+	 * @return A stream compressing to the given stream, or null if no encoder is available.
+	 */
+	public static DeflaterOutputStream open(OutputStream out, int level) {
+		return open(out, level, false);
+	}
+	
+	/**
+	 * Opens a GZIP stream at a compression level, with an encoder from the {@link CompressionPool}.
+	 * @param out		The stream to write compressed bytes to.
+	 * @param level		The compression level, from 1 to 9.
+	 * @param syncFlush	True if flushing the stream sends everything written so far, for a response sent in parts.
+	 * @return A stream compressing to the given stream, or null if no encoder is available.
+	 */
+	public static DeflaterOutputStream open(OutputStream out, int level, boolean syncFlush) {
+		Deflater d = CompressionPool.acquireDeflater(level, true);
+		return d!=null ? new PooledGZIPOutputStream(out, d, syncFlush) : null;
+	}
+	
+	/**
+	 * Writes the GZIP header and trailer around a {@link PooledDeflaterOutputStream}, as {@link GZIPOutputStream}
+	 * does around a deflater of its own.
+	 */
+	private static class PooledGZIPOutputStream extends PooledDeflaterOutputStream {
+		
+		private CRC32 crc = new CRC32();
+		private boolean syncFlush;
+		private boolean headerWritten = false;
+		private boolean trailerWritten = false;
+		
+		PooledGZIPOutputStream(OutputStream out, Deflater def, boolean syncFlush) {
+			super(out, def, true, syncFlush);
+			this.syncFlush = syncFlush;
+		}
+		
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			writeHeader();
+			super.write(b, off, len);
+			crc.update(b, off, len);
+		}
+		
+		@Override
+		public void flush() throws IOException {
+			//a sync flush writes deflated bytes, which must follow the header
+			if(syncFlush) {
+				writeHeader();
+			}
+			super.flush();
+		}
+		
+		@Override
+		public void finish() throws IOException {
+			if(trailerWritten) {
+				return;
+			}
+			writeHeader();
+			super.finish();
+			long size = def.getBytesRead();
+			long c = crc.getValue();
+			out.write(new byte[] {(byte) c, (byte) (c>>8), (byte) (c>>16), (byte) (c>>24),
+					(byte) size, (byte) (size>>8), (byte) (size>>16), (byte) (size>>24)});
+			trailerWritten = true;
+		}
+		
+		private void writeHeader() throws IOException {
+			if(!headerWritten) {
+				out.write(HEADER);
+				headerWritten = true;
+			}
+		}
+		
 	}
 
 }
@@ -0,0 +1,62 @@
+package net.aionstudios.jdc.server.compression;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.zip.Deflater;
+import java.util.zip.DeflaterOutputStream;
+
+/**
+ * A {@link DeflaterOutputStream} whose {@link Deflater} is borrowed from the {@link CompressionPool} and returned when
+ * the stream is closed, even if the stream fails.
+ * <p>
+ * A stream opened to sync flush writes out everything compressed so far when it is flushed, for responses sent as they
+ * are generated. Otherwise flushing leaves the deflater's pending output where it compresses best.
+ * @author Winter Roberts
+ */
+class PooledDeflaterOutputStream extends DeflaterOutputStream {
+
+	private boolean nowrap;
+	private boolean released = false;
+
+	/**
+	 * Creates a stream compressing with a pooled deflater.
+	 * @param out		The stream to write compressed bytes to.
+	 * @param def		A deflater from {@link CompressionPool#acquireDeflater(int, boolean)}.
+	 * @param nowrap	The format the deflater was created for.
+	 * @param syncFlush	True if flushing the stream flushes the deflater.
+	 */
+	PooledDeflaterOutputStream(OutputStream out, Deflater def, boolean nowrap, boolean syncFlush) {
+		super(out, def, 8192, syncFlush);
+		this.nowrap = nowrap;
+	}
+
+	@Override
+	public void write(byte[] b, int off, int len) throws IOException {
+		if(released) {
+			throw new IOException("Stream closed");
+		}
+		super.write(b, off, len);
+	}
+
+	@Override
+	public void finish() throws IOException {
+		if(released) {
+			throw new IOException("Stream closed");
+		}
+		super.finish();
+	}
+
+	@Override
+	public void close() throws IOException {
+		if(released) {
+			return;
+		}
+		try {
+			super.close();
+		} finally {
+			released = true;
+			CompressionPool.releaseDeflater(def, nowrap);
+		}
+	}
+
+}
@@ -0,0 +1,262 @@
+package net.aionstudios.jdc.server.compression;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPOutputStream;
+
+import com.nixxcode.jvmbrotli.enc.BrotliOutputStream;
+import com.nixxcode.jvmbrotli.enc.Encoder;
+
+import net.aionstudios.jdc.server.JDCServerInfo;
+import net.aionstudios.jdc.server.util.MimeUtils;
+
+/**
+ * Builds .br and .gz files beside compressible static files so they can be sent as they are instead of being
+ * compressed for every request.
+ * <p>
+ * Files are compressed at the highest quality each encoding offers on a single background thread, and each built
+ * file is given the modification time of its source so a changed source is noticed and rebuilt. Files which don't
+ * get smaller are remembered and served uncompressed.
+ * @author Winter Roberts
+ */
+public class Precompressor {
+
+	private static final int QUEUE_SIZE = 1024;
+
+	private static ThreadPoolExecutor builder;
+	private static Set<String> pending = ConcurrentHashMap.newKeySet();
+	private static Map<String, Long> incompressible = new ConcurrentHashMap<String, Long>();
+	private static Set<String> failed = ConcurrentHashMap.newKeySet();
+
+	/**
+	 * @param source	A static file.
+	 * @param ce		The {@link CompressionEncoding} of the variant.
+	 * @return The precompressed file beside the source for the encoding, or null if the encoding isn't precompressed.
+	 */
+	public static File getVariant(File source, CompressionEncoding ce) {
+		if(ce==CompressionEncoding.BR) {
+			return new File(source.getPath()+".br");
+		} else if(ce==CompressionEncoding.GZIP) {
+			return new File(source.getPath()+".gz");
+		}
+		return null;
+	}
+
+	/**
+	 * @param s			The {@link CompressionSettings} of the website.
+	 * @param mime		The mime type of the file.
+	 * @param length	The length of the file in bytes.
+	 * @return True if a file of this type and size should be served precompressed.
+	 */
+	public static boolean isEligible(CompressionSettings s, String mime, long length) {
+		return s.isPrecompress()&&s.isCompressible(mime, length);
+	}
+
+	/**
+	 * @param source		A static file.
+	 * @param ce			The {@link CompressionEncoding} of the variant.
+	 * @param modified		The modification time of the source.
+	 * @return True if compressing this version of the source was found not to make it smaller.
+	 */
+	public static boolean isIncompressible(File source, CompressionEncoding ce, long modified) {
+		Long m = incompressible.get(getVariant(source, ce).getPath());
+		return m!=null&&m==modified;
+	}
+
+	/**
+	 * Queues a variant to be built in the background, unless it is already queued.
+	 * @param source	The static file to compress.
+	 * @param ce		The {@link CompressionEncoding} of the variant.
+	 */
+	public static void schedule(final File source, final CompressionEncoding ce) {
+		final File variant = getVariant(source, ce);
+		if(variant==null||!pending.add(variant.getPath())) {
+			return;
+		}
+		try {
+			getBuilder().execute(new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						build(source, ce);
+					} finally {
+						pending.remove(variant.getPath());
+					}
+				}
+
+			});
+		} catch (RuntimeException e) {
+			//the queue is full, the variant will be queued again on a later request
+			pending.remove(variant.getPath());
+		}
+	}
+
+	/**
+	 * Builds the .gz, and if Brotli is enabled the .br, variants of every eligible file in a folder in the background.
+	 * @param folder	The content folder of a website.
+	 * @param s			The {@link CompressionSettings} of the website.
+	 */
+	public static void precompressFolder(final File folder, final CompressionSettings s) {
+		getBuilder().execute(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					Files.walkFileTree(folder.toPath(), new SimpleFileVisitor<Path>() {
+
+						@Override
+						public FileVisitResult visitFile(Path p, BasicFileAttributes attrs) {
+							String[] nameParts = p.getFileName().toString().split("\\.");
+							String ext = nameParts[nameParts.length-1];
+							if(attrs.isRegularFile()&&!ext.equals("jdc")&&isEligible(s, MimeUtils.getInstance().getMimeString(ext), attrs.size())) {
+								build(p.toFile(), CompressionEncoding.GZIP);
+								if(JDCServerInfo.isEnableBrotli()) {
+									build(p.toFile(), CompressionEncoding.BR);
+								}
+							}
+							return FileVisitResult.CONTINUE;
+						}
+
+					});
+				} catch (IOException e) {
+					System.err.println("Failed to precompress content folder '"+folder.getPath()+"'!");
+					e.printStackTrace();
+				}
+			}
+
+		});
+	}
+
+	/**
+	 * Builds a variant of a file now, unless an up to date one already exists.
+	 * <p>
+	 * The variant is written to a temporary file and moved into place so it is never read half written.
+	 * @param source	The static file to compress.
+	 * @param ce		The {@link CompressionEncoding} of the variant.
+	 * @return True if an up to date variant exists.
+	 */
+	public static boolean build(File source, CompressionEncoding ce) {
+		File variant = getVariant(source, ce);
+		long modified = source.lastModified();
+		if(variant==null||modified==0) {
+			return false;
+		}
+		if(variant.lastModified()==modified||isIncompressible(source, ce, modified)) {
+			return variant.lastModified()==modified;
+		}
+		File tmp = null;
+		try {
+			tmp = File.createTempFile(".precompress", ".tmp", source.getParentFile());
+			InputStream in = new FileInputStream(source);
+			try {
+				OutputStream out = open(new BufferedOutputStream(new FileOutputStream(tmp), 65536), ce, source);
+				try {
+					byte[] buffer = new byte[65536];
+					int count;
+					while((count = in.read(buffer))>0) {
+						out.write(buffer, 0, count);
+					}
+				} finally {
+					out.close();
+				}
+			} finally {
+				in.close();
+			}
+			if(source.lastModified()!=modified) {
+				//the source changed while it was compressed, a later request will try again
+				return false;
+			}
+			if(tmp.length()>=source.length()) {
+				incompressible.put(variant.getPath(), modified);
+				return false;
+			}
+			tmp.setLastModified(modified);
+			Files.move(tmp.toPath(), variant.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+			tmp = null;
+			failed.remove(variant.getPath());
+			return true;
+		} catch (IOException | RuntimeException | UnsatisfiedLinkError e) {
+			if(failed.add(variant.getPath())) {
+				System.err.println("Failed to precompress '"+source.getPath()+"', it will be compressed for each request!");
+				e.printStackTrace();
+			}
+			return false;
+		} finally {
+			if(tmp!=null) {
+				tmp.delete();
+			}
+		}
+	}
+
+	/**
+	 * Opens a compressing stream at the encoding's highest quality.
+	 * @param out		The stream to write compressed bytes to.
+	 * @param ce		The {@link CompressionEncoding} to compress with.
+	 * @param source	The file being compressed, whose type picks the Brotli mode.
+	 * @return A stream compressing to the given stream.
+	 * @throws IOException If the stream could not be opened.
+	 */
+	private static OutputStream open(OutputStream out, CompressionEncoding ce, File source) throws IOException {
+		if(ce==CompressionEncoding.BR) {
+			String[] nameParts = source.getName().split("\\.");
+			String mime = MimeUtils.getInstance().getMimeString(nameParts[nameParts.length-1]);
+			Encoder.Parameters p = new Encoder.Parameters().setQuality(11).setWindow(24);
+			p.setMode(mime.startsWith("font/") ? Encoder.Mode.FONT : Encoder.Mode.TEXT);
+			return new BrotliOutputStream(out, p);
+		}
+		return new BestGZIPOutputStream(out);
+	}
+
+	/**
+	 * @return The background thread's executor, created on first use.
+	 */
+	private static synchronized ThreadPoolExecutor getBuilder() {
+		if(builder==null) {
+			builder = new ThreadPoolExecutor(1, 1, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(QUEUE_SIZE), new ThreadFactory() {
+
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "JDC-Precompress");
+					t.setDaemon(true);
+					t.setPriority(Thread.MIN_PRIORITY);
+					return t;
+				}
+
+			});
+		}
+		return builder;
+	}
+
+	/**
+	 * A {@link GZIPOutputStream} at the best compression level.
+	 */
+	private static class BestGZIPOutputStream extends GZIPOutputStream {
+
+		BestGZIPOutputStream(OutputStream out) throws IOException {
+			super(out, 65536);
+			def.setLevel(Deflater.BEST_COMPRESSION);
+		}
+
+	}
+
+}
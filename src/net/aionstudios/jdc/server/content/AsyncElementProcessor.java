@@ -0,0 +1,40 @@
+package net.aionstudios.jdc.server.content;
+
+import java.util.Map;
+import java.util.concurrent.CompletionStage;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import net.aionstudios.jdc.content.JDCHeadElement;
+import net.aionstudios.jdc.content.RequestVariables;
+import net.aionstudios.jdc.processor.ElementProcessor;
+
+/**
+ * An {@link ElementProcessor} which generates its content without blocking, for processors waiting on a backend.
+ * <p>
+ * A page calls {@link #getContentAsync} instead of {@link ElementProcessor#getContent} and carries on with its other
+ * processors while the content is generated, sync and async processors mixing freely on a page. The page is sent once
+ * every processor has completed, its work continuing on the backend client's own threads meanwhile.
+ * <p>
+ * Async processors let a page wait on several backends at once without a thread for each. Once a page's other
+ * processors have completed its request thread is released, and the page is sent on the request executor when its
+ * last stage completes. A page with {@code <jdc parallel>} or {@code <jdc stream>}, or an element waiting for the jdc
+ * tags inside it, still waits on the request's thread, as a managed block.
+ * <p>
+ * Where content must be generated synchronously, as for an element whose output is cached, the page waits for the
+ * stage instead, so getContent isn't called by pages.
+ * @author Winter Roberts
+ */
+public interface AsyncElementProcessor {
+
+	/**
+	 * Starts generating the content of an element.
+	 * @param e				The {@link JDCHeadElement} of the element, whose attributes may be set until the stage completes.
+	 * @param he			The {@link HttpExchange} of the request.
+	 * @param vars			The {@link RequestVariables} of the request, which should only be read once this returns.
+	 * @param pageVariables	The page variables, synchronized while a page has async processors.
+	 * @return A {@link CompletionStage} completed with the content, or exceptionally if it could not be generated.
+	 */
+	public CompletionStage<String> getContentAsync(JDCHeadElement e, HttpExchange he, RequestVariables vars, Map<String, Object> pageVariables);
+
+}
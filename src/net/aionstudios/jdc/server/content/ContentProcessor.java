@@ -10,6 +10,7 @@ import net.aionstudios.jdc.JDC;
  */
 public class ContentProcessor {
 	
+	private Website website;
 	private File javaArchive;
 	private String mainClass;
 	private String name;
@@ -40,6 +41,7 @@ public class ContentProcessor {
 	 * @see {@link JDCLoader}
 	 */
 	public ContentProcessor(Website website, String name, File javaArchive, String mainClass) {
+		this.website = website;
 		this.javaArchive = javaArchive;
 		this.mainClass = mainClass;
 		this.name = name;
@@ -74,11 +76,13 @@ public class ContentProcessor {
 	}
 	
 	/**
-	 * Reassigns the {@link JDC} to which this ContentProcessor should be tied.
+	 * Reassigns the {@link JDC} to which this ContentProcessor should be tied, so pages of its {@link Website} resolve
+	 * their processors from it on their next request.
 	 * @param jdc A {@link JDC} instance.
 	 */
 	public void setJDC(JDC jdc) {
 		this.jdc = jdc;
+		website.processorsChanged();
 	}
 	
 	/**
@@ -89,6 +93,7 @@ public class ContentProcessor {
 			this.jdc = JDCLoader.getJDCFromLibrary(mainClass);
 			this.jdc.initialize();
 			connected = true;
+			website.processorsChanged();
 		}
 	}
 	
@@ -0,0 +1,122 @@
+package net.aionstudios.jdc.server.content;
+
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * An immutable index from host names to the {@link Website}s accepting them.
+ * <p>
+ * Exact addresses are found with a single hash lookup. Wildcard addresses like *.example.com are kept in a trie
+ * of reversed labels (com, example) so that the most specific wildcard accepting a host is found by walking its
+ * labels from the right, and the address * accepts any host no other address does. An index is never changed
+ * after it is built, {@link WebsiteManager} builds a new one and swaps it in whenever addresses change.
+ * @author Winter Roberts
+ */
+public class HostIndex {
+
+	private final Map<String, Website> exact;
+	private final Node wildcards;
+
+	/**
+	 * Builds an index of every address of the given {@link Website}s.
+	 * <p>
+	 * If two websites list the same address the one listed first keeps it.
+	 * @param websites	The {@link Website}s to index.
+	 */
+	public HostIndex(Collection<Website> websites) {
+		exact = new HashMap<String, Website>();
+		wildcards = new Node();
+		for(Website w : websites) {
+			for(String a : w.getAddresses()) {
+				String addr = normalize(a);
+				if(addr.equals("*")) {
+					if(wildcards.website==null) {
+						wildcards.website = w;
+					}
+				} else if(addr.startsWith("*.")) {
+					Node n = wildcards;
+					String[] labels = addr.substring(2).split("\\.");
+					for(int i = labels.length-1; i >= 0; i--) {
+						Node c = n.children.get(labels[i]);
+						if(c==null) {
+							c = new Node();
+							n.children.put(labels[i], c);
+						}
+						n = c;
+					}
+					if(n.website==null) {
+						n.website = w;
+					}
+				} else if(!exact.containsKey(addr)) {
+					exact.put(addr, w);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Finds the {@link Website} accepting a host.
+	 * <p>
+	 * An exact address wins over any wildcard, and a longer wildcard wins over a shorter one, so
+	 * *.shop.example.com is preferred to *.example.com for www.shop.example.com. A wildcard only accepts
+	 * hosts with at least one label in place of its *, *.example.com does not accept example.com.
+	 * @param host	The host name, as sent by the client without a port.
+	 * @return The {@link Website} accepting the host, or null if there isn't one.
+	 */
+	public Website find(String host) {
+		String h = normalize(host);
+		Website w = exact.get(h);
+		if(w!=null) {
+			return w;
+		}
+		Website best = wildcards.website;
+		Node n = wildcards;
+		int end = h.length();
+		while(end>0) {
+			int dot = h.lastIndexOf('.', end-1);
+			if(dot<0) {
+				//the leftmost label can't be matched by a wildcard's own labels
+				break;
+			}
+			n = n.children.get(h.substring(dot+1, end));
+			if(n==null) {
+				break;
+			}
+			if(n.website!=null) {
+				best = n.website;
+			}
+			end = dot;
+		}
+		return best;
+	}
+
+	/**
+	 * @return The number of exact addresses in this index.
+	 */
+	public int size() {
+		return exact.size();
+	}
+
+	/**
+	 * Lower cases a host and strips the trailing dot of a fully qualified name.
+	 * @param host	The host name.
+	 * @return The host name as it is indexed.
+	 */
+	private static String normalize(String host) {
+		String h = host.toLowerCase(Locale.ROOT);
+		return h.endsWith(".") ? h.substring(0, h.length()-1) : h;
+	}
+
+	/**
+	 * A label in the wildcard trie, holding the {@link Website} of the wildcard ending there if there is one.
+	 */
+	private static class Node {
+
+		private final Map<String, Node> children = new HashMap<String, Node>();
+		private Website website;
+
+	}
+
+}
@@ -0,0 +1,32 @@
+package net.aionstudios.jdc.server.content;
+
+import java.io.IOException;
+
+/**
+ * The response a page with {@code <jdc stream>} is written to as it renders, see
+ * {@link RenderPlan#stream(Website, com.sun.net.httpserver.HttpExchange, net.aionstudios.jdc.content.RequestVariables, PageOutput)}.
+ * @author Winter Roberts
+ */
+public interface PageOutput {
+
+	/**
+	 * Sends the response headers, before any of the page is written.
+	 * @param length	The number of characters of static text in the page, the least it will send.
+	 * @throws IOException If the headers could not be sent.
+	 */
+	public void open(int length) throws IOException;
+
+	/**
+	 * Writes part of the page, which may be held until the output is flushed.
+	 * @param text	The text to write.
+	 * @throws IOException If the text could not be written.
+	 */
+	public void write(String text) throws IOException;
+
+	/**
+	 * Sends everything written so far to the client, before the page waits for a processor.
+	 * @throws IOException If the output could not be sent.
+	 */
+	public void flush() throws IOException;
+
+}
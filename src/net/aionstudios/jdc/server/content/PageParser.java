@@ -1,30 +1,30 @@
 package net.aionstudios.jdc.server.content;
 
 import java.io.File;
-import java.util.HashMap;
-import java.util.Map;
+import java.io.IOException;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
 
 import com.sun.net.httpserver.HttpExchange;
 
-import org.jsoup.Jsoup;
-import org.jsoup.nodes.Document;
-import org.jsoup.nodes.Element;
-import org.jsoup.parser.Parser;
-
-import net.aionstudios.jdc.content.JDCHeadElement;
 import net.aionstudios.jdc.content.RequestVariables;
 import net.aionstudios.jdc.content.ResponseCode;
-import net.aionstudios.jdc.server.JDCServerInfo;
+import net.aionstudios.jdc.server.executor.RequestExecutors;
 import net.aionstudios.jdc.server.util.ConsoleErrorUtils;
 
 /**
- * Locates pages, reads them, and completes processing and modification via {@link Processor}s and {@link ElementProcessor}s when they are found.
+ * Locates pages and completes processing and modification via {@link Processor}s and {@link ElementProcessor}s when they are found,
+ * rendering each page from its cached {@link RenderPlan}.
+ * <p>
+ * Pages render on the request's thread, except that a page waiting only for {@link AsyncElementProcessor}s completes on
+ * the thread which completes the last of them, see {@link RenderPlan#render(Website, HttpExchange, RequestVariables)}.
  * @author Winter Roberts
  */
 public class PageParser {
 	
 	/**
-	 * Parses a page, passing each next tag to its respective {@link Processor} of {@link ElementProcessor}.
+	 * Parses a page, passing each next tag to its respective {@link Processor} of {@link ElementProcessor}, and waits
+	 * for it to complete.
 	 * @param w		The {@link Website} on which the request was made.
 	 * @param he	The {@link HttpExchange} through which the request will be completed.
 	 * @param vars	The {@link RequestVariables} incorporating request and response variables to create dynamic responses.
@@ -32,53 +32,94 @@ public class PageParser {
 	 * @return A {@link GeneratorReponse} having completed processing.
 	 */
 	public static GeneratorResponse parseGeneratePage(Website w, HttpExchange he, RequestVariables vars, File page) {
-		if(!page.exists()) {
-			return new GeneratorResponse("", ResponseCode.NOT_FOUND);
+		final CompletableFuture<GeneratorResponse> gr = parseGeneratePageAsync(w, he, vars, page);
+		try {
+			return RequestExecutors.runBlocking(new Callable<GeneratorResponse>() {
+
+				@Override
+				public GeneratorResponse call() throws Exception {
+					return gr.get();
+				}
+
+			});
+		} catch (Exception e) {
+			ConsoleErrorUtils.printServerError(ResponseCode.INTERNAL_SERVER_ERROR, e);
+			return new GeneratorResponse("", ResponseCode.INTERNAL_SERVER_ERROR);
 		}
-		Map<String, Object> pageVariables = new HashMap<String, Object>();
-		String fileContent = JDCServerInfo.readFile(page);
-		if(fileContent==null) {
-			return new GeneratorResponse("", ResponseCode.NO_CONTENT);
+	}
+	
+	/**
+	 * Parses a page, passing each next tag to its respective {@link Processor} of {@link ElementProcessor}, without
+	 * waiting for its {@link AsyncElementProcessor}s.
+	 * @param w		The {@link Website} on which the request was made.
+	 * @param he	The {@link HttpExchange} through which the request will be completed.
+	 * @param vars	The {@link RequestVariables} incorporating request and response variables to create dynamic responses.
+	 * @param page	The file name of the requested page.
+	 * @return A {@link GeneratorReponse}, completed once the page has.
+	 */
+	public static CompletableFuture<GeneratorResponse> parseGeneratePageAsync(Website w, HttpExchange he, RequestVariables vars, File page) {
+		try {
+			return generatePage(w, he, vars, page);
+		} catch (RuntimeException e) {
+			ConsoleErrorUtils.printServerError(ResponseCode.INTERNAL_SERVER_ERROR, e);
+			return CompletableFuture.completedFuture(new GeneratorResponse("", ResponseCode.INTERNAL_SERVER_ERROR));
 		}
-		Document doc = doc = Jsoup.parse(fileContent, "", Parser.xmlParser());
-		for(Element e : doc.getElementsByTag("jdc")) {
-			if(e.hasAttr("javaexecute")) {
-				try {
-					w.locateProcessor(vars.getResponseCode(), e.attr("javaexecute")).startCompute(he, vars, pageVariables);
-				} catch (Exception e1) {
-					ConsoleErrorUtils.printServerError(ResponseCode.INTERNAL_SERVER_ERROR, e.attr("javaexecute"), e1);
-					return new GeneratorResponse("", ResponseCode.INTERNAL_SERVER_ERROR);
-				}
-			}
-			if(e.hasAttr("javagenerate")) {
-				JDCHeadElement head = new JDCHeadElement(e.html());
-				try {
-					e.before(w.locateElementProcessor(vars.getResponseCode(), e.attr("javagenerate")).getContent(head, he, vars, pageVariables));
-				} catch (Exception e1) {
-					ConsoleErrorUtils.printServerError(ResponseCode.INTERNAL_SERVER_ERROR, e.attr("javagenerate"), e1);
-					return new GeneratorResponse("", ResponseCode.INTERNAL_SERVER_ERROR);
-				}
-				for(int i = 0; i < head.getAttributes().size(); i++) {
-					e.attr((String) head.getAttributes().keySet().toArray()[i], head.getAttributes().get(head.getAttributes().keySet().toArray()[i]));
-				}
-			}
-			e.remove();
+	}
+	
+	/**
+	 * @param w		The {@link Website} on which the request was made.
+	 * @param page	The requested page.
+	 * @return True if the page exists and is sent as it renders, see {@link RenderPlan#isStreamed()}.
+	 */
+	public static boolean isStreamed(Website w, File page) {
+		if(!page.exists()) {
+			return false;
 		}
-		for(Element e : doc.getElementsByAttribute("javagenerate")) {
-			
-			JDCHeadElement head = new JDCHeadElement(e.html());
-			try {
-				e.html(w.locateElementProcessor(vars.getResponseCode(), e.attr("javagenerate")).getContent(head, he, vars, pageVariables));
-			} catch (Exception e1) {
-				ConsoleErrorUtils.printServerError(ResponseCode.INTERNAL_SERVER_ERROR, e.attr("javagenerate"), e1);
-				return new GeneratorResponse("", ResponseCode.INTERNAL_SERVER_ERROR);
-			}
-			for(int i = 0; i < head.getAttributes().size(); i++) {
-				e.attr((String) head.getAttributes().keySet().toArray()[i], head.getAttributes().get(head.getAttributes().keySet().toArray()[i]));
+		RenderPlan plan = w.getRenderPlanCache().get(page);
+		return plan!=null&&plan.isStreamed();
+	}
+	
+	/**
+	 * Streams a page to a response as it renders, see {@link RenderPlan#stream(Website, HttpExchange, RequestVariables, PageOutput)}.
+	 * @param w		The {@link Website} on which the request was made.
+	 * @param he	The {@link HttpExchange} through which the request will be completed.
+	 * @param vars	The {@link RequestVariables} incorporating request and response variables to create dynamic responses.
+	 * @param page	The file name of the requested page.
+	 * @param out	The {@link PageOutput} the page is written to.
+	 * @return Null if the page was written to the output, otherwise a {@link GeneratorResponse} to send as usual.
+	 * @throws IOException If the page could not be written.
+	 */
+	public static GeneratorResponse streamGeneratePage(Website w, HttpExchange he, RequestVariables vars, File page, PageOutput out) throws IOException {
+		try {
+			RenderPlan plan = w.getRenderPlanCache().get(page);
+			if(plan==null) {
+				return new GeneratorResponse("", ResponseCode.NO_CONTENT);
 			}
-			e.removeAttr("javagenerate");
+			return plan.stream(w, he, vars, out);
+		} catch (RuntimeException e) {
+			ConsoleErrorUtils.printServerError(ResponseCode.INTERNAL_SERVER_ERROR, e);
+			return new GeneratorResponse("", ResponseCode.INTERNAL_SERVER_ERROR);
+		}
+	}
+	
+	/**
+	 * Generates a page on the calling thread, processors may block it, and async processors may complete it later.
+	 * @param w		The {@link Website} on which the request was made.
+	 * @param he	The {@link HttpExchange} through which the request will be completed.
+	 * @param vars	The {@link RequestVariables} incorporating request and response variables to create dynamic responses.
+	 * @param page	The file name of the requested page.
+	 * @return A {@link GeneratorReponse}, completed once the page has.
+	 */
+	private static CompletableFuture<GeneratorResponse> generatePage(Website w, HttpExchange he, RequestVariables vars, File page) {
+		if(!page.exists()) {
+			w.getRenderPlanCache().remove(page);
+			return CompletableFuture.completedFuture(new GeneratorResponse("", ResponseCode.NOT_FOUND));
+		}
+		RenderPlan plan = w.getRenderPlanCache().get(page);
+		if(plan==null) {
+			return CompletableFuture.completedFuture(new GeneratorResponse("", ResponseCode.NO_CONTENT));
 		}
-		return new GeneratorResponse(doc.outerHtml(), vars.getResponseCode());
+		return plan.render(w, he, vars);
 	}
 
 }
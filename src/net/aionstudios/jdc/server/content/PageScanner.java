@@ -0,0 +1,506 @@
+package net.aionstudios.jdc.server.content;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Compiles a .jdc page into a {@link RenderPlan} in a single pass over its source, finding only jdc tags and elements
+ * with a javagenerate attribute. Everything else in the page is kept exactly as written.
+ * <p>
+ * Tags are read as written, quoted attribute values may contain any character and comments, CDATA sections,
+ * declarations and the content of script and style elements are never searched for tags. An element which isn't
+ * closed runs to the end of the content it is in, except for HTML void elements like img which never have content.
+ * @author Winter Roberts
+ */
+class PageScanner {
+
+	//attributes of a slot which are read by the server rather than written out with its element
+	private static final String[] SLOT_ATTRIBUTES = {"javagenerate", "cache", "cache-stale", "cache-vary"};
+
+	private static final Set<String> VOID_ELEMENTS = new HashSet<String>(Arrays.asList("area", "base", "br", "col", "embed",
+			"hr", "img", "input", "link", "meta", "param", "source", "track", "wbr"));
+
+	private final String src;
+	private final List<RenderPlan.Slot> slots = new ArrayList<RenderPlan.Slot>();
+	private final List<Integer> tags = new ArrayList<Integer>();
+	private final List<Integer> elements = new ArrayList<Integer>();
+	private boolean parallel = false;
+	private long timeout = 0;
+	private String fallback = "";
+	private boolean stream = false;
+
+	/**
+	 * Creates a scanner.
+	 * @param src	The source of the page.
+	 */
+	private PageScanner(String src) {
+		this.src = src;
+	}
+
+	/**
+	 * Compiles a page.
+	 * <p>
+	 * Each jdc tag becomes a slot, its content passed to its javagenerate processor as written since tags inside it
+	 * aren't run. Each other element with a javagenerate attribute not inside another becomes a slot, and the jdc tags
+	 * inside it become slots whose output is part of the content passed to its processor. Every jdc tag runs in page
+	 * order before every javagenerate element in page order.
+	 * <p>
+	 * A jdc tag with a parallel attribute renders the page in parallel, and one with a stream attribute sends the page as
+	 * it renders. The timeout in milliseconds and fallback fragment of the page's parallel or async processors are the
+	 * timeout and fallback attributes of a jdc tag with a parallel or timeout attribute. A
+	 * slot with a cache attribute has its output cached for that many seconds, see {@link RenderPlan.FragmentPolicy}.
+	 * @param source		The content of the page.
+	 * @param lastModified	The modification time of the page.
+	 * @param length		The length of the page file.
+	 * @return A new {@link RenderPlan}.
+	 */
+	static RenderPlan compile(String source, long lastModified, long length) {
+		PageScanner ps = new PageScanner(source);
+		RenderPlan.Text page = ps.scan(0, source.length(), true);
+		int[] runOrder = new int[ps.slots.size()];
+		int n = 0;
+		for(int i : ps.tags) {
+			runOrder[n++] = i;
+		}
+		for(int i : ps.elements) {
+			runOrder[n++] = i;
+		}
+		return new RenderPlan(lastModified, length, page, ps.slots.toArray(new RenderPlan.Slot[ps.slots.size()]), runOrder,
+				ps.parallel, ps.timeout, ps.fallback, ps.stream);
+	}
+
+	/**
+	 * Scans part of the page for jdc tags, and javagenerate elements if asked, splitting it around their slots.
+	 * @param from		The position to scan from.
+	 * @param to		The position to scan to.
+	 * @param generators	True to make slots of elements with a javagenerate attribute.
+	 * @return The {@link RenderPlan.Text} of this part of the page, referring to slots by their place in the page.
+	 */
+	private RenderPlan.Text scan(int from, int to, boolean generators) {
+		TextBuilder tb = new TextBuilder(from);
+		int p = from;
+		Tag t;
+		while((t = nextTag(p, to))!=null) {
+			p = t.end;
+			if(t.closing) {
+				continue;
+			}
+			if(t.name.equalsIgnoreCase("jdc")) {
+				if(t.has("parallel")||t.has("timeout")) {
+					readRenderOptions(t);
+				}
+				if(t.has("stream")) {
+					stream = !t.value("stream").equalsIgnoreCase("false");
+				}
+				int[] x = findClose(t, to);
+				RenderPlan.Text head = new RenderPlan.Text(new String[] {src.substring(t.end, x[0])}, new int[0]);
+				tags.add(slots.size());
+				tb.split(src, t.start, x[1], slots.size());
+				slots.add(new RenderPlan.Slot(t.value("javaexecute"), t.value("javagenerate"), null, null, null, head, readFragmentPolicy(t)));
+				p = x[1];
+			} else if(generators&&t.has("javagenerate")) {
+				int[] x = findClose(t, to);
+				int index = slots.size();
+				//the element comes before the jdc tags inside it in the page
+				slots.add(null);
+				elements.add(index);
+				tb.split(src, t.start, x[1], index);
+				RenderPlan.Text head = scan(t.end, x[0], false);
+				slots.set(index, new RenderPlan.Slot(null, t.value("javagenerate"), t.name, t.getStartTag(SLOT_ATTRIBUTES), t.getAttributes(SLOT_ATTRIBUTES), head, readFragmentPolicy(t)));
+				p = x[1];
+			} else if(!t.selfClosing&&(t.name.equalsIgnoreCase("script")||t.name.equalsIgnoreCase("style"))) {
+				p = findRawTextEnd(t.name, p, to);
+			}
+		}
+		return tb.build(src, to);
+	}
+
+	/**
+	 * Reads the parallel rendering and timeout options of a jdc tag.
+	 * @param t	A jdc tag with a parallel or timeout attribute.
+	 */
+	private void readRenderOptions(Tag t) {
+		if(t.has("parallel")) {
+			parallel = !t.value("parallel").equalsIgnoreCase("false");
+		}
+		if(t.has("timeout")) {
+			try {
+				timeout = Long.parseLong(t.value("timeout").trim());
+			} catch (NumberFormatException e) {
+				System.err.println("Invalid jdc timeout '"+t.value("timeout")+"', rendering without one!");
+			}
+		}
+		if(t.has("fallback")) {
+			fallback = t.value("fallback");
+		}
+	}
+
+	/**
+	 * Reads the fragment cache attributes of a slot.
+	 * @param t	The tag of a jdc tag or javagenerate element.
+	 * @return The {@link RenderPlan.FragmentPolicy} of the slot, or null if its output shouldn't be cached.
+	 */
+	private static RenderPlan.FragmentPolicy readFragmentPolicy(Tag t) {
+		if(!t.has("cache")||!t.has("javagenerate")) {
+			return null;
+		}
+		try {
+			double ttl = Double.parseDouble(t.value("cache").trim());
+			double stale = t.has("cache-stale") ? Double.parseDouble(t.value("cache-stale").trim()) : 0;
+			return ttl>0 ? new RenderPlan.FragmentPolicy((long) (ttl*1000), (long) (stale*1000), t.has("cache-vary") ? t.value("cache-vary") : "") : null;
+		} catch (NumberFormatException e) {
+			System.err.println("Invalid cache attributes on '"+t.value("javagenerate")+"', its output won't be cached!");
+			return null;
+		}
+	}
+
+	/**
+	 * Finds where an element's content ends and the element itself ends.
+	 * @param open	The start tag of the element.
+	 * @param to	The end of the content the element is in.
+	 * @return The end of the element's content and the end of its end tag, both the end of its start tag if it is
+	 * self closing or an HTML void element and both the given end if it isn't closed.
+	 */
+	private int[] findClose(Tag open, int to) {
+		if(open.selfClosing||VOID_ELEMENTS.contains(open.name.toLowerCase())) {
+			return new int[] {open.end, open.end};
+		}
+		int depth = 1;
+		int p = open.end;
+		Tag t;
+		while((t = nextTag(p, to))!=null) {
+			p = t.end;
+			if(t.name.equalsIgnoreCase(open.name)) {
+				if(t.closing) {
+					if(--depth==0) {
+						return new int[] {t.start, t.end};
+					}
+				} else if(!t.selfClosing) {
+					depth++;
+				}
+			} else if(!t.closing&&!t.selfClosing&&(t.name.equalsIgnoreCase("script")||t.name.equalsIgnoreCase("style"))) {
+				p = findRawTextEnd(t.name, p, to);
+			}
+		}
+		return new int[] {to, to};
+	}
+
+	/**
+	 * @param name	The name of a script or style element.
+	 * @param from	The end of the element's start tag.
+	 * @param to	The end of the content the element is in.
+	 * @return The position of the element's end tag, or the given end if it has none.
+	 */
+	private int findRawTextEnd(String name, int from, int to) {
+		int p = from;
+		while((p = src.indexOf("</", p))>=0&&p<to) {
+			if(src.regionMatches(true, p+2, name, 0, name.length())) {
+				return p;
+			}
+			p += 2;
+		}
+		return to;
+	}
+
+	/**
+	 * Reads the next start or end tag, passing over text, comments, CDATA sections and declarations.
+	 * @param from	The position to read from.
+	 * @param to	The position to read to.
+	 * @return The next {@link Tag}, or null if there are no more before the given end.
+	 */
+	private Tag nextTag(int from, int to) {
+		int p = from;
+		while((p = src.indexOf('<', p))>=0&&p<to-1) {
+			if(src.startsWith("<!--", p)) {
+				p = skipPast("-->", p+4, to);
+			} else if(src.startsWith("<![CDATA[", p)) {
+				p = skipPast("]]>", p+9, to);
+			} else if(src.charAt(p+1)=='!'||src.charAt(p+1)=='?') {
+				p = skipPast(">", p+2, to);
+			} else if(src.charAt(p+1)=='/'&&p+2<to&&isNameStart(src.charAt(p+2))) {
+				int n = readName(p+2, to);
+				return new Tag(p, skipPast(">", n, to), src.substring(p+2, n), true);
+			} else if(isNameStart(src.charAt(p+1))) {
+				return readStartTag(p, to);
+			} else {
+				p++;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * Reads a start tag and its attributes.
+	 * @param start	The position of the tag's '&lt;'.
+	 * @param to	The position to read to.
+	 * @return The {@link Tag}.
+	 */
+	private Tag readStartTag(int start, int to) {
+		int p = readName(start+1, to);
+		Tag t = new Tag(start, -1, src.substring(start+1, p), false);
+		while(p<to) {
+			int ws = p;
+			while(p<to&&Character.isWhitespace(src.charAt(p))) {
+				p++;
+			}
+			if(p>=to) {
+				break;
+			}
+			char c = src.charAt(p);
+			if(c=='>') {
+				t.end = p+1;
+				return t;
+			}
+			if(c=='/') {
+				if(p+1<to&&src.charAt(p+1)=='>') {
+					t.selfClosing = true;
+					t.end = p+2;
+					return t;
+				}
+				p++;
+				continue;
+			}
+			int nameStart = p;
+			while(p<to&&!Character.isWhitespace(src.charAt(p))&&"=>/".indexOf(src.charAt(p))<0) {
+				p++;
+			}
+			if(p==nameStart) {
+				p++;
+				continue;
+			}
+			String name = src.substring(nameStart, p);
+			int eq = p;
+			while(eq<to&&Character.isWhitespace(src.charAt(eq))) {
+				eq++;
+			}
+			String value = null;
+			int valueStart = -1;
+			if(eq<to&&src.charAt(eq)=='=') {
+				p = eq+1;
+				while(p<to&&Character.isWhitespace(src.charAt(p))) {
+					p++;
+				}
+				if(p<to&&(src.charAt(p)=='"'||src.charAt(p)=='\'')) {
+					int close = src.indexOf(src.charAt(p), p+1);
+					close = close<0||close>=to ? to : close;
+					valueStart = p+1;
+					value = src.substring(valueStart, close);
+					p = Math.min(close+1, to);
+				} else {
+					valueStart = p;
+					while(p<to&&!Character.isWhitespace(src.charAt(p))&&src.charAt(p)!='>') {
+						p++;
+					}
+					value = src.substring(valueStart, p);
+				}
+			}
+			t.attributes.add(new int[] {ws, nameStart, p});
+			t.names.add(name);
+			t.values.add(value);
+		}
+		t.end = to;
+		return t;
+	}
+
+	/**
+	 * @param s		The text to find.
+	 * @param from	The position to search from.
+	 * @param to	The position to search to.
+	 * @return The position after the text, or the given end if it isn't found.
+	 */
+	private int skipPast(String s, int from, int to) {
+		int i = src.indexOf(s, from);
+		return i<0||i+s.length()>to ? to : i+s.length();
+	}
+
+	/**
+	 * @param from	The position of the name's first character.
+	 * @param to	The position to read to.
+	 * @return The position after the name of a tag.
+	 */
+	private int readName(int from, int to) {
+		int p = from;
+		while(p<to&&!Character.isWhitespace(src.charAt(p))&&src.charAt(p)!='>'&&src.charAt(p)!='/') {
+			p++;
+		}
+		return p;
+	}
+
+	/**
+	 * @param c	A character following '&lt;'.
+	 * @return True if the character may start the name of a tag.
+	 */
+	private static boolean isNameStart(char c) {
+		return Character.isLetter(c)||c=='_'||c==':';
+	}
+
+	/**
+	 * A start or end tag read from the page.
+	 */
+	private class Tag {
+
+		private final int start;
+		private int end;
+		private final String name;
+		private final boolean closing;
+		private boolean selfClosing = false;
+		//the start of the whitespace before each attribute, the start of its name and its end
+		private final List<int[]> attributes = new ArrayList<int[]>();
+		private final List<String> names = new ArrayList<String>();
+		private final List<String> values = new ArrayList<String>();
+
+		/**
+		 * Creates a tag.
+		 * @param start		The position of the tag's '&lt;'.
+		 * @param end		The position after the tag's '&gt;'.
+		 * @param name		The name of the tag.
+		 * @param closing	True for an end tag.
+		 */
+		private Tag(int start, int end, String name, boolean closing) {
+			this.start = start;
+			this.end = end;
+			this.name = name;
+			this.closing = closing;
+		}
+
+		/**
+		 * @param name	The name of an attribute, in any case.
+		 * @return The index of the attribute, or -1 if the tag doesn't have it.
+		 */
+		private int indexOf(String name) {
+			for(int i = 0; i < names.size(); i++) {
+				if(names.get(i).equalsIgnoreCase(name)) {
+					return i;
+				}
+			}
+			return -1;
+		}
+
+		/**
+		 * @param name	The name of an attribute, in any case.
+		 * @return True if the tag has the attribute.
+		 */
+		private boolean has(String name) {
+			return indexOf(name)>=0;
+		}
+
+		/**
+		 * @param name	The name of an attribute, in any case.
+		 * @return The value of the attribute as written, an empty string if it has none, or null if the tag doesn't
+		 * have it.
+		 */
+		private String value(String name) {
+			int i = indexOf(name);
+			if(i<0) {
+				return null;
+			}
+			return values.get(i)!=null ? values.get(i) : "";
+		}
+
+		/**
+		 * @param omit	The names of attributes to leave out.
+		 * @return The start tag as written without the attributes, never self closing.
+		 */
+		private String getStartTag(String[] omit) {
+			StringBuilder sb = new StringBuilder(end-start);
+			int p = start;
+			for(int i = 0; i < names.size(); i++) {
+				if(isOmitted(names.get(i), omit)) {
+					sb.append(src, p, attributes.get(i)[0]);
+					p = attributes.get(i)[2];
+				}
+			}
+			sb.append(src, p, end);
+			if(selfClosing) {
+				int slash = sb.lastIndexOf("/");
+				int cut = slash;
+				while(cut>0&&Character.isWhitespace(sb.charAt(cut-1))) {
+					cut--;
+				}
+				sb.replace(cut, sb.length(), ">");
+			}
+			return sb.toString();
+		}
+
+		/**
+		 * @param omit	The names of attributes to leave out.
+		 * @return The name of each attribute of the tag and the attribute as written, in order.
+		 */
+		private Map<String, String> getAttributes(String[] omit) {
+			Map<String, String> a = new LinkedHashMap<String, String>();
+			for(int i = 0; i < names.size(); i++) {
+				if(!isOmitted(names.get(i), omit)) {
+					a.put(names.get(i), src.substring(attributes.get(i)[1], attributes.get(i)[2]));
+				}
+			}
+			return a;
+		}
+
+		/**
+		 * @param name	The name of an attribute.
+		 * @param omit	The names of attributes to leave out, in any case.
+		 * @return True if the attribute is one to leave out.
+		 */
+		private boolean isOmitted(String name, String[] omit) {
+			for(String o : omit) {
+				if(o.equalsIgnoreCase(name)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+	}
+
+	/**
+	 * Collects the segments of a part of the page and the slots between them.
+	 */
+	private static class TextBuilder {
+
+		private final List<String> segments = new ArrayList<String>();
+		private final List<Integer> slots = new ArrayList<Integer>();
+		private int segmentStart;
+
+		/**
+		 * @param start	The position of the first segment.
+		 */
+		private TextBuilder(int start) {
+			this.segmentStart = start;
+		}
+
+		/**
+		 * Ends the current segment at a slot.
+		 * @param src	The source of the page.
+		 * @param start	The start of the slot's tag or element.
+		 * @param end	The end of the slot's tag or element, where the next segment starts.
+		 * @param slot	The index of the slot.
+		 */
+		private void split(String src, int start, int end, int slot) {
+			segments.add(src.substring(segmentStart, start));
+			slots.add(slot);
+			segmentStart = end;
+		}
+
+		/**
+		 * Ends the last segment and builds the text.
+		 * @param src	The source of the page.
+		 * @param end	The end of the last segment.
+		 * @return The {@link RenderPlan.Text}.
+		 */
+		private RenderPlan.Text build(String src, int end) {
+			segments.add(src.substring(segmentStart, Math.max(segmentStart, end)));
+			int[] order = new int[slots.size()];
+			for(int i = 0; i < order.length; i++) {
+				order[i] = slots.get(i);
+			}
+			return new RenderPlan.Text(segments.toArray(new String[segments.size()]), order);
+		}
+
+	}
+
+}
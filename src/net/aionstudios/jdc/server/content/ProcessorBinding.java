@@ -0,0 +1,69 @@
+package net.aionstudios.jdc.server.content;
+
+import net.aionstudios.jdc.processor.ElementProcessor;
+import net.aionstudios.jdc.processor.Processor;
+
+/**
+ * The processors of a {@link RenderPlan} resolved from a {@link Website}'s content processors, so rendering the page
+ * calls them directly rather than looking each up by name.
+ * <p>
+ * A binding is immutable and is replaced as a whole once the website's processor generation changes, so a render
+ * uses processors which were all bound at the same time.
+ * @author Winter Roberts
+ */
+class ProcessorBinding {
+
+	private final long generation;
+	private final Processor[] executes;
+	private final ElementProcessor[] generates;
+	private final boolean async;
+
+	/**
+	 * Creates a binding.
+	 * @param generation	The {@link Website#getProcessorGeneration()} read before the processors were resolved.
+	 * @param executes		The javaexecute {@link Processor} of each slot, null if it has none or it doesn't exist.
+	 * @param generates		The javagenerate {@link ElementProcessor} of each slot, null if it has none or it doesn't exist.
+	 */
+	ProcessorBinding(long generation, Processor[] executes, ElementProcessor[] generates) {
+		this.generation = generation;
+		this.executes = executes;
+		this.generates = generates;
+		boolean a = false;
+		for(ElementProcessor ep : generates) {
+			a |= ep instanceof AsyncElementProcessor;
+		}
+		this.async = a;
+	}
+
+	/**
+	 * @param generation	The current {@link Website#getProcessorGeneration()}.
+	 * @return True if no processor has been added or reloaded since this binding was made.
+	 */
+	boolean isCurrent(long generation) {
+		return this.generation==generation;
+	}
+
+	/**
+	 * @return True if any javagenerate processor is an {@link AsyncElementProcessor}.
+	 */
+	boolean hasAsync() {
+		return async;
+	}
+
+	/**
+	 * @param slot	The index of a slot.
+	 * @return The javaexecute {@link Processor} of the slot.
+	 */
+	Processor getExecute(int slot) {
+		return executes[slot];
+	}
+
+	/**
+	 * @param slot	The index of a slot.
+	 * @return The javagenerate {@link ElementProcessor} of the slot.
+	 */
+	ElementProcessor getGenerate(int slot) {
+		return generates[slot];
+	}
+
+}
@@ -0,0 +1,923 @@
+package net.aionstudios.jdc.server.content;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+
+import com.sun.net.httpserver.HttpExchange;
+
+import net.aionstudios.jdc.content.JDCHeadElement;
+import net.aionstudios.jdc.content.RequestVariables;
+import net.aionstudios.jdc.content.ResponseCode;
+import net.aionstudios.jdc.processor.ElementProcessor;
+import net.aionstudios.jdc.processor.Processor;
+import net.aionstudios.jdc.server.JDCServerInfo;
+import net.aionstudios.jdc.server.cache.CacheVary;
+import net.aionstudios.jdc.server.cache.CachedFragment;
+import net.aionstudios.jdc.server.cache.FragmentCache;
+import net.aionstudios.jdc.server.executor.ExecutorSettings;
+import net.aionstudios.jdc.server.executor.RequestExecutors;
+import net.aionstudios.jdc.server.util.ConsoleErrorUtils;
+
+/**
+ * A .jdc page compiled into the static text between its processors and the processors themselves, so that generating
+ * the page only runs the processors and joins their output with the text.
+ * <p>
+ * Each {@code <jdc>} tag becomes a slot which runs its javaexecute {@link Processor} and is replaced by the output of
+ * its javagenerate {@link ElementProcessor}. Any other element with a javagenerate attribute becomes a slot replaced by
+ * the element with generated content, its content being passed to the processor as its {@link JDCHeadElement} after
+ * any jdc tags in it are replaced. Text outside of slots is sent exactly as written in the page.
+ * <p>
+ * A page with {@code <jdc parallel>} runs every javaexecute processor first, in page order, and then every javagenerate
+ * processor at once on the {@link RequestExecutors#getRenderExecutor()}, their output still written in page order. The
+ * page variables are synchronized for them, while the request variables should only be read. With a timeout, processors
+ * still running once it has passed are cancelled and their output replaced by the page's fallback fragment.
+ * <p>
+ * An {@link AsyncElementProcessor} is started in its turn and the page carries on without waiting for it, in either
+ * mode, holding no render thread while its content is generated. An element holding jdc tags waits for their output
+ * before its processor runs. A page without {@code <jdc parallel>} is joined once its last async processor completes,
+ * so its request thread is free meanwhile, while a parallel or streamed page waits on the request's thread. As
+ * nothing else bounds how long a stage takes, a page with async processors but no timeout is given the executor's
+ * {@link ExecutorSettings#getAsyncTimeout()}, stages still running once it has passed being replaced by the fallback.
+ * Processors and every wait on the request's thread run as managed blocks of the work stealing executor.
+ * <p>
+ * A page with {@code <jdc stream>} is instead written to the response as it renders, so the client can start on its
+ * head while slower processors are still running.
+ * <p>
+ * Processors are resolved into a {@link ProcessorBinding} on the first render, and again once the {@link Website}'s
+ * processors are added or reloaded. Apart from that binding a plan is immutable and may render any number of requests
+ * at once.
+ * @see PageScanner
+ * @author Winter Roberts
+ */
+public class RenderPlan {
+
+	private final long lastModified;
+	private final long length;
+	private final Text text;
+	private final Slot[] slots;
+	private final int[] runOrder;
+	private final boolean parallel;
+	private final long timeout;
+	private final String fallback;
+	private final boolean stream;
+	private volatile ProcessorBinding binding;
+
+	/**
+	 * Creates a render plan.
+	 * @param lastModified	The modification time of the page this plan was compiled from.
+	 * @param length		The length of the page this plan was compiled from.
+	 * @param text			The text of the page.
+	 * @param slots			The slots of the page, in the order they appear.
+	 * @param runOrder		The index of each slot in the order they run.
+	 * @param parallel		True if the javagenerate processors of the page run at once.
+	 * @param timeout		The milliseconds the page's parallel or async processors may take, or 0 for no limit.
+	 * @param fallback		The fragment written in place of a processor which timed out.
+	 * @param stream		True if the page is sent as it renders.
+	 */
+	RenderPlan(long lastModified, long length, Text text, Slot[] slots, int[] runOrder, boolean parallel, long timeout, String fallback, boolean stream) {
+		this.lastModified = lastModified;
+		this.length = length;
+		this.text = text;
+		this.slots = slots;
+		this.runOrder = runOrder;
+		this.parallel = parallel;
+		this.timeout = timeout;
+		this.fallback = fallback;
+		this.stream = stream;
+	}
+
+	/**
+	 * Runs the processors of the page and joins their output with its static text.
+	 * <p>
+	 * A page without {@code <jdc parallel>} whose async processors are still running once the others have completed is
+	 * joined when they do, on whichever thread completes the last of them, leaving the calling thread free. Otherwise
+	 * the page has rendered when this returns.
+	 * @param w		The {@link Website} on which the request was made.
+	 * @param he	The {@link HttpExchange} through which the request will be completed.
+	 * @param vars	The {@link RequestVariables} incorporating request and response variables to create dynamic responses.
+	 * @return The {@link GeneratorResponse} of the page, completed once it has rendered.
+	 */
+	public CompletableFuture<GeneratorResponse> render(Website w, HttpExchange he, RequestVariables vars) {
+		ProcessorBinding b = bind(w, he);
+		if(parallel) {
+			return CompletableFuture.completedFuture(renderParallel(b, w, he, vars));
+		}
+		long deadline = getDeadline(b);
+		Map<String, Object> pageVariables = b.hasAsync() ? Collections.synchronizedMap(new HashMap<String, Object>()) : new HashMap<String, Object>();
+		String[] output = new String[slots.length];
+		List<Integer> waiting = new ArrayList<Integer>();
+		List<CompletableFuture<String>> pending = new ArrayList<CompletableFuture<String>>();
+		for(int i : runOrder) {
+			Slot s = slots[i];
+			if(s.execute!=null) {
+				if(b.getExecute(i)==null) {
+					return serverError();
+				}
+				try {
+					compute(b.getExecute(i), he, vars, pageVariables);
+				} catch (Exception e) {
+					ConsoleErrorUtils.printServerError(ResponseCode.INTERNAL_SERVER_ERROR, s.execute, e);
+					return serverError();
+				}
+			}
+			if(s.generate!=null) {
+				ElementProcessor ep = b.getGenerate(i);
+				if(ep==null) {
+					return serverError();
+				}
+				if(!pending.isEmpty()&&s.head.order.length>0) {
+					//an element holding jdc tags waits for their output, which may still be generating
+					List<Integer> inner = new ArrayList<Integer>();
+					List<Future<String>> innerTasks = new ArrayList<Future<String>>();
+					for(int j : s.head.order) {
+						int n = waiting.indexOf(j);
+						if(n>=0) {
+							inner.add(j);
+							innerTasks.add(pending.get(n));
+						}
+					}
+					if(!await(inner, innerTasks, output, deadline)) {
+						cancel(pending);
+						return serverError();
+					}
+				}
+				if(ep instanceof AsyncElementProcessor&&s.cache==null) {
+					waiting.add(i);
+					pending.add(generateAsync(s, (AsyncElementProcessor) ep, s.head.join(output), he, vars, pageVariables));
+					continue;
+				}
+				try {
+					output[i] = runSlot(s, ep, s.head.join(output), w, he, vars, pageVariables);
+				} catch (Exception e) {
+					ConsoleErrorUtils.printServerError(ResponseCode.INTERNAL_SERVER_ERROR, s.generate, e);
+					cancel(pending);
+					return serverError();
+				}
+			}
+		}
+		if(!pending.isEmpty()) {
+			return join(waiting, pending, output, deadline, vars);
+		}
+		return CompletableFuture.completedFuture(new GeneratorResponse(text.join(output), vars.getResponseCode()));
+	}
+
+	/**
+	 * Joins the page once the async processors it started have completed, holding no thread while they run. Those still
+	 * running at the deadline are cancelled and replaced by the fallback fragment.
+	 * @param indexes	The indexes of the slots whose processors are running.
+	 * @param tasks		The output of each of the slots, in the same order.
+	 * @param output	The output of each slot, written as the processors complete.
+	 * @param deadline	The {@link System#nanoTime()} by which the processors must complete, or 0 for no limit.
+	 * @param vars		The {@link RequestVariables} of the request.
+	 * @return The {@link GeneratorResponse} of the page, completed once every processor has or one has failed.
+	 */
+	private CompletableFuture<GeneratorResponse> join(final List<Integer> indexes, final List<CompletableFuture<String>> tasks, final String[] output, long deadline, final RequestVariables vars) {
+		final CompletableFuture<GeneratorResponse> page = new CompletableFuture<GeneratorResponse>();
+		final AtomicInteger remaining = new AtomicInteger(tasks.size());
+		final ScheduledFuture<?> expiry = deadline>0 ? RequestExecutors.schedule(new Runnable() {
+
+			@Override
+			public void run() {
+				for(int n = 0; n < tasks.size(); n++) {
+					if(tasks.get(n).cancel(true)) {
+						System.err.println("Element processor '"+slots[indexes.get(n)].generate+"' timed out after "+getTimeout(true)+"ms!");
+					}
+				}
+			}
+
+		}, deadline-System.nanoTime(), TimeUnit.NANOSECONDS) : null;
+		for(int n = 0; n < tasks.size(); n++) {
+			final int i = indexes.get(n);
+			tasks.get(n).whenComplete(new BiConsumer<String, Throwable>() {
+
+				@Override
+				public void accept(String content, Throwable t) {
+					if(t instanceof CancellationException) {
+						//timed out, or cancelled as another processor failed
+						output[i] = fallback;
+					} else if(t!=null) {
+						if(page.complete(new GeneratorResponse("", ResponseCode.INTERNAL_SERVER_ERROR))) {
+							Throwable cause = t instanceof CompletionException&&t.getCause()!=null ? t.getCause() : t;
+							ConsoleErrorUtils.printServerError(ResponseCode.INTERNAL_SERVER_ERROR, slots[i].generate, cause instanceof Exception ? (Exception) cause : new ExecutionException(cause));
+							cancel(tasks);
+						}
+						return;
+					} else {
+						output[i] = content;
+					}
+					if(remaining.decrementAndGet()==0) {
+						if(expiry!=null) {
+							expiry.cancel(false);
+						}
+						page.complete(new GeneratorResponse(text.join(output), vars.getResponseCode()));
+					}
+				}
+
+			});
+		}
+		return page;
+	}
+
+	/**
+	 * Runs the javaexecute processors of the page in order, then its javagenerate processors at once.
+	 * @param b		The {@link ProcessorBinding} of the page.
+	 * @param w		The {@link Website} on which the request was made.
+	 * @param he	The {@link HttpExchange} through which the request will be completed.
+	 * @param vars	The {@link RequestVariables} incorporating request and response variables to create dynamic responses.
+	 * @return A {@link GeneratorResponse} having completed processing.
+	 */
+	private GeneratorResponse renderParallel(ProcessorBinding b, Website w, HttpExchange he, RequestVariables vars) {
+		Map<String, Object> pageVariables = Collections.synchronizedMap(new HashMap<String, Object>());
+		String[] output = new String[slots.length];
+		List<Integer> first = new ArrayList<Integer>();
+		List<Integer> second = new ArrayList<Integer>();
+		for(int i : runOrder) {
+			Slot s = slots[i];
+			if(s.execute!=null) {
+				if(b.getExecute(i)==null) {
+					return new GeneratorResponse("", ResponseCode.INTERNAL_SERVER_ERROR);
+				}
+				try {
+					compute(b.getExecute(i), he, vars, pageVariables);
+				} catch (Exception e) {
+					ConsoleErrorUtils.printServerError(ResponseCode.INTERNAL_SERVER_ERROR, s.execute, e);
+					return new GeneratorResponse("", ResponseCode.INTERNAL_SERVER_ERROR);
+				}
+			}
+			if(s.generate!=null) {
+				if(b.getGenerate(i)==null) {
+					return new GeneratorResponse("", ResponseCode.INTERNAL_SERVER_ERROR);
+				}
+				//an element holding jdc tags waits for their output, which is part of its head
+				(s.head.order.length>0 ? second : first).add(i);
+			}
+		}
+		long deadline = getDeadline(b);
+		if(!generate(first, output, deadline, b, w, he, vars, pageVariables)||!generate(second, output, deadline, b, w, he, vars, pageVariables)) {
+			return new GeneratorResponse("", ResponseCode.INTERNAL_SERVER_ERROR);
+		}
+		return new GeneratorResponse(text.join(output), vars.getResponseCode());
+	}
+
+	/**
+	 * Runs the processors of the page, writing it to the response as it renders rather than once it has.
+	 * <p>
+	 * Every javaexecute processor runs first, in page order, as they may still set the response headers. Unless they
+	 * redirected, streamed a file or set a response code other than 200, the headers are then sent and the page is
+	 * written in order, its static text as it is reached and the output of each slot as it completes. What has been
+	 * written is flushed to the client before waiting for a processor. Otherwise the page is rendered and returned.
+	 * <p>
+	 * Async processors, and every processor of a parallel page, are started before anything is written. The others run
+	 * as the page reaches them. Once the headers are sent a processor which fails is replaced by the fallback fragment.
+	 * @param w		The {@link Website} on which the request was made.
+	 * @param he	The {@link HttpExchange} through which the request will be completed.
+	 * @param vars	The {@link RequestVariables} incorporating request and response variables to create dynamic responses.
+	 * @param out	The {@link PageOutput} the page is written to.
+	 * @return Null if the page was written to the output, otherwise a {@link GeneratorResponse} to send as usual.
+	 * @throws IOException If the page could not be written, in which case every processor still running is cancelled.
+	 */
+	public GeneratorResponse stream(Website w, HttpExchange he, RequestVariables vars, PageOutput out) throws IOException {
+		ProcessorBinding b = bind(w, he);
+		Map<String, Object> pageVariables = Collections.synchronizedMap(new HashMap<String, Object>());
+		for(int i : runOrder) {
+			Slot s = slots[i];
+			if((s.execute!=null&&b.getExecute(i)==null)||(s.generate!=null&&b.getGenerate(i)==null)) {
+				return new GeneratorResponse("", ResponseCode.INTERNAL_SERVER_ERROR);
+			}
+			if(s.execute!=null) {
+				try {
+					compute(b.getExecute(i), he, vars, pageVariables);
+				} catch (Exception e) {
+					ConsoleErrorUtils.printServerError(ResponseCode.INTERNAL_SERVER_ERROR, s.execute, e);
+					return new GeneratorResponse("", ResponseCode.INTERNAL_SERVER_ERROR);
+				}
+			}
+		}
+		int code = vars.getResponseCode().getCode();
+		if(vars.getRedirect()!=null||vars.getStreamFile()!=null||(code>=100&&code!=200)) {
+			out = null;
+		}
+		//only started processors are waited for, those the page runs itself can't be timed out
+		long deadline = getDeadline(b);
+		String[] output = new String[slots.length];
+		List<Future<String>> tasks = new ArrayList<Future<String>>(Collections.<Future<String>>nCopies(slots.length, null));
+		try {
+			for(int i : runOrder) {
+				Slot s = slots[i];
+				//an element holding jdc tags is started once their output is complete
+				if(s.generate!=null&&s.head.order.length==0&&isStarted(i, b)) {
+					tasks.set(i, start(i, b, output, w, he, vars, pageVariables));
+				}
+			}
+			if(out!=null) {
+				out.open(text.staticLength);
+			}
+			for(int k = 0; k < text.order.length; k++) {
+				int i = text.order[k];
+				if(out!=null) {
+					out.write(text.segments[k]);
+				}
+				if(slots[i].generate==null) {
+					continue;
+				}
+				if(!complete(i, tasks, output, deadline, b, w, he, vars, pageVariables, out)) {
+					if(out==null) {
+						cancel(tasks);
+						return new GeneratorResponse("", ResponseCode.INTERNAL_SERVER_ERROR);
+					}
+					output[i] = fallback;
+				}
+				if(out!=null&&output[i]!=null) {
+					out.write(output[i]);
+				}
+			}
+		} catch (IOException e) {
+			cancel(tasks);
+			throw e;
+		}
+		if(out==null) {
+			return new GeneratorResponse(text.join(output), vars.getResponseCode());
+		}
+		out.write(text.segments[text.segments.length-1]);
+		return null;
+	}
+
+	/**
+	 * Completes the javagenerate processor of a slot for a streamed page, and first those of the jdc tags inside it,
+	 * running it on the calling thread unless {@link #isStarted(int, ProcessorBinding)}.
+	 * @param i				The index of the slot.
+	 * @param tasks			The started processor of each slot, null for those which weren't yet.
+	 * @param output		The output of each slot, written as the processors complete.
+	 * @param deadline		The {@link System#nanoTime()} by which the processors must complete, or 0 for no limit.
+	 * @param b				The {@link ProcessorBinding} of the page.
+	 * @param w				The {@link Website} on which the request was made.
+	 * @param he			The {@link HttpExchange} through which the request will be completed.
+	 * @param vars			The {@link RequestVariables} of the request.
+	 * @param pageVariables	The synchronized page variables shared by the processors.
+	 * @param out			The {@link PageOutput} to flush before waiting for a processor, or null if the page isn't streamed.
+	 * @return False if a processor failed.
+	 * @throws IOException If the output could not be flushed.
+	 */
+	private boolean complete(int i, List<Future<String>> tasks, String[] output, long deadline, ProcessorBinding b, Website w, HttpExchange he, RequestVariables vars, Map<String, Object> pageVariables, PageOutput out) throws IOException {
+		Slot s = slots[i];
+		for(int j : s.head.order) {
+			if(slots[j].generate!=null&&!complete(j, tasks, output, deadline, b, w, he, vars, pageVariables, out)) {
+				return false;
+			}
+		}
+		if(tasks.get(i)==null&&isStarted(i, b)) {
+			tasks.set(i, start(i, b, output, w, he, vars, pageVariables));
+		} else if(tasks.get(i)==null) {
+			if(out!=null) {
+				out.flush();
+			}
+			try {
+				output[i] = runSlot(s, b.getGenerate(i), s.head.join(output), w, he, vars, pageVariables);
+				return true;
+			} catch (Exception e) {
+				ConsoleErrorUtils.printServerError(ResponseCode.INTERNAL_SERVER_ERROR, s.generate, e);
+				return false;
+			}
+		}
+		if(out!=null&&!tasks.get(i).isDone()) {
+			out.flush();
+		}
+		return await(Collections.singletonList(i), Collections.singletonList(tasks.get(i)), output, deadline);
+	}
+
+	/**
+	 * @param i	The index of a slot.
+	 * @param b	The {@link ProcessorBinding} of the page.
+	 * @return True if the slot's javagenerate processor is started for a streamed page rather than run by the page.
+	 */
+	private boolean isStarted(int i, ProcessorBinding b) {
+		return parallel||(b.getGenerate(i) instanceof AsyncElementProcessor&&slots[i].cache==null);
+	}
+
+	/**
+	 * Runs javagenerate processors at once and waits for their output.
+	 * @param indexes		The indexes of the slots whose processors should run.
+	 * @param output		The output of each slot, written as the processors complete.
+	 * @param deadline		The {@link System#nanoTime()} by which the processors must complete, or 0 for no limit.
+	 * @param b				The {@link ProcessorBinding} of the page.
+	 * @param w				The {@link Website} on which the request was made.
+	 * @param he			The {@link HttpExchange} through which the request will be completed.
+	 * @param vars			The {@link RequestVariables} of the request.
+	 * @param pageVariables	The synchronized page variables shared by the processors.
+	 * @return False if a processor failed, in which case every other processor is cancelled.
+	 */
+	private boolean generate(List<Integer> indexes, String[] output, long deadline, ProcessorBinding b, final Website w, final HttpExchange he, final RequestVariables vars, final Map<String, Object> pageVariables) {
+		List<Future<String>> tasks = new ArrayList<Future<String>>(indexes.size());
+		for(int i : indexes) {
+			tasks.add(start(i, b, output, w, he, vars, pageVariables));
+		}
+		return await(indexes, tasks, output, deadline);
+	}
+
+	/**
+	 * Starts the javagenerate processor of a slot on the {@link RequestExecutors#getRenderExecutor()}, or without a
+	 * thread if it is an {@link AsyncElementProcessor}.
+	 * @param i				The index of the slot.
+	 * @param b				The {@link ProcessorBinding} of the page.
+	 * @param output		The output of each slot, holding that of the jdc tags inside the slot.
+	 * @param w				The {@link Website} on which the request was made.
+	 * @param he			The {@link HttpExchange} through which the request will be completed.
+	 * @param vars			The {@link RequestVariables} of the request.
+	 * @param pageVariables	The synchronized page variables shared by the processors.
+	 * @return The output of the slot, once the processor completes.
+	 */
+	private Future<String> start(int i, ProcessorBinding b, String[] output, final Website w, final HttpExchange he, final RequestVariables vars, final Map<String, Object> pageVariables) {
+		final Slot s = slots[i];
+		final ElementProcessor ep = b.getGenerate(i);
+		final String head = s.head.join(output);
+		if(ep instanceof AsyncElementProcessor&&s.cache==null) {
+			//holds no thread while it waits
+			return generateAsync(s, (AsyncElementProcessor) ep, head, he, vars, pageVariables);
+		}
+		final Callable<String> generator = new Callable<String>() {
+
+			@Override
+			public String call() throws Exception {
+				return generateSlot(s, ep, head, w, he, vars, pageVariables);
+			}
+
+		};
+		FutureTask<String> task = new FutureTask<String>(new Callable<String>() {
+
+			@Override
+			public String call() throws Exception {
+				//processors usually wait on a backend, which the work stealing pool makes up for with another thread
+				return RequestExecutors.runBlocking(generator);
+			}
+
+		});
+		try {
+			RequestExecutors.getRenderExecutor().execute(task);
+		} catch (RejectedExecutionException e) {
+			task.run();
+		}
+		return task;
+	}
+
+	/**
+	 * Waits for the output of processors which are running.
+	 * @param indexes	The indexes of the slots whose processors are running.
+	 * @param tasks		The output of each of the slots, in the same order.
+	 * @param output	The output of each slot, written as the processors complete.
+	 * @param deadline	The {@link System#nanoTime()} by which the processors must complete, or 0 for no limit.
+	 * @return False if a processor failed, in which case every other processor is cancelled.
+	 */
+	private boolean await(List<Integer> indexes, List<Future<String>> tasks, String[] output, final long deadline) {
+		for(int n = 0; n < tasks.size(); n++) {
+			int i = indexes.get(n);
+			final Future<String> task = tasks.get(n);
+			try {
+				//a plain park on a request worker, which the work stealing pool would otherwise not make up for
+				output[i] = RequestExecutors.runBlocking(new Callable<String>() {
+
+					@Override
+					public String call() throws Exception {
+						return deadline>0 ? task.get(Math.max(0, deadline-System.nanoTime()), TimeUnit.NANOSECONDS) : task.get();
+					}
+
+				});
+			} catch (TimeoutException e) {
+				task.cancel(true);
+				System.err.println("Element processor '"+slots[i].generate+"' timed out after "+getTimeout(true)+"ms!");
+				output[i] = fallback;
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				cancel(tasks);
+				return false;
+			} catch (Exception e) {
+				ConsoleErrorUtils.printServerError(ResponseCode.INTERNAL_SERVER_ERROR, slots[i].generate, e instanceof ExecutionException&&e.getCause() instanceof Exception ? (Exception) e.getCause() : e);
+				cancel(tasks);
+				return false;
+			}
+		}
+		return true;
+	}
+
+	/**
+	 * @param b	The {@link ProcessorBinding} of the page.
+	 * @return The {@link System#nanoTime()} by which the page's started processors must complete, or 0 for no limit.
+	 */
+	private long getDeadline(ProcessorBinding b) {
+		long ms = getTimeout(b.hasAsync());
+		return ms>0 ? System.nanoTime()+TimeUnit.MILLISECONDS.toNanos(ms) : 0;
+	}
+
+	/**
+	 * @param async	True if the page has async processors.
+	 * @return The milliseconds the page's started processors may take, the executor's async timeout for a page with async
+	 * processors but no timeout of its own, or 0 for no limit.
+	 */
+	private long getTimeout(boolean async) {
+		return timeout>0||!async ? timeout : JDCServerInfo.getExecutorSettings().getAsyncTimeout();
+	}
+
+	/**
+	 * Runs a javaexecute processor on the calling thread, as a managed block since it may wait on a backend.
+	 * @param p				The {@link Processor}.
+	 * @param he			The {@link HttpExchange} through which the request will be completed.
+	 * @param vars			The {@link RequestVariables} of the request.
+	 * @param pageVariables	The page variables shared by the page's processors.
+	 * @throws Exception If the processor failed.
+	 */
+	private static void compute(final Processor p, final HttpExchange he, final RequestVariables vars, final Map<String, Object> pageVariables) throws Exception {
+		RequestExecutors.runBlocking(new Callable<Void>() {
+
+			@Override
+			public Void call() throws Exception {
+				p.startCompute(he, vars, pageVariables);
+				return null;
+			}
+
+		});
+	}
+
+	/**
+	 * Runs the javagenerate processor of a slot on the calling thread, as a managed block since it may wait on a backend.
+	 * @param s				The slot.
+	 * @param ep			The slot's {@link ElementProcessor}.
+	 * @param head			The content of the slot's tag or element, passed to the processor.
+	 * @param w				The {@link Website} on which the request was made.
+	 * @param he			The {@link HttpExchange} through which the request will be completed.
+	 * @param vars			The {@link RequestVariables} of the request.
+	 * @param pageVariables	The page variables shared by the page's processors.
+	 * @return The output of the slot.
+	 * @throws Exception If the processor failed.
+	 */
+	private static String runSlot(final Slot s, final ElementProcessor ep, final String head, final Website w, final HttpExchange he, final RequestVariables vars, final Map<String, Object> pageVariables) throws Exception {
+		return RequestExecutors.runBlocking(new Callable<String>() {
+
+			@Override
+			public String call() throws Exception {
+				return generateSlot(s, ep, head, w, he, vars, pageVariables);
+			}
+
+		});
+	}
+
+	/**
+	 * Runs the javagenerate processor of a slot, or finds its output in the website's {@link FragmentCache} if the slot
+	 * is cached.
+	 * @param s				The slot.
+	 * @param ep			The slot's {@link ElementProcessor}.
+	 * @param head			The content of the slot's tag or element, passed to the processor.
+	 * @param w				The {@link Website} on which the request was made.
+	 * @param he			The {@link HttpExchange} through which the request will be completed.
+	 * @param vars			The {@link RequestVariables} of the request.
+	 * @param pageVariables	The page variables shared by the page's processors.
+	 * @return The output of the slot.
+	 * @throws Exception If the processor failed.
+	 */
+	private static String generateSlot(final Slot s, final ElementProcessor ep, final String head, final Website w, final HttpExchange he, final RequestVariables vars, final Map<String, Object> pageVariables) throws Exception {
+		if(s.cache==null) {
+			JDCHeadElement h = new JDCHeadElement(head);
+			String content = getContent(ep, h, he, vars, pageVariables);
+			return s.tag!=null ? s.wrap(content, h.getAttributes()) : content;
+		}
+		CachedFragment f = w.getFragmentCache().get(s.cache.getKey(s.generate, head, he), s.cache.ttl, s.cache.stale, new Callable<CachedFragment>() {
+
+			@Override
+			public CachedFragment call() throws Exception {
+				JDCHeadElement h = new JDCHeadElement(head);
+				String content = getContent(ep, h, he, vars, pageVariables);
+				return new CachedFragment(content, h.getAttributes());
+			}
+
+		});
+		return s.tag!=null ? s.wrap(f.getContent(), f.getAttributes()) : f.getContent();
+	}
+
+	/**
+	 * Runs an element processor on the calling thread, waiting for an {@link AsyncElementProcessor}'s content.
+	 * @param ep			The {@link ElementProcessor}.
+	 * @param h				The {@link JDCHeadElement} passed to the processor.
+	 * @param he			The {@link HttpExchange} through which the request will be completed.
+	 * @param vars			The {@link RequestVariables} of the request.
+	 * @param pageVariables	The page variables shared by the page's processors.
+	 * @return The content generated by the processor.
+	 * @throws Exception If the processor failed.
+	 */
+	private static String getContent(ElementProcessor ep, JDCHeadElement h, HttpExchange he, RequestVariables vars, Map<String, Object> pageVariables) throws Exception {
+		if(!(ep instanceof AsyncElementProcessor)) {
+			return ep.getContent(h, he, vars, pageVariables);
+		}
+		try {
+			return startAsync((AsyncElementProcessor) ep, h, he, vars, pageVariables).get();
+		} catch (ExecutionException e) {
+			throw e.getCause() instanceof Exception ? (Exception) e.getCause() : e;
+		}
+	}
+
+	/**
+	 * Starts an {@link AsyncElementProcessor} of a slot.
+	 * @param s				The slot.
+	 * @param ep			The slot's {@link AsyncElementProcessor}.
+	 * @param head			The content of the slot's tag or element, passed to the processor.
+	 * @param he			The {@link HttpExchange} through which the request will be completed.
+	 * @param vars			The {@link RequestVariables} of the request.
+	 * @param pageVariables	The page variables shared by the page's processors.
+	 * @return The output of the slot, once the processor completes.
+	 */
+	private static CompletableFuture<String> generateAsync(final Slot s, AsyncElementProcessor ep, String head, HttpExchange he, RequestVariables vars, Map<String, Object> pageVariables) {
+		final JDCHeadElement h = new JDCHeadElement(head);
+		return startAsync(ep, h, he, vars, pageVariables).thenApply(new Function<String, String>() {
+
+			@Override
+			public String apply(String content) {
+				return s.tag!=null ? s.wrap(content, h.getAttributes()) : content;
+			}
+
+		});
+	}
+
+	/**
+	 * Starts an {@link AsyncElementProcessor}, failing its output if the processor throws rather than returning a stage.
+	 * @param ep			The {@link AsyncElementProcessor}.
+	 * @param h				The {@link JDCHeadElement} passed to the processor.
+	 * @param he			The {@link HttpExchange} through which the request will be completed.
+	 * @param vars			The {@link RequestVariables} of the request.
+	 * @param pageVariables	The page variables shared by the page's processors.
+	 * @return The content generated by the processor, once it completes.
+	 */
+	private static CompletableFuture<String> startAsync(AsyncElementProcessor ep, JDCHeadElement h, HttpExchange he, RequestVariables vars, Map<String, Object> pageVariables) {
+		try {
+			CompletionStage<String> stage = ep.getContentAsync(h, he, vars, pageVariables);
+			if(stage==null) {
+				throw new IllegalStateException("Async element processor returned no stage");
+			}
+			return stage.toCompletableFuture();
+		} catch (Exception e) {
+			CompletableFuture<String> failed = new CompletableFuture<String>();
+			failed.completeExceptionally(e);
+			return failed;
+		}
+	}
+
+	/**
+	 * Finds the processors of the page, resolving them again if the website's processors have changed since they
+	 * were last resolved. A processor which doesn't exist is reported once, when it is resolved, and each request
+	 * for the page fails until the page or the website's processors change.
+	 * @param w		The {@link Website} on which the request was made.
+	 * @param he	The {@link HttpExchange} of the request, for the page's path in reports.
+	 * @return The current {@link ProcessorBinding}.
+	 */
+	private ProcessorBinding bind(Website w, HttpExchange he) {
+		long generation = w.getProcessorGeneration();
+		ProcessorBinding b = binding;
+		if(b!=null&&b.isCurrent(generation)) {
+			return b;
+		}
+		synchronized(this) {
+			b = binding;
+			if(b!=null&&b.isCurrent(generation)) {
+				return b;
+			}
+			String page = he!=null ? he.getRequestURI().getPath() : "?";
+			Processor[] executes = new Processor[slots.length];
+			ElementProcessor[] generates = new ElementProcessor[slots.length];
+			for(int i = 0; i < slots.length; i++) {
+				if(slots[i].execute!=null&&(executes[i] = w.resolveProcessor(slots[i].execute))==null) {
+					System.err.println("Processor '"+slots[i].execute+"' of page '"+page+"' doesn't exist, the page fails until it or the processors change!");
+				}
+				if(slots[i].generate!=null&&(generates[i] = w.resolveElementProcessor(slots[i].generate))==null) {
+					System.err.println("Element processor '"+slots[i].generate+"' of page '"+page+"' doesn't exist, the page fails until it or the processors change!");
+				}
+			}
+			b = new ProcessorBinding(generation, executes, generates);
+			binding = b;
+			return b;
+		}
+	}
+
+	/**
+	 * @return A completed {@link GeneratorResponse} for a page which failed.
+	 */
+	private static CompletableFuture<GeneratorResponse> serverError() {
+		return CompletableFuture.completedFuture(new GeneratorResponse("", ResponseCode.INTERNAL_SERVER_ERROR));
+	}
+
+	/**
+	 * @param tasks	Processors to cancel, interrupting those still running, null for slots whose processor wasn't started.
+	 */
+	private static void cancel(List<? extends Future<String>> tasks) {
+		for(Future<String> task : tasks) {
+			if(task!=null) {
+				task.cancel(true);
+			}
+		}
+	}
+
+	/**
+	 * @param lastModified	The modification time of the page file now.
+	 * @param length		The length of the page file now.
+	 * @return True if the page is unchanged since this plan was compiled.
+	 */
+	boolean isCurrent(long lastModified, long length) {
+		return this.lastModified==lastModified&&this.length==length;
+	}
+
+	/**
+	 * @return True if the page is sent as it renders, see {@link #stream(Website, HttpExchange, RequestVariables, PageOutput)}.
+	 */
+	public boolean isStreamed() {
+		return stream;
+	}
+
+	/**
+	 * @return The number of processor slots in the page.
+	 */
+	public int getSlotCount() {
+		return slots.length;
+	}
+
+	/**
+	 * @return The number of characters of static text in the page.
+	 */
+	public int getStaticLength() {
+		return text.staticLength;
+	}
+
+	/**
+	 * Static text with the output of slots in between.
+	 */
+	static class Text {
+
+		private final String[] segments;
+		private final int[] order;
+		private final int staticLength;
+
+		/**
+		 * Creates text.
+		 * @param segments	The static text, one more segment than there are slots in it.
+		 * @param order		The index of the slot whose output follows each segment but the last.
+		 */
+		Text(String[] segments, int[] order) {
+			this.segments = segments;
+			this.order = order;
+			int l = 0;
+			for(String s : segments) {
+				l += s.length();
+			}
+			this.staticLength = l;
+		}
+
+		/**
+		 * @param output	The output of each slot, null for none.
+		 * @return The text with the output of its slots.
+		 */
+		private String join(String[] output) {
+			if(order.length==0) {
+				return segments[0];
+			}
+			int l = staticLength;
+			for(int i : order) {
+				l += output[i]!=null ? output[i].length() : 0;
+			}
+			StringBuilder sb = new StringBuilder(l);
+			for(int i = 0; i < order.length; i++) {
+				sb.append(segments[i]);
+				if(output[order[i]]!=null) {
+					sb.append(output[order[i]]);
+				}
+			}
+			return sb.append(segments[segments.length-1]).toString();
+		}
+
+	}
+
+	/**
+	 * A place in the page where processors run and their output is written.
+	 */
+	static class Slot {
+
+		private final String execute;
+		private final String generate;
+		private final String tag;
+		private final String startTag;
+		private final Map<String, String> attributes;
+		private final Text head;
+		private final FragmentPolicy cache;
+
+		/**
+		 * Creates a slot.
+		 * @param execute		The path of the javaexecute processor, or null if there is none.
+		 * @param generate		The path of the javagenerate processor, or null if there is none.
+		 * @param tag			The name of the element whose content is generated, or null for a jdc tag.
+		 * @param startTag		The start tag of the element as written in the page, without the attributes of the slot.
+		 * @param attributes	The name of each attribute of the element besides those of the slot and the attribute as written.
+		 * @param head			The content of the tag or element.
+		 * @param cache			The {@link FragmentPolicy} of the slot, or null if its output isn't cached.
+		 */
+		Slot(String execute, String generate, String tag, String startTag, Map<String, String> attributes, Text head, FragmentPolicy cache) {
+			this.execute = execute;
+			this.generate = generate;
+			this.tag = tag;
+			this.startTag = startTag;
+			this.attributes = attributes;
+			this.head = head;
+			this.cache = cache;
+		}
+
+		/**
+		 * Writes the element whose content was generated, with any attributes the processor set on its head.
+		 * @param content	The generated content.
+		 * @param set		The attributes set on the {@link JDCHeadElement} passed to the processor.
+		 * @return The element as HTML.
+		 */
+		private String wrap(String content, Map<String, String> set) {
+			StringBuilder sb = new StringBuilder();
+			if(set==null||set.isEmpty()) {
+				sb.append(startTag);
+			} else {
+				Map<String, String> a = new LinkedHashMap<String, String>(attributes);
+				for(Map.Entry<String, String> e : set.entrySet()) {
+					a.put(e.getKey(), e.getKey()+"=\""+escapeAttribute(e.getValue())+"\"");
+				}
+				sb.append('<').append(tag);
+				for(String attribute : a.values()) {
+					sb.append(' ').append(attribute);
+				}
+				sb.append('>');
+			}
+			if(content!=null) {
+				sb.append(content);
+			}
+			return sb.append("</").append(tag).append('>').toString();
+		}
+
+		/**
+		 * @param value	An attribute value.
+		 * @return The value escaped for a double quoted attribute.
+		 */
+		private static String escapeAttribute(String value) {
+			if(value==null) {
+				return "";
+			}
+			return value.replace("&", "&amp;").replace("\"", "&quot;").replace("<", "&lt;").replace(">", "&gt;");
+		}
+
+	}
+
+	/**
+	 * How the output of a slot is kept in the {@link FragmentCache}, read from its cache attributes.
+	 * <p>
+	 * The output is fresh for the seconds of the cache attribute and may be served stale while it is generated again
+	 * for the seconds of cache-stale. A slot's output is kept apart for every different content the slot has, and for
+	 * every different value of the request details listed in cache-vary, as read by {@link CacheVary}.
+	 */
+	static class FragmentPolicy {
+
+		private final long ttl;
+		private final long stale;
+		private final CacheVary vary;
+
+		/**
+		 * Creates a fragment policy.
+		 * @param ttl	The milliseconds the output is fresh for.
+		 * @param stale	The milliseconds the output may be served stale for once it has expired.
+		 * @param vary	The request details the output varies by, as written in cache-vary.
+		 */
+		FragmentPolicy(long ttl, long stale, String vary) {
+			this.ttl = ttl;
+			this.stale = stale;
+			this.vary = new CacheVary(vary);
+		}
+
+		/**
+		 * @param generate	The path of the slot's processor.
+		 * @param head		The content of the slot for this request.
+		 * @param he		The {@link HttpExchange} of the request.
+		 * @return The key of the slot's output for this request.
+		 */
+		String getKey(String generate, String head, HttpExchange he) {
+			StringBuilder sb = new StringBuilder(generate.length()+head.length()+32).append(generate).append('\0').append(head);
+			return vary.appendKey(sb, he).toString();
+		}
+
+	}
+
+}
@@ -0,0 +1,76 @@
+package net.aionstudios.jdc.server.content;
+
+import java.io.File;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import net.aionstudios.jdc.server.JDCServerInfo;
+
+/**
+ * Holds the {@link RenderPlan} of each .jdc page of a {@link Website} which has been requested.
+ * <p>
+ * A page is compiled on its first request and again whenever its file's modification time or length has changed since,
+ * checked on each request. Pages which no longer exist are dropped when they are next requested.
+ * @author Winter Roberts
+ */
+public class RenderPlanCache {
+
+	private Map<String, RenderPlan> plans = new ConcurrentHashMap<String, RenderPlan>();
+	private AtomicLong hits = new AtomicLong(0);
+	private AtomicLong compiles = new AtomicLong(0);
+
+	/**
+	 * Finds the render plan of a page, compiling it if it isn't cached or the page has changed.
+	 * @param page	The .jdc page requested.
+	 * @return The {@link RenderPlan}, or null if the page doesn't exist or could not be read.
+	 */
+	public RenderPlan get(File page) {
+		String key = page.getAbsolutePath();
+		//read before the content, a change in between leaves a plan which is compiled again on the next request
+		long modified = page.lastModified();
+		long length = page.length();
+		RenderPlan p = plans.get(key);
+		if(p!=null&&p.isCurrent(modified, length)) {
+			hits.incrementAndGet();
+			return p;
+		}
+		String source = JDCServerInfo.readFile(page);
+		if(source==null) {
+			plans.remove(key);
+			return null;
+		}
+		p = PageScanner.compile(source, modified, length);
+		plans.put(key, p);
+		compiles.incrementAndGet();
+		return p;
+	}
+
+	/**
+	 * Drops a page's render plan.
+	 * @param page	The .jdc page.
+	 */
+	public void remove(File page) {
+		plans.remove(page.getAbsolutePath());
+	}
+
+	/**
+	 * Drops every render plan, so each page is compiled again on its next request.
+	 */
+	public void clear() {
+		plans.clear();
+	}
+
+	/**
+	 * Prints the state of this cache to the console.
+	 */
+	public void printCache() {
+		System.out.println("PAGES:         "+plans.size());
+		System.out.println("HITS:          "+hits.get());
+		System.out.println("COMPILES:      "+compiles.get());
+		for(Map.Entry<String, RenderPlan> e : plans.entrySet()) {
+			System.out.println(e.getKey()+" ("+e.getValue().getSlotCount()+" slots, "+e.getValue().getStaticLength()+" static chars"+(e.getValue().isStreamed() ? ", streamed" : "")+")");
+		}
+	}
+
+}
@@ -3,11 +3,13 @@ package net.aionstudios.jdc.server.content;
 import java.io.File;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.json.JSONArray;
 import org.json.JSONException;
@@ -21,7 +23,21 @@ import net.aionstudios.jdc.processor.ElementProcessor;
 import net.aionstudios.jdc.processor.Processor;
 import net.aionstudios.jdc.processor.ProcessorSet;
 import net.aionstudios.jdc.server.JDCServerInfo;
+import net.aionstudios.jdc.server.cache.FileCacheSettings;
+import net.aionstudios.jdc.server.cache.FragmentCache;
+import net.aionstudios.jdc.server.cache.FragmentCacheSettings;
+import net.aionstudios.jdc.server.cache.PageCache;
+import net.aionstudios.jdc.server.cache.PageCacheSettings;
+import net.aionstudios.jdc.server.cache.StaticFileCache;
+import net.aionstudios.jdc.server.coalesce.CoalesceSettings;
+import net.aionstudios.jdc.server.coalesce.RequestCoalescer;
+import net.aionstudios.jdc.server.compression.CompressionSettings;
+import net.aionstudios.jdc.server.compression.Precompressor;
+import net.aionstudios.jdc.server.limit.ConcurrencyLimiter;
+import net.aionstudios.jdc.server.limit.LimiterSettings;
+import net.aionstudios.jdc.server.proxy.BalanceMode;
 import net.aionstudios.jdc.server.proxy.ProxyManager;
+import net.aionstudios.jdc.server.proxy.ProxySettings;
 import net.aionstudios.jdc.server.util.ConsoleErrorUtils;
 import net.aionstudios.jdc.server.util.FormatUtils;
 
@@ -32,11 +48,20 @@ import net.aionstudios.jdc.server.util.FormatUtils;
 public class Website {
 	
 	private String name;
-	private String[] addresses;
+	private volatile String[] addresses;
 	private boolean sslOn;
 	private Map<String, ContentProcessor> processors;
+	private AtomicLong processorGeneration = new AtomicLong(0);
 	private Map<ResponseCode, File> errorMappings;
 	private ProxyManager pm;
+	private ConcurrencyLimiter limiter;
+	private ProxySettings proxySettings;
+	private StaticFileCache fileCache;
+	private FragmentCache fragmentCache;
+	private PageCache pageCache;
+	private RequestCoalescer coalescer;
+	private RenderPlanCache renderPlanCache = new RenderPlanCache();
+	private CompressionSettings compressionSettings;
 	
 	private File websiteFolder;
 	
@@ -46,10 +71,12 @@ public class Website {
 	private File processorConfig;
 	private File errorsConfig;
 	private File proxiesConfig;
+	private File settingsConfig;
 	
 	private JSONObject processorJson = FormatUtils.getLinkedJsonObject();
 	private JSONObject errorJson = FormatUtils.getLinkedJsonObject();
 	private JSONObject proxyJson = FormatUtils.getLinkedJsonObject();
+	private JSONObject settingsJson = FormatUtils.getLinkedJsonObject();
 	
 	/**
 	 * Creates a new website reading its configurations and loading its backend code.
@@ -67,6 +94,7 @@ public class Website {
 		processorConfig = new File("./websites/"+name+"/processors.json");
 		errorsConfig = new File("./websites/"+name+"/errors.json");
 		proxiesConfig = new File("./websites/"+name+"/proxies.json");
+		settingsConfig = new File("./websites/"+name+"/settings.json");
 		if(!websiteFolder.exists()) {
 			websiteFolder.mkdirs();
 		}
@@ -78,6 +106,7 @@ public class Website {
 		}
 		readProcessorsConfig();
 		readErrorsConfig();
+		readSettingsConfig();
 		readProxiesConfig();
 		WebsiteManager.addWebsite(this);
 	}
@@ -125,6 +154,27 @@ public class Website {
 				e.printStackTrace();
 			}
 		}
+		processorsChanged();
+	}
+
+	/**
+	 * Marks the processors of this website as changed, so pages resolve their processors again on their next request,
+	 * and drops fragments and pages generated by the processors which were replaced.
+	 */
+	void processorsChanged() {
+		processorGeneration.incrementAndGet();
+		if(fragmentCache!=null) {
+			fragmentCache.clear();
+			pageCache.purge(null);
+		}
+	}
+
+	/**
+	 * @return A number which changes whenever a {@link ContentProcessor} of this website is added or has its
+	 * {@link JDC} replaced, so processors resolved by an older generation are resolved again.
+	 */
+	public long getProcessorGeneration() {
+		return processorGeneration.get();
 	}
 	
 	/**
@@ -197,7 +247,10 @@ public class Website {
 	 * @see {@link ProxyManager}
 	 */
 	public void readProxiesConfig() {
-		pm = new ProxyManager();
+		if(pm!=null) {
+			pm.close();
+		}
+		pm = new ProxyManager(proxySettings);
 		if(proxiesConfig.exists()) {
 			proxyJson = JDCServerInfo.readConfig(proxiesConfig);
 		} else {
@@ -228,7 +281,17 @@ public class Website {
 		for(int i = 0; i < proxyArray.length(); i++) {
 			try {
 				JSONObject prx = proxyArray.getJSONObject(i);
-				pm.putProxy(prx.getString("context"), prx.getString("proxy_url"));
+				List<String> upstreams = new ArrayList<String>();
+				if(prx.has("upstreams")) {
+					JSONArray ua = prx.getJSONArray("upstreams");
+					for(int j = 0; j < ua.length(); j++) {
+						upstreams.add(ua.getString(j));
+					}
+				} else {
+					upstreams.add(prx.getString("proxy_url"));
+				}
+				BalanceMode mode = prx.has("balance") ? BalanceMode.fromConfigName(prx.getString("balance")) : BalanceMode.LEAST_OUTSTANDING;
+				pm.putProxy(prx.getString("context"), upstreams, mode, prx.has("health_check") ? prx.getString("health_check") : null);
 			} catch (JSONException e) {
 				System.err.println("Failed to interpret proxies config!");
 				e.printStackTrace();
@@ -236,6 +299,80 @@ public class Website {
 		}
 	}
 	
+	/**
+	 * Reads the settings file for this website, which tunes how the server handles its requests.
+	 * @see {@link ConcurrencyLimiter}
+	 * @see {@link ProxySettings}
+	 * @see {@link StaticFileCache}
+	 * @see {@link CompressionSettings}
+	 */
+	public void readSettingsConfig() {
+		if(settingsConfig.exists()) {
+			settingsJson = JDCServerInfo.readConfig(settingsConfig);
+		} else {
+			try {
+				settingsConfig.createNewFile();
+				settingsJson.put("limiter", LimiterSettings.getDefaultConfig());
+				settingsJson.put("proxy", ProxySettings.getDefaultConfig());
+				settingsJson.put("file_cache", FileCacheSettings.getDefaultConfig());
+				settingsJson.put("fragment_cache", FragmentCacheSettings.getDefaultConfig());
+				settingsJson.put("page_cache", PageCacheSettings.getDefaultConfig());
+				settingsJson.put("coalesce", CoalesceSettings.getDefaultConfig());
+				settingsJson.put("compression", CompressionSettings.getDefaultConfig());
+				JDCServerInfo.writeConfig(settingsJson, settingsConfig);
+			} catch (IOException e) {
+				System.err.println("Encountered an IOException during config file operations!");
+				e.printStackTrace();
+			} catch (JSONException e) {
+				System.err.println("Encountered an IOException during config file operations!");
+				e.printStackTrace();
+			}
+		}
+		LimiterSettings ls = new LimiterSettings();
+		ProxySettings ps = new ProxySettings();
+		FileCacheSettings fs = new FileCacheSettings();
+		FragmentCacheSettings frs = new FragmentCacheSettings();
+		PageCacheSettings pcs = new PageCacheSettings();
+		CoalesceSettings cos = new CoalesceSettings();
+		CompressionSettings cs = new CompressionSettings();
+		try {
+			if(settingsJson.has("limiter")) {
+				ls = new LimiterSettings(settingsJson.getJSONObject("limiter"));
+			}
+			if(settingsJson.has("proxy")) {
+				ps = new ProxySettings(settingsJson.getJSONObject("proxy"));
+			}
+			if(settingsJson.has("file_cache")) {
+				fs = new FileCacheSettings(settingsJson.getJSONObject("file_cache"));
+			}
+			if(settingsJson.has("fragment_cache")) {
+				frs = new FragmentCacheSettings(settingsJson.getJSONObject("fragment_cache"));
+			}
+			if(settingsJson.has("page_cache")) {
+				pcs = new PageCacheSettings(settingsJson.getJSONObject("page_cache"));
+			}
+			if(settingsJson.has("coalesce")) {
+				cos = new CoalesceSettings(settingsJson.getJSONObject("coalesce"));
+			}
+			if(settingsJson.has("compression")) {
+				cs = new CompressionSettings(settingsJson.getJSONObject("compression"));
+			}
+		} catch (JSONException e) {
+			System.err.println("Failed to interpret settings config!");
+			e.printStackTrace();
+		}
+		limiter = new ConcurrencyLimiter(ls);
+		proxySettings = ps;
+		compressionSettings = cs;
+		if(fileCache!=null) {
+			fileCache.close();
+		}
+		fileCache = new StaticFileCache(name, contentFolder, fs);
+		fragmentCache = new FragmentCache(frs);
+		pageCache = new PageCache(pcs);
+		coalescer = new RequestCoalescer(cos);
+	}
+	
 	/**
 	 * @return A string, the name of this website, as read from its configuration.
 	 */
@@ -250,6 +387,10 @@ public class Website {
 		return addresses;
 	}
 	
+	/**
+	 * Adds a host address to this website and updates the host index of the {@link WebsiteManager}.
+	 * @param s		The host address, which may be a wildcard like *.example.com.
+	 */
 	public void addAddress(String s) {
 		String[] addrNew = new String[addresses.length+1];
 		for (int i = 0; i < addresses.length; i++) {
@@ -258,9 +399,15 @@ public class Website {
 		}
 		addrNew[addrNew.length-1] = s;
 		addresses = addrNew;
+		WebsiteManager.reindexAddresses();
 	}
 	
+	/**
+	 * Removes a host address from this website and updates the host index of the {@link WebsiteManager}.
+	 * @param s		The host address.
+	 */
 	public void removeAddress(String s) {
+		if (!Arrays.asList(addresses).contains(s)) return;
 		String[] addrNew = new String[addresses.length-1];
 		boolean found = false;
 		for (int i = 0; i < addresses.length; i++) {
@@ -270,7 +417,10 @@ public class Website {
 				addrNew[(i-(found?1:0))] = addresses[i];
 			}
 		}
-		addresses = found?addrNew:addresses;
+		if (found) {
+			addresses = addrNew;
+			WebsiteManager.reindexAddresses();
+		}
 	}
 	/**
 	 * @return True if this website is configured to allow access through the {@link JDCSecureServer}.
@@ -292,6 +442,7 @@ public class Website {
 	 */
 	public void addContentProcessor(ContentProcessor processor) {
 		processors.put(processor.getName(), processor);
+		processorsChanged();
 	}
 	
 	/**
@@ -301,24 +452,12 @@ public class Website {
 	 * @return An {@link ElementProcessor} to process on the tag and generate HTML.
 	 */
 	public ElementProcessor locateElementProcessor(ResponseCode rc, String path) {
-		String[] points = path.split("\\.", 3);
-		if(points.length!=3) {
+		ElementProcessor ep = resolveElementProcessor(path);
+		if(ep==null) {
 			rc = ResponseCode.INTERNAL_SERVER_ERROR;
 			ConsoleErrorUtils.printServerError(rc, path, Thread.currentThread().getStackTrace());
-			return null;
-		}
-		if(processors.containsKey(points[0])) {
-			ContentProcessor cp = processors.get(points[0]);
-			if(cp.getJDC().getProcessorManager().getProcessorSets().containsKey(points[1])) {
-				ProcessorSet ps = cp.getJDC().getProcessorManager().getProcessorSets().get(points[1]);
-				if(ps.getElementProcessors().containsKey(points[2])) {
-					return ps.getElementProcessors().get(points[2]);
-				}
-			}
 		}
-		rc = ResponseCode.INTERNAL_SERVER_ERROR;
-		ConsoleErrorUtils.printServerError(rc, path, Thread.currentThread().getStackTrace());
-		return null;
+		return ep;
 	}
 	
 	/**
@@ -328,24 +467,50 @@ public class Website {
 	 * @return A {@link Processor} to process without dynamically generating content.
 	 */
 	public Processor locateProcessor(ResponseCode rc, String path) {
-		String[] points = path.split("\\.", 3);
-		if(points.length!=3) {
+		Processor p = resolveProcessor(path);
+		if(p==null) {
 			rc = ResponseCode.INTERNAL_SERVER_ERROR;
 			ConsoleErrorUtils.printServerError(rc, path, Thread.currentThread().getStackTrace());
+		}
+		return p;
+	}
+	
+	/**
+	 * Finds an {@link ElementProcessor} without reporting it if it doesn't exist.
+	 * @param path		The '.' delimited string naming an {@link ElementProcessor} like [jdc_name].[processor_set].[element_processor] .
+	 * @return The {@link ElementProcessor}, or null if it doesn't exist.
+	 */
+	public ElementProcessor resolveElementProcessor(String path) {
+		ProcessorSet ps = resolveProcessorSet(path);
+		return ps!=null ? ps.getElementProcessors().get(path.substring(path.indexOf('.', path.indexOf('.')+1)+1)) : null;
+	}
+	
+	/**
+	 * Finds a {@link Processor} without reporting it if it doesn't exist.
+	 * @param path		The '.' delimited string naming a {@link Processor} like [jdc_name].[processor_set].[processor] .
+	 * @return The {@link Processor}, or null if it doesn't exist.
+	 */
+	public Processor resolveProcessor(String path) {
+		ProcessorSet ps = resolveProcessorSet(path);
+		return ps!=null ? ps.getProcessors().get(path.substring(path.indexOf('.', path.indexOf('.')+1)+1)) : null;
+	}
+	
+	/**
+	 * @param path		The '.' delimited string naming a processor like [jdc_name].[processor_set].[processor] .
+	 * @return The {@link ProcessorSet} named by the first two parts of the path, or null if it doesn't exist or the
+	 * path doesn't have three parts.
+	 */
+	private ProcessorSet resolveProcessorSet(String path) {
+		int a = path.indexOf('.');
+		int b = a>=0 ? path.indexOf('.', a+1) : -1;
+		if(b<0) {
 			return null;
 		}
-		if(processors.containsKey(points[0])) {
-			ContentProcessor cp = processors.get(points[0]);
-			if(cp.getJDC().getProcessorManager().getProcessorSets().containsKey(points[1])) {
-				ProcessorSet ps = cp.getJDC().getProcessorManager().getProcessorSets().get(points[1]);
-				if(ps.getProcessors().containsKey(points[2])) {
-					return ps.getProcessors().get(points[2]);
-				}
-			}
+		ContentProcessor cp = processors.get(path.substring(0, a));
+		if(cp==null||cp.getJDC()==null) {
+			return null;
 		}
-		rc = ResponseCode.INTERNAL_SERVER_ERROR;
-		ConsoleErrorUtils.printServerError(rc, path, Thread.currentThread().getStackTrace());
-		return null;
+		return cp.getJDC().getProcessorManager().getProcessorSets().get(path.substring(a+1, b));
 	}
 	
 	/**
@@ -425,4 +590,75 @@ public class Website {
 		return pm;
 	}
 
+	/**
+	 * @return This website's {@link ConcurrencyLimiter}.
+	 */
+	public ConcurrencyLimiter getConcurrencyLimiter() {
+		return limiter;
+	}
+
+	/**
+	 * @return This website's {@link StaticFileCache}.
+	 */
+	public StaticFileCache getFileCache() {
+		return fileCache;
+	}
+
+	/**
+	 * @return This website's {@link FragmentCache}.
+	 */
+	public FragmentCache getFragmentCache() {
+		return fragmentCache;
+	}
+
+	/**
+	 * @return This website's {@link PageCache}.
+	 */
+	public PageCache getPageCache() {
+		return pageCache;
+	}
+
+	/**
+	 * @return This website's {@link RequestCoalescer}.
+	 */
+	public RequestCoalescer getRequestCoalescer() {
+		return coalescer;
+	}
+
+	/**
+	 * @return This website's {@link RenderPlanCache}.
+	 */
+	public RenderPlanCache getRenderPlanCache() {
+		return renderPlanCache;
+	}
+
+	/**
+	 * @return This website's {@link CompressionSettings}.
+	 */
+	public CompressionSettings getCompressionSettings() {
+		return compressionSettings;
+	}
+
+	/**
+	 * Builds the precompressed variants of this website's static files in the background if its settings ask for it at start.
+	 * @see {@link Precompressor}
+	 */
+	public void precompressContent() {
+		if(compressionSettings.isPrecompressAtStart()) {
+			Precompressor.precompressFolder(contentFolder, compressionSettings);
+		}
+	}
+
+	/**
+	 * Releases the background resources of this website, its upstream connections and content folder watch.
+	 */
+	public void close() {
+		if(pm!=null) {
+			pm.close();
+		}
+		if(fileCache!=null) {
+			fileCache.close();
+		}
+	}
+
 }
@@ -1,23 +1,73 @@
 package net.aionstudios.jdc.server.content;
 
-import java.util.HashMap;
+import java.util.Collections;
+import java.util.LinkedHashMap;
 import java.util.Map;
 import java.util.Map.Entry;
 
 /**
  * Manages all {@link Website}s exposed by the server.
+ * <p>
+ * Websites and their addresses are published as immutable copies which are replaced whenever they change,
+ * so request threads look up websites without locking and never see a partially updated map.
  * @author Winter Roberts
  */
 public class WebsiteManager {
 	
-	public static Map<String, Website> websites = new HashMap<>();
+	private static final Object lock = new Object();
+	private static volatile Map<String, Website> websites = Collections.emptyMap();
+	private static volatile HostIndex hosts = new HostIndex(Collections.<Website>emptyList());
 	
 	/**
-	 * Adds a {@link Website} to the list available from the server.
+	 * Adds a {@link Website} to the list available from the server, replacing any with the same name.
 	 * @param ws	The {@link Website} to be added.
 	 */
 	public static void addWebsite(Website ws) {
-		websites.put(ws.getName(), ws);
+		synchronized(lock) {
+			Map<String, Website> next = new LinkedHashMap<>(websites);
+			next.put(ws.getName(), ws);
+			publish(next);
+		}
+	}
+	
+	/**
+	 * Removes a {@link Website} from the list available from the server.
+	 * @param ws	The {@link Website} to be removed.
+	 */
+	public static void removeWebsite(Website ws) {
+		synchronized(lock) {
+			Map<String, Website> next = new LinkedHashMap<>(websites);
+			if(next.remove(ws.getName())!=null) {
+				publish(next);
+				ws.close();
+			}
+		}
+	}
+	
+	/**
+	 * Rebuilds the host index after the addresses of a {@link Website} changed.
+	 */
+	public static void reindexAddresses() {
+		synchronized(lock) {
+			publish(websites);
+		}
+	}
+	
+	/**
+	 * Swaps in a new website map and a {@link HostIndex} built from it, must hold the lock.
+	 * @param next	The websites to publish.
+	 */
+	private static void publish(Map<String, Website> next) {
+		Map<String, Website> published = Collections.unmodifiableMap(next);
+		hosts = new HostIndex(published.values());
+		websites = published;
+	}
+	
+	/**
+	 * @return An unmodifiable snapshot of every {@link Website} by name.
+	 */
+	public static Map<String, Website> getWebsites() {
+		return websites;
 	}
 	
 	/**
@@ -33,16 +83,10 @@ public class WebsiteManager {
 	 * Gets a {@link Website} by address.
 	 * @param addr	The addresses for which a {@link Website} should be found.
 	 * @return The {@link Website} accpeting the address, or null if one isn't found.
+	 * @see {@link HostIndex#find(String)}
 	 */
 	public static Website getWebsiteByAddress(String addr) {
-		for(Entry<String, Website> w : websites.entrySet()) {
-			for(String a : w.getValue().getAddresses()) {
-				if(a.equals(addr)) {
-					return w.getValue();
-				}
-			}
-		}
-		return null;
+		return hosts.find(addr);
 	}
 	
 	/**
@@ -56,5 +100,15 @@ public class WebsiteManager {
 			}
 		}
 	}
+	
+	/**
+	 * Starts building the precompressed static files of every {@link Website} which asks for it at start.
+	 * @see {@link Precompressor}
+	 */
+	public static void precompressContent() {
+		for(Entry<String, Website> w : websites.entrySet()) {
+			w.getValue().precompressContent();
+		}
+	}
 
 }
@@ -0,0 +1,46 @@
+package net.aionstudios.jdc.server.engine;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+
+import com.sun.net.httpserver.HttpsConfigurator;
+
+/**
+ * Creates {@link ServerEngine}s for the listeners as configured by {@link EngineSettings}.
+ * @author Winter Roberts
+ */
+public class EngineFactory {
+	
+	/**
+	 * Creates an engine for plain HTTP requests.
+	 * @param address	The address to listen on.
+	 * @param settings	The {@link EngineSettings} naming the engine to use.
+	 * @return A bound, but not started, {@link ServerEngine}.
+	 * @throws IOException If the address could not be bound.
+	 */
+	public static ServerEngine createEngine(InetSocketAddress address, EngineSettings settings) throws IOException {
+		if(settings.getType()==EngineType.NIO) {
+			return new NioServerEngine(address, settings);
+		}
+		return new HttpServerEngine(address, settings.getBacklog());
+	}
+	
+	/**
+	 * Creates an engine for HTTPS requests.
+	 * <p>
+	 * The {@link NioServerEngine} does not terminate TLS, secure listeners always use the
+	 * {@link HttpServerEngine} so that HTTPS keeps working when the NIO engine is selected.
+	 * @param address		The address to listen on.
+	 * @param settings		The {@link EngineSettings} naming the engine to use.
+	 * @param configurator	The {@link HttpsConfigurator} that sets up TLS for each connection.
+	 * @return A bound, but not started, {@link ServerEngine}.
+	 * @throws IOException If the address could not be bound.
+	 */
+	public static ServerEngine createSecureEngine(InetSocketAddress address, EngineSettings settings, HttpsConfigurator configurator) throws IOException {
+		if(settings.getType()==EngineType.NIO) {
+			System.out.println("The '"+EngineType.NIO.getConfigName()+"' engine doesn't support TLS, secure server will use '"+EngineType.HTTPSERVER.getConfigName()+"'.");
+		}
+		return new HttpServerEngine(address, settings.getBacklog(), configurator);
+	}
+
+}
@@ -0,0 +1,133 @@
+package net.aionstudios.jdc.server.engine;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import net.aionstudios.jdc.server.util.FormatUtils;
+
+/**
+ * Listener settings read from the "engine" section of config.json.
+ * <p>
+ * Buffer sizes, limits and timeouts only apply to the {@link EngineType#NIO} engine,
+ * the com.sun.net.httpserver engine does not expose them.
+ * @author Winter Roberts
+ */
+public class EngineSettings {
+	
+	private EngineType type = EngineType.HTTPSERVER;
+	private int eventLoops = 0;
+	private int backlog = 0;
+	private int bufferSize = 16384;
+	private int maxHeaderSize = 16384;
+	private long maxBodySize = 10485760;
+	private long maxPendingWrites = 1048576;
+	private long readTimeout = 30000;
+	private long writeTimeout = 30000;
+	
+	/**
+	 * Creates engine settings with default values.
+	 */
+	public EngineSettings() {
+		
+	}
+	
+	/**
+	 * Reads engine settings, keeping defaults for any setting that isn't present.
+	 * @param j	The "engine" {@link JSONObject} from config.json.
+	 * @throws JSONException If a setting is present but of the wrong type.
+	 */
+	public EngineSettings(JSONObject j) throws JSONException {
+		type = j.has("type") ? EngineType.fromConfigName(j.getString("type")) : type;
+		eventLoops = j.has("event_loops") ? j.getInt("event_loops") : eventLoops;
+		backlog = j.has("backlog") ? j.getInt("backlog") : backlog;
+		bufferSize = j.has("buffer_size") ? j.getInt("buffer_size") : bufferSize;
+		maxHeaderSize = j.has("max_header_size") ? j.getInt("max_header_size") : maxHeaderSize;
+		maxBodySize = j.has("max_body_size") ? j.getLong("max_body_size") : maxBodySize;
+		maxPendingWrites = j.has("max_pending_writes") ? j.getLong("max_pending_writes") : maxPendingWrites;
+		readTimeout = j.has("read_timeout") ? j.getLong("read_timeout") : readTimeout;
+		writeTimeout = j.has("write_timeout") ? j.getLong("write_timeout") : writeTimeout;
+	}
+	
+	/**
+	 * @return A {@link JSONObject} of the default engine settings, as written to new config files.
+	 * @throws JSONException If the object could not be built.
+	 */
+	public static JSONObject getDefaultConfig() throws JSONException {
+		EngineSettings d = new EngineSettings();
+		JSONObject eo = FormatUtils.getLinkedJsonObject();
+		eo.put("type", d.type.getConfigName());
+		eo.put("event_loops", d.eventLoops);
+		eo.put("backlog", d.backlog);
+		eo.put("buffer_size", d.bufferSize);
+		eo.put("max_header_size", d.maxHeaderSize);
+		eo.put("max_body_size", d.maxBodySize);
+		eo.put("max_pending_writes", d.maxPendingWrites);
+		eo.put("read_timeout", d.readTimeout);
+		eo.put("write_timeout", d.writeTimeout);
+		return eo;
+	}
+
+	/**
+	 * @return The {@link EngineType} that listeners should be created with.
+	 */
+	public EngineType getType() {
+		return type;
+	}
+
+	/**
+	 * @return The number of selector event loops, the number of available processors if not positive.
+	 */
+	public int getEventLoops() {
+		return eventLoops > 0 ? eventLoops : Runtime.getRuntime().availableProcessors();
+	}
+
+	/**
+	 * @return The socket accept backlog, 0 for the system default.
+	 */
+	public int getBacklog() {
+		return backlog;
+	}
+
+	/**
+	 * @return The size in bytes of per-connection read and response buffers.
+	 */
+	public int getBufferSize() {
+		return bufferSize;
+	}
+
+	/**
+	 * @return The largest request line and header block accepted, in bytes.
+	 */
+	public int getMaxHeaderSize() {
+		return maxHeaderSize;
+	}
+
+	/**
+	 * @return The largest request body accepted, in bytes.
+	 */
+	public long getMaxBodySize() {
+		return maxBodySize;
+	}
+
+	/**
+	 * @return The number of unsent response bytes a connection may hold before writers are blocked.
+	 */
+	public long getMaxPendingWrites() {
+		return maxPendingWrites;
+	}
+
+	/**
+	 * @return The time in milliseconds a connection may wait on the client for request bytes.
+	 */
+	public long getReadTimeout() {
+		return readTimeout;
+	}
+
+	/**
+	 * @return The time in milliseconds a connection may wait on the client to accept response bytes.
+	 */
+	public long getWriteTimeout() {
+		return writeTimeout;
+	}
+
+}
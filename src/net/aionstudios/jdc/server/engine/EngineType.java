@@ -0,0 +1,47 @@
+package net.aionstudios.jdc.server.engine;
+
+/**
+ * Enumerates the {@link ServerEngine}s available to the application.
+ * @author Winter Roberts
+ */
+public enum EngineType {
+	
+	/**
+	 * The JVM's built in com.sun.net.httpserver listener, the fallback engine.
+	 */
+	HTTPSERVER("httpserver"),
+	
+	/**
+	 * A non-blocking listener built on {@link java.nio.channels.Selector}s, see {@link NioServerEngine}.
+	 */
+	NIO("nio");
+	
+	private String configName;
+	
+	private EngineType(String configName) {
+		this.configName = configName;
+	}
+	
+	/**
+	 * @return The name used for this engine in config.json.
+	 */
+	public String getConfigName() {
+		return configName;
+	}
+	
+	/**
+	 * Finds an engine by its config.json name.
+	 * @param name	The name of the engine.
+	 * @return The matching {@link EngineType}, or {@link #HTTPSERVER} if the name is unknown.
+	 */
+	public static EngineType fromConfigName(String name) {
+		for(EngineType t : values()) {
+			if(t.configName.equalsIgnoreCase(name)) {
+				return t;
+			}
+		}
+		System.err.println("Unknown server engine '"+name+"', falling back to '"+HTTPSERVER.configName+"'!");
+		return HTTPSERVER;
+	}
+
+}
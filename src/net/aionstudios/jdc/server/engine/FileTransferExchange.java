@@ -0,0 +1,29 @@
+package net.aionstudios.jdc.server.engine;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+import com.sun.net.httpserver.HttpExchange;
+
+/**
+ * An {@link HttpExchange} which can send file content to the client without copying it through the heap.
+ * <p>
+ * Implemented by exchanges of engines which own their sockets, callers should check for it with instanceof and
+ * otherwise write the file to the response body themselves.
+ * @author Winter Roberts
+ */
+public interface FileTransferExchange {
+
+	/**
+	 * Sends part of a file as the next bytes of the response body, after any bytes already written to it.
+	 * <p>
+	 * Response headers must have been sent. If the bytes can't be sent without copying, for example because
+	 * the response body has been filtered, they are copied to the response body instead.
+	 * @param file		The {@link FileChannel} to send from, which must stay open until this returns.
+	 * @param position	The position of the first byte to send.
+	 * @param count		The number of bytes to send.
+	 * @throws IOException If the bytes could not be sent.
+	 */
+	public void transferFile(FileChannel file, long position, long count) throws IOException;
+
+}
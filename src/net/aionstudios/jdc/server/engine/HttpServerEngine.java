@@ -0,0 +1,80 @@
+package net.aionstudios.jdc.server.engine;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.util.concurrent.Executor;
+
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsServer;
+
+/**
+ * A {@link ServerEngine} backed by the JVM's com.sun.net.httpserver {@link HttpServer} or {@link HttpsServer}.
+ * @author Winter Roberts
+ */
+public class HttpServerEngine implements ServerEngine {
+	
+	private HttpServer server;
+	
+	static {
+		//like the nio engine, send small writes right away rather than waiting on the client's delayed ACK
+		if(System.getProperty("sun.net.httpserver.nodelay")==null) {
+			System.setProperty("sun.net.httpserver.nodelay", "true");
+		}
+	}
+	
+	/**
+	 * Binds a new {@link HttpServer}.
+	 * @param address	The address to listen on.
+	 * @param backlog	The socket accept backlog, 0 for the system default.
+	 * @throws IOException If the address could not be bound.
+	 */
+	public HttpServerEngine(InetSocketAddress address, int backlog) throws IOException {
+		server = HttpServer.create(address, backlog);
+	}
+	
+	/**
+	 * Binds a new {@link HttpsServer}.
+	 * @param address		The address to listen on.
+	 * @param backlog		The socket accept backlog, 0 for the system default.
+	 * @param configurator	The {@link HttpsConfigurator} that sets up TLS for each connection.
+	 * @throws IOException If the address could not be bound.
+	 */
+	public HttpServerEngine(InetSocketAddress address, int backlog, HttpsConfigurator configurator) throws IOException {
+		HttpsServer s = HttpsServer.create(address, backlog);
+		s.setHttpsConfigurator(configurator);
+		server = s;
+	}
+
+	@Override
+	public void createContext(String path, HttpHandler handler) {
+		server.createContext(path, handler);
+	}
+
+	@Override
+	public void setExecutor(Executor executor) {
+		server.setExecutor(executor);
+	}
+
+	@Override
+	public void start() {
+		server.start();
+	}
+
+	@Override
+	public void stop(int delay) {
+		server.stop(delay);
+	}
+
+	@Override
+	public InetSocketAddress getAddress() {
+		return server.getAddress();
+	}
+
+	@Override
+	public EngineType getType() {
+		return EngineType.HTTPSERVER;
+	}
+
+}
@@ -0,0 +1,688 @@
+package net.aionstudios.jdc.server.engine;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.concurrent.RejectedExecutionException;
+
+import com.sun.net.httpserver.Headers;
+
+/**
+ * A single client connection of the {@link NioServerEngine}.
+ * <p>
+ * Request heads and bodies are read and framed on the event loop, then the complete request is
+ * handed to the engine's executor as a {@link NioExchange}. Response bytes written by the handler
+ * are sent directly while the socket accepts them and queued otherwise, writers block once more
+ * than the configured pending write limit is queued so a slow client can't exhaust the heap.
+ * @author Winter Roberts
+ */
+class NioConnection {
+
+	private static final int READ_HEAD = 0;
+	private static final int READ_BODY = 1;
+	private static final int READ_CHUNK_SIZE = 2;
+	private static final int READ_CHUNK_DATA = 3;
+	private static final int READ_CHUNK_END = 4;
+	private static final int READ_TRAILERS = 5;
+	private static final int DISPATCHED = 6;
+
+	private static final byte[] CONTINUE = "HTTP/1.1 100 Continue\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+
+	private NioServerEngine engine;
+	private NioEventLoop loop;
+	private SocketChannel channel;
+	private SelectionKey key;
+	private EngineSettings settings;
+	private InetSocketAddress remoteAddress;
+	private InetSocketAddress localAddress;
+	private ByteBuffer in;
+
+	private int state = READ_HEAD;
+	private String method;
+	private String target;
+	private String protocol;
+	private Headers requestHeaders;
+	private long bodyRemaining;
+	private ByteArrayOutputStream body;
+	private volatile boolean keepAlive;
+	private long lastRead;
+
+	private final Object writeLock = new Object();
+	private ArrayDeque<ByteBuffer> writeQueue = new ArrayDeque<ByteBuffer>();
+	private long pendingBytes = 0;
+	private FileChannel transferFile;
+	private long transferPosition;
+	private long transferRemaining;
+	private boolean writeInterest = false;
+	private long lastWrite;
+	private boolean responseComplete = false;
+	private boolean closed = false;
+
+	/**
+	 * Creates a connection for a channel that has just been registered to its loop.
+	 * @param engine	The {@link NioServerEngine} that accepted the connection.
+	 * @param loop		The {@link NioEventLoop} that owns the connection.
+	 * @param channel	The non-blocking {@link SocketChannel}.
+	 * @param key		The channel's {@link SelectionKey}.
+	 */
+	NioConnection(NioServerEngine engine, NioEventLoop loop, SocketChannel channel, SelectionKey key) {
+		this.engine = engine;
+		this.loop = loop;
+		this.channel = channel;
+		this.key = key;
+		this.settings = engine.getSettings();
+		in = ByteBuffer.allocate(Math.max(settings.getBufferSize(), settings.getMaxHeaderSize()));
+		try {
+			remoteAddress = (InetSocketAddress) channel.getRemoteAddress();
+			localAddress = (InetSocketAddress) channel.getLocalAddress();
+		} catch (IOException e) {
+			//addresses are informational
+		}
+		lastRead = System.currentTimeMillis();
+		lastWrite = lastRead;
+	}
+
+	/**
+	 * Reads available bytes and frames as much of the request as they complete. Loop thread only.
+	 */
+	void onReadable() {
+		int n;
+		try {
+			n = channel.read(in);
+		} catch (IOException e) {
+			close();
+			return;
+		}
+		if(n<0) {
+			close();
+			return;
+		}
+		lastRead = System.currentTimeMillis();
+		if(state!=DISPATCHED) {
+			process();
+		}
+	}
+
+	/**
+	 * Drains queued response bytes. Loop thread only.
+	 */
+	void onWritable() {
+		boolean finished;
+		synchronized(writeLock) {
+			try {
+				while(!writeQueue.isEmpty()) {
+					ByteBuffer b = writeQueue.peek();
+					int n = channel.write(b);
+					if(n>0) {
+						pendingBytes -= n;
+						lastWrite = System.currentTimeMillis();
+					}
+					if(b.hasRemaining()) {
+						break;
+					}
+					writeQueue.poll();
+				}
+				while(writeQueue.isEmpty()&&transferFile!=null&&transferRemaining>0) {
+					long n = transferFile.transferTo(transferPosition, transferRemaining, channel);
+					if(n<=0) {
+						break;
+					}
+					transferPosition += n;
+					transferRemaining -= n;
+					pendingBytes -= n;
+					lastWrite = System.currentTimeMillis();
+				}
+			} catch (IOException e) {
+				close();
+				return;
+			}
+			if(writeQueue.isEmpty()&&transferRemaining==0) {
+				writeInterest = false;
+				if(key.isValid()) {
+					key.interestOps(key.interestOps()&~SelectionKey.OP_WRITE);
+				}
+			}
+			writeLock.notifyAll();
+			finished = writeQueue.isEmpty()&&responseComplete;
+		}
+		if(finished) {
+			finishExchange();
+		}
+	}
+
+	/**
+	 * Closes the connection if the client has stalled reading or writing. Loop thread only.
+	 * @param now	The current time in milliseconds.
+	 */
+	void checkTimeouts(long now) {
+		if(state!=DISPATCHED&&now-lastRead>settings.getReadTimeout()) {
+			close();
+			return;
+		}
+		boolean stalled;
+		synchronized(writeLock) {
+			stalled = pendingBytes>0&&now-lastWrite>settings.getWriteTimeout();
+		}
+		if(stalled) {
+			close();
+		}
+	}
+
+	/**
+	 * Frames buffered request bytes. Loop thread only.
+	 */
+	private void process() {
+		in.flip();
+		try {
+			while(!closed&&state!=DISPATCHED) {
+				if(state==READ_HEAD) {
+					if(!readHead()) {
+						break;
+					}
+				} else if(state==READ_BODY||state==READ_CHUNK_DATA) {
+					if(!in.hasRemaining()) {
+						break;
+					}
+					int take = (int) Math.min(in.remaining(), bodyRemaining);
+					body.write(in.array(), in.arrayOffset()+in.position(), take);
+					in.position(in.position()+take);
+					bodyRemaining -= take;
+					if(bodyRemaining==0) {
+						if(state==READ_BODY) {
+							dispatch();
+						} else {
+							state = READ_CHUNK_END;
+						}
+					}
+				} else {
+					String line = readLine();
+					if(line==null) {
+						break;
+					}
+					if(state==READ_CHUNK_SIZE) {
+						int ext = line.indexOf(';');
+						long size;
+						try {
+							size = Long.parseLong((ext>=0?line.substring(0, ext):line).trim(), 16);
+						} catch (NumberFormatException e) {
+							throw new RequestException(400, "Bad Request");
+						}
+						if(size<0||body.size()+size>settings.getMaxBodySize()) {
+							throw new RequestException(413, "Payload Too Large");
+						}
+						if(size==0) {
+							state = READ_TRAILERS;
+						} else {
+							bodyRemaining = size;
+							state = READ_CHUNK_DATA;
+						}
+					} else if(state==READ_CHUNK_END) {
+						state = READ_CHUNK_SIZE;
+					} else if(state==READ_TRAILERS&&line.isEmpty()) {
+						dispatch();
+					}
+				}
+			}
+		} catch (RequestException e) {
+			reject(e.getCode(), e.getMessage());
+		} finally {
+			if(!closed) {
+				in.compact();
+			}
+		}
+	}
+
+	/**
+	 * Parses the request line and headers if they have been completely buffered.
+	 * @return True if the head was parsed, false if more bytes are needed.
+	 * @throws RequestException If the head is malformed or too large.
+	 */
+	private boolean readHead() throws RequestException {
+		while(in.remaining()>=2&&in.get(in.position())=='\r'&&in.get(in.position()+1)=='\n') {
+			in.position(in.position()+2);
+		}
+		int end = -1;
+		for(int i = in.position(); i+3 < in.limit(); i++) {
+			if(in.get(i)=='\r'&&in.get(i+1)=='\n'&&in.get(i+2)=='\r'&&in.get(i+3)=='\n') {
+				end = i;
+				break;
+			}
+		}
+		if(end<0) {
+			if(in.remaining()>=settings.getMaxHeaderSize()||in.remaining()==in.capacity()) {
+				throw new RequestException(431, "Request Header Fields Too Large");
+			}
+			return false;
+		}
+		String head = new String(in.array(), in.arrayOffset()+in.position(), end-in.position(), StandardCharsets.ISO_8859_1);
+		in.position(end+4);
+		String[] lines = head.split("\r\n");
+		String[] requestLine = lines[0].split(" ");
+		if(requestLine.length!=3||!requestLine[2].startsWith("HTTP/")) {
+			throw new RequestException(400, "Bad Request");
+		}
+		method = requestLine[0];
+		target = requestLine[1];
+		protocol = requestLine[2];
+		requestHeaders = new Headers();
+		for(int i = 1; i < lines.length; i++) {
+			int colon = lines[i].indexOf(':');
+			if(colon<=0) {
+				throw new RequestException(400, "Bad Request");
+			}
+			requestHeaders.add(lines[i].substring(0, colon).trim(), lines[i].substring(colon+1).trim());
+		}
+		String connection = requestHeaders.getFirst("Connection");
+		if(protocol.equals("HTTP/1.1")) {
+			keepAlive = connection==null||!connection.toLowerCase().contains("close");
+		} else {
+			keepAlive = connection!=null&&connection.toLowerCase().contains("keep-alive");
+		}
+		body = null;
+		String te = requestHeaders.getFirst("Transfer-Encoding");
+		String cl = requestHeaders.getFirst("Content-Length");
+		if(te!=null&&te.toLowerCase().contains("chunked")) {
+			body = new ByteArrayOutputStream();
+			sendContinue();
+			state = READ_CHUNK_SIZE;
+		} else if(cl!=null) {
+			long length;
+			try {
+				length = Long.parseLong(cl.trim());
+			} catch (NumberFormatException e) {
+				throw new RequestException(400, "Bad Request");
+			}
+			if(length<0) {
+				throw new RequestException(400, "Bad Request");
+			}
+			if(length>settings.getMaxBodySize()) {
+				throw new RequestException(413, "Payload Too Large");
+			}
+			if(length==0) {
+				dispatch();
+			} else {
+				body = new ByteArrayOutputStream((int) Math.min(length, settings.getBufferSize()));
+				bodyRemaining = length;
+				sendContinue();
+				state = READ_BODY;
+			}
+		} else {
+			dispatch();
+		}
+		return true;
+	}
+
+	/**
+	 * Reads a CRLF or LF terminated line for chunked body framing.
+	 * @return The line without its terminator, or null if more bytes are needed.
+	 * @throws RequestException If the line doesn't fit in the read buffer.
+	 */
+	private String readLine() throws RequestException {
+		for(int i = in.position(); i < in.limit(); i++) {
+			if(in.get(i)=='\n') {
+				int len = i-in.position();
+				if(len>0&&in.get(i-1)=='\r') {
+					len--;
+				}
+				String line = new String(in.array(), in.arrayOffset()+in.position(), len, StandardCharsets.ISO_8859_1);
+				in.position(i+1);
+				return line;
+			}
+		}
+		if(in.remaining()>=settings.getMaxHeaderSize()||in.remaining()==in.capacity()) {
+			throw new RequestException(400, "Bad Request");
+		}
+		return null;
+	}
+
+	/**
+	 * Answers an "Expect: 100-continue" request before its body is read.
+	 */
+	private void sendContinue() {
+		String expect = requestHeaders.getFirst("Expect");
+		if(expect!=null&&expect.equalsIgnoreCase("100-continue")&&protocol.equals("HTTP/1.1")) {
+			try {
+				write(ByteBuffer.wrap(CONTINUE));
+			} catch (IOException e) {
+				close();
+			}
+		}
+	}
+
+	/**
+	 * Hands a completely read request to its context's handler. Loop thread only.
+	 * @throws RequestException If the request target is invalid or no context matches it.
+	 */
+	private void dispatch() throws RequestException {
+		URI uri;
+		try {
+			uri = new URI(target);
+		} catch (URISyntaxException e) {
+			throw new RequestException(400, "Bad Request");
+		}
+		final NioHttpContext context = engine.findContext(uri.getPath()==null?"/":uri.getPath());
+		if(context==null) {
+			throw new RequestException(404, "Not Found");
+		}
+		byte[] b = body!=null?body.toByteArray():new byte[0];
+		body = null;
+		state = DISPATCHED;
+		key.interestOps(0);
+		final NioExchange ex = new NioExchange(this, context, method, uri, protocol, requestHeaders, b);
+		try {
+			engine.getExecutor().execute(new Runnable() {
+
+				@Override
+				public void run() {
+					try {
+						context.getHandler().handle(ex);
+					} catch (Throwable t) {
+						t.printStackTrace();
+						ex.abort();
+					}
+				}
+
+			});
+		} catch (RejectedExecutionException e) {
+			state = READ_HEAD;
+			throw new RequestException(503, "Service Unavailable");
+		}
+	}
+
+	/**
+	 * Sends a bare error response and closes the connection once it is written. Loop thread only.
+	 * @param code		The HTTP status code.
+	 * @param reason	The status reason phrase.
+	 */
+	private void reject(int code, String reason) {
+		keepAlive = false;
+		state = DISPATCHED;
+		if(key.isValid()) {
+			key.interestOps(0);
+		}
+		String r = "HTTP/1.1 "+code+" "+reason+"\r\nContent-Length: 0\r\nConnection: close\r\n\r\n";
+		try {
+			write(ByteBuffer.wrap(r.getBytes(StandardCharsets.ISO_8859_1)));
+		} catch (IOException e) {
+			close();
+			return;
+		}
+		responseFinished(false);
+	}
+
+	/**
+	 * Writes response bytes, queuing whatever the socket doesn't immediately accept.
+	 * <p>
+	 * Handler threads block here while the queue holds more than the pending write limit,
+	 * failing if the client doesn't make progress within the write timeout.
+	 * @param buffers	The buffers to write, which may be reused by the caller once this returns.
+	 * @throws IOException If the connection is closed or the write timed out.
+	 */
+	void write(ByteBuffer... buffers) throws IOException {
+		synchronized(writeLock) {
+			if(closed) {
+				throw new IOException("Connection closed");
+			}
+			if(writeQueue.isEmpty()) {
+				try {
+					if(channel.write(buffers)>0) {
+						lastWrite = System.currentTimeMillis();
+					}
+				} catch (IOException e) {
+					close();
+					throw e;
+				}
+			}
+			for(ByteBuffer b : buffers) {
+				if(b.hasRemaining()) {
+					ByteBuffer copy = ByteBuffer.allocate(b.remaining());
+					copy.put(b);
+					copy.flip();
+					writeQueue.add(copy);
+					pendingBytes += copy.remaining();
+				}
+			}
+			if(!writeQueue.isEmpty()) {
+				requestWritable();
+			}
+			if(!loop.inLoop()) {
+				awaitPending(settings.getMaxPendingWrites());
+			}
+		}
+	}
+
+	/**
+	 * Sends part of a file straight from the file system to the socket with {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)},
+	 * which the operating system may do without copying the bytes through the heap.
+	 * <p>
+	 * Queued response bytes are sent first. The calling handler thread blocks until the whole region has been sent,
+	 * failing if the client stops reading for longer than the write timeout.
+	 * @param file		The {@link FileChannel} to send from, which must stay open until this returns.
+	 * @param position	The position of the first byte to send.
+	 * @param count		The number of bytes to send.
+	 * @throws IOException If the connection is closed, the write timed out or the file could not be read.
+	 */
+	void transfer(FileChannel file, long position, long count) throws IOException {
+		synchronized(writeLock) {
+			awaitPending(0);
+			try {
+				while(count>0) {
+					long n = file.transferTo(position, count, channel);
+					if(n<=0) {
+						break;
+					}
+					position += n;
+					count -= n;
+					lastWrite = System.currentTimeMillis();
+				}
+			} catch (IOException e) {
+				close();
+				throw e;
+			}
+			if(count==0) {
+				return;
+			}
+			if(position>=file.size()) {
+				throw new IOException("Unexpected end of file");
+			}
+			transferFile = file;
+			transferPosition = position;
+			transferRemaining = count;
+			pendingBytes += count;
+			try {
+				requestWritable();
+				awaitPending(0);
+			} finally {
+				transferFile = null;
+				transferRemaining = 0;
+			}
+		}
+	}
+
+	/**
+	 * Blocks until no more than the given number of response bytes are waiting to be sent, must hold the write lock.
+	 * @param limit		The number of pending bytes to wait for.
+	 * @throws IOException If the connection is closed or the client made no progress within the write timeout.
+	 */
+	private void awaitPending(long limit) throws IOException {
+		while(pendingBytes>limit&&!closed) {
+			long wait = lastWrite+settings.getWriteTimeout()-System.currentTimeMillis();
+			if(wait<=0) {
+				close();
+				throw new IOException("Write timed out");
+			}
+			try {
+				writeLock.wait(wait);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+				throw new IOException("Interrupted while writing");
+			}
+		}
+		if(closed) {
+			throw new IOException("Connection closed");
+		}
+	}
+
+	/**
+	 * Asks the event loop to drain queued bytes once the socket is writable, must hold the write lock.
+	 */
+	private void requestWritable() {
+		if(writeInterest) {
+			return;
+		}
+		writeInterest = true;
+		lastWrite = System.currentTimeMillis();
+		loop.execute(new Runnable() {
+
+			@Override
+			public void run() {
+				if(key.isValid()) {
+					key.interestOps(key.interestOps()|SelectionKey.OP_WRITE);
+				}
+			}
+
+		});
+	}
+
+	/**
+	 * Marks the current exchange's response as complete, the connection is reused or closed once
+	 * all of its bytes have been sent.
+	 * @param reusable	False if the response was framed in a way that requires the connection to close.
+	 */
+	void responseFinished(boolean reusable) {
+		synchronized(writeLock) {
+			if(!reusable) {
+				keepAlive = false;
+			}
+			responseComplete = true;
+		}
+		loop.execute(new Runnable() {
+
+			@Override
+			public void run() {
+				boolean empty;
+				synchronized(writeLock) {
+					empty = writeQueue.isEmpty();
+				}
+				if(empty) {
+					finishExchange();
+				}
+			}
+
+		});
+	}
+
+	/**
+	 * Closes the connection or readies it for the next request. Loop thread only.
+	 */
+	private void finishExchange() {
+		synchronized(writeLock) {
+			if(!responseComplete) {
+				return;
+			}
+			responseComplete = false;
+		}
+		if(!keepAlive||closed) {
+			close();
+			return;
+		}
+		state = READ_HEAD;
+		requestHeaders = null;
+		lastRead = System.currentTimeMillis();
+		key.interestOps(SelectionKey.OP_READ);
+		if(in.position()>0) {
+			process();
+		}
+	}
+
+	/**
+	 * Closes the connection, failing any blocked writers.
+	 */
+	void close() {
+		synchronized(writeLock) {
+			if(closed) {
+				return;
+			}
+			closed = true;
+			writeQueue.clear();
+			pendingBytes = 0;
+			writeLock.notifyAll();
+		}
+		key.cancel();
+		try {
+			channel.close();
+		} catch (IOException e) {
+			//ignore
+		}
+	}
+
+	/**
+	 * @return True if a handler currently holds this connection's exchange.
+	 */
+	boolean isDispatched() {
+		return state==DISPATCHED&&!closed;
+	}
+
+	/**
+	 * @return True if the calling thread may block in {@link #transfer(FileChannel, long, long)}.
+	 */
+	boolean canTransfer() {
+		return !loop.inLoop();
+	}
+
+	/**
+	 * @return True if the connection will be reused after the current response.
+	 */
+	boolean isKeepAlive() {
+		return keepAlive;
+	}
+
+	/**
+	 * @return The client's address.
+	 */
+	InetSocketAddress getRemoteAddress() {
+		return remoteAddress;
+	}
+
+	/**
+	 * @return The address the client connected to.
+	 */
+	InetSocketAddress getLocalAddress() {
+		return localAddress;
+	}
+
+	/**
+	 * @return The {@link EngineSettings} of the engine that accepted this connection.
+	 */
+	EngineSettings getSettings() {
+		return settings;
+	}
+
+	/**
+	 * Thrown while framing a request that must be rejected before it reaches a handler.
+	 */
+	private static class RequestException extends Exception {
+
+		private static final long serialVersionUID = 1L;
+		private int code;
+
+		RequestException(int code, String reason) {
+			super(reason);
+			this.code = code;
+		}
+
+		int getCode() {
+			return code;
+		}
+
+	}
+
+}
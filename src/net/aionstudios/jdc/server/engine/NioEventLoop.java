@@ -0,0 +1,175 @@
+package net.aionstudios.jdc.server.engine;
+
+import java.io.IOException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * A selector thread of the {@link NioServerEngine}, owning the {@link NioConnection}s registered to it.
+ * <p>
+ * Interest changes requested by handler threads are queued with {@link #execute(Runnable)} so that
+ * only the loop thread touches its {@link SelectionKey}s.
+ * @author Winter Roberts
+ */
+class NioEventLoop implements Runnable {
+	
+	private static final long TIMEOUT_SCAN_INTERVAL = 1000;
+	
+	private NioServerEngine engine;
+	private Selector selector;
+	private Thread thread;
+	private ConcurrentLinkedQueue<Runnable> tasks = new ConcurrentLinkedQueue<Runnable>();
+	private volatile boolean running = true;
+	private volatile long shutdownDeadline = 0;
+	private long lastTimeoutScan = System.currentTimeMillis();
+	
+	/**
+	 * Opens the selector for a new event loop, which must then be started.
+	 * @param engine	The {@link NioServerEngine} this loop belongs to.
+	 * @param name		The name of the loop thread.
+	 * @throws IOException If the selector couldn't be opened.
+	 */
+	NioEventLoop(NioServerEngine engine, String name) throws IOException {
+		this.engine = engine;
+		selector = Selector.open();
+		thread = new Thread(this);
+		thread.setName(name);
+	}
+	
+	/**
+	 * Starts the loop thread.
+	 */
+	void start() {
+		thread.start();
+	}
+	
+	/**
+	 * Stops the loop, closing all its connections once they are idle or the delay has passed.
+	 * @param delay	The time in milliseconds to wait for in-flight exchanges.
+	 */
+	void shutdown(long delay) {
+		shutdownDeadline = System.currentTimeMillis()+delay;
+		running = false;
+		selector.wakeup();
+	}
+	
+	/**
+	 * Registers an accepted, non-blocking channel with this loop.
+	 * @param c	The {@link SocketChannel} of the new connection.
+	 */
+	void register(final SocketChannel c) {
+		execute(new Runnable() {
+
+			@Override
+			public void run() {
+				try {
+					SelectionKey k = c.register(selector, SelectionKey.OP_READ);
+					k.attach(new NioConnection(engine, NioEventLoop.this, c, k));
+				} catch (IOException e) {
+					try {
+						c.close();
+					} catch (IOException e1) {
+						//ignore
+					}
+				}
+			}
+			
+		});
+	}
+	
+	/**
+	 * Runs a task on the loop thread.
+	 * @param r	The task to be run.
+	 */
+	void execute(Runnable r) {
+		tasks.add(r);
+		if(Thread.currentThread()!=thread) {
+			selector.wakeup();
+		}
+	}
+	
+	/**
+	 * @return True if the calling thread is this loop's thread.
+	 */
+	boolean inLoop() {
+		return Thread.currentThread()==thread;
+	}
+
+	@Override
+	public void run() {
+		while(running||!isIdle()) {
+			try {
+				selector.select(TIMEOUT_SCAN_INTERVAL);
+			} catch (IOException e) {
+				System.err.println("NIO event loop failed to select!");
+				e.printStackTrace();
+				break;
+			}
+			for(Iterator<SelectionKey> i = selector.selectedKeys().iterator(); i.hasNext(); ) {
+				SelectionKey k = i.next();
+				i.remove();
+				NioConnection c = (NioConnection) k.attachment();
+				try {
+					if(k.isValid()&&k.isReadable()) {
+						c.onReadable();
+					}
+					if(k.isValid()&&k.isWritable()) {
+						c.onWritable();
+					}
+				} catch (CancelledKeyException e) {
+					c.close();
+				}
+			}
+			Runnable r;
+			while((r = tasks.poll())!=null) {
+				try {
+					r.run();
+				} catch (CancelledKeyException e) {
+					//connection closed while the task was queued
+				}
+			}
+			long now = System.currentTimeMillis();
+			if(now-lastTimeoutScan>=TIMEOUT_SCAN_INTERVAL) {
+				lastTimeoutScan = now;
+				for(SelectionKey k : selector.keys()) {
+					NioConnection c = (NioConnection) k.attachment();
+					if(c!=null) {
+						c.checkTimeouts(now);
+					}
+				}
+			}
+			if(!running&&now>=shutdownDeadline) {
+				break;
+			}
+		}
+		for(SelectionKey k : selector.keys()) {
+			NioConnection c = (NioConnection) k.attachment();
+			if(c!=null) {
+				c.close();
+			}
+		}
+		try {
+			selector.close();
+		} catch (IOException e) {
+			//ignore
+		}
+	}
+	
+	/**
+	 * @return True if none of this loop's connections are handling an exchange.
+	 */
+	private boolean isIdle() {
+		for(SelectionKey k : selector.keys()) {
+			NioConnection c = (NioConnection) k.attachment();
+			if(c!=null&&c.isDispatched()) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+}
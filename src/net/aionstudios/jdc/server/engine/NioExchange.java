@@ -0,0 +1,458 @@
+package net.aionstudios.jdc.server.engine;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpPrincipal;
+
+/**
+ * An {@link HttpExchange} read by the {@link NioServerEngine}.
+ * <p>
+ * Response framing follows com.sun.net.httpserver: a response length of 0 sends a chunked body,
+ * a positive length sends exactly that many bytes and -1 sends no body and completes the exchange.
+ * @author Winter Roberts
+ */
+public class NioExchange extends HttpExchange implements FileTransferExchange {
+
+	private static final int MODE_NONE = 0;
+	private static final int MODE_FIXED = 1;
+	private static final int MODE_CHUNKED = 2;
+	private static final int MODE_CLOSE = 3;
+
+	private static final byte[] CRLF = "\r\n".getBytes(StandardCharsets.ISO_8859_1);
+	private static final byte[] LAST_CHUNK = "0\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+
+	private NioConnection connection;
+	private NioHttpContext context;
+	private String method;
+	private URI uri;
+	private String protocol;
+	private Headers requestHeaders;
+	private Headers responseHeaders = new Headers();
+	private InputStream requestBody;
+	private ResponseStream responseStream;
+	private InputStream filteredRequestBody;
+	private OutputStream filteredResponseBody;
+	private Map<String, Object> attributes = Collections.synchronizedMap(new HashMap<String, Object>());
+	private int responseCode = -1;
+	private volatile boolean headersSent = false;
+
+	/**
+	 * Creates an exchange for a completely read request.
+	 * @param connection		The {@link NioConnection} the request was read from.
+	 * @param context			The {@link NioHttpContext} matching the request.
+	 * @param method			The request method.
+	 * @param uri				The request target.
+	 * @param protocol			The request protocol, like HTTP/1.1.
+	 * @param requestHeaders	The request {@link Headers}.
+	 * @param body				The request body, empty if there was none.
+	 */
+	NioExchange(NioConnection connection, NioHttpContext context, String method, URI uri, String protocol, Headers requestHeaders, byte[] body) {
+		this.connection = connection;
+		this.context = context;
+		this.method = method;
+		this.uri = uri;
+		this.protocol = protocol;
+		this.requestHeaders = requestHeaders;
+		this.requestBody = new ByteArrayInputStream(body);
+		this.responseStream = new ResponseStream(connection.getSettings().getBufferSize());
+	}
+
+	@Override
+	public Headers getRequestHeaders() {
+		return requestHeaders;
+	}
+
+	@Override
+	public Headers getResponseHeaders() {
+		return responseHeaders;
+	}
+
+	@Override
+	public URI getRequestURI() {
+		return uri;
+	}
+
+	@Override
+	public String getRequestMethod() {
+		return method;
+	}
+
+	@Override
+	public HttpContext getHttpContext() {
+		return context;
+	}
+
+	@Override
+	public void close() {
+		try {
+			requestBody.close();
+		} catch (IOException e) {
+			//ignore
+		}
+		if(!headersSent) {
+			connection.close();
+			return;
+		}
+		try {
+			responseStream.close();
+		} catch (IOException e) {
+			//connection already closed
+		}
+	}
+
+	@Override
+	public InputStream getRequestBody() {
+		return filteredRequestBody!=null?filteredRequestBody:requestBody;
+	}
+
+	@Override
+	public OutputStream getResponseBody() {
+		return filteredResponseBody!=null?filteredResponseBody:responseStream;
+	}
+
+	@Override
+	public void sendResponseHeaders(int rCode, long responseLength) throws IOException {
+		if(headersSent) {
+			throw new IOException("Response headers already sent");
+		}
+		responseCode = rCode;
+		boolean http10 = protocol.equals("HTTP/1.0");
+		boolean head = method.equalsIgnoreCase("HEAD");
+		int mode;
+		long length = 0;
+		if(head||rCode<200||rCode==204||rCode==304) {
+			mode = MODE_NONE;
+			if(head&&responseLength>0) {
+				responseHeaders.set("Content-Length", Long.toString(responseLength));
+			} else if(!head) {
+				//a HEAD response may describe the length of the body it omits
+				responseHeaders.remove("Content-Length");
+			}
+			responseHeaders.remove("Transfer-Encoding");
+		} else if(responseLength>0) {
+			mode = MODE_FIXED;
+			length = responseLength;
+			responseHeaders.set("Content-Length", Long.toString(responseLength));
+			responseHeaders.remove("Transfer-Encoding");
+		} else if(responseLength==0) {
+			responseHeaders.remove("Content-Length");
+			if(http10) {
+				mode = MODE_CLOSE;
+				responseHeaders.remove("Transfer-Encoding");
+			} else {
+				mode = MODE_CHUNKED;
+				responseHeaders.set("Transfer-Encoding", "chunked");
+			}
+		} else {
+			mode = MODE_NONE;
+			responseHeaders.set("Content-Length", "0");
+			responseHeaders.remove("Transfer-Encoding");
+		}
+		if(!responseHeaders.containsKey("Date")) {
+			responseHeaders.set("Date", DateTimeFormatter.RFC_1123_DATE_TIME.format(ZonedDateTime.now(ZoneOffset.UTC)));
+		}
+		if(!connection.isKeepAlive()||mode==MODE_CLOSE) {
+			responseHeaders.set("Connection", "close");
+		} else if(http10) {
+			responseHeaders.set("Connection", "keep-alive");
+		}
+		StringBuilder sb = new StringBuilder(256);
+		sb.append(http10?"HTTP/1.0 ":"HTTP/1.1 ").append(rCode).append(' ').append(getReasonPhrase(rCode)).append("\r\n");
+		for(Entry<String, List<String>> h : responseHeaders.entrySet()) {
+			for(String v : h.getValue()) {
+				sb.append(h.getKey()).append(": ").append(v).append("\r\n");
+			}
+		}
+		sb.append("\r\n");
+		headersSent = true;
+		responseStream.begin(sb.toString().getBytes(StandardCharsets.ISO_8859_1), mode, length);
+		if(mode==MODE_NONE) {
+			responseStream.close();
+		}
+	}
+
+	@Override
+	public InetSocketAddress getRemoteAddress() {
+		return connection.getRemoteAddress();
+	}
+
+	@Override
+	public int getResponseCode() {
+		return responseCode;
+	}
+
+	@Override
+	public InetSocketAddress getLocalAddress() {
+		return connection.getLocalAddress();
+	}
+
+	@Override
+	public String getProtocol() {
+		return protocol;
+	}
+
+	@Override
+	public Object getAttribute(String name) {
+		return attributes.get(name);
+	}
+
+	@Override
+	public void setAttribute(String name, Object value) {
+		if(value==null) {
+			attributes.remove(name);
+		} else {
+			attributes.put(name, value);
+		}
+	}
+
+	@Override
+	public void setStreams(InputStream i, OutputStream o) {
+		if(i!=null) {
+			filteredRequestBody = i;
+		}
+		if(o!=null) {
+			filteredResponseBody = o;
+		}
+	}
+
+	@Override
+	public HttpPrincipal getPrincipal() {
+		return null;
+	}
+
+	@Override
+	public void transferFile(FileChannel file, long position, long count) throws IOException {
+		if(filteredResponseBody!=null||!connection.canTransfer()) {
+			ByteBuffer b = ByteBuffer.allocate((int) Math.min(count, 65536));
+			OutputStream os = getResponseBody();
+			while(count>0) {
+				b.clear();
+				b.limit((int) Math.min(count, b.capacity()));
+				int n = file.read(b, position);
+				if(n<0) {
+					throw new IOException("Unexpected end of file");
+				}
+				os.write(b.array(), 0, n);
+				position += n;
+				count -= n;
+			}
+			return;
+		}
+		responseStream.transfer(file, position, count);
+	}
+
+	/**
+	 * Completes an exchange whose handler failed, answering with a 500 if nothing was sent yet.
+	 */
+	void abort() {
+		if(!headersSent) {
+			try {
+				responseHeaders.clear();
+				sendResponseHeaders(500, -1);
+				return;
+			} catch (IOException e) {
+				//fall through and close
+			}
+		}
+		connection.close();
+	}
+
+	/**
+	 * @param code	An HTTP status code.
+	 * @return The reason phrase for the code, or "Unknown" for codes without one here.
+	 */
+	private static String getReasonPhrase(int code) {
+		switch(code) {
+			case 100: return "Continue";
+			case 200: return "OK";
+			case 201: return "Created";
+			case 202: return "Accepted";
+			case 204: return "No Content";
+			case 206: return "Partial Content";
+			case 301: return "Moved Permanently";
+			case 302: return "Found";
+			case 303: return "See Other";
+			case 304: return "Not Modified";
+			case 307: return "Temporary Redirect";
+			case 308: return "Permanent Redirect";
+			case 400: return "Bad Request";
+			case 401: return "Unauthorized";
+			case 403: return "Forbidden";
+			case 404: return "Not Found";
+			case 405: return "Method Not Allowed";
+			case 408: return "Request Timeout";
+			case 413: return "Payload Too Large";
+			case 416: return "Range Not Satisfiable";
+			case 429: return "Too Many Requests";
+			case 500: return "Internal Server Error";
+			case 501: return "Not Implemented";
+			case 502: return "Bad Gateway";
+			case 503: return "Service Unavailable";
+			case 504: return "Gateway Timeout";
+			default: return "Unknown";
+		}
+	}
+
+	/**
+	 * Buffers response body bytes and frames them onto the connection.
+	 */
+	private class ResponseStream extends OutputStream {
+
+		private ByteBuffer buffer;
+		private ByteBuffer head;
+		private int mode = MODE_NONE;
+		private long remaining = 0;
+		private boolean closed = false;
+
+		ResponseStream(int bufferSize) {
+			buffer = ByteBuffer.allocate(bufferSize);
+		}
+
+		/**
+		 * Sets the framing of the body, the head is sent with the first body bytes.
+		 */
+		void begin(byte[] head, int mode, long length) {
+			this.head = ByteBuffer.wrap(head);
+			this.mode = mode;
+			this.remaining = length;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			write(new byte[] {(byte) b}, 0, 1);
+		}
+
+		@Override
+		public void write(byte[] b, int off, int len) throws IOException {
+			if(headersSent&&mode==MODE_NONE) {
+				return;
+			}
+			if(closed) {
+				throw new IOException("Stream closed");
+			}
+			if(!headersSent) {
+				throw new IOException("Response headers not sent");
+			}
+			if(mode==MODE_FIXED) {
+				if(len>remaining) {
+					throw new IOException("Too many bytes to write to stream");
+				}
+				remaining -= len;
+			}
+			while(len>0) {
+				int n = Math.min(len, buffer.remaining());
+				buffer.put(b, off, n);
+				off += n;
+				len -= n;
+				if(!buffer.hasRemaining()) {
+					emit(false);
+				}
+			}
+		}
+
+		@Override
+		public void flush() throws IOException {
+			if(!closed&&headersSent) {
+				emit(false);
+			}
+		}
+
+		@Override
+		public void close() throws IOException {
+			if(closed) {
+				return;
+			}
+			closed = true;
+			boolean reusable = mode!=MODE_CLOSE&&!(mode==MODE_FIXED&&remaining>0);
+			try {
+				emit(true);
+			} finally {
+				connection.responseFinished(reusable);
+			}
+		}
+
+		/**
+		 * Sends buffered bytes, then part of a file through the connection, framed as a chunk if the body is chunked.
+		 */
+		void transfer(FileChannel file, long position, long count) throws IOException {
+			if(headersSent&&mode==MODE_NONE) {
+				return;
+			}
+			if(closed) {
+				throw new IOException("Stream closed");
+			}
+			if(!headersSent) {
+				throw new IOException("Response headers not sent");
+			}
+			if(count<=0) {
+				return;
+			}
+			if(mode==MODE_FIXED) {
+				if(count>remaining) {
+					throw new IOException("Too many bytes to write to stream");
+				}
+				remaining -= count;
+			}
+			emit(false);
+			if(mode==MODE_CHUNKED) {
+				connection.write(ByteBuffer.wrap((Long.toHexString(count)+"\r\n").getBytes(StandardCharsets.ISO_8859_1)));
+			}
+			connection.transfer(file, position, count);
+			if(mode==MODE_CHUNKED) {
+				connection.write(ByteBuffer.wrap(CRLF));
+			}
+		}
+
+		/**
+		 * Writes the head, buffered bytes and chunk framing to the connection.
+		 */
+		private void emit(boolean last) throws IOException {
+			buffer.flip();
+			try {
+				int data = buffer.remaining();
+				ByteBuffer[] out;
+				if(mode==MODE_CHUNKED) {
+					ByteBuffer size = data>0?ByteBuffer.wrap((Integer.toHexString(data)+"\r\n").getBytes(StandardCharsets.ISO_8859_1)):null;
+					out = new ByteBuffer[] {head, size, data>0?buffer:null, data>0?ByteBuffer.wrap(CRLF):null, last?ByteBuffer.wrap(LAST_CHUNK):null};
+				} else {
+					out = new ByteBuffer[] {head, data>0?buffer:null};
+				}
+				int count = 0;
+				for(ByteBuffer b : out) {
+					if(b!=null) {
+						out[count++] = b;
+					}
+				}
+				if(count>0) {
+					ByteBuffer[] send = new ByteBuffer[count];
+					System.arraycopy(out, 0, send, 0, count);
+					head = null;
+					connection.write(send);
+				}
+			} finally {
+				buffer.clear();
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,81 @@
+package net.aionstudios.jdc.server.engine;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import com.sun.net.httpserver.Authenticator;
+import com.sun.net.httpserver.Filter;
+import com.sun.net.httpserver.HttpContext;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Binds a context path to its {@link HttpHandler} for the {@link NioServerEngine}.
+ * <p>
+ * There is no {@link HttpServer} behind the NIO engine, so {@link #getServer()} returns null
+ * and filters and authenticators are stored but not applied.
+ * @author Winter Roberts
+ */
+public class NioHttpContext extends HttpContext {
+	
+	private String path;
+	private HttpHandler handler;
+	private Authenticator authenticator;
+	private Map<String, Object> attributes = new ConcurrentHashMap<String, Object>();
+	private List<Filter> filters = new CopyOnWriteArrayList<Filter>();
+	
+	/**
+	 * Creates a new context.
+	 * @param path		The context path requests are matched against by prefix.
+	 * @param handler	The {@link HttpHandler} for requests on this context.
+	 */
+	public NioHttpContext(String path, HttpHandler handler) {
+		this.path = path;
+		this.handler = handler;
+	}
+
+	@Override
+	public HttpHandler getHandler() {
+		return handler;
+	}
+
+	@Override
+	public void setHandler(HttpHandler handler) {
+		this.handler = handler;
+	}
+
+	@Override
+	public String getPath() {
+		return path;
+	}
+
+	@Override
+	public HttpServer getServer() {
+		return null;
+	}
+
+	@Override
+	public Map<String, Object> getAttributes() {
+		return attributes;
+	}
+
+	@Override
+	public List<Filter> getFilters() {
+		return filters;
+	}
+
+	@Override
+	public Authenticator setAuthenticator(Authenticator auth) {
+		Authenticator old = authenticator;
+		authenticator = auth;
+		return old;
+	}
+
+	@Override
+	public Authenticator getAuthenticator() {
+		return authenticator;
+	}
+
+}
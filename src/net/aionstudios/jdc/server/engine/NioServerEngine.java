@@ -0,0 +1,181 @@
+package net.aionstudios.jdc.server.engine;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+
+import com.sun.net.httpserver.HttpHandler;
+
+/**
+ * A non-blocking {@link ServerEngine}.
+ * <p>
+ * One acceptor thread hands new connections round-robin to a fixed number of {@link NioEventLoop}s,
+ * each of which owns a {@link java.nio.channels.Selector}. Event loops read and frame requests and
+ * drain queued response bytes, handlers run on the engine's {@link Executor} and are given a
+ * {@link NioExchange} so that the existing context handlers work unchanged.
+ * @author Winter Roberts
+ */
+public class NioServerEngine implements ServerEngine {
+	
+	private EngineSettings settings;
+	private ServerSocketChannel serverChannel;
+	private InetSocketAddress address;
+	private NioEventLoop[] loops;
+	private Thread acceptor;
+	private Executor executor;
+	private List<NioHttpContext> contexts = new CopyOnWriteArrayList<NioHttpContext>();
+	private volatile boolean running = false;
+	private int nextLoop = 0;
+	
+	/**
+	 * Binds a new NIO engine.
+	 * @param address	The address to listen on.
+	 * @param settings	The {@link EngineSettings} for buffers, limits and timeouts.
+	 * @throws IOException If the address could not be bound.
+	 */
+	public NioServerEngine(InetSocketAddress address, EngineSettings settings) throws IOException {
+		this.settings = settings;
+		serverChannel = ServerSocketChannel.open();
+		serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+		serverChannel.bind(address, settings.getBacklog());
+		this.address = (InetSocketAddress) serverChannel.getLocalAddress();
+	}
+
+	@Override
+	public void createContext(String path, HttpHandler handler) {
+		NioHttpContext c = new NioHttpContext(path, handler);
+		for(int i = 0; i < contexts.size(); i++) {
+			if(contexts.get(i).getPath().length()<path.length()) {
+				contexts.add(i, c);
+				return;
+			}
+		}
+		contexts.add(c);
+	}
+
+	@Override
+	public void setExecutor(Executor executor) {
+		this.executor = executor;
+	}
+
+	@Override
+	public void start() {
+		if(running) {
+			return;
+		}
+		running = true;
+		if(executor==null) {
+			executor = Executors.newCachedThreadPool();
+		}
+		loops = new NioEventLoop[settings.getEventLoops()];
+		for(int i = 0; i < loops.length; i++) {
+			try {
+				loops[i] = new NioEventLoop(this, "JDC-NIO-Loop-"+address.getPort()+"-"+i);
+			} catch (IOException e) {
+				System.err.println("Failed to open NIO event loop selector!");
+				e.printStackTrace();
+				running = false;
+				return;
+			}
+		}
+		for(NioEventLoop l : loops) {
+			l.start();
+		}
+		acceptor = new Thread(new Runnable() {
+
+			@Override
+			public void run() {
+				while(running) {
+					SocketChannel c = null;
+					try {
+						c = serverChannel.accept();
+						c.configureBlocking(false);
+						c.setOption(StandardSocketOptions.TCP_NODELAY, true);
+						loops[nextLoop].register(c);
+						nextLoop = (nextLoop+1)%loops.length;
+					} catch (ClosedChannelException e) {
+						break;
+					} catch (IOException e) {
+						if(c!=null) {
+							try {
+								c.close();
+							} catch (IOException e1) {
+								//ignore
+							}
+						}
+						if(running) {
+							System.err.println("Failed accepting connection!");
+							e.printStackTrace();
+						}
+					}
+				}
+			}
+			
+		});
+		acceptor.setName("JDC-NIO-Acceptor-"+address.getPort());
+		acceptor.start();
+	}
+
+	@Override
+	public void stop(int delay) {
+		running = false;
+		try {
+			serverChannel.close();
+		} catch (IOException e) {
+			//ignore
+		}
+		if(loops!=null) {
+			for(NioEventLoop l : loops) {
+				if(l!=null) {
+					l.shutdown(delay*1000L);
+				}
+			}
+		}
+	}
+
+	@Override
+	public InetSocketAddress getAddress() {
+		return address;
+	}
+
+	@Override
+	public EngineType getType() {
+		return EngineType.NIO;
+	}
+	
+	/**
+	 * Finds the context with the longest path that prefixes the request path.
+	 * @param path	The request path.
+	 * @return The matching {@link NioHttpContext} or null if none match.
+	 */
+	NioHttpContext findContext(String path) {
+		for(NioHttpContext c : contexts) {
+			if(path.startsWith(c.getPath())) {
+				return c;
+			}
+		}
+		return null;
+	}
+	
+	/**
+	 * @return The {@link Executor} on which handlers are run.
+	 */
+	Executor getExecutor() {
+		return executor;
+	}
+	
+	/**
+	 * @return The {@link EngineSettings} this engine was created with.
+	 */
+	EngineSettings getSettings() {
+		return settings;
+	}
+
+}
@@ -0,0 +1,50 @@
+package net.aionstudios.jdc.server.engine;
+
+import java.net.InetSocketAddress;
+import java.util.concurrent.Executor;
+
+import com.sun.net.httpserver.HttpHandler;
+
+/**
+ * A listener which accepts connections on a port and drives {@link HttpHandler}s with the requests it reads.
+ * <p>
+ * Engines are chosen by the "engine" section of the server's config.json, see {@link EngineType}.
+ * @author Winter Roberts
+ */
+public interface ServerEngine {
+	
+	/**
+	 * Registers a handler for all requests whose path begins with the given context path.
+	 * @param path		The context path, usually "/".
+	 * @param handler	The {@link HttpHandler} which should complete requests made on the path.
+	 */
+	public void createContext(String path, HttpHandler handler);
+	
+	/**
+	 * Sets the {@link Executor} on which handlers are run, must be called before {@link #start()}.
+	 * @param executor	The {@link Executor} which should run request handlers.
+	 */
+	public void setExecutor(Executor executor);
+	
+	/**
+	 * Starts accepting connections.
+	 */
+	public void start();
+	
+	/**
+	 * Stops accepting connections and closes the listener.
+	 * @param delay		The maximum time, in seconds, to wait for in-flight exchanges to finish.
+	 */
+	public void stop(int delay);
+	
+	/**
+	 * @return The address this engine is bound to.
+	 */
+	public InetSocketAddress getAddress();
+	
+	/**
+	 * @return The {@link EngineType} implemented by this engine.
+	 */
+	public EngineType getType();
+
+}
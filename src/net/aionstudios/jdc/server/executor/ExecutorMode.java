@@ -0,0 +1,52 @@
+package net.aionstudios.jdc.server.executor;
+
+/**
+ * Enumerates the models available for running request handlers, see {@link RequestExecutors}.
+ * @author Winter Roberts
+ */
+public enum ExecutorMode {
+	
+	/**
+	 * A new virtual thread per request, requires a Java 21 or later runtime and falls back to {@link #WORK_STEALING}.
+	 */
+	VIRTUAL("virtual"),
+	
+	/**
+	 * A bounded {@link java.util.concurrent.ForkJoinPool} that adds compensating threads while handlers block.
+	 */
+	WORK_STEALING("work_stealing"),
+	
+	/**
+	 * A fixed number of platform threads with a bounded queue.
+	 */
+	FIXED("fixed");
+	
+	private String configName;
+	
+	private ExecutorMode(String configName) {
+		this.configName = configName;
+	}
+	
+	/**
+	 * @return The name used for this mode in config.json.
+	 */
+	public String getConfigName() {
+		return configName;
+	}
+	
+	/**
+	 * Finds an executor mode by its config.json name.
+	 * @param name	The name of the mode.
+	 * @return The matching {@link ExecutorMode}, or {@link #WORK_STEALING} if the name is unknown.
+	 */
+	public static ExecutorMode fromConfigName(String name) {
+		for(ExecutorMode m : values()) {
+			if(m.configName.equalsIgnoreCase(name)) {
+				return m;
+			}
+		}
+		System.err.println("Unknown executor mode '"+name+"', falling back to '"+WORK_STEALING.configName+"'!");
+		return WORK_STEALING;
+	}
+
+}
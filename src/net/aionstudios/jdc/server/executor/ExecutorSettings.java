@@ -0,0 +1,82 @@
+package net.aionstudios.jdc.server.executor;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import net.aionstudios.jdc.server.util.FormatUtils;
+
+/**
+ * Request executor settings read from the "executor" section of config.json.
+ * @author Winter Roberts
+ */
+public class ExecutorSettings {
+	
+	private ExecutorMode mode = ExecutorMode.WORK_STEALING;
+	private int threads = 0;
+	private int queueSize = 1024;
+	private long asyncTimeout = 30000;
+	
+	/**
+	 * Creates executor settings with default values.
+	 */
+	public ExecutorSettings() {
+		
+	}
+	
+	/**
+	 * Reads executor settings, keeping defaults for any setting that isn't present.
+	 * @param j	The "executor" {@link JSONObject} from config.json.
+	 * @throws JSONException If a setting is present but of the wrong type.
+	 */
+	public ExecutorSettings(JSONObject j) throws JSONException {
+		mode = j.has("mode") ? ExecutorMode.fromConfigName(j.getString("mode")) : mode;
+		threads = j.has("threads") ? j.getInt("threads") : threads;
+		queueSize = j.has("queue_size") ? j.getInt("queue_size") : queueSize;
+		asyncTimeout = j.has("async_timeout") ? j.getLong("async_timeout") : asyncTimeout;
+	}
+	
+	/**
+	 * @return A {@link JSONObject} of the default executor settings, as written to new config files.
+	 * @throws JSONException If the object could not be built.
+	 */
+	public static JSONObject getDefaultConfig() throws JSONException {
+		ExecutorSettings d = new ExecutorSettings();
+		JSONObject eo = FormatUtils.getLinkedJsonObject();
+		eo.put("mode", d.mode.getConfigName());
+		eo.put("threads", d.threads);
+		eo.put("queue_size", d.queueSize);
+		eo.put("async_timeout", d.asyncTimeout);
+		return eo;
+	}
+
+	/**
+	 * @return The {@link ExecutorMode} requests should be run with.
+	 */
+	public ExecutorMode getMode() {
+		return mode;
+	}
+
+	/**
+	 * @return The number of request threads, or the parallelism of the work stealing pool.
+	 * Defaults to twice the number of available processors if not positive.
+	 */
+	public int getThreads() {
+		return threads > 0 ? threads : Runtime.getRuntime().availableProcessors()*2;
+	}
+
+	/**
+	 * @return The number of requests which may wait for a thread before new ones are rejected.
+	 * Not used by {@link ExecutorMode#VIRTUAL}.
+	 */
+	public int getQueueSize() {
+		return queueSize;
+	}
+
+	/**
+	 * @return The milliseconds the async processors of a page without a timeout of its own may take, or 0 for no limit.
+	 */
+	public long getAsyncTimeout() {
+		return asyncTimeout;
+	}
+
+}
@@ -0,0 +1,253 @@
+package net.aionstudios.jdc.server.executor;
+
+import java.lang.reflect.Method;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import net.aionstudios.jdc.server.JDCServerInfo;
+
+/**
+ * Creates and holds the {@link Executor} shared by the server's listeners to run request handlers.
+ * <p>
+ * Handlers which block, on JDBC or outgoing requests, should do so through {@link #runBlocking(Callable)}
+ * so that the work stealing pool can add a compensating thread instead of losing one of its workers.
+ * Virtual threads release their carrier thread on blocking I/O without it.
+ * @author Winter Roberts
+ */
+public class RequestExecutors {
+	
+	private static Executor requestExecutor;
+	private static Executor renderExecutor;
+	private static ScheduledExecutorService timer;
+	
+	/**
+	 * @return The shared request {@link Executor}, created from {@link JDCServerInfo#getExecutorSettings()} on first use.
+	 */
+	public static synchronized Executor getRequestExecutor() {
+		if(requestExecutor==null) {
+			requestExecutor = createExecutor(JDCServerInfo.getExecutorSettings(), "JDC-Request");
+		}
+		return requestExecutor;
+	}
+	
+	/**
+	 * @return The {@link Executor} which runs the element processors of pages rendered in parallel, created from
+	 * {@link JDCServerInfo#getExecutorSettings()} on first use. It is kept apart from the request executor so requests
+	 * waiting on their processors can't hold every thread those processors need.
+	 */
+	public static synchronized Executor getRenderExecutor() {
+		if(renderExecutor==null) {
+			renderExecutor = createExecutor(JDCServerInfo.getExecutorSettings(), "JDC-Render");
+		}
+		return renderExecutor;
+	}
+	
+	/**
+	 * Runs a task once a delay has passed, on a single shared timer thread, so it should only complete or cancel work.
+	 * @param task	The task.
+	 * @param delay	The delay, the task running at once if it isn't positive.
+	 * @param unit	The {@link TimeUnit} of the delay.
+	 * @return The scheduled task, to be cancelled if it is no longer needed.
+	 */
+	public static synchronized ScheduledFuture<?> schedule(Runnable task, long delay, TimeUnit unit) {
+		if(timer==null) {
+			timer = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "JDC-Timer");
+					t.setDaemon(true);
+					return t;
+				}
+
+			});
+		}
+		return timer.schedule(task, delay, unit);
+	}
+	
+	/**
+	 * Creates a new {@link Executor} for the given settings.
+	 * @param settings	The {@link ExecutorSettings} to be used.
+	 * @param name		The name prefix of the executor's threads.
+	 * @return An {@link Executor} for request handlers.
+	 */
+	public static Executor createExecutor(ExecutorSettings settings, String name) {
+		ExecutorMode mode = settings.getMode();
+		if(mode==ExecutorMode.VIRTUAL) {
+			ExecutorService virtual = createVirtualExecutor();
+			if(virtual!=null) {
+				System.out.println(name+" executor: "+mode.getConfigName());
+				return virtual;
+			}
+			System.out.println("Virtual threads require Java 21 or later, request executor falling back to '"+ExecutorMode.WORK_STEALING.getConfigName()+"'.");
+			mode = ExecutorMode.WORK_STEALING;
+		}
+		System.out.println(name+" executor: "+mode.getConfigName()+" with "+settings.getThreads()+" threads and a queue of "+settings.getQueueSize());
+		if(mode==ExecutorMode.FIXED) {
+			ThreadPoolExecutor tpe = new ThreadPoolExecutor(settings.getThreads(), settings.getThreads(), 60L, TimeUnit.SECONDS,
+					new ArrayBlockingQueue<Runnable>(Math.max(1, settings.getQueueSize())), new NamedThreadFactory(name));
+			tpe.allowCoreThreadTimeOut(true);
+			return tpe;
+		}
+		ForkJoinPool pool = new ForkJoinPool(settings.getThreads(), new NamedWorkerThreadFactory(name), null, true);
+		return new BoundedExecutor(pool, settings.getThreads()+settings.getQueueSize());
+	}
+	
+	/**
+	 * Runs a blocking operation, letting a work stealing pool compensate for the blocked worker.
+	 * @param task	The blocking operation.
+	 * @return The result of the operation.
+	 * @throws Exception If the operation threw.
+	 */
+	public static <T> T runBlocking(final Callable<T> task) throws Exception {
+		if(!(Thread.currentThread() instanceof ForkJoinWorkerThread)) {
+			return task.call();
+		}
+		BlockingCall<T> call = new BlockingCall<T>(task);
+		ForkJoinPool.managedBlock(call);
+		if(call.error!=null) {
+			throw call.error;
+		}
+		return call.result;
+	}
+	
+	/**
+	 * Looks up Executors.newVirtualThreadPerTaskExecutor(), which is only present on Java 21 or later.
+	 * @return A virtual thread per task {@link ExecutorService}, or null if the runtime doesn't support them.
+	 */
+	private static ExecutorService createVirtualExecutor() {
+		try {
+			Method m = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+			return (ExecutorService) m.invoke(null);
+		} catch (Exception e) {
+			return null;
+		}
+	}
+	
+	/**
+	 * Rejects tasks once a fixed number are running or waiting in the wrapped executor.
+	 */
+	private static class BoundedExecutor implements Executor {
+		
+		private Executor executor;
+		private Semaphore permits;
+		
+		BoundedExecutor(Executor executor, int bound) {
+			this.executor = executor;
+			this.permits = new Semaphore(bound);
+		}
+
+		@Override
+		public void execute(final Runnable command) {
+			if(!permits.tryAcquire()) {
+				throw new RejectedExecutionException("Request queue is full");
+			}
+			try {
+				executor.execute(new Runnable() {
+
+					@Override
+					public void run() {
+						try {
+							command.run();
+						} finally {
+							permits.release();
+						}
+					}
+					
+				});
+			} catch (RuntimeException e) {
+				permits.release();
+				throw e;
+			}
+		}
+		
+	}
+	
+	/**
+	 * Adapts a {@link Callable} to {@link ForkJoinPool.ManagedBlocker}.
+	 */
+	private static class BlockingCall<T> implements ForkJoinPool.ManagedBlocker {
+		
+		private Callable<T> task;
+		private boolean done = false;
+		private T result;
+		private Exception error;
+		
+		BlockingCall(Callable<T> task) {
+			this.task = task;
+		}
+
+		@Override
+		public boolean block() {
+			try {
+				result = task.call();
+			} catch (Exception e) {
+				error = e;
+			}
+			done = true;
+			return true;
+		}
+
+		@Override
+		public boolean isReleasable() {
+			return done;
+		}
+		
+	}
+	
+	/**
+	 * Names platform request threads.
+	 */
+	private static class NamedThreadFactory implements ThreadFactory {
+		
+		private String name;
+		private AtomicInteger count = new AtomicInteger();
+		
+		NamedThreadFactory(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public Thread newThread(Runnable r) {
+			Thread t = new Thread(r);
+			t.setName(name+"-"+count.incrementAndGet());
+			return t;
+		}
+		
+	}
+	
+	/**
+	 * Names work stealing pool threads.
+	 */
+	private static class NamedWorkerThreadFactory implements ForkJoinPool.ForkJoinWorkerThreadFactory {
+		
+		private String name;
+		private AtomicInteger count = new AtomicInteger();
+		
+		NamedWorkerThreadFactory(String name) {
+			this.name = name;
+		}
+
+		@Override
+		public ForkJoinWorkerThread newThread(ForkJoinPool pool) {
+			ForkJoinWorkerThread t = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+			t.setName(name+"-"+count.incrementAndGet());
+			return t;
+		}
+		
+	}
+
+}
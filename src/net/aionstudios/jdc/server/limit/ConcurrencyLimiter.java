@@ -0,0 +1,150 @@
+package net.aionstudios.jdc.server.limit;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limits the number of requests a {@link Website} handles at once, adapting the limit to measured latency.
+ * <p>
+ * The limit follows a gradient: a short term average of request latency is compared with a long term one,
+ * and while recent requests are no slower than the long term average times the configured tolerance the limit
+ * grows by about its square root. As recent latency rises the limit shrinks, down to half per estimate, so a
+ * slow {@link ElementProcessor} sheds load with fast rejections instead of queueing work without bound.
+ * @author Winter Roberts
+ */
+public class ConcurrencyLimiter {
+
+	private static final double SHORT_WEIGHT = 0.25;
+	private static final double LONG_WEIGHT = 1.0/600;
+
+	private LimiterSettings settings;
+	private AtomicInteger inFlight = new AtomicInteger(0);
+	private AtomicLong accepted = new AtomicLong(0);
+	private AtomicLong rejected = new AtomicLong(0);
+	private volatile int limit;
+	private double estimatedLimit;
+	private double shortRtt = 0;
+	private double longRtt = 0;
+
+	/**
+	 * Creates a new concurrency limiter.
+	 * @param settings	The {@link LimiterSettings} to limit with.
+	 */
+	public ConcurrencyLimiter(LimiterSettings settings) {
+		this.settings = settings;
+		this.limit = settings.getInitialLimit();
+		this.estimatedLimit = limit;
+	}
+
+	/**
+	 * Admits a request if fewer than the current limit are in flight.
+	 * <p>
+	 * Every admitted request must be followed by a call to {@link #release(long)}.
+	 * @return True if the request was admitted, false if it should be rejected.
+	 */
+	public boolean acquire() {
+		if(!settings.isEnabled()) {
+			inFlight.incrementAndGet();
+			accepted.incrementAndGet();
+			return true;
+		}
+		while(true) {
+			int current = inFlight.get();
+			if(current>=limit) {
+				rejected.incrementAndGet();
+				return false;
+			}
+			if(inFlight.compareAndSet(current, current+1)) {
+				accepted.incrementAndGet();
+				return true;
+			}
+		}
+	}
+
+	/**
+	 * Completes an admitted request and updates the limit from its latency.
+	 * @param nanos	The time the request took, in nanoseconds.
+	 */
+	public void release(long nanos) {
+		int current = inFlight.getAndDecrement();
+		if(settings.isEnabled()&&nanos>0) {
+			sample(nanos, current);
+		}
+	}
+
+	/**
+	 * Updates latency averages and the estimated limit from one request.
+	 * @param nanos		The time the request took, in nanoseconds.
+	 * @param current	The number of requests in flight when it completed, including itself.
+	 */
+	private synchronized void sample(long nanos, int current) {
+		if(longRtt==0) {
+			shortRtt = nanos;
+			longRtt = nanos;
+			return;
+		}
+		shortRtt += (nanos-shortRtt)*SHORT_WEIGHT;
+		longRtt += (nanos-longRtt)*LONG_WEIGHT;
+		if(longRtt/shortRtt>2) {
+			//latency improved a lot, let the long term average catch up
+			longRtt *= 0.95;
+		}
+		double gradient = Math.max(0.5, Math.min(1.0, settings.getTolerance()*longRtt/shortRtt));
+		if(gradient==1.0&&current<estimatedLimit/2) {
+			//demand is well below the limit, so healthy latency is no reason to raise it
+			return;
+		}
+		double newLimit = estimatedLimit*gradient+(gradient==1.0?Math.sqrt(estimatedLimit):0);
+		estimatedLimit = estimatedLimit*(1-settings.getSmoothing())+newLimit*settings.getSmoothing();
+		estimatedLimit = Math.max(settings.getMinLimit(), Math.min(settings.getMaxLimit(), estimatedLimit));
+		limit = (int) estimatedLimit;
+	}
+
+	/**
+	 * @return The number of requests currently admitted.
+	 */
+	public int getInFlight() {
+		return inFlight.get();
+	}
+
+	/**
+	 * @return The number of requests which may currently be in flight.
+	 */
+	public int getLimit() {
+		return limit;
+	}
+
+	/**
+	 * @return The number of requests admitted since this limiter was created.
+	 */
+	public long getAccepted() {
+		return accepted.get();
+	}
+
+	/**
+	 * @return The number of requests rejected since this limiter was created.
+	 */
+	public long getRejected() {
+		return rejected.get();
+	}
+
+	/**
+	 * @return The {@link LimiterSettings} of this limiter.
+	 */
+	public LimiterSettings getSettings() {
+		return settings;
+	}
+
+	/**
+	 * Prints the state of this limiter to the console.
+	 */
+	public synchronized void printLimiter() {
+		System.out.println("ENABLED:   "+(settings.isEnabled()?"TRUE":"FALSE"));
+		System.out.println("LIMIT:     "+limit+" ("+settings.getMinLimit()+"-"+settings.getMaxLimit()+")");
+		System.out.println("IN FLIGHT: "+inFlight.get());
+		System.out.println("ACCEPTED:  "+accepted.get());
+		System.out.println("REJECTED:  "+rejected.get());
+		System.out.println(String.format("LATENCY:   %.2fms recent, %.2fms long term", shortRtt/1000000, longRtt/1000000));
+	}
+
+}
@@ -0,0 +1,110 @@
+package net.aionstudios.jdc.server.limit;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import net.aionstudios.jdc.server.util.FormatUtils;
+
+/**
+ * Concurrency limiter settings read from the "limiter" section of a {@link Website}'s settings.json.
+ * @author Winter Roberts
+ */
+public class LimiterSettings {
+
+	private boolean enabled = true;
+	private int initialLimit = 32;
+	private int minLimit = 4;
+	private int maxLimit = 512;
+	private double smoothing = 0.2;
+	private double tolerance = 1.5;
+	private int retryAfter = 1;
+
+	/**
+	 * Creates limiter settings with default values.
+	 */
+	public LimiterSettings() {
+
+	}
+
+	/**
+	 * Reads limiter settings, keeping defaults for any setting that isn't present.
+	 * @param j	The "limiter" {@link JSONObject} from settings.json.
+	 * @throws JSONException If a setting is present but of the wrong type.
+	 */
+	public LimiterSettings(JSONObject j) throws JSONException {
+		enabled = j.has("enabled") ? j.getBoolean("enabled") : enabled;
+		initialLimit = j.has("initial_limit") ? j.getInt("initial_limit") : initialLimit;
+		minLimit = j.has("min_limit") ? j.getInt("min_limit") : minLimit;
+		maxLimit = j.has("max_limit") ? j.getInt("max_limit") : maxLimit;
+		smoothing = j.has("smoothing") ? j.getDouble("smoothing") : smoothing;
+		tolerance = j.has("tolerance") ? j.getDouble("tolerance") : tolerance;
+		retryAfter = j.has("retry_after") ? j.getInt("retry_after") : retryAfter;
+	}
+
+	/**
+	 * @return A {@link JSONObject} of the default limiter settings, as written to new config files.
+	 * @throws JSONException If the object could not be built.
+	 */
+	public static JSONObject getDefaultConfig() throws JSONException {
+		LimiterSettings d = new LimiterSettings();
+		JSONObject lo = FormatUtils.getLinkedJsonObject();
+		lo.put("enabled", d.enabled);
+		lo.put("initial_limit", d.initialLimit);
+		lo.put("min_limit", d.minLimit);
+		lo.put("max_limit", d.maxLimit);
+		lo.put("smoothing", d.smoothing);
+		lo.put("tolerance", d.tolerance);
+		lo.put("retry_after", d.retryAfter);
+		return lo;
+	}
+
+	/**
+	 * @return True if requests to the website should be limited.
+	 */
+	public boolean isEnabled() {
+		return enabled;
+	}
+
+	/**
+	 * @return The number of concurrent requests allowed before any latency has been measured.
+	 */
+	public int getInitialLimit() {
+		return Math.max(getMinLimit(), Math.min(getMaxLimit(), initialLimit));
+	}
+
+	/**
+	 * @return The lowest the limit may fall, at least 1.
+	 */
+	public int getMinLimit() {
+		return Math.max(1, minLimit);
+	}
+
+	/**
+	 * @return The highest the limit may rise, at least the minimum limit.
+	 */
+	public int getMaxLimit() {
+		return Math.max(getMinLimit(), maxLimit);
+	}
+
+	/**
+	 * @return The weight, between 0 and 1, given to each new limit estimate.
+	 */
+	public double getSmoothing() {
+		return Math.max(0.01, Math.min(1.0, smoothing));
+	}
+
+	/**
+	 * @return How many times the long term latency recent requests may take before the limit is reduced.
+	 */
+	public double getTolerance() {
+		return Math.max(1.0, tolerance);
+	}
+
+	/**
+	 * @return The number of seconds sent in the Retry-After header of rejected requests.
+	 */
+	public int getRetryAfter() {
+		return Math.max(0, retryAfter);
+	}
+
+}
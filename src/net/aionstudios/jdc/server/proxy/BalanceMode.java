@@ -0,0 +1,47 @@
+package net.aionstudios.jdc.server.proxy;
+
+/**
+ * Enumerates the ways a {@link ProxyRoute} chooses between its {@link Upstream}s.
+ * @author Winter Roberts
+ */
+public enum BalanceMode {
+	
+	/**
+	 * Sends each request to the upstream with the fewest requests in progress.
+	 */
+	LEAST_OUTSTANDING("least_outstanding"),
+	
+	/**
+	 * Sends each request to the upstream with the lowest moving average latency, weighted by its requests in progress.
+	 */
+	EWMA("ewma");
+	
+	private String configName;
+	
+	private BalanceMode(String configName) {
+		this.configName = configName;
+	}
+	
+	/**
+	 * @return The name used for this mode in proxies.json.
+	 */
+	public String getConfigName() {
+		return configName;
+	}
+	
+	/**
+	 * Finds a balance mode by its proxies.json name.
+	 * @param name	The name of the mode.
+	 * @return The matching {@link BalanceMode}, or {@link #LEAST_OUTSTANDING} if the name is unknown.
+	 */
+	public static BalanceMode fromConfigName(String name) {
+		for(BalanceMode m : values()) {
+			if(m.configName.equalsIgnoreCase(name)) {
+				return m;
+			}
+		}
+		System.err.println("Unknown proxy balance mode '"+name+"', falling back to '"+LEAST_OUTSTANDING.configName+"'!");
+		return LEAST_OUTSTANDING;
+	}
+
+}
@@ -0,0 +1,126 @@
+package net.aionstudios.jdc.server.proxy;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+import java.util.Map.Entry;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+
+import net.aionstudios.jdc.server.util.ResponseUtils;
+
+/**
+ * A copy of an upstream response taken as it is passed to the client, so coalesced requests waiting for the same
+ * response can be answered with it.
+ * @author Winter Roberts
+ */
+class CapturedResponse {
+
+	private final int maxBody;
+	private int status = -1;
+	private Headers headers;
+	private long headLength = -1;
+	private ByteArrayOutputStream body = new ByteArrayOutputStream();
+	private byte[] bytes;
+
+	/**
+	 * Creates an empty capture.
+	 * @param maxBody	The largest body in bytes which is kept, a response with a larger one can't be shared.
+	 */
+	CapturedResponse(int maxBody) {
+		this.maxBody = maxBody;
+	}
+
+	/**
+	 * Records the status and headers of the response as they are sent to the client.
+	 * @param status		The status of the response.
+	 * @param headers		The headers sent to the client.
+	 * @param headLength	The length of the body announced to a HEAD request, or -1 if there is none.
+	 */
+	void setHead(int status, Headers headers, long headLength) {
+		this.status = status;
+		this.headers = new Headers();
+		for(Entry<String, List<String>> h : headers.entrySet()) {
+			this.headers.put(h.getKey(), h.getValue());
+		}
+		this.headLength = headLength;
+	}
+
+	/**
+	 * @param os	The response body of the client.
+	 * @return A stream writing to the client's response body and keeping a copy of what is written.
+	 */
+	OutputStream tee(OutputStream os) {
+		return new FilterOutputStream(os) {
+
+			@Override
+			public void write(byte[] b, int off, int len) throws IOException {
+				out.write(b, off, len);
+				if(body!=null) {
+					if(body.size()+len>maxBody) {
+						body = null;
+					} else {
+						body.write(b, off, len);
+					}
+				}
+			}
+
+			@Override
+			public void write(int b) throws IOException {
+				write(new byte[] {(byte) b}, 0, 1);
+			}
+
+		};
+	}
+
+	/**
+	 * Marks the response as passed to the client completely.
+	 */
+	void finish() {
+		bytes = body!=null ? body.toByteArray() : null;
+	}
+
+	/**
+	 * @return This capture, or null if the response can't be shared because it wasn't passed completely, its body was
+	 * too large or it sets cookies.
+	 */
+	CapturedResponse share() {
+		return bytes!=null&&status>0&&!headers.containsKey("Set-Cookie") ? this : null;
+	}
+
+	/**
+	 * Answers a request with the captured response.
+	 * @param he	The {@link HttpExchange} of a request identical to the one the response was captured for.
+	 * @return True if the response was sent completely, false otherwise.
+	 */
+	boolean send(HttpExchange he) {
+		Headers respHeaders = he.getResponseHeaders();
+		for(Entry<String, List<String>> h : headers.entrySet()) {
+			for(String v : h.getValue()) {
+				respHeaders.add(h.getKey(), v);
+			}
+		}
+		try {
+			if(he.getRequestMethod().equalsIgnoreCase("HEAD")||status<200||status==204||status==304) {
+				if(headLength>=0) {
+					respHeaders.set("Content-Length", Long.toString(headLength));
+				}
+				he.sendResponseHeaders(status, -1);
+				he.close();
+				return true;
+			}
+			he.sendResponseHeaders(status, bytes.length==0 ? -1 : bytes.length);
+			OutputStream os = he.getResponseBody();
+			os.write(bytes);
+			ResponseUtils.safeCloseStream(os);
+			return true;
+		} catch (IOException e) {
+			he.close();
+			return false;
+		}
+	}
+
+}
@@ -0,0 +1,146 @@
+package net.aionstudios.jdc.server.proxy;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.ArrayDeque;
+import java.util.Deque;
+
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSocket;
+import javax.net.ssl.SSLSocketFactory;
+
+/**
+ * Keeps idle keep-alive connections to one upstream host for reuse by later proxied requests.
+ * @author Winter Roberts
+ */
+public class ConnectionPool {
+
+	private final String host;
+	private final int port;
+	private final boolean secure;
+	private final ProxySettings settings;
+	private final Deque<UpstreamConnection> idle = new ArrayDeque<UpstreamConnection>();
+	private boolean closed = false;
+	private long opened = 0;
+	private long reuses = 0;
+
+	/**
+	 * Creates a pool of connections to an upstream.
+	 * @param host		The upstream host name.
+	 * @param port		The upstream port.
+	 * @param secure	True if connections should use TLS.
+	 * @param settings	The {@link ProxySettings} for timeouts and pool size.
+	 */
+	public ConnectionPool(String host, int port, boolean secure, ProxySettings settings) {
+		this.host = host;
+		this.port = port;
+		this.secure = secure;
+		this.settings = settings;
+	}
+
+	/**
+	 * Takes the most recently used idle connection, or opens a new one if none is left.
+	 * @return A connection to the upstream, which must be returned with {@link #release(UpstreamConnection, boolean)}.
+	 * @throws IOException If a new connection could not be opened.
+	 */
+	UpstreamConnection acquire() throws IOException {
+		long now = System.currentTimeMillis();
+		synchronized(this) {
+			UpstreamConnection c;
+			while((c = idle.pollFirst())!=null) {
+				if(!c.isExpired(now, settings.getIdleTimeout())) {
+					reuses++;
+					return c;
+				}
+				c.close();
+			}
+			opened++;
+		}
+		return open();
+	}
+
+	/**
+	 * Returns a connection to the pool.
+	 * @param c			The connection taken with {@link #acquire()}.
+	 * @param reusable	True if the exchange on the connection completed and the upstream will keep it open.
+	 */
+	void release(UpstreamConnection c, boolean reusable) {
+		if(reusable) {
+			synchronized(this) {
+				if(!closed&&idle.size()<settings.getMaxIdleConnections()) {
+					c.idle();
+					idle.addFirst(c);
+					return;
+				}
+			}
+		}
+		c.close();
+	}
+
+	/**
+	 * Opens a new connection with the configured timeouts.
+	 */
+	private UpstreamConnection open() throws IOException {
+		Socket s = new Socket();
+		try {
+			s.setTcpNoDelay(true);
+			s.connect(new InetSocketAddress(host, port), settings.getConnectTimeout());
+			s.setSoTimeout(settings.getReadTimeout());
+			if(secure) {
+				SSLSocket ss = (SSLSocket) ((SSLSocketFactory) SSLSocketFactory.getDefault()).createSocket(s, host, port, true);
+				SSLParameters p = ss.getSSLParameters();
+				p.setEndpointIdentificationAlgorithm("HTTPS");
+				ss.setSSLParameters(p);
+				ss.startHandshake();
+				s = ss;
+			}
+			return new UpstreamConnection(s, settings.getBufferSize());
+		} catch (IOException e) {
+			s.close();
+			throw e;
+		}
+	}
+
+	/**
+	 * Closes every idle connection and stops keeping new ones.
+	 */
+	public void close() {
+		synchronized(this) {
+			closed = true;
+			UpstreamConnection c;
+			while((c = idle.pollFirst())!=null) {
+				c.close();
+			}
+		}
+	}
+
+	/**
+	 * @return The upstream this pool connects to, like http://host:port.
+	 */
+	public String getOrigin() {
+		return (secure?"https://":"http://")+host+":"+port;
+	}
+
+	/**
+	 * @return The number of idle connections in this pool.
+	 */
+	public synchronized int getIdleCount() {
+		return idle.size();
+	}
+
+	/**
+	 * @return The number of connections this pool has opened.
+	 */
+	public synchronized long getOpened() {
+		return opened;
+	}
+
+	/**
+	 * @return The number of requests sent on a reused connection.
+	 */
+	public synchronized long getReuses() {
+		return reuses;
+	}
+
+}
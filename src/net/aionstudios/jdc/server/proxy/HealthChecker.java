@@ -0,0 +1,91 @@
+package net.aionstudios.jdc.server.proxy;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Probes the {@link Upstream}s of proxy routes which configure a health check path in the background.
+ * @author Winter Roberts
+ */
+public class HealthChecker {
+
+	private static ScheduledExecutorService scheduler;
+
+	/**
+	 * Starts checking the routes of a {@link ProxyManager} at its configured interval.
+	 * @param pm	The {@link ProxyManager} whose routes should be checked.
+	 * @return The scheduled checks, to be cancelled when the manager is closed.
+	 */
+	public static synchronized ScheduledFuture<?> schedule(final ProxyManager pm) {
+		if(scheduler==null) {
+			scheduler = Executors.newSingleThreadScheduledExecutor(new ThreadFactory() {
+
+				@Override
+				public Thread newThread(Runnable r) {
+					Thread t = new Thread(r, "JDC-HealthCheck");
+					t.setDaemon(true);
+					return t;
+				}
+
+			});
+		}
+		long interval = pm.getSettings().getHealthInterval();
+		return scheduler.scheduleWithFixedDelay(new Runnable() {
+
+			@Override
+			public void run() {
+				for(ProxyRoute r : pm.getRoutes()) {
+					if(r.getHealthPath()==null) {
+						continue;
+					}
+					for(Upstream u : r.getUpstreams()) {
+						if(u.getOrigin()!=null) {
+							u.health(probe(u.getOrigin()+r.getHealthPath(), pm.getSettings()));
+						}
+					}
+				}
+			}
+
+		}, interval, interval, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Requests a health check url.
+	 * @param url		The health check {@link URL} string.
+	 * @param settings	The {@link ProxySettings} for timeouts.
+	 * @return True if the url answered with a 2xx or 3xx status.
+	 */
+	private static boolean probe(String url, ProxySettings settings) {
+		HttpURLConnection c = null;
+		try {
+			c = (HttpURLConnection) new URL(url).openConnection();
+			c.setConnectTimeout(settings.getConnectTimeout());
+			c.setReadTimeout(settings.getReadTimeout());
+			c.setInstanceFollowRedirects(false);
+			c.setUseCaches(false);
+			int code = c.getResponseCode();
+			InputStream in = code<400 ? c.getInputStream() : c.getErrorStream();
+			if(in!=null) {
+				byte[] b = new byte[1024];
+				while(in.read(b)>0) {
+				}
+				in.close();
+			}
+			return code>=200&&code<400;
+		} catch (IOException e) {
+			return false;
+		} finally {
+			if(c!=null) {
+				c.disconnect();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,123 @@
+package net.aionstudios.jdc.server.proxy;
+
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.TreeMap;
+
+/**
+ * An immutable trie of string prefixes which finds the value of the longest prefix of a string.
+ * <p>
+ * Each node keeps its children in a sorted array searched by binary search, so a lookup walks the string
+ * once and allocates nothing.
+ * @author Winter Roberts
+ * @param <V>	The type of values mapped to prefixes.
+ */
+public class PrefixTrie<V> {
+
+	private final Node<V> root;
+
+	/**
+	 * Compiles a trie from prefix mappings.
+	 * @param mappings	The values to be found by their prefix.
+	 */
+	public PrefixTrie(Map<String, V> mappings) {
+		Builder<V> b = new Builder<V>();
+		for(Entry<String, V> e : mappings.entrySet()) {
+			Builder<V> n = b;
+			String k = e.getKey();
+			for(int i = 0; i < k.length(); i++) {
+				Character c = k.charAt(i);
+				Builder<V> next = n.children.get(c);
+				if(next==null) {
+					next = new Builder<V>();
+					n.children.put(c, next);
+				}
+				n = next;
+			}
+			n.value = e.getValue();
+		}
+		root = b.build();
+	}
+
+	/**
+	 * Finds the value of the longest mapped prefix of a string.
+	 * @param s		The string to match.
+	 * @return The value mapped to the longest prefix of the string, or null if no prefix is mapped.
+	 */
+	public V longestPrefix(String s) {
+		Node<V> n = root;
+		V best = n.value;
+		for(int i = 0; i < s.length(); i++) {
+			n = n.child(s.charAt(i));
+			if(n==null) {
+				break;
+			}
+			if(n.value!=null) {
+				best = n.value;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * A compiled trie node.
+	 */
+	private static class Node<V> {
+
+		private final char[] keys;
+		private final Node<V>[] children;
+		private final V value;
+
+		private Node(char[] keys, Node<V>[] children, V value) {
+			this.keys = keys;
+			this.children = children;
+			this.value = value;
+		}
+
+		/**
+		 * @param c		The next character.
+		 * @return The child for the character, or null if there is none.
+		 */
+		private Node<V> child(char c) {
+			int lo = 0;
+			int hi = keys.length-1;
+			while(lo<=hi) {
+				int mid = (lo+hi)>>>1;
+				char k = keys[mid];
+				if(k<c) {
+					lo = mid+1;
+				} else if(k>c) {
+					hi = mid-1;
+				} else {
+					return children[mid];
+				}
+			}
+			return null;
+		}
+
+	}
+
+	/**
+	 * A mutable trie node used while compiling.
+	 */
+	private static class Builder<V> {
+
+		private final TreeMap<Character, Builder<V>> children = new TreeMap<Character, Builder<V>>();
+		private V value;
+
+		@SuppressWarnings("unchecked")
+		private Node<V> build() {
+			char[] keys = new char[children.size()];
+			Node<V>[] nodes = (Node<V>[]) new Node<?>[children.size()];
+			int i = 0;
+			for(Entry<Character, Builder<V>> e : children.entrySet()) {
+				keys[i] = e.getKey();
+				nodes[i] = e.getValue().build();
+				i++;
+			}
+			return new Node<V>(keys, nodes, value);
+		}
+
+	}
+
+}
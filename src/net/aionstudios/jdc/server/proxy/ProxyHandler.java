@@ -0,0 +1,467 @@
+package net.aionstudios.jdc.server.proxy;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.SocketTimeoutException;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map.Entry;
+import java.util.Set;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpsExchange;
+
+import net.aionstudios.jdc.content.RequestVariables;
+import net.aionstudios.jdc.server.coalesce.Flight;
+import net.aionstudios.jdc.server.coalesce.RequestCoalescer;
+import net.aionstudios.jdc.server.compression.CompressionEncoding;
+import net.aionstudios.jdc.server.content.GeneratorResponse;
+import net.aionstudios.jdc.server.content.Website;
+import net.aionstudios.jdc.server.util.ResponseUtils;
+
+/**
+ * Forwards requests matching a {@link ProxyRoute} to their upstream server and streams the response back.
+ * <p>
+ * The request method, headers and body are passed through as received, apart from hop-by-hop headers, and the
+ * upstream response is piped to the client as it arrives without being buffered. Connections to upstreams are
+ * kept alive in the {@link ConnectionPool}s of the {@link Website}'s {@link ProxyManager}.
+ * @author Winter Roberts
+ */
+public class ProxyHandler {
+
+	private static final int MAX_HEAD_SIZE = 65536;
+
+	private static final Set<String> HOP_HEADERS = new HashSet<String>(Arrays.asList(
+			"connection", "keep-alive", "proxy-connection", "proxy-authenticate", "proxy-authorization",
+			"te", "trailer", "transfer-encoding", "upgrade", "expect", "host", "content-length"));
+
+	/**
+	 * Proxies a request to an upstream of a {@link ProxyRoute}.
+	 * <p>
+	 * If the chosen upstream can't be reached, or fails before its response begins, a request without a body is
+	 * retried once on another upstream of the route. Otherwise the client receives a 502 or, if the upstream timed
+	 * out, a 504 through {@link ResponseUtils#generateHTTPResponse}.
+	 * <p>
+	 * A request without a body or credentials under a path coalesced by the {@link Website}'s {@link RequestCoalescer}
+	 * waits for an identical request already being proxied and is answered with a copy of its response, unless the
+	 * response is too large to hold or sets cookies.
+	 * @param he		The {@link HttpExchange} handling this request.
+	 * @param w			The {@link Website} on which the request was made.
+	 * @param route		The {@link ProxyRoute} matching the request path.
+	 * @param ce		The {@link CompressionEncoding} accepted by the client, for error pages.
+	 * @return True if the upstream response was passed to the client completely, false otherwise.
+	 */
+	public static boolean forward(HttpExchange he, Website w, ProxyRoute route, CompressionEncoding ce) {
+		RequestCoalescer rc = w.getRequestCoalescer();
+		String path = he.getRequestURI().getRawPath();
+		Headers reqHeaders = he.getRequestHeaders();
+		if(rc.isCoalesced(path, he.getRequestMethod())&&!reqHeaders.containsKey("Authorization")
+				&&!reqHeaders.containsKey("Content-Length")&&!reqHeaders.containsKey("Transfer-Encoding")) {
+			//the upstream's encoding and type of response follow these headers, which are passed through
+			Flight<CapturedResponse> f = rc.join(RequestCoalescer.getKey("proxy", path, he, "Accept-Encoding", "Accept", "Cookie"));
+			if(f.isLeader()) {
+				CapturedResponse capture = new CapturedResponse(rc.getSettings().getMaxBody());
+				boolean sent = false;
+				try {
+					sent = forward(he, w, route, ce, capture);
+				} finally {
+					f.complete(sent ? capture.share() : null);
+				}
+				return sent;
+			}
+			CapturedResponse shared = f.await();
+			if(shared!=null) {
+				return shared.send(he);
+			}
+		}
+		return forward(he, w, route, ce, null);
+	}
+
+	/**
+	 * Proxies a request to an upstream of a {@link ProxyRoute}.
+	 * @param he		The {@link HttpExchange} handling this request.
+	 * @param w			The {@link Website} on which the request was made.
+	 * @param route		The {@link ProxyRoute} matching the request path.
+	 * @param ce		The {@link CompressionEncoding} accepted by the client, for error pages.
+	 * @param capture	The {@link CapturedResponse} to copy the upstream response to, or null.
+	 * @return True if the upstream response was passed to the client completely, false otherwise.
+	 */
+	private static boolean forward(HttpExchange he, Website w, ProxyRoute route, CompressionEncoding ce, CapturedResponse capture) {
+		ProxyManager pm = w.getProxyManager();
+		Headers reqHeaders = he.getRequestHeaders();
+		String te = reqHeaders.getFirst("Transfer-Encoding");
+		boolean chunkedBody = te!=null&&te.toLowerCase(Locale.ROOT).contains("chunked");
+		long contentLength = chunkedBody ? -1 : parseLength(reqHeaders.getFirst("Content-Length"));
+		boolean replayable = !chunkedBody&&contentLength<=0;
+		byte[] buffer = new byte[pm.getSettings().getBufferSize()];
+		
+		Upstream up = route.choose(null);
+		boolean retried = false;
+		ConnectionPool pool = null;
+		UpstreamConnection c = null;
+		ResponseHead r = null;
+		while(r==null) {
+			URI u = target(up, route, he.getRequestURI());
+			if(u==null) {
+				System.err.println("Couldn't proxy to invalid url '"+up.getUrl()+"'!");
+				return errorResponse(he, w, ce, 502);
+			}
+			boolean secure = "https".equalsIgnoreCase(u.getScheme());
+			int port = u.getPort()>0 ? u.getPort() : (secure ? 443 : 80);
+			pool = pm.getPool(u.getHost(), port, secure);
+			byte[] head = requestHead(he, u, port, secure, chunkedBody, contentLength);
+			up.begin();
+			long sent = System.nanoTime();
+			try {
+				while(r==null) {
+					c = pool.acquire();
+					try {
+						OutputStream uo = c.getOutputStream();
+						uo.write(head);
+						if(chunkedBody) {
+							pipeChunked(he.getRequestBody(), uo, buffer);
+						} else if(contentLength>0) {
+							pipeFixed(he.getRequestBody(), uo, buffer, contentLength);
+						}
+						uo.flush();
+						r = readResponseHead(c.getInputStream());
+					} catch (IOException e) {
+						//a reused connection may have been closed by the upstream while idle, retry if the request can be sent again
+						boolean retry = c.isReused()&&replayable&&!(e instanceof SocketTimeoutException);
+						pool.release(c, false);
+						c = null;
+						if(!retry) {
+							throw e;
+						}
+					}
+				}
+				up.latency(System.nanoTime()-sent);
+			} catch (IOException e) {
+				up.end(true);
+				Upstream other = replayable&&!retried ? route.choose(up) : up;
+				if(other!=up) {
+					System.err.println("Proxy request to '"+pool.getOrigin()+"' failed, retrying on '"+other.getUrl()+"'! "+e.getMessage());
+					up = other;
+					retried = true;
+					continue;
+				}
+				if(e instanceof SocketTimeoutException) {
+					System.err.println("Proxy request to '"+pool.getOrigin()+"' timed out!");
+					return errorResponse(he, w, ce, 504);
+				}
+				System.err.println("Proxy request to '"+pool.getOrigin()+"' failed! "+e.getMessage());
+				return errorResponse(he, w, ce, 502);
+			}
+		}
+		
+		boolean reusable = false;
+		try {
+			Headers respHeaders = he.getResponseHeaders();
+			Set<String> connectionTokens = tokens(r.headers.getFirst("Connection"));
+			for(Entry<String, List<String>> h : r.headers.entrySet()) {
+				String name = h.getKey().toLowerCase(Locale.ROOT);
+				if(HOP_HEADERS.contains(name)||connectionTokens.contains(name)) {
+					continue;
+				}
+				for(String v : h.getValue()) {
+					respHeaders.add(h.getKey(), v);
+				}
+			}
+			InputStream ui = c.getInputStream();
+			OutputStream os = he.getResponseBody();
+			if(capture!=null) {
+				capture.setHead(r.status, respHeaders, he.getRequestMethod().equalsIgnoreCase("HEAD") ? r.contentLength : -1);
+				os = capture.tee(os);
+			}
+			boolean noBody = he.getRequestMethod().equalsIgnoreCase("HEAD")||r.status<200||r.status==204||r.status==304;
+			if(noBody) {
+				if(r.contentLength>=0&&he.getRequestMethod().equalsIgnoreCase("HEAD")) {
+					respHeaders.set("Content-Length", Long.toString(r.contentLength));
+				}
+				he.sendResponseHeaders(r.status, -1);
+				reusable = r.keepAlive;
+			} else if(r.chunked) {
+				he.sendResponseHeaders(r.status, 0);
+				copyChunked(ui, os, buffer);
+				reusable = r.keepAlive;
+			} else if(r.contentLength==0) {
+				he.sendResponseHeaders(r.status, -1);
+				reusable = r.keepAlive;
+			} else if(r.contentLength>0) {
+				he.sendResponseHeaders(r.status, r.contentLength);
+				pipeFixed(ui, os, buffer, r.contentLength);
+				reusable = r.keepAlive;
+			} else {
+				//no framing, the body ends when the upstream closes the connection
+				he.sendResponseHeaders(r.status, 0);
+				int n;
+				while((n = ui.read(buffer))>0) {
+					os.write(buffer, 0, n);
+				}
+			}
+			ResponseUtils.safeCloseStream(os);
+			if(capture!=null) {
+				capture.finish();
+			}
+			return true;
+		} catch (IOException e) {
+			reusable = false;
+			he.close();
+			return false;
+		} finally {
+			pool.release(c, reusable);
+			//gateway errors from the upstream count towards ejecting it
+			up.end(r.status>=502&&r.status<=504);
+		}
+	}
+
+	/**
+	 * @param up			The {@link Upstream} the request is sent to.
+	 * @param route			The {@link ProxyRoute} matching the request.
+	 * @param requestUri	The request target received from the client.
+	 * @return The {@link URI} to request from the upstream, or null if the upstream's url is invalid.
+	 */
+	private static URI target(Upstream up, ProxyRoute route, URI requestUri) {
+		String target = up.rewrite(route.getContext(), requestUri.getRawPath());
+		if(requestUri.getRawQuery()!=null) {
+			target = target+"?"+requestUri.getRawQuery();
+		}
+		try {
+			URI u = new URI(target);
+			return u.getHost()!=null ? u : null;
+		} catch (URISyntaxException e) {
+			return null;
+		}
+	}
+
+	/**
+	 * Builds the request line and headers sent upstream.
+	 */
+	private static byte[] requestHead(HttpExchange he, URI u, int port, boolean secure, boolean chunkedBody, long contentLength) {
+		Headers reqHeaders = he.getRequestHeaders();
+		StringBuilder sb = new StringBuilder(512);
+		sb.append(he.getRequestMethod()).append(' ');
+		sb.append(u.getRawPath()==null||u.getRawPath().isEmpty() ? "/" : u.getRawPath());
+		if(u.getRawQuery()!=null) {
+			sb.append('?').append(u.getRawQuery());
+		}
+		sb.append(" HTTP/1.1\r\n");
+		sb.append("Host: ").append(u.getHost());
+		if(port!=(secure ? 443 : 80)) {
+			sb.append(':').append(port);
+		}
+		sb.append("\r\n");
+		Set<String> connectionTokens = tokens(reqHeaders.getFirst("Connection"));
+		String forwardedFor = null;
+		for(Entry<String, List<String>> h : reqHeaders.entrySet()) {
+			String name = h.getKey().toLowerCase(Locale.ROOT);
+			if(HOP_HEADERS.contains(name)||connectionTokens.contains(name)) {
+				continue;
+			}
+			if(name.equals("x-forwarded-for")) {
+				forwardedFor = String.join(", ", h.getValue());
+				continue;
+			}
+			for(String v : h.getValue()) {
+				sb.append(h.getKey()).append(": ").append(v).append("\r\n");
+			}
+		}
+		String remote = he.getRemoteAddress().getAddress().getHostAddress();
+		sb.append("X-Forwarded-For: ").append(forwardedFor!=null ? forwardedFor+", "+remote : remote).append("\r\n");
+		sb.append("X-Forwarded-Proto: ").append(he instanceof HttpsExchange ? "https" : "http").append("\r\n");
+		if(reqHeaders.containsKey("Host")) {
+			sb.append("X-Forwarded-Host: ").append(reqHeaders.getFirst("Host")).append("\r\n");
+		}
+		if(chunkedBody) {
+			sb.append("Transfer-Encoding: chunked\r\n");
+		} else if(contentLength>=0) {
+			sb.append("Content-Length: ").append(contentLength).append("\r\n");
+		}
+		sb.append("\r\n");
+		return sb.toString().getBytes(StandardCharsets.ISO_8859_1);
+	}
+
+	/**
+	 * Reads an upstream status line and headers, skipping interim 1xx responses.
+	 */
+	private static ResponseHead readResponseHead(InputStream in) throws IOException {
+		while(true) {
+			int[] budget = new int[] {MAX_HEAD_SIZE};
+			String status = readLine(in, budget);
+			if(status==null) {
+				throw new EOFException("Upstream closed the connection");
+			}
+			String[] parts = status.split(" ", 3);
+			if(parts.length<2||!parts[0].startsWith("HTTP/")) {
+				throw new IOException("Malformed upstream status line");
+			}
+			ResponseHead r = new ResponseHead();
+			try {
+				r.status = Integer.parseInt(parts[1]);
+			} catch (NumberFormatException e) {
+				throw new IOException("Malformed upstream status code");
+			}
+			String line;
+			while((line = readLine(in, budget))!=null&&!line.isEmpty()) {
+				int colon = line.indexOf(':');
+				if(colon>0) {
+					r.headers.add(line.substring(0, colon).trim(), line.substring(colon+1).trim());
+				}
+			}
+			if(line==null) {
+				throw new EOFException("Upstream closed the connection");
+			}
+			if(r.status>=100&&r.status<200&&r.status!=101) {
+				continue;
+			}
+			String te = r.headers.getFirst("Transfer-Encoding");
+			r.chunked = te!=null&&te.toLowerCase(Locale.ROOT).contains("chunked");
+			r.contentLength = r.chunked ? -1 : parseLength(r.headers.getFirst("Content-Length"));
+			Set<String> connection = tokens(r.headers.getFirst("Connection"));
+			r.keepAlive = parts[0].equals("HTTP/1.1") ? !connection.contains("close") : connection.contains("keep-alive");
+			return r;
+		}
+	}
+
+	/**
+	 * Reads a CRLF terminated ISO-8859-1 line.
+	 * @param budget	A one element array of the bytes still allowed, reduced by the bytes read.
+	 * @return The line without its terminator, or null at the end of the stream.
+	 */
+	private static String readLine(InputStream in, int[] budget) throws IOException {
+		StringBuilder sb = new StringBuilder(64);
+		int b;
+		while((b = in.read())!=-1) {
+			if(--budget[0]<0) {
+				throw new IOException("Upstream response head too large");
+			}
+			if(b=='\n') {
+				int len = sb.length();
+				if(len>0&&sb.charAt(len-1)=='\r') {
+					sb.setLength(len-1);
+				}
+				return sb.toString();
+			}
+			sb.append((char) b);
+		}
+		return sb.length()>0 ? sb.toString() : null;
+	}
+
+	/**
+	 * Copies exactly a number of bytes from one stream to another.
+	 */
+	private static void pipeFixed(InputStream in, OutputStream out, byte[] buffer, long length) throws IOException {
+		long remaining = length;
+		while(remaining>0) {
+			int n = in.read(buffer, 0, (int) Math.min(buffer.length, remaining));
+			if(n<0) {
+				throw new EOFException("Body ended after "+(length-remaining)+" of "+length+" bytes");
+			}
+			out.write(buffer, 0, n);
+			remaining -= n;
+		}
+	}
+
+	/**
+	 * Copies a decoded stream to another with chunked transfer coding.
+	 */
+	private static void pipeChunked(InputStream in, OutputStream out, byte[] buffer) throws IOException {
+		int n;
+		while((n = in.read(buffer))>=0) {
+			if(n>0) {
+				out.write((Integer.toHexString(n)+"\r\n").getBytes(StandardCharsets.ISO_8859_1));
+				out.write(buffer, 0, n);
+				out.write('\r');
+				out.write('\n');
+			}
+		}
+		out.write("0\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+	}
+
+	/**
+	 * Decodes a chunked upstream body into another stream.
+	 */
+	private static void copyChunked(InputStream in, OutputStream out, byte[] buffer) throws IOException {
+		int[] budget = new int[] {Integer.MAX_VALUE};
+		while(true) {
+			String line = readLine(in, budget);
+			if(line==null) {
+				throw new EOFException("Chunked body ended early");
+			}
+			int ext = line.indexOf(';');
+			long size;
+			try {
+				size = Long.parseLong((ext>=0 ? line.substring(0, ext) : line).trim(), 16);
+			} catch (NumberFormatException e) {
+				throw new IOException("Malformed chunk size");
+			}
+			if(size==0) {
+				//skip trailers
+				while((line = readLine(in, budget))!=null&&!line.isEmpty()) {
+				}
+				return;
+			}
+			pipeFixed(in, out, buffer, size);
+			readLine(in, budget);
+		}
+	}
+
+	/**
+	 * @param value	A Content-Length header value, which may be null.
+	 * @return The length, or -1 if there is no valid length.
+	 */
+	private static long parseLength(String value) {
+		if(value==null) {
+			return -1;
+		}
+		try {
+			return Long.parseLong(value.trim());
+		} catch (NumberFormatException e) {
+			return -1;
+		}
+	}
+
+	/**
+	 * @param value	A comma separated header value like that of Connection, which may be null.
+	 * @return The lower cased tokens of the value.
+	 */
+	private static Set<String> tokens(String value) {
+		Set<String> t = new HashSet<String>();
+		if(value!=null) {
+			for(String s : value.split(",")) {
+				t.add(s.trim().toLowerCase(Locale.ROOT));
+			}
+		}
+		return t;
+	}
+
+	/**
+	 * Answers with an error page of the {@link Website}.
+	 */
+	private static boolean errorResponse(HttpExchange he, Website w, CompressionEncoding ce, int code) {
+		RequestVariables v = new RequestVariables(null, null, null, null, null);
+		return ResponseUtils.generateHTTPResponse(new GeneratorResponse("", ResponseUtils.getResponseCode(code)), he, v, null, w, ce);
+	}
+
+	/**
+	 * The status and headers of an upstream response.
+	 */
+	private static class ResponseHead {
+
+		private int status;
+		private Headers headers = new Headers();
+		private boolean chunked;
+		private long contentLength;
+		private boolean keepAlive;
+
+	}
+
+}
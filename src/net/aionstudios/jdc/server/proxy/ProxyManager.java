@@ -1,23 +1,42 @@
 package net.aionstudios.jdc.server.proxy;
 
-import java.util.HashMap;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ScheduledFuture;
 
 /**
  * Maps request {@link URL}s to outgoing requests per {@link Website}.
+ * <p>
+ * Mappings are compiled into a {@link PrefixTrie} whenever they change, so a request is matched against the
+ * longest mapped context in a single pass without locking. Keep-alive connections to the upstreams of proxied
+ * requests are pooled per upstream in {@link ConnectionPool}s, and a mapping may balance requests between
+ * several {@link Upstream}s.
  * @author Winter Roberts
  */
 public class ProxyManager {
 	
-	private Map<String, String> p = new HashMap<String, String>();
+	private Map<String, ProxyRoute> p = new LinkedHashMap<String, ProxyRoute>();
+	private volatile PrefixTrie<ProxyRoute> routes = new PrefixTrie<ProxyRoute>(p);
+	private volatile List<ProxyRoute> routeList = Collections.emptyList();
+	private Map<String, ConnectionPool> pools = new ConcurrentHashMap<String, ConnectionPool>();
+	private ProxySettings settings;
+	private ScheduledFuture<?> healthChecks;
 	
 	/**
 	 * Creates a new proxy manager.
+	 * @param settings		The {@link ProxySettings} for connections to upstreams.
 	 */
-	public ProxyManager() {
-		
+	public ProxyManager(ProxySettings settings) {
+		this.settings = settings;
+		if(settings.getHealthInterval()>0) {
+			healthChecks = HealthChecker.schedule(this);
+		}
 	}
 	
 	/**
@@ -26,40 +45,135 @@ public class ProxyManager {
 	 * @param proxyUrl		The {@link URL} string to which the request should be proxied.
 	 */
 	public void putProxy(String context, String proxyUrl) {
-		if(proxyUrl=="/")return;
-		p.put(context, proxyUrl);
+		putProxy(context, Collections.singletonList(proxyUrl), BalanceMode.LEAST_OUTSTANDING, null);
+	}
+	
+	/**
+	 * Adds a proxy mapping balancing requests between several upstreams to this manager.
+	 * @param context		The context string for which an internal proxy request should be made.
+	 * @param proxyUrls		The {@link URL} strings of the {@link Upstream}s to which requests should be proxied.
+	 * @param mode			The {@link BalanceMode} choosing between upstreams.
+	 * @param healthPath	The path probed on each upstream by the {@link HealthChecker}, or null for no active checks.
+	 */
+	public synchronized void putProxy(String context, List<String> proxyUrls, BalanceMode mode, String healthPath) {
+		List<Upstream> ups = new ArrayList<Upstream>();
+		for(String u : proxyUrls) {
+			if(!u.equals("/")) {
+				ups.add(new Upstream(u, settings));
+			}
+		}
+		if(ups.isEmpty())return;
+		p.put(context, new ProxyRoute(context, ups, mode, healthPath!=null&&!healthPath.isEmpty() ? healthPath : null));
+		compile();
+	}
+	
+	/**
+	 * Publishes the current mappings to request threads, must hold the lock.
+	 */
+	private void compile() {
+		routes = new PrefixTrie<ProxyRoute>(p);
+		routeList = Collections.unmodifiableList(new ArrayList<ProxyRoute>(p.values()));
 	}
 	
 	/**
 	 * Removes a proxy mapping from this manager by name.
 	 * @param context		The context of the proxy mapping to be removed.
 	 */
-	public void removeProxy(String context) {
-		p.remove(context);
+	public synchronized void removeProxy(String context) {
+		if(p.remove(context)!=null) {
+			compile();
+		}
+	}
+	
+	public synchronized void printProxies() {
+		for(Iterator<Entry<String, ProxyRoute>> i = p.entrySet().iterator(); i.hasNext(); ) {
+			Entry<String, ProxyRoute> e = i.next();
+			StringBuilder urls = new StringBuilder();
+			for(Upstream u : e.getValue().getUpstreams()) {
+				urls.append(urls.length()>0 ? ", " : "").append(u.getUrl());
+			}
+			System.out.println(e.getKey() + "\t" + urls);
+		}
+	}
+	
+	/**
+	 * Prints the balancing, health and load of every route's {@link Upstream}s and the state of each {@link ConnectionPool}.
+	 */
+	public void printStats() {
+		for(ProxyRoute r : routeList) {
+			System.out.println(r.getContext()+" ("+r.getMode().getConfigName()+(r.getHealthPath()!=null ? ", health check "+r.getHealthPath() : "")+")");
+			for(Upstream u : r.getUpstreams()) {
+				u.printStats();
+			}
+		}
+		for(ConnectionPool pool : pools.values()) {
+			System.out.println(String.format("%-40s %4d idle %10d opened %10d reused", pool.getOrigin(), pool.getIdleCount(), pool.getOpened(), pool.getReuses()));
+		}
+	}
+	
+	/**
+	 * @return A snapshot of every {@link ProxyRoute} of this manager.
+	 */
+	public List<ProxyRoute> getRoutes() {
+		return routeList;
+	}
+	
+	/**
+	 * Finds the proxy mapping with the longest context that a request context starts with.
+	 * @param context		The context string for which a {@link ProxyRoute} should be found.
+	 * @return		The {@link ProxyRoute} matching the context, or null if there is no mapping.
+	 */
+	public ProxyRoute getRoute(String context) {
+		return routes.longestPrefix(context);
+	}
+	
+	/**
+	 * Gets the {@link ConnectionPool} for an upstream, creating it on first use.
+	 * @param host		The upstream host name.
+	 * @param port		The upstream port.
+	 * @param secure	True if the upstream is reached with TLS.
+	 * @return The {@link ConnectionPool} of the upstream.
+	 */
+	public ConnectionPool getPool(String host, int port, boolean secure) {
+		String key = (secure?"https://":"http://")+host+":"+port;
+		ConnectionPool pool = pools.get(key);
+		if(pool==null) {
+			ConnectionPool created = new ConnectionPool(host, port, secure, settings);
+			pool = pools.putIfAbsent(key, created);
+			if(pool==null) {
+				pool = created;
+			}
+		}
+		return pool;
 	}
 	
-	public void printProxies() {
-		for(Iterator<Entry<String, String>> i = p.entrySet().iterator(); i.hasNext(); ) {
-			Entry<String, String> e = i.next();
-			System.out.println(e.getKey() + "\t" + e.getValue());
+	/**
+	 * Stops health checks and closes the idle connections of every {@link ConnectionPool}, called when this manager is replaced.
+	 */
+	public void close() {
+		if(healthChecks!=null) {
+			healthChecks.cancel(false);
+		}
+		for(ConnectionPool pool : pools.values()) {
+			pool.close();
 		}
 	}
 	
+	/**
+	 * @return The {@link ProxySettings} for connections to upstreams.
+	 */
+	public ProxySettings getSettings() {
+		return settings;
+	}
+	
 	/**
 	 * Gets the proxy url string for a context string if one is mapped.
 	 * @param context		The context string for which a proxy url string should be found.
 	 * @return		The proxy url string mapped to the context, or null if there is no mapping.
 	 */
 	public String getProxyUrl(String context) {
-		if(context=="/") {
-			return null;
-		}
-		for(Map.Entry<String,String> entry : p.entrySet()) {
-			if(context.startsWith(entry.getKey())) {
-				return entry.getValue()+context.replaceFirst(entry.getKey(), "");
-			}
-		}
-		return p.get(context);
+		ProxyRoute r = routes.longestPrefix(context);
+		return r!=null ? r.rewrite(context) : null;
 	}
 
 }
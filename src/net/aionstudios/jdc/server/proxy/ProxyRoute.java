@@ -0,0 +1,120 @@
+package net.aionstudios.jdc.server.proxy;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A proxy mapping from a request context prefix to the {@link Upstream}s requests under it are proxied to.
+ * @author Winter Roberts
+ */
+public class ProxyRoute {
+
+	private final String context;
+	private final Upstream[] upstreams;
+	private final BalanceMode mode;
+	private final String healthPath;
+	private final AtomicInteger next = new AtomicInteger(0);
+
+	/**
+	 * Creates a new proxy route.
+	 * @param context		The context prefix of requests which should be proxied.
+	 * @param upstreams		The {@link Upstream}s requests are balanced between, at least one.
+	 * @param mode			The {@link BalanceMode} choosing between upstreams.
+	 * @param healthPath	The path probed by the {@link HealthChecker} on each upstream, or null for no active checks.
+	 */
+	public ProxyRoute(String context, List<Upstream> upstreams, BalanceMode mode, String healthPath) {
+		this.context = context;
+		this.upstreams = upstreams.toArray(new Upstream[upstreams.size()]);
+		this.mode = mode;
+		this.healthPath = healthPath;
+	}
+
+	/**
+	 * Chooses the upstream for a request.
+	 * <p>
+	 * Available upstreams are compared by the score of the {@link BalanceMode}, ties going to the next upstream in
+	 * turn. If no upstream is available every upstream is considered, since a possibly failing upstream is better
+	 * than certainly failing the request.
+	 * @param exclude	An {@link Upstream} which already failed this request, or null.
+	 * @return The {@link Upstream} to send the request to.
+	 */
+	public Upstream choose(Upstream exclude) {
+		if(upstreams.length==1) {
+			return upstreams[0];
+		}
+		long now = System.currentTimeMillis();
+		int start = next.getAndIncrement()&Integer.MAX_VALUE;
+		Upstream best = pick(start, exclude, now, true);
+		if(best==null) {
+			best = pick(start, exclude, now, false);
+		}
+		return best!=null ? best : exclude;
+	}
+
+	/**
+	 * Finds the lowest scoring upstream, scanning from a rotating start.
+	 */
+	private Upstream pick(int start, Upstream exclude, long now, boolean availableOnly) {
+		Upstream best = null;
+		double bestScore = 0;
+		for(int i = 0; i < upstreams.length; i++) {
+			Upstream u = upstreams[(start+i)%upstreams.length];
+			if(u==exclude||(availableOnly&&!u.isAvailable(now))) {
+				continue;
+			}
+			double s = u.score(mode);
+			if(best==null||s<bestScore) {
+				best = u;
+				bestScore = s;
+			}
+		}
+		return best;
+	}
+
+	/**
+	 * @return The context prefix of requests which should be proxied.
+	 */
+	public String getContext() {
+		return context;
+	}
+
+	/**
+	 * @return The {@link URL} string of the first upstream.
+	 */
+	public String getProxyUrl() {
+		return upstreams[0].getUrl();
+	}
+
+	/**
+	 * @return The {@link Upstream}s of this route.
+	 */
+	public List<Upstream> getUpstreams() {
+		return Collections.unmodifiableList(Arrays.asList(upstreams));
+	}
+
+	/**
+	 * @return The {@link BalanceMode} choosing between upstreams.
+	 */
+	public BalanceMode getMode() {
+		return mode;
+	}
+
+	/**
+	 * @return The path probed on each upstream by the {@link HealthChecker}, or null for no active checks.
+	 */
+	public String getHealthPath() {
+		return healthPath;
+	}
+
+	/**
+	 * Replaces the context prefix of a request path with the url of a chosen upstream.
+	 * @param path	A request path starting with this route's context.
+	 * @return The {@link URL} string to which the request should be proxied.
+	 */
+	public String rewrite(String path) {
+		return choose(null).rewrite(context, path);
+	}
+
+}
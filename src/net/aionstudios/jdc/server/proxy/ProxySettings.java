@@ -0,0 +1,140 @@
+package net.aionstudios.jdc.server.proxy;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import net.aionstudios.jdc.server.util.FormatUtils;
+
+/**
+ * Reverse proxy settings read from the "proxy" section of a {@link Website}'s settings.json.
+ * @author Winter Roberts
+ */
+public class ProxySettings {
+
+	private int connectTimeout = 5000;
+	private int readTimeout = 30000;
+	private int maxIdleConnections = 32;
+	private int idleTimeout = 60000;
+	private int bufferSize = 16384;
+	private int ejectAfterFailures = 5;
+	private int ejectionTime = 30000;
+	private int healthInterval = 10000;
+	private int healthyThreshold = 2;
+	private int unhealthyThreshold = 3;
+
+	/**
+	 * Creates proxy settings with default values.
+	 */
+	public ProxySettings() {
+
+	}
+
+	/**
+	 * Reads proxy settings, keeping defaults for any setting that isn't present.
+	 * @param j	The "proxy" {@link JSONObject} from settings.json.
+	 * @throws JSONException If a setting is present but of the wrong type.
+	 */
+	public ProxySettings(JSONObject j) throws JSONException {
+		connectTimeout = j.has("connect_timeout") ? j.getInt("connect_timeout") : connectTimeout;
+		readTimeout = j.has("read_timeout") ? j.getInt("read_timeout") : readTimeout;
+		maxIdleConnections = j.has("max_idle_connections") ? j.getInt("max_idle_connections") : maxIdleConnections;
+		idleTimeout = j.has("idle_timeout") ? j.getInt("idle_timeout") : idleTimeout;
+		bufferSize = j.has("buffer_size") ? j.getInt("buffer_size") : bufferSize;
+		ejectAfterFailures = j.has("eject_after_failures") ? j.getInt("eject_after_failures") : ejectAfterFailures;
+		ejectionTime = j.has("ejection_time") ? j.getInt("ejection_time") : ejectionTime;
+		healthInterval = j.has("health_interval") ? j.getInt("health_interval") : healthInterval;
+		healthyThreshold = j.has("healthy_threshold") ? j.getInt("healthy_threshold") : healthyThreshold;
+		unhealthyThreshold = j.has("unhealthy_threshold") ? j.getInt("unhealthy_threshold") : unhealthyThreshold;
+	}
+
+	/**
+	 * @return A {@link JSONObject} of the default proxy settings, as written to new config files.
+	 * @throws JSONException If the object could not be built.
+	 */
+	public static JSONObject getDefaultConfig() throws JSONException {
+		ProxySettings d = new ProxySettings();
+		JSONObject po = FormatUtils.getLinkedJsonObject();
+		po.put("connect_timeout", d.connectTimeout);
+		po.put("read_timeout", d.readTimeout);
+		po.put("max_idle_connections", d.maxIdleConnections);
+		po.put("idle_timeout", d.idleTimeout);
+		po.put("buffer_size", d.bufferSize);
+		po.put("eject_after_failures", d.ejectAfterFailures);
+		po.put("ejection_time", d.ejectionTime);
+		po.put("health_interval", d.healthInterval);
+		po.put("healthy_threshold", d.healthyThreshold);
+		po.put("unhealthy_threshold", d.unhealthyThreshold);
+		return po;
+	}
+
+	/**
+	 * @return The number of milliseconds to wait for a connection to an upstream.
+	 */
+	public int getConnectTimeout() {
+		return Math.max(0, connectTimeout);
+	}
+
+	/**
+	 * @return The number of milliseconds to wait for each read from an upstream, 0 to wait forever.
+	 */
+	public int getReadTimeout() {
+		return Math.max(0, readTimeout);
+	}
+
+	/**
+	 * @return The number of idle keep-alive connections kept open to each upstream.
+	 */
+	public int getMaxIdleConnections() {
+		return Math.max(0, maxIdleConnections);
+	}
+
+	/**
+	 * @return The number of milliseconds an idle connection is kept before it is closed.
+	 */
+	public int getIdleTimeout() {
+		return Math.max(0, idleTimeout);
+	}
+
+	/**
+	 * @return The size of the buffer bodies are piped through.
+	 */
+	public int getBufferSize() {
+		return Math.max(1024, bufferSize);
+	}
+
+	/**
+	 * @return The number of consecutive failures after which an {@link Upstream} is ejected, 0 to never eject.
+	 */
+	public int getEjectAfterFailures() {
+		return Math.max(0, ejectAfterFailures);
+	}
+
+	/**
+	 * @return The number of milliseconds an ejected {@link Upstream} receives no requests for.
+	 */
+	public int getEjectionTime() {
+		return Math.max(0, ejectionTime);
+	}
+
+	/**
+	 * @return The number of milliseconds between active health checks, 0 to disable them.
+	 */
+	public int getHealthInterval() {
+		return Math.max(0, healthInterval);
+	}
+
+	/**
+	 * @return The number of passed health checks after which a down {@link Upstream} is healthy again.
+	 */
+	public int getHealthyThreshold() {
+		return Math.max(1, healthyThreshold);
+	}
+
+	/**
+	 * @return The number of failed health checks after which an {@link Upstream} is marked down.
+	 */
+	public int getUnhealthyThreshold() {
+		return Math.max(1, unhealthyThreshold);
+	}
+
+}
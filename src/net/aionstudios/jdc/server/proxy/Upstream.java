@@ -0,0 +1,175 @@
+package net.aionstudios.jdc.server.proxy;
+
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * One server a {@link ProxyRoute} forwards requests to, with the load and health used to choose between servers.
+ * <p>
+ * An upstream is ejected for a while after a number of consecutive failures, and marked down by the
+ * {@link HealthChecker} while its health check fails. Neither receives requests unless every upstream of the
+ * route is unavailable.
+ * @author Winter Roberts
+ */
+public class Upstream {
+
+	private static final double EWMA_WEIGHT = 0.3;
+
+	private final String url;
+	private final String origin;
+	private final ProxySettings settings;
+	private final AtomicInteger outstanding = new AtomicInteger(0);
+	private final AtomicLong requests = new AtomicLong(0);
+	private final AtomicLong failures = new AtomicLong(0);
+	private final AtomicLong ejections = new AtomicLong(0);
+	private double ewmaNanos = 0;
+	private int consecutiveFailures = 0;
+	private volatile long ejectedUntil = 0;
+	private volatile boolean healthy = true;
+	private int healthStreak = 0;
+
+	/**
+	 * Creates an upstream.
+	 * @param url		The {@link URL} string which replaces the context of proxied requests.
+	 * @param settings	The {@link ProxySettings} for ejection.
+	 */
+	public Upstream(String url, ProxySettings settings) {
+		this.url = url;
+		this.settings = settings;
+		String o = null;
+		try {
+			URI u = new URI(url);
+			if(u.getScheme()!=null&&u.getRawAuthority()!=null) {
+				o = u.getScheme()+"://"+u.getRawAuthority();
+			}
+		} catch (URISyntaxException e) {
+			//reported when a request is proxied
+		}
+		this.origin = o;
+	}
+
+	/**
+	 * Replaces the context prefix of a request path with this upstream's url.
+	 * @param context	The context of the {@link ProxyRoute}.
+	 * @param path		A request path starting with the context.
+	 * @return The {@link URL} string to which the request should be proxied.
+	 */
+	public String rewrite(String context, String path) {
+		return new StringBuilder(url.length()+path.length()-context.length()).append(url).append(path, context.length(), path.length()).toString();
+	}
+
+	/**
+	 * @param now	The current time in milliseconds.
+	 * @return True if this upstream is healthy and not ejected.
+	 */
+	public boolean isAvailable(long now) {
+		return healthy&&now>=ejectedUntil;
+	}
+
+	/**
+	 * Records the start of a request to this upstream, which must be followed by {@link #end(boolean)}.
+	 */
+	void begin() {
+		outstanding.incrementAndGet();
+		requests.incrementAndGet();
+	}
+
+	/**
+	 * Records the time an upstream took to begin its response.
+	 * @param nanos	The time from sending the request until the response head was read.
+	 */
+	synchronized void latency(long nanos) {
+		ewmaNanos = ewmaNanos==0 ? nanos : ewmaNanos+(nanos-ewmaNanos)*EWMA_WEIGHT;
+	}
+
+	/**
+	 * Records the end of a request, ejecting this upstream after too many consecutive failures.
+	 * @param failed	True if the upstream failed to answer or answered with a gateway error.
+	 */
+	void end(boolean failed) {
+		outstanding.decrementAndGet();
+		synchronized(this) {
+			if(!failed) {
+				consecutiveFailures = 0;
+				return;
+			}
+			failures.incrementAndGet();
+			if(++consecutiveFailures>=settings.getEjectAfterFailures()&&settings.getEjectAfterFailures()>0) {
+				consecutiveFailures = 0;
+				ejectedUntil = System.currentTimeMillis()+settings.getEjectionTime();
+				ejections.incrementAndGet();
+				System.err.println("Ejected proxy upstream '"+url+"' for "+settings.getEjectionTime()+"ms after repeated failures.");
+			}
+		}
+	}
+
+	/**
+	 * Records the result of an active health check.
+	 * @param passed	True if the check passed.
+	 */
+	synchronized void health(boolean passed) {
+		if(passed==healthy) {
+			healthStreak = 0;
+			return;
+		}
+		healthStreak++;
+		if(healthStreak>=(passed ? settings.getHealthyThreshold() : settings.getUnhealthyThreshold())) {
+			healthy = passed;
+			healthStreak = 0;
+			System.out.println("Proxy upstream '"+url+"' is "+(passed ? "healthy" : "unhealthy")+".");
+		}
+	}
+
+	/**
+	 * @return The load score used by a {@link BalanceMode}, lower is better.
+	 * @param mode	The {@link BalanceMode} of the route.
+	 */
+	double score(BalanceMode mode) {
+		int o = outstanding.get();
+		if(mode==BalanceMode.EWMA) {
+			double e;
+			synchronized(this) {
+				e = ewmaNanos;
+			}
+			return e*(o+1);
+		}
+		return o;
+	}
+
+	/**
+	 * @return The {@link URL} string which replaces the context of proxied requests.
+	 */
+	public String getUrl() {
+		return url;
+	}
+
+	/**
+	 * @return The scheme, host and port of this upstream, or null if its url is invalid.
+	 */
+	public String getOrigin() {
+		return origin;
+	}
+
+	/**
+	 * @return True unless active health checks have marked this upstream down.
+	 */
+	public boolean isHealthy() {
+		return healthy;
+	}
+
+	/**
+	 * Prints the load, latency and error counts of this upstream.
+	 */
+	public void printStats() {
+		long now = System.currentTimeMillis();
+		double e;
+		synchronized(this) {
+			e = ewmaNanos;
+		}
+		String state = !healthy ? "DOWN" : (now<ejectedUntil ? "EJECTED "+((ejectedUntil-now)/1000)+"s" : "UP");
+		System.out.println(String.format("  %-40s %-12s %4d active %10d req %8d err %6d ejections %9.2fms ewma", url, state, outstanding.get(), requests.get(), failures.get(), ejections.get(), e/1000000));
+	}
+
+}
@@ -0,0 +1,83 @@
+package net.aionstudios.jdc.server.proxy;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+
+/**
+ * A keep-alive connection to an upstream server, owned by a {@link ConnectionPool}.
+ * @author Winter Roberts
+ */
+class UpstreamConnection {
+
+	private final Socket socket;
+	private final InputStream in;
+	private final OutputStream out;
+	private long idleSince;
+	private boolean reused = false;
+
+	/**
+	 * Wraps a connected socket.
+	 * @param socket		The connected {@link Socket}.
+	 * @param bufferSize	The size of the read and write buffers.
+	 * @throws IOException If the socket's streams could not be opened.
+	 */
+	UpstreamConnection(Socket socket, int bufferSize) throws IOException {
+		this.socket = socket;
+		this.in = new BufferedInputStream(socket.getInputStream(), bufferSize);
+		this.out = new BufferedOutputStream(socket.getOutputStream(), bufferSize);
+	}
+
+	/**
+	 * @return The buffered stream of bytes from the upstream.
+	 */
+	InputStream getInputStream() {
+		return in;
+	}
+
+	/**
+	 * @return The buffered stream of bytes to the upstream.
+	 */
+	OutputStream getOutputStream() {
+		return out;
+	}
+
+	/**
+	 * @return True if this connection already carried a request, so a failure may only mean the upstream closed it while idle.
+	 */
+	boolean isReused() {
+		return reused;
+	}
+
+	/**
+	 * Marks this connection idle in its pool.
+	 */
+	void idle() {
+		idleSince = System.currentTimeMillis();
+		reused = true;
+	}
+
+	/**
+	 * @param now		The current time in milliseconds.
+	 * @param timeout	The number of milliseconds a connection may stay idle.
+	 * @return True if this connection has been idle too long or its socket is closed.
+	 */
+	boolean isExpired(long now, long timeout) {
+		return socket.isClosed()||socket.isInputShutdown()||now-idleSince>=timeout;
+	}
+
+	/**
+	 * Closes the connection, ignoring errors.
+	 */
+	void close() {
+		try {
+			socket.close();
+		} catch (IOException e) {
+			//ignore
+		}
+	}
+
+}
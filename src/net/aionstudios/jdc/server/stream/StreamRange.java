@@ -97,6 +97,31 @@ public class StreamRange {
 		return true;
 	}
 	
+	/**
+	 * Resolves a requested range to the bytes of the file it covers.
+	 * 
+	 * @param range		One of the ranges from {@link #getRanges()}.
+	 * @return The position of the first byte and the position after the last byte, clamped to the length of the file.
+	 */
+	public long[] resolveRange(Long[] range) {
+		Long[] r = computeActualRange(range, length);
+		long start = Math.max(0, r[0]);
+		long end = Math.min(length, r[1]+1);
+		return new long[] {start, Math.max(start, end)};
+	}
+	
+	/**
+	 * @return The number of bytes all of the ranges cover, the length of a response sending each of them in turn.
+	 */
+	public long getContentLength() {
+		long total = 0;
+		for (Long[] r : ranges) {
+			long[] bytes = resolveRange(r);
+			total += bytes[1]-bytes[0];
+		}
+		return total;
+	}
+	
 	/**
 	 * Changes relative range parts to real byte definitions.
 	 * 
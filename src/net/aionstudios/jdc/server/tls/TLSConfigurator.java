@@ -0,0 +1,95 @@
+package net.aionstudios.jdc.server.tls;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLSessionContext;
+
+import com.sun.net.httpserver.HttpsConfigurator;
+import com.sun.net.httpserver.HttpsParameters;
+
+/**
+ * Configures each HTTPS connection with {@link SSLParameters} computed once from {@link TLSSettings}.
+ * <p>
+ * The server's {@link SSLSessionContext} is sized and timed by the settings so that returning clients resume
+ * their sessions, by session id or session ticket, instead of performing a full handshake.
+ * @author Winter Roberts
+ */
+public class TLSConfigurator extends HttpsConfigurator {
+
+	private final SSLParameters parameters;
+
+	/**
+	 * Creates a configurator for an initialized {@link SSLContext}.
+	 * @param context	The initialized {@link SSLContext} connections are created from.
+	 * @param settings	The {@link TLSSettings} to apply.
+	 */
+	public TLSConfigurator(SSLContext context, TLSSettings settings) {
+		super(context);
+		SSLSessionContext sessions = context.getServerSessionContext();
+		sessions.setSessionCacheSize(settings.getSessionCacheSize());
+		sessions.setSessionTimeout(settings.getSessionTimeout());
+		SSLParameters supported = context.getSupportedSSLParameters();
+		parameters = context.getDefaultSSLParameters();
+		String[] protocols = filter(settings.getProtocols(), supported.getProtocols());
+		if(protocols.length>0) {
+			parameters.setProtocols(protocols);
+		} else {
+			System.err.println("None of the configured TLS protocols are supported, using defaults.");
+		}
+		if(settings.getCipherSuites().length>0) {
+			String[] suites = filter(settings.getCipherSuites(), supported.getCipherSuites());
+			if(suites.length>0) {
+				parameters.setCipherSuites(suites);
+			} else {
+				System.err.println("None of the configured TLS cipher suites are supported, using defaults.");
+			}
+		}
+		parameters.setNeedClientAuth(false);
+		parameters.setUseCipherSuitesOrder(true);
+	}
+
+	/**
+	 * Sets whether session tickets are issued, which must happen before the first {@link SSLContext} is created.
+	 * <p>
+	 * A ticket policy given on the command line with -Djdk.tls.server.enableSessionTicketExtension is left as is.
+	 * @param settings	The {@link TLSSettings} to apply.
+	 */
+	public static void applyTicketPolicy(TLSSettings settings) {
+		if(System.getProperty("jdk.tls.server.enableSessionTicketExtension")==null) {
+			System.setProperty("jdk.tls.server.enableSessionTicketExtension", Boolean.toString(settings.isSessionTickets()));
+		}
+	}
+
+	@Override
+	public void configure(HttpsParameters params) {
+		params.setSSLParameters(parameters);
+	}
+
+	/**
+	 * @return The protocols enabled on each connection.
+	 */
+	public String[] getProtocols() {
+		return parameters.getProtocols();
+	}
+
+	/**
+	 * @param wanted	The configured values, in order of preference.
+	 * @param supported	The values the {@link SSLContext} supports.
+	 * @return The wanted values which are supported, in their configured order.
+	 */
+	private static String[] filter(String[] wanted, String[] supported) {
+		List<String> s = Arrays.asList(supported);
+		List<String> f = new ArrayList<String>();
+		for(String w : wanted) {
+			if(s.contains(w)) {
+				f.add(w);
+			}
+		}
+		return f.toArray(new String[f.size()]);
+	}
+
+}
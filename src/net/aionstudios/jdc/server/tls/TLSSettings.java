@@ -0,0 +1,103 @@
+package net.aionstudios.jdc.server.tls;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import net.aionstudios.jdc.server.util.FormatUtils;
+
+/**
+ * TLS settings read from the "tls" section of certs.json.
+ * @author Winter Roberts
+ */
+public class TLSSettings {
+
+	private String[] protocols = new String[] {"TLSv1.3", "TLSv1.2"};
+	private String[] cipherSuites = new String[0];
+	private int sessionCacheSize = 20480;
+	private int sessionTimeout = 86400;
+	private boolean sessionTickets = true;
+
+	/**
+	 * Creates TLS settings with default values.
+	 */
+	public TLSSettings() {
+
+	}
+
+	/**
+	 * Reads TLS settings, keeping defaults for any setting that isn't present.
+	 * @param j	The "tls" {@link JSONObject} from certs.json.
+	 * @throws JSONException If a setting is present but of the wrong type.
+	 */
+	public TLSSettings(JSONObject j) throws JSONException {
+		protocols = j.has("protocols") ? toArray(j.getJSONArray("protocols")) : protocols;
+		cipherSuites = j.has("cipher_suites") ? toArray(j.getJSONArray("cipher_suites")) : cipherSuites;
+		sessionCacheSize = j.has("session_cache_size") ? j.getInt("session_cache_size") : sessionCacheSize;
+		sessionTimeout = j.has("session_timeout") ? j.getInt("session_timeout") : sessionTimeout;
+		sessionTickets = j.has("session_tickets") ? j.getBoolean("session_tickets") : sessionTickets;
+	}
+
+	/**
+	 * @return A {@link JSONObject} of the default TLS settings, as written to new config files.
+	 * @throws JSONException If the object could not be built.
+	 */
+	public static JSONObject getDefaultConfig() throws JSONException {
+		TLSSettings d = new TLSSettings();
+		JSONObject to = FormatUtils.getLinkedJsonObject();
+		JSONArray pa = new JSONArray();
+		for(String p : d.protocols) {
+			pa.put(p);
+		}
+		to.put("protocols", pa);
+		to.put("cipher_suites", new JSONArray());
+		to.put("session_cache_size", d.sessionCacheSize);
+		to.put("session_timeout", d.sessionTimeout);
+		to.put("session_tickets", d.sessionTickets);
+		return to;
+	}
+
+	private static String[] toArray(JSONArray a) throws JSONException {
+		String[] s = new String[a.length()];
+		for(int i = 0; i < a.length(); i++) {
+			s[i] = a.getString(i);
+		}
+		return s;
+	}
+
+	/**
+	 * @return The TLS protocol versions to enable, in order of preference.
+	 */
+	public String[] getProtocols() {
+		return protocols;
+	}
+
+	/**
+	 * @return The cipher suites to enable, in order of preference, or an empty array to use the JVM's defaults.
+	 */
+	public String[] getCipherSuites() {
+		return cipherSuites;
+	}
+
+	/**
+	 * @return The number of sessions the server keeps for resumption, 0 for no limit.
+	 */
+	public int getSessionCacheSize() {
+		return Math.max(0, sessionCacheSize);
+	}
+
+	/**
+	 * @return The number of seconds a session may be resumed for, 0 for no limit.
+	 */
+	public int getSessionTimeout() {
+		return Math.max(0, sessionTimeout);
+	}
+
+	/**
+	 * @return True if clients may resume sessions with stateless session tickets.
+	 */
+	public boolean isSessionTickets() {
+		return sessionTickets;
+	}
+
+}
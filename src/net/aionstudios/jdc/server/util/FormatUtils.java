@@ -1,10 +1,14 @@
 package net.aionstudios.jdc.server.util;
 
 import java.lang.reflect.Field;
-import java.text.SimpleDateFormat;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.Date;
 import java.util.LinkedHashMap;
-import java.util.TimeZone;
+import java.util.Locale;
 
 import org.json.JSONArray;
 import org.json.JSONObject;
@@ -43,7 +47,7 @@ public class FormatUtils {
 		return new LinkedJSONObject();
 	}
 	
-	private static SimpleDateFormat sdf = new SimpleDateFormat("EEE, dd MMM yyyy HH:mm:ss zzz");
+	private static final DateTimeFormatter HTTP_DATE = DateTimeFormatter.ofPattern("EEE, dd MMM yyyy HH:mm:ss 'GMT'", Locale.US).withZone(ZoneOffset.UTC);
 	/**
 	 * Converts a Unix epoch time to the HTTP GMT format,
 	 * required for cache control.
@@ -52,8 +56,7 @@ public class FormatUtils {
 	 * in HTTP standard.
 	 */
 	public static String getLastModifiedAsHTTPString(long time) {
-		sdf.setTimeZone(TimeZone.getTimeZone("GMT"));
-		return sdf.format(new Date(time));
+		return HTTP_DATE.format(Instant.ofEpochMilli(time));
 	}
 	
 	/**
@@ -64,8 +67,20 @@ public class FormatUtils {
 	 * in HTTP standard.
 	 */
 	public static String getLastModifiedAsHTTPString(Date d) {
-		sdf.setTimeZone(TimeZone.getTimeZone("GMT"));
-		return sdf.format(d);
+		return HTTP_DATE.format(d.toInstant());
+	}
+	
+	/**
+	 * Reads a date in the HTTP GMT format, like those of the If-Modified-Since header.
+	 * @param s The date string.
+	 * @return The date in milliseconds since the epoch, or -1 if it isn't a valid HTTP date.
+	 */
+	public static long parseHTTPDate(String s) {
+		try {
+			return ZonedDateTime.parse(s.trim(), DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+		} catch (DateTimeParseException e) {
+			return -1;
+		}
 	}
 	
 	public static String cap(String s, int maxLength, boolean ellipse) {
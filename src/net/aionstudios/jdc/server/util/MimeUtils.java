@@ -1,7 +1,10 @@
 package net.aionstudios.jdc.server.util;
 
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 /**
  * A utility class for working with file mime types.
@@ -11,6 +14,8 @@ public class MimeUtils {
 	
 	private Map<String, String> mimeExtensionMap = new HashMap<String, String>();
 	private static MimeUtils self;
+	private static final Set<String> compressibleTypes = new HashSet<String>(Arrays.asList("application/javascript", "application/json",
+			"application/xml", "application/vnd.ms-fontobject", "font/otf", "font/ttf", "image/bmp", "image/x-icon"));
 	
 	/**
 	 * A singleton constructor which registers system-defined mime types.
@@ -170,5 +175,14 @@ public class MimeUtils {
 	public String getMimeString(String extension) {
 		return mimeExtensionMap.getOrDefault(extension, "application/octet-stream");
 	}
+	
+	/**
+	 * @param mime A mime type string.
+	 * @return True if content of this mime type is text or another uncompressed format that shrinks well when compressed.
+	 */
+	public boolean isCompressible(String mime) {
+		return mime.startsWith("text/")||mime.endsWith("+xml")||mime.endsWith("+json")
+				||compressibleTypes.contains(mime);
+	}
 
 }
@@ -5,27 +5,46 @@ import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
 import java.io.OutputStream;
-import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CodingErrorAction;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.util.Calendar;
 import java.util.Date;
-import java.util.zip.DeflaterOutputStream;
-import java.util.zip.GZIPOutputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
 
-import com.nixxcode.jvmbrotli.enc.BrotliOutputStream;
 import com.sun.net.httpserver.Headers;
 import com.sun.net.httpserver.HttpExchange;
 
 import net.aionstudios.jdc.content.Cookie;
 import net.aionstudios.jdc.content.RequestVariables;
 import net.aionstudios.jdc.content.ResponseCode;
+import net.aionstudios.jdc.server.cache.CachedFile;
+import net.aionstudios.jdc.server.cache.CachedPage;
+import net.aionstudios.jdc.server.cache.PageCache;
+import net.aionstudios.jdc.server.cache.PageCacheRule;
+import net.aionstudios.jdc.server.coalesce.Flight;
+import net.aionstudios.jdc.server.coalesce.RequestCoalescer;
 import net.aionstudios.jdc.server.compression.BrotliCompressor;
 import net.aionstudios.jdc.server.compression.CompressionEncoding;
+import net.aionstudios.jdc.server.compression.CompressionPool;
+import net.aionstudios.jdc.server.compression.CompressionSettings;
 import net.aionstudios.jdc.server.compression.DeflateCompressor;
 import net.aionstudios.jdc.server.compression.GZIPCompressor;
+import net.aionstudios.jdc.server.compression.Precompressor;
 import net.aionstudios.jdc.server.content.GeneratorResponse;
+import net.aionstudios.jdc.server.content.PageOutput;
+import net.aionstudios.jdc.server.content.PageParser;
 import net.aionstudios.jdc.server.content.Website;
+import net.aionstudios.jdc.server.engine.FileTransferExchange;
+import net.aionstudios.jdc.server.executor.RequestExecutors;
 import net.aionstudios.jdc.server.stream.StreamRange;
 
 /**
@@ -35,6 +54,8 @@ import net.aionstudios.jdc.server.stream.StreamRange;
  */
 public class ResponseUtils {
 	
+	private static final int BODY_SLICE = 16384;
+	
 	/**
 	 * Generates a response to the client.
 	 * @param he The HTTPExchange on which to respond.
@@ -59,23 +80,7 @@ public class ResponseUtils {
 				respHeaders.set("Content-Type", vars.getContentType());
 				respHeaders.set("Last-Modified", FormatUtils.getLastModifiedAsHTTPString(System.currentTimeMillis()));
 				String errorResp = w.getErrorContent(rc, he, vars);
-				byte[] errRBytes;
-				if(ce==CompressionEncoding.BR) {
-					respHeaders.set("Content-Encoding", "br");
-					errRBytes = BrotliCompressor.compress(errorResp);
-				} else if(ce==CompressionEncoding.GZIP) {
-					respHeaders.set("Content-Encoding", "gzip");
-					errRBytes = GZIPCompressor.compress(errorResp);
-				} else if (ce==CompressionEncoding.DEFLATE) {
-					respHeaders.set("Content-Encoding", "deflate");
-					errRBytes = DeflateCompressor.compress(errorResp);
-				} else {
-					errRBytes = errorResp.getBytes(StandardCharsets.UTF_8);
-				}
-				he.sendResponseHeaders(rc.getCode(), errRBytes.length);
-				OutputStream os = he.getResponseBody();
-				os.write(errRBytes);
-				safeCloseStream(os);
+				sendBody(he, rc.getCode(), errorResp, vars.getContentType(), w, ce);
 				return true;
 			} catch (IOException e) {
 				return false;
@@ -95,23 +100,7 @@ public class ResponseUtils {
 				}
 				respHeaders.set("Content-Type", vars.getContentType());
 				respHeaders.set("Last-Modified", FormatUtils.getLastModifiedAsHTTPString(System.currentTimeMillis()));
-				byte[] respBytes;
-				if(ce==CompressionEncoding.BR) {
-					respHeaders.set("Content-Encoding", "br");
-					respBytes = BrotliCompressor.compress(response);
-				} else if(ce==CompressionEncoding.GZIP) {
-					respHeaders.set("Content-Encoding", "gzip");
-					respBytes = GZIPCompressor.compress(response);
-				} else if (ce==CompressionEncoding.DEFLATE) {
-					respHeaders.set("Content-Encoding", "deflate");
-					respBytes = DeflateCompressor.compress(response);
-				} else {
-					respBytes = response.getBytes(StandardCharsets.UTF_8);
-				}
-				he.sendResponseHeaders(rc.getCode(), respBytes.length);
-				OutputStream os = he.getResponseBody();
-				os.write(respBytes);
-				safeCloseStream(os);
+				sendBody(he, rc.getCode(), response, vars.getContentType(), w, ce);
 				return true;
 			} else {
 				generateHTTPResponse(new GeneratorResponse("", ResponseCode.NO_CONTENT), he, vars, page, w, ce);
@@ -122,6 +111,380 @@ public class ResponseUtils {
 		return true;
 	}
 	
+	/**
+	 * Sends a generated body, encoding it to UTF-8 and compressing it as it is written to the response so no
+	 * encoded or compressed copy of the whole body is held.
+	 * <p>
+	 * Only a slice of the body's characters and their encoded bytes are buffered at once. A body which fits in one
+	 * slice and isn't compressed is sent with its exact Content-Length, otherwise the body is chunked.
+	 * @param he	The {@link HttpExchange} handling this request.
+	 * @param rCode	The response code.
+	 * @param body	The body of the response.
+	 * @param mime	The Content-Type of the response.
+	 * @param w		The {@link Website} on which the request was made.
+	 * @param ce	The {@link CompressionEncoding} accepted by the client.
+	 * @throws IOException If the response could not be sent.
+	 */
+	private static void sendBody(HttpExchange he, int rCode, String body, String mime, Website w, CompressionEncoding ce) throws IOException {
+		CharsetEncoder enc = StandardCharsets.UTF_8.newEncoder()
+				.onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+		char[] chars = new char[Math.min(BODY_SLICE, body.length())];
+		//three bytes per char always fits, surrogate pairs take four bytes for two chars
+		ByteBuffer out = ByteBuffer.allocate(chars.length*3);
+		int off = encodeSlice(body, 0, chars, out, enc);
+		//the length is only known if the whole body fit in the first slice, a longer body has at least a byte per char
+		long length = off>=body.length() ? out.position() : -1;
+		Headers h = he.getResponseHeaders();
+		CompressionSettings cs = w.getCompressionSettings();
+		OutputStream os = he.getResponseBody();
+		if(cs.isCompressible(mime, length>=0 ? length : body.length())) {
+			h.set("Vary", "Accept-Encoding");
+			ce = cs.getEncoding(ce, mime, length>=0 ? length : body.length(), false);
+			//not compressed if every encoder is in use
+			OutputStream cos = openCompressor(os, ce, cs);
+			if(cos!=null) {
+				h.set("Content-Encoding", getContentEncoding(ce));
+				os = cos;
+				length = -1;
+			}
+		}
+		try {
+			if(sendFileHeaders(he, rCode, length)) {
+				os.write(out.array(), 0, out.position());
+				while(off<body.length()) {
+					out.clear();
+					off = encodeSlice(body, off, chars, out, enc);
+					os.write(out.array(), 0, out.position());
+				}
+			}
+		} finally {
+			safeCloseStream(os);
+		}
+	}
+	
+	/**
+	 * Renders a .jdc page and responds with it, or responds with its output from the website's {@link PageCache} if
+	 * the page is cached and its output for this request is held. Requests with an Authorization header neither use
+	 * nor fill the cache, as the page may be rendered for whoever made the request.
+	 * <p>
+	 * A page with {@code <jdc stream>} is sent as it renders instead, and is neither cached nor coalesced as its output
+	 * is never held whole.
+	 * <p>
+	 * A page still waiting for async processors once this returns is sent when they complete, on the request executor,
+	 * so the exchange must not be closed until the returned stage completes.
+	 * @param he	The {@link HttpExchange} handling this request.
+	 * @param vars	The {@link RequestVariables} of the request.
+	 * @param path	The path of the requested page.
+	 * @param page	The requested page.
+	 * @param w		The {@link Website} on which the request was made.
+	 * @param ce	The {@link CompressionEncoding} accepted by the client.
+	 * @return True if the response was sent successfully, false otherwise, once the response has been sent.
+	 */
+	public static CompletableFuture<Boolean> pageHTTPResponse(final HttpExchange he, final RequestVariables vars, String path, final File page, final Website w, final CompressionEncoding ce) {
+		//a HEAD request has no body to stream, and is answered with the length of the rendered page
+		if(!he.getRequestMethod().equalsIgnoreCase("HEAD")&&PageParser.isStreamed(w, page)) {
+			return CompletableFuture.completedFuture(streamPageHTTPResponse(he, vars, page, w, ce));
+		}
+		final PageCacheRule rule = w.getPageCache().getRule(path, he.getRequestMethod());
+		if(rule==null||he.getRequestHeaders().containsKey("Authorization")) {
+			return whenRendered(renderPage(he, vars, path, page, w), new Function<GeneratorResponse, Boolean>() {
+
+				@Override
+				public Boolean apply(GeneratorResponse gr) {
+					return generateHTTPResponse(gr, he, vars, page, w, ce);
+				}
+
+			});
+		}
+		final String key = rule.getKey(path, he);
+		//read before rendering, a change in between leaves output which is rendered again on the next request
+		final long modified = page.lastModified();
+		CachedPage cp = w.getPageCache().get(key, modified);
+		if(cp!=null) {
+			return CompletableFuture.completedFuture(cachedPageHTTPResponse(he, key, cp, w, ce));
+		}
+		return whenRendered(renderPage(he, vars, path, page, w), new Function<GeneratorResponse, Boolean>() {
+
+			@Override
+			public Boolean apply(GeneratorResponse gr) {
+				CachedPage stored = w.getPageCache().store(key, rule, gr, vars, modified);
+				if(stored==null) {
+					return generateHTTPResponse(gr, he, vars, page, w, ce);
+				}
+				return cachedPageHTTPResponse(he, key, stored, w, ce);
+			}
+
+		});
+	}
+	
+	/**
+	 * Sends a page once it has rendered, at once if it already has, otherwise on the request executor rather than the
+	 * thread of whichever backend completed it, or on that thread if the executor is full.
+	 * @param render	The {@link GeneratorResponse} of the page, completed once it has rendered.
+	 * @param send		Sends the page, returning true if it was sent successfully.
+	 * @return True if the response was sent successfully, false otherwise, once the response has been sent.
+	 */
+	private static CompletableFuture<Boolean> whenRendered(CompletableFuture<GeneratorResponse> render, Function<GeneratorResponse, Boolean> send) {
+		if(render.isDone()) {
+			return CompletableFuture.completedFuture(send.apply(render.join()));
+		}
+		return render.thenApplyAsync(send, new Executor() {
+
+			@Override
+			public void execute(Runnable command) {
+				try {
+					RequestExecutors.getRequestExecutor().execute(command);
+				} catch (RejectedExecutionException e) {
+					command.run();
+				}
+			}
+
+		});
+	}
+	
+	/**
+	 * Sends a .jdc page with {@code <jdc stream>} as it renders, chunked and compressed with a flushing encoder, or as
+	 * usual if its javaexecute processors answer with something other than the page.
+	 * @param he	The {@link HttpExchange} handling this request.
+	 * @param vars	The {@link RequestVariables} of the request.
+	 * @param page	The requested page.
+	 * @param w		The {@link Website} on which the request was made.
+	 * @param ce	The {@link CompressionEncoding} accepted by the client.
+	 * @return True if the response was sent successfully, false otherwise.
+	 */
+	private static boolean streamPageHTTPResponse(HttpExchange he, RequestVariables vars, File page, Website w, CompressionEncoding ce) {
+		StreamedPage sp = new StreamedPage(he, vars, w, ce);
+		try {
+			GeneratorResponse gr = PageParser.streamGeneratePage(w, he, vars, page, sp);
+			if(sp.os==null) {
+				return generateHTTPResponse(gr, he, vars, page, w, ce);
+			}
+			return gr==null;
+		} catch (IOException e) {
+			return false;
+		} finally {
+			if(sp.os!=null) {
+				safeCloseStream(sp.os);
+			}
+		}
+	}
+	
+	/**
+	 * Renders a .jdc page, or waits for an identical request rendering it if the website's {@link RequestCoalescer}
+	 * coalesces the page's path. A request waiting for another's render holds its thread, as a managed block.
+	 * <p>
+	 * Only requests with the same Cookie header share a render, and requests with an Authorization header are never
+	 * coalesced, as the page may be rendered for whoever made the request. A render is only shared if it didn't set
+	 * cookies, redirect or stream a file, otherwise each waiting request renders the page itself.
+	 * @param he	The {@link HttpExchange} handling this request.
+	 * @param vars	The {@link RequestVariables} of the request.
+	 * @param path	The path of the requested page.
+	 * @param page	The requested page.
+	 * @param w		The {@link Website} on which the request was made.
+	 * @return The {@link GeneratorResponse} of the page, completed once it has rendered.
+	 */
+	private static CompletableFuture<GeneratorResponse> renderPage(HttpExchange he, final RequestVariables vars, String path, File page, Website w) {
+		RequestCoalescer rc = w.getRequestCoalescer();
+		if(!rc.isCoalesced(path, he.getRequestMethod())||he.getRequestHeaders().containsKey("Authorization")) {
+			return PageParser.parseGeneratePageAsync(w, he, vars, page);
+		}
+		//processors may read the request's cookies, so only requests with the same cookies share a render
+		final Flight<SharedRender> f = rc.join(RequestCoalescer.getKey("page", path, he, "Cookie"));
+		if(f.isLeader()) {
+			CompletableFuture<GeneratorResponse> render = null;
+			try {
+				render = PageParser.parseGeneratePageAsync(w, he, vars, page);
+			} finally {
+				if(render==null) {
+					f.complete(null);
+				}
+			}
+			return render.whenComplete(new BiConsumer<GeneratorResponse, Throwable>() {
+
+				@Override
+				public void accept(GeneratorResponse gr, Throwable t) {
+					boolean shareable = gr!=null&&vars.getStreamFile()==null&&vars.getRedirect()==null&&vars.getCookieManager().getNewCookies().isEmpty();
+					f.complete(shareable ? new SharedRender(gr, vars.getContentType()) : null);
+				}
+
+			});
+		}
+		SharedRender shared = f.await();
+		if(shared==null) {
+			return PageParser.parseGeneratePageAsync(w, he, vars, page);
+		}
+		vars.setContentType(shared.contentType);
+		return CompletableFuture.completedFuture(shared.response);
+	}
+	
+	/**
+	 * Sends a page's output from the {@link PageCache}, compressing it for the client's encoding the first time that
+	 * encoding is requested and keeping the compressed variant.
+	 * @param he	The {@link HttpExchange} handling this request.
+	 * @param key	The key the output is cached under.
+	 * @param cp	The {@link CachedPage}.
+	 * @param w		The {@link Website} on which the request was made.
+	 * @param ce	The {@link CompressionEncoding} accepted by the client.
+	 * @return True if the response was sent successfully, false otherwise.
+	 */
+	private static boolean cachedPageHTTPResponse(HttpExchange he, String key, CachedPage cp, Website w, CompressionEncoding ce) {
+		byte[] body = cp.getVariant(CompressionEncoding.NONE);
+		String mime = cp.getContentType();
+		String vary = cp.getVaryHeaders();
+		Headers h = he.getResponseHeaders();
+		CompressionSettings cs = w.getCompressionSettings();
+		OutputStream os = null;
+		try {
+			if(cs.isCompressible(mime, body.length)) {
+				vary = vary.isEmpty() ? "Accept-Encoding" : "Accept-Encoding, "+vary;
+				ce = cs.getEncoding(ce, mime, body.length, false);
+				if(ce!=CompressionEncoding.NONE) {
+					byte[] variant = cp.getVariant(ce);
+					if(variant==null) {
+						//not compressed if every encoder is in use, the next request tries again
+						variant = compress(body, ce, cs);
+						if(variant!=null) {
+							w.getPageCache().addVariant(key, cp, ce, variant);
+						}
+					}
+					if(variant!=null) {
+						h.set("Content-Encoding", getContentEncoding(ce));
+						body = variant;
+					}
+				}
+			}
+			if(!vary.isEmpty()) {
+				h.set("Vary", vary);
+			}
+			h.set("Content-Type", mime);
+			h.set("Last-Modified", FormatUtils.getLastModifiedAsHTTPString(cp.getCreated()));
+			if(sendFileHeaders(he, 200, body.length)) {
+				os = he.getResponseBody();
+				os.write(body);
+			}
+			return true;
+		} catch (IOException e) {
+			return false;
+		} finally {
+			if(os!=null) {
+				safeCloseStream(os);
+			}
+		}
+	}
+	
+	/**
+	 * Encodes the next slice of a String to UTF-8.
+	 * @param s		The String being encoded.
+	 * @param off	The position of the first char of the slice.
+	 * @param chars	The array to copy the slice's chars to, whose length is the most chars encoded at once.
+	 * @param out	The empty buffer to encode to, with room for three bytes per char.
+	 * @param enc	The UTF-8 {@link CharsetEncoder} used for every slice of the String.
+	 * @return The position of the first char of the next slice.
+	 */
+	private static int encodeSlice(String s, int off, char[] chars, ByteBuffer out, CharsetEncoder enc) {
+		int n = Math.min(chars.length, s.length()-off);
+		s.getChars(off, off+n, chars, 0);
+		CharBuffer in = CharBuffer.wrap(chars, 0, n);
+		boolean last = off+n>=s.length();
+		enc.encode(in, out, last);
+		if(last) {
+			enc.flush(out);
+		}
+		//a high surrogate ending the slice is left for the next one, where its pair may be
+		return off+in.position();
+	}
+	
+	/**
+	 * @param ce	A {@link CompressionEncoding} other than NONE.
+	 * @return The value of the Content-Encoding header for the encoding.
+	 */
+	private static String getContentEncoding(CompressionEncoding ce) {
+		return ce==CompressionEncoding.BR ? "br" : ce==CompressionEncoding.GZIP ? "gzip" : "deflate";
+	}
+	
+	/**
+	 * Compresses a whole body which must be held compressed, into an output buffer from the {@link CompressionPool}.
+	 * <p>
+	 * Bodies which are only sent are compressed as they are written instead, see {@link #openCompressor}.
+	 * @param body	The body to compress.
+	 * @param ce	The {@link CompressionEncoding} to compress with.
+	 * @param cs	The {@link CompressionSettings} of the website, for the level.
+	 * @return The compressed body, or null if no encoder is available.
+	 * @throws IOException If the body could not be compressed.
+	 */
+	private static byte[] compress(byte[] body, CompressionEncoding ce, CompressionSettings cs) throws IOException {
+		if(ce==CompressionEncoding.BR) {
+			return BrotliCompressor.compress(body, cs.getLevel(ce));
+		} else if(ce==CompressionEncoding.GZIP) {
+			return GZIPCompressor.compress(body, cs.getLevel(ce));
+		} else if (ce==CompressionEncoding.DEFLATE) {
+			return DeflateCompressor.compress(body, cs.getLevel(ce));
+		}
+		return null;
+	}
+	
+	/**
+	 * Opens a stream compressing to a response body with an encoder from the {@link CompressionPool}.
+	 * @param os	The response body.
+	 * @param ce	The {@link CompressionEncoding} to compress with.
+	 * @param cs	The {@link CompressionSettings} of the website, for the level.
+	 * @return The compressing stream, which must be closed to return its encoder, or null if no encoder is available.
+	 * @throws IOException If the encoder could not be created.
+	 */
+	private static OutputStream openCompressor(OutputStream os, CompressionEncoding ce, CompressionSettings cs) throws IOException {
+		return openCompressor(os, ce, cs, false);
+	}
+	
+	/**
+	 * Opens a stream compressing to a response body with an encoder from the {@link CompressionPool}.
+	 * @param os		The response body.
+	 * @param ce		The {@link CompressionEncoding} to compress with.
+	 * @param cs		The {@link CompressionSettings} of the website, for the level.
+	 * @param syncFlush	True if flushing the stream sends everything written so far, for a body sent in parts.
+	 * @return The compressing stream, which must be closed to return its encoder, or null if no encoder is available.
+	 * @throws IOException If the encoder could not be created.
+	 */
+	private static OutputStream openCompressor(OutputStream os, CompressionEncoding ce, CompressionSettings cs, boolean syncFlush) throws IOException {
+		if(ce==CompressionEncoding.BR) {
+			//a Brotli stream always flushes its encoder
+			return BrotliCompressor.open(os, cs.getLevel(ce));
+		} else if(ce==CompressionEncoding.GZIP) {
+			return GZIPCompressor.open(os, cs.getLevel(ce), syncFlush);
+		} else if (ce==CompressionEncoding.DEFLATE) {
+			return DeflateCompressor.open(os, cs.getLevel(ce), syncFlush);
+		}
+		return null;
+	}
+	
+	/**
+	 * Rejects a request which exceeded its {@link Website}'s {@link ConcurrencyLimiter} with a 503 response.
+	 * <p>
+	 * The response tells the client when to retry with a Retry-After header and is otherwise the website's usual error page.
+	 * @param he		The {@link HttpExchange} handling this request.
+	 * @param w			The {@link Website} on which the request was made.
+	 * @param ce		The {@link CompressionEncoding} accepted by the client.
+	 * @return True if the response was sent successfully, false otherwise.
+	 */
+	public static boolean overloadHTTPResponse(HttpExchange he, Website w, CompressionEncoding ce) {
+		he.getResponseHeaders().set("Retry-After", Integer.toString(w.getConcurrencyLimiter().getSettings().getRetryAfter()));
+		RequestVariables v = new RequestVariables(null, null, null, null, null);
+		return generateHTTPResponse(new GeneratorResponse("", getResponseCode(503)), he, v, null, w, ce);
+	}
+	
+	/**
+	 * Finds a {@link ResponseCode} by its numeric HTTP code.
+	 * @param code	The HTTP response code.
+	 * @return The matching {@link ResponseCode}, or {@link ResponseCode#INTERNAL_SERVER_ERROR} if there is none.
+	 */
+	public static ResponseCode getResponseCode(int code) {
+		for(ResponseCode rc : ResponseCode.values()) {
+			if(rc.getCode()==code) {
+				return rc;
+			}
+		}
+		return ResponseCode.INTERNAL_SERVER_ERROR;
+	}
+	
 	/**
 	 * Responds with a file over HTTP.
 	 * @param rc		The HTTP {@link ResponseCode}.
@@ -133,34 +496,30 @@ public class ResponseUtils {
 	 */
 	public static boolean fileHTTPResponse(HttpExchange he, RequestVariables vars, File file, Website w, CompressionEncoding ce) {
 		try {
-			if (!file.isFile()) {
+			CachedFile cf = w.getFileCache().get(file);
+			if (cf==null) {
 				vars.setStreamFile(null);
 				vars.setResponseCode(ResponseCode.NOT_FOUND);
 				generateHTTPResponse(new GeneratorResponse("", ResponseCode.NOT_FOUND), he, vars, file, w, ce);
 	        } else {
-	        	long len = file.length();
+	        	long len = cf.getLength();
 	        	StreamRange sr = he.getRequestHeaders().containsKey("Range") ? new StreamRange(he.getRequestHeaders().getFirst("Range"), len) : null;
 	        	if (sr!=null&&!sr.validateRanges()) {
 	        		vars.setStreamFile(null);
 	        		vars.setResponseCode(ResponseCode.REQUEST_RANGE_NOT_SATISFIABLE);
 	        		generateHTTPResponse(new GeneratorResponse("", ResponseCode.REQUEST_RANGE_NOT_SATISFIABLE), he, vars, file, w, ce);
+	        		return true;
 	        	}
-	        	String[] fileParts = file.getCanonicalPath().split("\\.");
-	        	String mime = MimeUtils.getInstance().getMimeString(fileParts[fileParts.length-1]);
+	        	String mime = cf.getMime();
+	        	byte[] content = cf.getBytes();
+	        	long modified = cf.getLastModified();
 
 	        	Headers h = he.getResponseHeaders();
 	        	if(mime.length()>0) {
 	        		h.set("Content-Type", mime);
 	        	}
-	        	if(ce==CompressionEncoding.BR) {
-	        		h.set("Content-Encoding", "br");
-	        	} else if(ce==CompressionEncoding.GZIP) {
-	        		h.set("Content-Encoding", "gzip");
-	        	} else if (ce==CompressionEncoding.DEFLATE) {
-	        		h.set("Content-Encoding", "deflate");
-	        	}
 	        	h.set("Accept-Ranges", "bytes");
-	        	h.set("Last-Modified", FormatUtils.getLastModifiedAsHTTPString(file.lastModified()));
+	        	h.set("Last-Modified", cf.getLastModifiedString());
 	        	
 	        	Calendar date = Calendar.getInstance();
 	        	date.setTime(new Date());
@@ -172,33 +531,69 @@ public class ResponseUtils {
 	        		Long[] s = sr.getRanges().get(0);
 	        		ignoreSR = (s[0]!=null&&s[0]==0&&s[1]==null);
 	        	}
+	        	if (sr!=null && !ignoreSR && he.getRequestHeaders().containsKey("If-Range")
+	        			&& !matchesIfRange(he.getRequestHeaders().getFirst("If-Range"), getETag(cf, CompressionEncoding.NONE, false), cf)) {
+	        		//the client's copy is out of date, so send all of the current file instead of part of it
+	        		ignoreSR = true;
+	        	}
 
-	        	if (sr == null || ignoreSR) {
-	        		he.sendResponseHeaders(200, 0); 
-	    		} else {
+	        	boolean partial = sr != null && !ignoreSR;
+	        	CompressionSettings cs = w.getCompressionSettings();
+	        	if (cs.isCompressible(mime, len)) {
+	        		h.set("Vary", "Accept-Encoding");
+	        	}
+	        	ce = cs.getEncoding(ce, mime, len, partial);
+	        	CachedFile variant = null;
+	        	if ((ce==CompressionEncoding.BR||ce==CompressionEncoding.GZIP) && Precompressor.isEligible(cs, mime, len)) {
+	        		if (Precompressor.isIncompressible(file, ce, modified)) {
+	        			ce = CompressionEncoding.NONE;
+	        		} else {
+	        			variant = getPrecompressed(file, modified, w, ce);
+	        		}
+	        	}
+	        	if(ce!=CompressionEncoding.NONE) {
+	        		h.set("Content-Encoding", getContentEncoding(ce));
+	        	}
+	        	String eTag = getETag(cf, ce, variant==null);
+	        	h.set("ETag", eTag);
+	        	if (isNotModified(he, eTag, cf)) {
+	        		h.remove("Content-Type");
+	        		h.remove("Content-Encoding");
+	        		he.sendResponseHeaders(304, -1);
+	        		he.close();
+	        		return true;
+	        	}
+
+	        	if (variant!=null) {
+	        		if (precompressedHTTPResponse(he, file, variant, ce)) {
+	        			return true;
+	        		}
+	        		//the variant was removed since it was found, so the file is compressed as it is sent
+	        		h.set("ETag", getETag(cf, ce, true));
+	        	}
+
+	        	OutputStream os = he.getResponseBody();
+	        	if (ce!=CompressionEncoding.NONE) {
+	        		OutputStream cos = openCompressor(os, ce, cs);
+	        		if (cos==null) {
+	        			//every encoder is in use, so the file is sent as it is
+	        			ce = CompressionEncoding.NONE;
+	        			h.remove("Content-Encoding");
+	        			h.set("ETag", getETag(cf, ce, false));
+	        		} else {
+	        			os = cos;
+	        		}
+	        	}
+	        	if (partial) {
 	    			he.getResponseHeaders().set("Content-Range", sr.generateContentRangeString());
-					he.sendResponseHeaders(206, 0); 
 	    		}
-	        	
-	        	if(ce==CompressionEncoding.BR) {
-	        		final byte[] buffer = new byte[1024];
-	        		BrotliOutputStream os = new BrotliOutputStream(he.getResponseBody());
-	        		streamFile(he, buffer, os, file, sr, ignoreSR);
-	        		safeCloseStream(os);
-	        	} else if(ce==CompressionEncoding.GZIP) {
-	        		final byte[] buffer = new byte[1024];
-	        		GZIPOutputStream os = new GZIPOutputStream(he.getResponseBody());
-	        		streamFile(he, buffer, os, file, sr, ignoreSR);
-	        		safeCloseStream(os);
-	        	} else if (ce==CompressionEncoding.DEFLATE) {
-	        		final byte[] buffer = new byte[1024];
-	        		DeflaterOutputStream os = new DeflaterOutputStream(he.getResponseBody());
-	        		streamFile(he, buffer, os, file, sr, ignoreSR);
-	        		safeCloseStream(os);
-	        	} else {
-	        		final byte[] buffer = new byte[1024];
-	        		OutputStream os = he.getResponseBody();
-	        		streamFile(he, buffer, os, file, sr, ignoreSR);
+	        	//only a body compressed as it is sent has an unknown length
+	        	long length = ce==CompressionEncoding.NONE ? (partial ? sr.getContentLength() : len) : -1;
+	        	try {
+	        		if (sendFileHeaders(he, partial ? 206 : 200, length)) {
+	        			streamContent(he, new byte[16384], os, file, content, sr, ignoreSR);
+	        		}
+	        	} finally {
 	        		safeCloseStream(os);
 	        	}
 	        	return true;
@@ -210,6 +605,198 @@ public class ResponseUtils {
 		return true;
 	}
 	
+	/**
+	 * @param cf		The requested {@link CachedFile}.
+	 * @param ce		The {@link CompressionEncoding} the file is sent with.
+	 * @param onTheFly	True if the file is compressed as it is sent rather than from its precompressed variant.
+	 * @return The entity tag of the file as sent with the encoding, each encoding being a different representation. A
+	 * file compressed as it is sent has a weak tag, as its bytes differ from the precompressed variant's.
+	 */
+	private static String getETag(CachedFile cf, CompressionEncoding ce, boolean onTheFly) {
+		String eTag = cf.getETag();
+		if(ce==CompressionEncoding.NONE) {
+			return eTag;
+		}
+		return (onTheFly ? "W/" : "")+eTag.substring(0, eTag.length()-1)+"-"+ce.name().toLowerCase()+"\"";
+	}
+	
+	/**
+	 * Evaluates the If-None-Match and If-Modified-Since headers of a GET or HEAD request.
+	 * <p>
+	 * If-Modified-Since is only used when the request has no If-None-Match header.
+	 * @param he	The {@link HttpExchange} handling this request.
+	 * @param eTag	The entity tag of the file as it would be sent.
+	 * @param cf	The requested {@link CachedFile}.
+	 * @return True if the client's copy is current and a 304 response should be sent.
+	 */
+	private static boolean isNotModified(HttpExchange he, String eTag, CachedFile cf) {
+		String method = he.getRequestMethod();
+		if(!method.equalsIgnoreCase("GET")&&!method.equalsIgnoreCase("HEAD")) {
+			return false;
+		}
+		//If-None-Match compares tags weakly
+		if(eTag.startsWith("W/")) {
+			eTag = eTag.substring(2);
+		}
+		Headers rh = he.getRequestHeaders();
+		if(rh.containsKey("If-None-Match")) {
+			for(String header : rh.get("If-None-Match")) {
+				for(String tag : header.split(",")) {
+					tag = tag.trim();
+					if(tag.startsWith("W/")) {
+						tag = tag.substring(2);
+					}
+					if(tag.equals("*")||tag.equals(eTag)) {
+						return true;
+					}
+				}
+			}
+			return false;
+		}
+		if(rh.containsKey("If-Modified-Since")) {
+			long since = FormatUtils.parseHTTPDate(rh.getFirst("If-Modified-Since"));
+			return since>=0&&cf.getLastModified()/1000<=since/1000;
+		}
+		return false;
+	}
+	
+	/**
+	 * Evaluates the If-Range header of a range request.
+	 * @param ifRange	The If-Range header, an entity tag or a date.
+	 * @param eTag		The entity tag of the uncompressed file, as ranges are sent.
+	 * @param cf		The requested {@link CachedFile}.
+	 * @return True if the client's copy is current, so the range may be sent.
+	 */
+	private static boolean matchesIfRange(String ifRange, String eTag, CachedFile cf) {
+		ifRange = ifRange.trim();
+		if(ifRange.startsWith("\"")) {
+			return ifRange.equals(eTag);
+		}
+		if(ifRange.startsWith("W/")) {
+			//weak tags never match for ranges
+			return false;
+		}
+		long date = FormatUtils.parseHTTPDate(ifRange);
+		return date>=0&&cf.getLastModified()/1000==date/1000;
+	}
+	
+	/**
+	 * Finds an up to date precompressed variant of a static file, queueing it to be built if there is none.
+	 * @param file		The requested static file.
+	 * @param modified	The modification time of the requested file.
+	 * @param w			The {@link Website} on which the request was made.
+	 * @param ce		The {@link CompressionEncoding} of the variant, BR or GZIP.
+	 * @return The {@link CachedFile} of the variant, or null if it can't be sent.
+	 * @see {@link Precompressor}
+	 */
+	private static CachedFile getPrecompressed(File file, long modified, Website w, CompressionEncoding ce) {
+		CachedFile vf = w.getFileCache().get(Precompressor.getVariant(file, ce));
+		if(vf==null||vf.getLength()<=0||vf.getLastModified()!=modified) {
+			Precompressor.schedule(file, ce);
+			return null;
+		}
+		return vf;
+	}
+	
+	/**
+	 * Responds with a precompressed variant of a static file, found by {@link #getPrecompressed(File, long, Website, CompressionEncoding)}.
+	 * <p>
+	 * All headers but the response length must already be set.
+	 * @param he		The {@link HttpExchange} handling this request.
+	 * @param file		The requested static file.
+	 * @param variant	The {@link CachedFile} of the variant.
+	 * @param ce		The {@link CompressionEncoding} of the variant, BR or GZIP.
+	 * @return True if the variant was sent, false if it is no longer there and the response must still be made.
+	 * @throws IOException If the variant could not be sent.
+	 * @see {@link Precompressor}
+	 */
+	private static boolean precompressedHTTPResponse(HttpExchange he, File file, CachedFile variant, CompressionEncoding ce) throws IOException {
+		byte[] content = variant.getBytes();
+		FileInputStream fs = null;
+		if(content==null) {
+			try {
+				//opened before the headers are sent, so a variant removed since it was found can still be replaced
+				fs = new FileInputStream(Precompressor.getVariant(file, ce));
+			} catch (FileNotFoundException e) {
+				return false;
+			}
+		}
+		try {
+			if(!sendFileHeaders(he, 200, variant.getLength())) {
+				return true;
+			}
+			OutputStream os = he.getResponseBody();
+			try {
+				if(content!=null) {
+					os.write(content);
+				} else {
+					outputFileRegion(he, new byte[8192], os, fs.getChannel(), 0, variant.getLength());
+				}
+			} finally {
+				safeCloseStream(os);
+			}
+			return true;
+		} finally {
+			if(fs!=null) {
+				fs.close();
+			}
+		}
+	}
+	
+	/**
+	 * Sends the headers of a static file or generated response, framing the body with a Content-Length when its length is known.
+	 * <p>
+	 * A HEAD request is answered with the Content-Length the body would have, and is closed as it has no body.
+	 * @param he		The {@link HttpExchange} handling this request.
+	 * @param rCode		The response code.
+	 * @param length	The length of the body in bytes, or -1 if it is compressed as it is sent and must be chunked.
+	 * @return True if the body should be written, false if the response is complete.
+	 * @throws IOException If the headers could not be sent.
+	 */
+	private static boolean sendFileHeaders(HttpExchange he, int rCode, long length) throws IOException {
+		if(he.getRequestMethod().equalsIgnoreCase("HEAD")) {
+			if(length>=0) {
+				he.getResponseHeaders().set("Content-Length", Long.toString(length));
+			}
+			he.sendResponseHeaders(rCode, -1);
+			he.close();
+			return false;
+		}
+		//a response length of 0 asks for a chunked body, an empty body is sent with -1
+		he.sendResponseHeaders(rCode, length<0 ? 0 : length==0 ? -1 : length);
+		return true;
+	}
+	
+	/**
+	 * Writes a file to the connection as a response, from memory if its content was cached.
+	 * 
+	 * @param he		The HTTP-Exchange handling this connection.
+	 * @param buffer	The byte buffer which should be used to write from disk.
+	 * @param os		The output stream which can be used to write to the upstream client.
+	 * @param file		The file to be streamed to the client.
+	 * @param content	The cached content of the file, or null to read it from disk.
+	 * @param sr		The {@link StreamRange}, which can be null, that defines what bytes should be written.
+	 * @param ignoreSR	Allows a non-null {@link StreamRange} to be ignored.
+	 * @throws IOException If the file does not exist or the content could not be written.
+	 */
+	public static void streamContent(HttpExchange he, byte[] buffer, OutputStream os, File file, byte[] content, StreamRange sr, boolean ignoreSR) throws IOException {
+		if(content==null) {
+			streamFile(he, buffer, os, file, sr, ignoreSR);
+			return;
+		}
+		if (sr == null || ignoreSR) {
+			os.write(content);
+			return;
+		}
+		for(Long[] r : sr.getRanges()) {
+			long[] bytes = sr.resolveRange(r);
+			long end = Math.min(content.length, bytes[1]);
+			if(end>bytes[0]) {
+				os.write(content, (int) bytes[0], (int) (end-bytes[0]));
+			}
+		}
+	}
+	
 	/**
 	 * Writes a file input stream to the connection as a response.
 	 * 
@@ -222,10 +809,8 @@ public class ResponseUtils {
 	public static void outputFile(HttpExchange he, byte[] buffer, OutputStream os, File file) throws FileNotFoundException {
 		FileInputStream fs = new FileInputStream(file);
 		try {
-			int count;
-	        while ((count = fs.read(buffer)) > 0) {
-	          os.write(buffer,0,count);
-	        }
+			FileChannel fc = fs.getChannel();
+			outputFileRegion(he, buffer, os, fc, 0, fc.size());
 		} catch (Exception e) {
 			//ignore
 		}
@@ -252,38 +837,57 @@ public class ResponseUtils {
 			outputFile(he, buffer, os, file);
 			return;
 		}
-		RandomAccessFile rf = new RandomAccessFile(file,"r");
+		FileInputStream fs = new FileInputStream(file);
 		try {
-			int count = 0; 
-			long len = sr.getLength();
+			FileChannel fc = fs.getChannel();
 			for(Long[] r : sr.getRanges()) {
-				long rangeBase = r[0]==null?(len-r[1]):r[0];
-				long rangeEnd = r[1]==null?len:(r[0]==null?len:r[1]);
-				while(rangeEnd-rangeBase>0) {
-					//System.out.println(len + " " + rangeBase + " " + (rangeBase+1023) + " " + rangeEnd);
-					rf.seek(rangeBase);
-					int readcount = rf.read(buffer, count, (int)Math.min(rangeEnd-rangeBase, 1024-count));
-					count += readcount;
-					if(count==1024) {
-						os.write(buffer,0,count);
-						count = 0;
-					}
-					rangeBase += readcount;
-				}
-			}
-			if(count>0) {
-				os.write(buffer,0,count);
+				long[] bytes = sr.resolveRange(r);
+				outputFileRegion(he, buffer, os, fc, bytes[0], bytes[1]-bytes[0]);
 			}
 		} catch (Exception e) {
 			//ignore
 		}
 		try {
-			rf.close();
+			fs.close();
 		} catch (IOException e) {
 			e.printStackTrace();
 		}
 	}
 	
+	/**
+	 * Writes part of a file to the connection.
+	 * <p>
+	 * When the output stream is the exchange's own response body and the exchange is a {@link FileTransferExchange},
+	 * the bytes are sent with {@link FileChannel#transferTo(long, long, java.nio.channels.WritableByteChannel)} so they
+	 * don't pass through the buffer. Otherwise, for compressing streams or other engines, they are copied through it.
+	 * 
+	 * @param he		The HTTP-Exchange handling this connection.
+	 * @param buffer	The byte buffer which should be used to write if the bytes must be copied.
+	 * @param os		The output stream which can be used to write to the upstream client.
+	 * @param fc		The {@link FileChannel} of the file to be streamed to the client.
+	 * @param position	The position of the first byte to write.
+	 * @param count		The number of bytes to write.
+	 * @throws IOException If the file could not be read or the bytes could not be written.
+	 */
+	public static void outputFileRegion(HttpExchange he, byte[] buffer, OutputStream os, FileChannel fc, long position, long count) throws IOException {
+		if(he instanceof FileTransferExchange&&os==he.getResponseBody()) {
+			((FileTransferExchange) he).transferFile(fc, position, count);
+			return;
+		}
+		ByteBuffer b = ByteBuffer.wrap(buffer);
+		while(count>0) {
+			b.clear();
+			b.limit((int) Math.min(count, buffer.length));
+			int n = fc.read(b, position);
+			if(n<0) {
+				throw new IOException("Unexpected end of file");
+			}
+			os.write(buffer, 0, n);
+			position += n;
+			count -= n;
+		}
+	}
+	
 	/**
 	 * Closes the given stream safely to prevent errors in data integrity and thread crashes.
 	 * @param os	The output stream to be closed.
@@ -301,4 +905,86 @@ public class ResponseUtils {
 		}
 	}
 
+	/**
+	 * The render of a page shared with the requests coalesced with the one which rendered it.
+	 */
+	private static class SharedRender {
+		
+		private final GeneratorResponse response;
+		private final String contentType;
+		
+		private SharedRender(GeneratorResponse response, String contentType) {
+			this.response = response;
+			this.contentType = contentType;
+		}
+		
+	}
+	
+	/**
+	 * The response a streamed page is written to, encoding it to UTF-8 a slice at a time.
+	 */
+	private static class StreamedPage implements PageOutput {
+		
+		private final HttpExchange he;
+		private final RequestVariables vars;
+		private final Website w;
+		private final CompressionEncoding ce;
+		private final CharsetEncoder enc = StandardCharsets.UTF_8.newEncoder()
+				.onMalformedInput(CodingErrorAction.REPLACE).onUnmappableCharacter(CodingErrorAction.REPLACE);
+		private char[] chars;
+		private ByteBuffer out;
+		private OutputStream os;
+		
+		private StreamedPage(HttpExchange he, RequestVariables vars, Website w, CompressionEncoding ce) {
+			this.he = he;
+			this.vars = vars;
+			this.w = w;
+			this.ce = ce;
+		}
+		
+		@Override
+		public void open(int length) throws IOException {
+			Headers h = he.getResponseHeaders();
+			for(Cookie c : vars.getCookieManager().getNewCookies()) {
+				h.add("Set-Cookie", c.makeSetterString());
+			}
+			String mime = vars.getContentType();
+			h.set("Content-Type", mime);
+			h.set("Last-Modified", FormatUtils.getLastModifiedAsHTTPString(System.currentTimeMillis()));
+			OutputStream body = he.getResponseBody();
+			CompressionSettings cs = w.getCompressionSettings();
+			//judged by the static text, the least the page will send
+			if(cs.isCompressible(mime, length)) {
+				h.set("Vary", "Accept-Encoding");
+				CompressionEncoding e = cs.getEncoding(ce, mime, length, false);
+				OutputStream cos = openCompressor(body, e, cs, true);
+				if(cos!=null) {
+					h.set("Content-Encoding", getContentEncoding(e));
+					body = cos;
+				}
+			}
+			chars = new char[BODY_SLICE];
+			out = ByteBuffer.allocate(BODY_SLICE*3);
+			os = body;
+			he.sendResponseHeaders(200, 0);
+		}
+		
+		@Override
+		public void write(String text) throws IOException {
+			enc.reset();
+			int off = 0;
+			while(off<text.length()) {
+				out.clear();
+				off = encodeSlice(text, off, chars, out, enc);
+				os.write(out.array(), 0, out.position());
+			}
+		}
+		
+		@Override
+		public void flush() throws IOException {
+			os.flush();
+		}
+		
+	}
+	
 }